@@ -17,6 +17,7 @@ package org.dataconservancy.pass.deposit.assembler;
 
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.Iterator;
@@ -59,6 +60,21 @@ public interface PackageStream {
      */
     InputStream open(String packageResource);
 
+    /**
+     * Opens the package starting {@code offset} bytes into it, streaming back the remaining bytes of the package.
+     * Packages that can be re-read without being assembled again (e.g. packages spooled to a file) support this method,
+     * which allows a transport to resume an interrupted transfer.
+     *
+     * @param offset the number of bytes to skip from the beginning of the package
+     * @return a new stream over the remainder of the package
+     * @throws IOException if the package cannot be opened
+     * @throws UnsupportedOperationException if the package cannot be re-opened at an offset
+     */
+    default InputStream open(long offset) throws IOException {
+        throw new UnsupportedOperationException("Package cannot be re-opened at an offset; it must be spooled to " +
+                "support resumable transfers");
+    }
+
     /**
      * Returns an iterator over the resources in the package.
      *
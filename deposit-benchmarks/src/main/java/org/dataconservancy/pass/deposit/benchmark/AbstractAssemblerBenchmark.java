@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.benchmark;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the assembly of a package, from {@code assemble(...)} through reading the last byte of the package
+ * stream.
+ * <p>
+ * Each benchmark is run over a matrix of custodial content:
+ * </p>
+ * <ul>
+ *     <li>{@code files}: the number and size of the custodial files, e.g. {@code 100x1MB}</li>
+ *     <li>{@code content}: {@code text} (compressible) or {@code binary} (incompressible) files</li>
+ *     <li>{@code compression}: {@code sequential} or {@code parallel} compression of the package</li>
+ * </ul>
+ * <p>
+ * The default file sets range from a single 1 KB file to 5000 files, and to a single 1 GB file; any file set may be
+ * supplied on the command line, e.g. {@code -p files=5000x1MB}.  {@link #assemble(Throughput)} reports the throughput
+ * of custodial content and of the package, in MB/s, as the {@code custodialMegabytes} and {@code packageMegabytes}
+ * secondary results.  {@link #timeToFirstByte(OpenedPackage)} reports the distribution, including the p99, of the time
+ * taken for the first byte of the package to become readable.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+public abstract class AbstractAssemblerBenchmark {
+
+    private static final double MEGABYTE = 1024 * 1024;
+
+    @Param({ "1x1KB", "1x1MB", "1x1GB", "10x100MB", "100x1MB", "1000x64KB", "5000x1KB" })
+    public String files;
+
+    @Param({ CustodialFixtures.TEXT, CustodialFixtures.BINARY })
+    public String content;
+
+    @Param({ "sequential", "parallel" })
+    public String compression;
+
+    private AbstractAssembler assembler;
+
+    private DepositSubmission submission;
+
+    private long custodialBytes;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        List<Path> custodialFiles = CustodialFixtures.custodialFiles(files, content);
+        custodialBytes = 0;
+        for (Path file : custodialFiles) {
+            custodialBytes += Files.size(file);
+        }
+        submission = CustodialFixtures.submission(UUID.randomUUID().toString(), custodialFiles);
+        assembler = newAssembler("parallel".equals(compression));
+    }
+
+    /**
+     * Creates the assembler being benchmarked.
+     *
+     * @param parallel whether the package is compressed on multiple threads
+     * @return the assembler
+     */
+    protected abstract AbstractAssembler newAssembler(boolean parallel);
+
+    /**
+     * Assembles the package, and reads it to its end.
+     *
+     * @param throughput counts the megabytes of custodial content and of the package
+     * @return the length of the package
+     * @throws IOException if the package cannot be read
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long assemble(Throughput throughput) throws IOException {
+        long length;
+        try (InputStream in = assembler.assemble(submission).open()) {
+            length = IOUtils.copyLarge(in, NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+        throughput.custodialMegabytes += custodialBytes / MEGABYTE;
+        throughput.packageMegabytes += length / MEGABYTE;
+        return length;
+    }
+
+    /**
+     * Assembles the package, and reads its first byte.  The remainder of the package is read outside of the
+     * measurement.
+     *
+     * @param opened holds the package stream until it is read to its end
+     * @return the first byte of the package
+     * @throws IOException if the package cannot be read
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int timeToFirstByte(OpenedPackage opened) throws IOException {
+        opened.in = assembler.assemble(submission).open();
+        return opened.in.read();
+    }
+
+    /**
+     * Megabytes assembled, reported per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        public double custodialMegabytes;
+
+        public double packageMegabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            custodialMegabytes = 0;
+            packageMegabytes = 0;
+        }
+    }
+
+    /**
+     * A package stream whose first byte has been read.
+     */
+    @State(Scope.Thread)
+    public static class OpenedPackage {
+
+        InputStream in;
+
+        @TearDown(Level.Invocation)
+        public void drain() throws IOException {
+            if (in != null) {
+                try (InputStream toDrain = in) {
+                    IOUtils.copyLarge(toDrain, NullOutputStream.NULL_OUTPUT_STREAM);
+                } finally {
+                    in = null;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.benchmark;
+
+import org.dataconservancy.pass.deposit.transport.Transport;
+import org.dataconservancy.pass.deposit.transport.TransportResponse;
+import org.dataconservancy.pass.deposit.transport.TransportSession;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the deposit of a package by a transport, from {@code open(...)} of a transport session through {@code
+ * close()}, against a server run in the benchmark JVM on the loopback interface.  Packages are generated in memory,
+ * and the server discards what it receives, so that neither assembly nor disk influences the results.
+ * <p>
+ * Each deposit benchmark is run over packages of {@code size} bytes; the default sizes range from 10 KB to 2 GB, and
+ * any size may be supplied on the command line, e.g. {@code -p size=500MB}.  {@link #deposit(DepositPackage,
+ * Throughput)} reports the throughput of deposits, and of the deposited bytes in MB/s as the {@code megabytes}
+ * secondary result.  {@link #depositTime(DepositPackage)} reports the distribution of the time taken by a deposit: at
+ * the smallest sizes it is dominated by the per-deposit overhead of the transport (opening a session, and the commands
+ * or requests preceding and following the transfer).  {@link #openSession()} reports the distribution of the time
+ * taken to open and close a session without depositing, i.e. the cost of connection setup.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+public abstract class AbstractTransportBenchmark {
+
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private Transport transport;
+
+    private Map<String, String> hints;
+
+    private Map<String, String> metadata;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        startServer();
+        transport = newTransport();
+        hints = hints();
+        metadata = metadata();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception {
+        stopServer();
+    }
+
+    /**
+     * Starts the server receiving deposits.
+     *
+     * @throws Exception if the server cannot be started
+     */
+    protected abstract void startServer() throws Exception;
+
+    /**
+     * Stops the server receiving deposits, and releases any resources held by the transport.
+     *
+     * @throws Exception if the server cannot be stopped
+     */
+    protected abstract void stopServer() throws Exception;
+
+    /**
+     * Creates the transport being benchmarked.
+     *
+     * @return the transport
+     */
+    protected abstract Transport newTransport();
+
+    /**
+     * Answers the hints used to open a session with the started server.
+     *
+     * @return the hints
+     */
+    protected abstract Map<String, String> hints();
+
+    /**
+     * Answers the metadata sent with each package.
+     *
+     * @return the metadata
+     */
+    protected abstract Map<String, String> metadata();
+
+    /**
+     * Opens a session, deposits the package, and closes the session.
+     *
+     * @param pkg the package
+     * @param throughput counts the megabytes deposited
+     * @return the response of the deposit
+     * @throws Exception if the deposit fails
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public TransportResponse deposit(DepositPackage pkg, Throughput throughput) throws Exception {
+        TransportResponse response = send(pkg);
+        throughput.megabytes += pkg.sizeBytes / MEGABYTE;
+        return response;
+    }
+
+    /**
+     * Opens a session, deposits the package, and closes the session.
+     *
+     * @param pkg the package
+     * @return the response of the deposit
+     * @throws Exception if the deposit fails
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TransportResponse depositTime(DepositPackage pkg) throws Exception {
+        return send(pkg);
+    }
+
+    /**
+     * Opens a session, and closes it without depositing.
+     *
+     * @return whether the session was closed
+     * @throws Exception if the session cannot be opened or closed
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean openSession() throws Exception {
+        TransportSession session = transport.open(hints);
+        session.close();
+        return session.closed();
+    }
+
+    private TransportResponse send(DepositPackage pkg) throws Exception {
+        try (TransportSession session = transport.open(hints)) {
+            TransportResponse response = session.send(pkg.packageStream, metadata);
+            if (!response.success()) {
+                throw new IllegalStateException("Deposit of " + pkg.size + " package failed", response.error());
+            }
+            return response;
+        }
+    }
+
+    /**
+     * The package being deposited.  Only the deposit benchmarks use this state, so {@link #openSession()} is not run
+     * once for each size.
+     */
+    @State(Scope.Benchmark)
+    public static class DepositPackage {
+
+        @Param({ "10KB", "1MB", "100MB", "2GB" })
+        public String size;
+
+        SyntheticPackage packageStream;
+
+        long sizeBytes;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            sizeBytes = CustodialFixtures.parseFileSet("1x" + size)[1];
+            packageStream = new SyntheticPackage("benchmark-" + size + ".zip", sizeBytes);
+        }
+    }
+
+    /**
+     * Megabytes deposited, reported per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line, adding the GC profiler so that the allocation rate of each benchmark
+ * is reported.  For example, to benchmark DSpace METS packages of 100 one-megabyte files:
+ * <pre>
+ * java -jar deposit-benchmarks/target/benchmarks.jar DspaceMetsAssemblerBenchmark -p files=100x1MB
+ * </pre>
+ * or to benchmark SWORD deposits of 100 megabyte packages:
+ * <pre>
+ * java -jar deposit-benchmarks/target/benchmarks.jar Sword2TransportBenchmark -p size=100MB
+ * </pre>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp()) {
+            cli.showHelp();
+            return;
+        }
+
+        Runner runner = new Runner(new OptionsBuilder()
+                .parent(cli)
+                .addProfiler(GCProfiler.class)
+                .build());
+
+        if (cli.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.benchmark;
+
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.dataconservancy.pass.deposit.model.DepositFileType;
+import org.dataconservancy.pass.deposit.model.DepositManifest;
+import org.dataconservancy.pass.deposit.model.DepositMetadata;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the custodial content and submissions used by the benchmarks.  Custodial files are written to local disk,
+ * and referenced by {@code file:} locations, so that the benchmarks run offline.  Files are written once, under the
+ * directory named by the {@value #FIXTURE_DIR_PROPERTY} system property (by default {@code deposit-benchmarks} in the
+ * JVM temporary directory), and re-used by later runs.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+class CustodialFixtures {
+
+    /**
+     * System property naming the directory holding custodial files
+     */
+    static final String FIXTURE_DIR_PROPERTY = "pass.deposit.benchmark.dir";
+
+    /**
+     * Compressible content: text, with the extension {@code .txt}
+     */
+    static final String TEXT = "text";
+
+    /**
+     * Incompressible content: random bytes, with the extension {@code .jpg}
+     */
+    static final String BINARY = "binary";
+
+    private static final Pattern FILE_SET = Pattern.compile("(\\d+)x(\\d+)(B|KB|MB|GB)");
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private static final String[] WORDS = { "the ", "manuscript ", "deposit ", "of ", "submission ", "data ",
+            "repository ", "and ", "package ", "supplemental ", "figure ", "table ", "in ", "journal ", "\n" };
+
+    private CustodialFixtures() {
+        // no-op
+    }
+
+    /**
+     * Parses a file set, e.g. {@code 100x1MB} for one hundred files of one megabyte each.
+     *
+     * @param fileSet the file set
+     * @return the number of files, and the size of each file in bytes
+     */
+    static long[] parseFileSet(String fileSet) {
+        Matcher m = FILE_SET.matcher(fileSet.trim().toUpperCase(Locale.ENGLISH));
+        if (!m.matches()) {
+            throw new IllegalArgumentException("Invalid file set '" + fileSet + "': expected e.g. 100x1MB");
+        }
+
+        long size = Long.parseLong(m.group(2));
+        switch (m.group(3)) {
+            case "GB":
+                size <<= 30;
+                break;
+            case "MB":
+                size <<= 20;
+                break;
+            case "KB":
+                size <<= 10;
+                break;
+            default:
+                break;
+        }
+
+        return new long[] { Long.parseLong(m.group(1)), size };
+    }
+
+    /**
+     * Answers the custodial files of the supplied file set, writing them if they do not already exist.
+     *
+     * @param fileSet the file set, e.g. {@code 100x1MB}
+     * @param content {@link #TEXT} or {@link #BINARY}
+     * @return the custodial files
+     * @throws IOException if the files cannot be written
+     */
+    static List<Path> custodialFiles(String fileSet, String content) throws IOException {
+        long[] parsed = parseFileSet(fileSet);
+        int count = (int) parsed[0];
+        long size = parsed[1];
+
+        if (!TEXT.equals(content) && !BINARY.equals(content)) {
+            throw new IllegalArgumentException("Invalid content '" + content + "': expected " + TEXT + " or " +
+                    BINARY);
+        }
+
+        Path dir = fixtureDir().resolve(fileSet + "-" + content);
+        Files.createDirectories(dir);
+
+        byte[] block = block(content);
+        String extension = TEXT.equals(content) ? ".txt" : ".jpg";
+        List<Path> files = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            Path file = dir.resolve(String.format("file-%05d%s", i, extension));
+            if (!Files.exists(file) || Files.size(file) != size) {
+                write(file, block, size);
+            }
+            files.add(file);
+        }
+
+        return files;
+    }
+
+    /**
+     * Composes a submission of the supplied custodial files, with the metadata required by the DSpace METS and NIHMS
+     * packages.  The first file is the manuscript, and the remaining files are supplements.
+     *
+     * @param id the identifier of the submission
+     * @param files the custodial files
+     * @return the submission
+     */
+    static DepositSubmission submission(String id, List<Path> files) {
+        List<DepositFile> depositFiles = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            DepositFile df = new DepositFile();
+            df.setName(file.getFileName().toString());
+            df.setLocation(file.toUri().toString());
+            df.setType(i == 0 ? DepositFileType.manuscript : DepositFileType.supplement);
+            df.setLabel(i == 0 ? "Manuscript" : "Supplement " + i);
+            depositFiles.add(df);
+        }
+
+        DepositManifest manifest = new DepositManifest();
+        manifest.setFiles(depositFiles);
+
+        DepositMetadata.Manuscript manuscript = new DepositMetadata.Manuscript();
+        manuscript.setTitle("Benchmarking the assembly of deposit packages");
+        manuscript.setMsAbstract("Measures the throughput of assembling packages of custodial content.");
+
+        DepositMetadata.Article article = new DepositMetadata.Article();
+        article.setTitle(manuscript.getTitle());
+        article.setDoi(URI.create("https://doi.org/10.1234/benchmark"));
+
+        DepositMetadata.Journal journal = new DepositMetadata.Journal();
+        journal.setJournalId("Bench J");
+        journal.setJournalTitle("Journal of Benchmarks");
+
+        DepositMetadata metadata = new DepositMetadata();
+        metadata.setManuscriptMetadata(manuscript);
+        metadata.setArticleMetadata(article);
+        metadata.setJournalMetadata(journal);
+        metadata.setPersons(Arrays.asList(
+                person("Jane", "Doe", DepositMetadata.PERSON_TYPE.submitter),
+                person("Jane", "Doe", DepositMetadata.PERSON_TYPE.author),
+                person("John", "Public", DepositMetadata.PERSON_TYPE.pi)));
+
+        DepositSubmission submission = new DepositSubmission();
+        submission.setId(id);
+        submission.setName("benchmark-" + id);
+        submission.setManifest(manifest);
+        submission.setMetadata(metadata);
+        submission.setFiles(depositFiles);
+        return submission;
+    }
+
+    private static DepositMetadata.Person person(String first, String last, DepositMetadata.PERSON_TYPE type) {
+        DepositMetadata.Person person = new DepositMetadata.Person();
+        person.setFirstName(first);
+        person.setLastName(last);
+        person.setEmail(first.toLowerCase(Locale.ENGLISH) + "." + last.toLowerCase(Locale.ENGLISH) +
+                "@example.org");
+        person.setType(type);
+        return person;
+    }
+
+    private static Path fixtureDir() {
+        String dir = System.getProperty(FIXTURE_DIR_PROPERTY);
+        return dir != null ? Paths.get(dir) : Paths.get(System.getProperty("java.io.tmpdir"), "deposit-benchmarks");
+    }
+
+    /**
+     * A block of content, repeated to fill each file.  A block of random bytes is larger than the deflate window, so
+     * repeating it does not make the content compressible.
+     */
+    private static byte[] block(String content) {
+        Random random = new Random(42);
+        byte[] block = new byte[BLOCK_SIZE];
+
+        if (BINARY.equals(content)) {
+            random.nextBytes(block);
+            return block;
+        }
+
+        int off = 0;
+        while (off < block.length) {
+            byte[] word = WORDS[random.nextInt(WORDS.length)].getBytes(StandardCharsets.US_ASCII);
+            int n = Math.min(word.length, block.length - off);
+            System.arraycopy(word, 0, block, off, n);
+            off += n;
+        }
+        return block;
+    }
+
+    private static void write(Path file, byte[] block, long size) throws IOException {
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            long remaining = size;
+            while (remaining > 0) {
+                int n = (int) Math.min(block.length, remaining);
+                out.write(block, 0, n);
+                remaining -= n;
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.benchmark;
+
+import org.dataconservancy.pass.deposit.assembler.dspace.mets.DspaceMetadataDomWriterFactory;
+import org.dataconservancy.pass.deposit.assembler.dspace.mets.DspaceMetsAssembler;
+import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
+import org.dataconservancy.pass.deposit.assembler.shared.DefaultMetadataBuilderFactory;
+import org.dataconservancy.pass.deposit.assembler.shared.DefaultResourceBuilderFactory;
+import org.dataconservancy.pass.deposit.assembler.shared.PackageStreamOptions;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Benchmarks the assembly of DSpace METS (zip) packages.  Parallel compression deflates the entries of the package on
+ * multiple threads.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class DspaceMetsAssemblerBenchmark extends AbstractAssemblerBenchmark {
+
+    @Override
+    protected AbstractAssembler newAssembler(boolean parallel) {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        DspaceMetsAssembler assembler = new DspaceMetsAssembler(new DefaultMetadataBuilderFactory(),
+                new DefaultResourceBuilderFactory(), new DspaceMetadataDomWriterFactory(dbf));
+        assembler.setOptions(PackageStreamOptions.builder().zipParallel(parallel).build());
+        return assembler;
+    }
+
+}
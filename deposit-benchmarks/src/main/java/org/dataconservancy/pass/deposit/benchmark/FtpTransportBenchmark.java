@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.benchmark;
+
+import org.dataconservancy.pass.deposit.transport.Transport;
+import org.dataconservancy.pass.deposit.transport.ftp.DefaultFtpClientFactory;
+import org.dataconservancy.pass.deposit.transport.ftp.FtpClientPool;
+import org.dataconservancy.pass.deposit.transport.ftp.FtpDirectoryCache;
+import org.dataconservancy.pass.deposit.transport.ftp.FtpTransport;
+import org.dataconservancy.pass.deposit.transport.ftp.FtpTransportHints;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Benchmarks the deposit of packages by the FTP transport, to an {@link LocalFtpServer FTP server} run in the benchmark
+ * JVM.  With {@code pooled} clients, sessions borrow logged-in clients from an {@link FtpClientPool}, and remember the
+ * directories created on the server; with {@code unpooled} clients, each session connects and logs in anew.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class FtpTransportBenchmark extends AbstractTransportBenchmark {
+
+    @Param({ "pooled", "unpooled" })
+    public String clients;
+
+    private LocalFtpServer server;
+
+    private FtpClientPool pool;
+
+    @Override
+    protected void startServer() throws Exception {
+        server = new LocalFtpServer();
+    }
+
+    @Override
+    protected void stopServer() throws Exception {
+        if (pool != null) {
+            pool.close();
+        }
+        server.close();
+    }
+
+    @Override
+    protected Transport newTransport() {
+        if (!"pooled".equals(clients)) {
+            return new FtpTransport(new DefaultFtpClientFactory());
+        }
+
+        pool = new FtpClientPool();
+        return new FtpTransport(new DefaultFtpClientFactory(), pool, new FtpDirectoryCache());
+    }
+
+    @Override
+    protected Map<String, String> hints() {
+        Map<String, String> hints = new HashMap<>();
+        hints.put(Transport.TRANSPORT_PROTOCOL, Transport.PROTOCOL.ftp.name());
+        hints.put(Transport.TRANSPORT_AUTHMODE, Transport.AUTHMODE.userpass.name());
+        hints.put(Transport.TRANSPORT_USERNAME, "benchmark");
+        hints.put(Transport.TRANSPORT_PASSWORD, "benchmark");
+        hints.put(Transport.TRANSPORT_SERVER_FQDN, server.getHost());
+        hints.put(Transport.TRANSPORT_SERVER_PORT, String.valueOf(server.getPort()));
+        hints.put(FtpTransportHints.TRANSFER_MODE, FtpTransportHints.MODE.stream.name());
+        hints.put(FtpTransportHints.DATA_TYPE, FtpTransportHints.TYPE.binary.name());
+        hints.put(FtpTransportHints.USE_PASV, Boolean.TRUE.toString());
+        hints.put(FtpTransportHints.BASE_DIRECTORY, "/deposit-benchmarks");
+        return hints;
+    }
+
+    @Override
+    protected Map<String, String> metadata() {
+        return hints();
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.benchmark;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal FTP server, run in the benchmark JVM on the loopback interface, which answers the commands issued by the
+ * {@code FtpTransport}: logging in, creating and changing directories, and storing files over passive ({@code EPSV}
+ * or {@code PASV}) data connections.  Any user and password is accepted.
+ * <p>
+ * Stored files are not written anywhere: their bytes are read and discarded, so that the benchmarks measure the
+ * transport rather than the disk.  Only the size of each stored file is remembered, to answer {@code SIZE} when an
+ * interrupted transfer is resumed.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+class LocalFtpServer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocalFtpServer.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ServerSocket controlSocket;
+
+    private final ExecutorService connections;
+
+    private final Set<String> directories = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Long> files = new ConcurrentHashMap<>();
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Starts the server on an ephemeral port of the loopback interface.
+     *
+     * @throws IOException if the server socket cannot be bound
+     */
+    LocalFtpServer() throws IOException {
+        AtomicInteger count = new AtomicInteger();
+        controlSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        connections = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "Local-Ftp-Server-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        directories.add("/");
+        connections.execute(this::accept);
+    }
+
+    String getHost() {
+        return controlSocket.getInetAddress().getHostAddress();
+    }
+
+    int getPort() {
+        return controlSocket.getLocalPort();
+    }
+
+    /**
+     * @return the number of bytes stored on this server since it was started
+     */
+    long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        controlSocket.close();
+        connections.shutdownNow();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = controlSocket.accept();
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    LOG.warn("Error accepting FTP connection: {}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the commands sent over a control connection, until the client quits or disconnects.
+     */
+    private void serve(Socket socket) {
+        String cwd = "/";
+        long restartOffset = 0;
+        ServerSocket passive = null;
+
+        try (Socket control = socket;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(control.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new OutputStreamWriter(control.getOutputStream(), StandardCharsets.US_ASCII)) {
+
+            reply(out, "220 Deposit benchmark FTP server ready");
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                int space = line.indexOf(' ');
+                String command = (space < 0 ? line : line.substring(0, space)).toUpperCase(Locale.ENGLISH);
+                String argument = space < 0 ? "" : line.substring(space + 1).trim();
+
+                switch (command) {
+                    case "USER":
+                        reply(out, "331 Password required");
+                        break;
+                    case "PASS":
+                        reply(out, "230 Logged in");
+                        break;
+                    case "SYST":
+                        reply(out, "215 UNIX Type: L8");
+                        break;
+                    case "MODE":
+                    case "TYPE":
+                    case "NOOP":
+                        reply(out, "200 OK");
+                        break;
+                    case "PWD":
+                        reply(out, "257 \"" + cwd + "\" is the current directory");
+                        break;
+                    case "CWD": {
+                        String dir = resolve(cwd, argument);
+                        if (directories.contains(dir)) {
+                            cwd = dir;
+                            reply(out, "250 Directory changed");
+                        } else {
+                            reply(out, "550 No such directory");
+                        }
+                        break;
+                    }
+                    case "MKD": {
+                        String dir = resolve(cwd, argument);
+                        if (directories.add(dir)) {
+                            reply(out, "257 \"" + dir + "\" created");
+                        } else {
+                            reply(out, "550 Directory exists");
+                        }
+                        break;
+                    }
+                    case "EPSV":
+                        passive = reopen(passive);
+                        reply(out, "229 Entering Extended Passive Mode (|||" + passive.getLocalPort() + "|)");
+                        break;
+                    case "PASV": {
+                        passive = reopen(passive);
+                        int port = passive.getLocalPort();
+                        reply(out, "227 Entering Passive Mode (" + getHost().replace('.', ',') + "," +
+                                (port >> 8) + "," + (port & 0xff) + ")");
+                        break;
+                    }
+                    case "REST":
+                        restartOffset = Long.parseLong(argument);
+                        reply(out, "350 Restarting at " + restartOffset);
+                        break;
+                    case "SIZE": {
+                        Long size = files.get(resolve(cwd, argument));
+                        reply(out, size != null ? "213 " + size : "550 No such file");
+                        break;
+                    }
+                    case "STOR":
+                    case "APPE": {
+                        if (passive == null) {
+                            reply(out, "425 Use EPSV or PASV first");
+                            break;
+                        }
+                        String file = resolve(cwd, argument);
+                        long offset = "APPE".equals(command) ? files.getOrDefault(file, 0L) : restartOffset;
+                        reply(out, "150 Opening data connection");
+                        long received = receive(passive);
+                        passive.close();
+                        passive = null;
+                        restartOffset = 0;
+                        files.put(file, offset + received);
+                        reply(out, "226 Transfer complete");
+                        break;
+                    }
+                    case "ABOR":
+                        reply(out, "226 Abort successful");
+                        break;
+                    case "QUIT":
+                        reply(out, "221 Goodbye");
+                        return;
+                    default:
+                        reply(out, "502 Command not implemented");
+                        break;
+                }
+            }
+        } catch (SocketException e) {
+            // the client disconnected, e.g. after aborting a transfer
+            LOG.debug("FTP connection closed: {}", e.getMessage());
+        } catch (IOException e) {
+            LOG.warn("Error serving FTP connection: {}", e.getMessage(), e);
+        } finally {
+            if (passive != null) {
+                try {
+                    passive.close();
+                } catch (IOException e) {
+                    LOG.debug("Error closing passive socket: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts the data connection of a transfer, discarding the bytes it carries until the client closes it.
+     *
+     * @return the number of bytes received
+     */
+    private long receive(ServerSocket passive) throws IOException {
+        long received = 0;
+        byte[] buf = new byte[BUFFER_SIZE];
+        try (Socket data = passive.accept(); InputStream in = data.getInputStream()) {
+            int read;
+            while ((read = in.read(buf)) > -1) {
+                received += read;
+            }
+        }
+        bytesReceived.addAndGet(received);
+        return received;
+    }
+
+    private ServerSocket reopen(ServerSocket passive) throws IOException {
+        if (passive != null) {
+            passive.close();
+        }
+        return new ServerSocket(0, 1, controlSocket.getInetAddress());
+    }
+
+    private static String resolve(String cwd, String path) {
+        String resolved = path.startsWith("/") ? path : (cwd.endsWith("/") ? cwd : cwd + "/") + path;
+        while (resolved.length() > 1 && resolved.endsWith("/")) {
+            resolved = resolved.substring(0, resolved.length() - 1);
+        }
+        return resolved.replaceAll("/+", "/");
+    }
+
+    private static void reply(Writer out, String reply) throws IOException {
+        out.write(reply);
+        out.write("\r\n");
+        out.flush();
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal SWORDv2 server, run in the benchmark JVM on the loopback interface.  It serves a service document with a
+ * single collection, and accepts binary deposits to that collection, answering each with a deposit receipt.  Any
+ * credentials are accepted.
+ * <p>
+ * Deposited packages are not stored: their bytes are read and discarded, so that the benchmarks measure the transport
+ * rather than the repository.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+class LocalSwordServer implements Closeable {
+
+    private static final String SERVICE_DOC_PATH = "/swordv2/servicedocument";
+
+    private static final String COLLECTION_PATH = "/swordv2/collection/benchmark";
+
+    private static final String EDIT_PATH = "/swordv2/edit/";
+
+    private static final String SIMPLE_ZIP = "http://purl.org/net/sword/package/SimpleZip";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    private final AtomicLong deposits = new AtomicLong();
+
+    /**
+     * Starts the server on an ephemeral port of the loopback interface.
+     *
+     * @throws IOException if the server socket cannot be bound
+     */
+    LocalSwordServer() throws IOException {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "Local-Sword-Server-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50);
+        server.setExecutor(executor);
+        server.createContext(SERVICE_DOC_PATH, this::serviceDocument);
+        server.createContext(COLLECTION_PATH, this::deposit);
+        server.start();
+    }
+
+    String getServiceDocUrl() {
+        return baseUrl() + SERVICE_DOC_PATH;
+    }
+
+    String getCollectionUrl() {
+        return baseUrl() + COLLECTION_PATH;
+    }
+
+    /**
+     * @return the number of bytes deposited to this server since it was started
+     */
+    long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String baseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    private void serviceDocument(HttpExchange exchange) throws IOException {
+        try {
+            drain(exchange);
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            String body = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<service xmlns=\"http://www.w3.org/2007/app\" xmlns:atom=\"http://www.w3.org/2005/Atom\"\n" +
+                    "         xmlns:sword=\"http://purl.org/net/sword/terms/\">\n" +
+                    "  <sword:version>2.0</sword:version>\n" +
+                    "  <workspace>\n" +
+                    "    <atom:title>Deposit Benchmarks</atom:title>\n" +
+                    "    <collection href=\"" + getCollectionUrl() + "\">\n" +
+                    "      <atom:title>Benchmark Collection</atom:title>\n" +
+                    "      <accept>*/*</accept>\n" +
+                    "      <accept alternate=\"multipart-related\">*/*</accept>\n" +
+                    "      <sword:acceptPackaging>" + SIMPLE_ZIP + "</sword:acceptPackaging>\n" +
+                    "      <sword:mediation>true</sword:mediation>\n" +
+                    "    </collection>\n" +
+                    "  </workspace>\n" +
+                    "</service>\n";
+
+            respond(exchange, 200, "application/atomsvc+xml", body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void deposit(HttpExchange exchange) throws IOException {
+        try {
+            long received = drain(exchange);
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            bytesReceived.addAndGet(received);
+            String editUrl = baseUrl() + EDIT_PATH + deposits.incrementAndGet();
+
+            String body = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<entry xmlns=\"http://www.w3.org/2005/Atom\" xmlns:sword=\"http://purl.org/net/sword/terms/\">\n" +
+                    "  <title>Benchmark Deposit</title>\n" +
+                    "  <id>urn:uuid:" + UUID.randomUUID() + "</id>\n" +
+                    "  <updated>" + Instant.now() + "</updated>\n" +
+                    "  <link rel=\"edit\" href=\"" + editUrl + "\"/>\n" +
+                    "  <link rel=\"edit-media\" href=\"" + editUrl + "/media\"/>\n" +
+                    "  <link rel=\"http://purl.org/net/sword/terms/add\" href=\"" + editUrl + "\"/>\n" +
+                    "  <sword:packaging>" + SIMPLE_ZIP + "</sword:packaging>\n" +
+                    "  <sword:treatment>Discarded " + received + " bytes</sword:treatment>\n" +
+                    "</entry>\n";
+
+            exchange.getResponseHeaders().set("Location", editUrl);
+            respond(exchange, 201, "application/atom+xml;type=entry", body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads the request body to its end, discarding it.
+     *
+     * @return the number of bytes read
+     */
+    private static long drain(HttpExchange exchange) throws IOException {
+        long received = 0;
+        byte[] buf = new byte[BUFFER_SIZE];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buf)) > -1) {
+                received += read;
+            }
+        }
+        return received;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.benchmark;
+
+import org.dataconservancy.pass.deposit.assembler.assembler.nihmsnative.NihmsAssembler;
+import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
+import org.dataconservancy.pass.deposit.assembler.shared.DefaultMetadataBuilderFactory;
+import org.dataconservancy.pass.deposit.assembler.shared.DefaultResourceBuilderFactory;
+import org.dataconservancy.pass.deposit.assembler.shared.PackageStreamOptions;
+
+/**
+ * Benchmarks the assembly of NIHMS native (tar.gz) packages.  Parallel compression deflates the package on multiple
+ * threads.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class NihmsAssemblerBenchmark extends AbstractAssemblerBenchmark {
+
+    @Override
+    protected AbstractAssembler newAssembler(boolean parallel) {
+        NihmsAssembler assembler = new NihmsAssembler(new DefaultMetadataBuilderFactory(),
+                new DefaultResourceBuilderFactory());
+        assembler.setOptions(PackageStreamOptions.builder().gzipParallel(parallel).build());
+        return assembler;
+    }
+
+}
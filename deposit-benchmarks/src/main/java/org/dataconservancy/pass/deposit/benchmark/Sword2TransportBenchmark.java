@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.benchmark;
+
+import org.dataconservancy.pass.deposit.transport.Transport;
+import org.dataconservancy.pass.deposit.transport.sword2.DefaultSword2ClientFactory;
+import org.dataconservancy.pass.deposit.transport.sword2.Sword2ServiceDocumentCache;
+import org.dataconservancy.pass.deposit.transport.sword2.Sword2Transport;
+import org.dataconservancy.pass.deposit.transport.sword2.Sword2TransportHints;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Benchmarks the deposit of packages by the SWORDv2 transport, to a {@link LocalSwordServer SWORD server} run in the
+ * benchmark JVM.  With a {@code cached} service document, sessions re-use the service document retrieved by the first
+ * session; with an {@code uncached} service document, each session retrieves and parses it anew.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class Sword2TransportBenchmark extends AbstractTransportBenchmark {
+
+    @Param({ "cached", "uncached" })
+    public String serviceDocument;
+
+    private LocalSwordServer server;
+
+    @Override
+    protected void startServer() throws Exception {
+        server = new LocalSwordServer();
+    }
+
+    @Override
+    protected void stopServer() throws Exception {
+        server.close();
+    }
+
+    @Override
+    protected Transport newTransport() {
+        Sword2ServiceDocumentCache cache = new Sword2ServiceDocumentCache();
+        if (!"cached".equals(serviceDocument)) {
+            cache.setTtlMs(0);
+        }
+
+        return new Sword2Transport(new DefaultSword2ClientFactory(), cache);
+    }
+
+    @Override
+    protected Map<String, String> hints() {
+        Map<String, String> hints = new HashMap<>();
+        hints.put(Transport.TRANSPORT_PROTOCOL, Transport.PROTOCOL.SWORDv2.name());
+        hints.put(Transport.TRANSPORT_AUTHMODE, Transport.AUTHMODE.userpass.name());
+        hints.put(Transport.TRANSPORT_USERNAME, "benchmark");
+        hints.put(Transport.TRANSPORT_PASSWORD, "benchmark");
+        hints.put(Sword2TransportHints.SWORD_SERVICE_DOC_URL, server.getServiceDocUrl());
+        return hints;
+    }
+
+    @Override
+    protected Map<String, String> metadata() {
+        Map<String, String> metadata = hints();
+        metadata.put(Sword2TransportHints.SWORD_COLLECTION_URL, server.getCollectionUrl());
+        metadata.put(Sword2TransportHints.SWORD_DEPOSIT_RECEIPT_FLAG, Boolean.TRUE.toString());
+        return metadata;
+    }
+
+}
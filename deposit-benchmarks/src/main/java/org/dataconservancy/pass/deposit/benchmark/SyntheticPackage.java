@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.benchmark;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.shared.ChecksumImpl;
+import org.dataconservancy.pass.deposit.assembler.shared.MetadataBuilderImpl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * A package of incompressible bytes, generated in memory, so that the transport benchmarks measure the transfer of a
+ * package and not its assembly.  The package is a one megabyte block of random bytes, repeated to the size of the
+ * package; it may be opened any number of times, and at any offset, as a spooled package may.  Its metadata carries
+ * its size and MD5 checksum, which is computed once, when the package is created.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+class SyntheticPackage implements PackageStream {
+
+    private static final String SPEC = "http://purl.org/net/sword/package/SimpleZip";
+
+    private static final String MIME_TYPE = "application/zip";
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private final byte[] block = new byte[BLOCK_SIZE];
+
+    private final long sizeBytes;
+
+    private final Metadata metadata;
+
+    /**
+     * @param name the name of the package
+     * @param sizeBytes the size of the package, in bytes
+     */
+    SyntheticPackage(String name, long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+        new Random(sizeBytes).nextBytes(block);
+
+        byte[] md5 = md5();
+        StringBuilder hex = new StringBuilder(md5.length * 2);
+        for (byte b : md5) {
+            hex.append(String.format("%02x", b));
+        }
+
+        this.metadata = new MetadataBuilderImpl()
+                .name(name)
+                .spec(SPEC)
+                .mimeType(MIME_TYPE)
+                .sizeBytes(sizeBytes)
+                .compressed(true)
+                .compression(COMPRESSION.ZIP)
+                .archived(true)
+                .archive(ARCHIVE.ZIP)
+                .checksum(new ChecksumImpl(Algo.MD5, md5, Base64.getEncoder().encodeToString(md5), hex.toString()))
+                .build();
+    }
+
+    @Override
+    public InputStream open() {
+        return new BlockInputStream(0);
+    }
+
+    @Override
+    public InputStream open(String packageResource) {
+        throw new UnsupportedOperationException("Synthetic packages have no resources");
+    }
+
+    @Override
+    public InputStream open(long offset) throws IOException {
+        if (offset < 0 || offset > sizeBytes) {
+            throw new IOException("Offset " + offset + " is outside of the package (" + sizeBytes + " bytes)");
+        }
+        return new BlockInputStream(offset);
+    }
+
+    @Override
+    public Iterator<Resource> resources() {
+        return Collections.emptyIterator();
+    }
+
+    @Override
+    public Metadata metadata() {
+        return metadata;
+    }
+
+    private byte[] md5() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (long remaining = sizeBytes; remaining > 0; remaining -= BLOCK_SIZE) {
+            digest.update(block, 0, (int) Math.min(remaining, BLOCK_SIZE));
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Streams the package from an offset, copying from the repeated block.
+     */
+    private class BlockInputStream extends InputStream {
+
+        private long position;
+
+        private BlockInputStream(long position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() {
+            if (position >= sizeBytes) {
+                return -1;
+            }
+            return block[(int) (position++ % BLOCK_SIZE)] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= sizeBytes) {
+                return -1;
+            }
+
+            int offsetInBlock = (int) (position % BLOCK_SIZE);
+            int count = (int) Math.min(Math.min(len, BLOCK_SIZE - offsetInBlock), sizeBytes - position);
+            System.arraycopy(block, offsetInBlock, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, sizeBytes - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, sizeBytes - position);
+        }
+    }
+
+}
@@ -27,7 +27,9 @@ import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.input.BrokenInputStream;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 import org.dataconservancy.nihms.integration.BaseIT;
+import org.dataconservancy.pass.deposit.transport.TransferFuture;
 import org.dataconservancy.pass.deposit.transport.TransportResponse;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.swordapp.client.AuthCredentials;
@@ -53,6 +55,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
@@ -192,6 +195,11 @@ public class Sword2TransportSessionIT extends BaseIT {
      */
     private File dspaceMetsPackage;
 
+    /**
+     * Performs the deposits of the sessions under test
+     */
+    private ThreadPoolExecutor executor;
+
     /**
      * Performs basic IT setup:
      * <ul>
@@ -225,6 +233,13 @@ public class Sword2TransportSessionIT extends BaseIT {
         swordClient = new SWORDClient(swordConfig);
 
         serviceDoc = getServiceDocument(swordClient, SERVICEDOC_ENDPOINT, authCreds);
+
+        executor = TransferFuture.newExecutor("Sword-Transfer", Sword2Transport.DEFAULT_MAX_TRANSFERS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
     }
 
     /**
@@ -236,7 +251,7 @@ public class Sword2TransportSessionIT extends BaseIT {
         PackageStream.Metadata md = preparePackageMd(sampleZipPackage, SPEC_SIMPLE_ZIP, APPLICATION_ZIP);
         PackageStream packageStream = preparePackageStream(md, sampleZipPackage);
 
-        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds);
+        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds, executor);
 
         Map<String, String> transportMd = new HashMap<>();
         transportMd.put(Sword2TransportHints.SWORD_COLLECTION_URL,
@@ -258,7 +273,7 @@ public class Sword2TransportSessionIT extends BaseIT {
         PackageStream.Metadata md = preparePackageMd(dspaceMetsPackage, SPEC_DSPACE_METS, APPLICATION_ZIP);
         PackageStream packageStream = preparePackageStream(md, dspaceMetsPackage);
 
-        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds);
+        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds, executor);
 
         Map<String, String> transportMd = new HashMap<>();
         transportMd.put(Sword2TransportHints.SWORD_COLLECTION_URL,
@@ -365,7 +380,7 @@ public class Sword2TransportSessionIT extends BaseIT {
 
         PackageStream packageStream = preparePackageStream(md, sampleZipPackage);
 
-        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds);
+        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds, executor);
 
         Map<String, String> transportMd = new HashMap<>();
         transportMd.put(Sword2TransportHints.SWORD_COLLECTION_URL,
@@ -390,7 +405,7 @@ public class Sword2TransportSessionIT extends BaseIT {
         when(md.spec()).thenReturn("http://invalid.spec/url");
         PackageStream packageStream = preparePackageStream(md, sampleZipPackage);
 
-        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds);
+        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds, executor);
 
         Map<String, String> transportMd = new HashMap<>();
         transportMd.put(Sword2TransportHints.SWORD_COLLECTION_URL,
@@ -413,7 +428,7 @@ public class Sword2TransportSessionIT extends BaseIT {
         PackageStream.Metadata md = preparePackageMd(sampleZipPackage, SPEC_SIMPLE_ZIP, APPLICATION_ZIP);
         PackageStream packageStream = preparePackageStream(md, sampleZipPackage);
 
-        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds);
+        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds, executor);
         String invalidCollectionUrl = DEFAULT_SWORD_COLLECTION_URL + "/123456";
 
         Map<String, String> transportMd = new HashMap<>();
@@ -440,7 +455,7 @@ public class Sword2TransportSessionIT extends BaseIT {
         BrokenInputStream brokenIn = new BrokenInputStream(expectedException);
         when(packageStream.open()).thenReturn(brokenIn);
 
-        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds);
+        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds, executor);
 
         Map<String, String> transportMd = new HashMap<>();
         transportMd.put(Sword2TransportHints.SWORD_COLLECTION_URL, getSwordCollection(serviceDoc, APPLICATION_ZIP));
@@ -470,7 +485,7 @@ public class Sword2TransportSessionIT extends BaseIT {
         SWORDClient swordClient = mock(SWORDClient.class);
         when(swordClient.deposit(any(SWORDCollection.class), any(), eq(authCreds))).thenThrow(expectedException);
 
-        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds);
+        Sword2TransportSession underTest = new Sword2TransportSession(swordClient, serviceDoc, authCreds, executor);
 
         Map<String, String> transportMd = new HashMap<>();
         transportMd.put(Sword2TransportHints.SWORD_COLLECTION_URL, getSwordCollection(serviceDoc, APPLICATION_ZIP));
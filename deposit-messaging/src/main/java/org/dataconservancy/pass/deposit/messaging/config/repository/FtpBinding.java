@@ -29,6 +29,7 @@ import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_PAS
 import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_PROTOCOL;
 import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_SERVER_FQDN;
 import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_SERVER_PORT;
+import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_TIMEOUT_MS;
 import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_USERNAME;
 
 public class FtpBinding extends ProtocolBinding {
@@ -51,6 +52,12 @@ public class FtpBinding extends ProtocolBinding {
     @JsonProperty("default-directory")
     private String defaultDirectory;
 
+    @JsonProperty("resume-attempts")
+    private Integer resumeAttempts;
+
+    @JsonProperty("resume-delay-ms")
+    private Long resumeDelayMs;
+
     public FtpBinding() {
         this.setProtocol(PROTO);
     }
@@ -103,6 +110,22 @@ public class FtpBinding extends ProtocolBinding {
         this.defaultDirectory = defaultDirectory;
     }
 
+    public Integer getResumeAttempts() {
+        return resumeAttempts;
+    }
+
+    public void setResumeAttempts(Integer resumeAttempts) {
+        this.resumeAttempts = resumeAttempts;
+    }
+
+    public Long getResumeDelayMs() {
+        return resumeDelayMs;
+    }
+
+    public void setResumeDelayMs(Long resumeDelayMs) {
+        this.resumeDelayMs = resumeDelayMs;
+    }
+
     @Override
     public Map<String, String> asPropertiesMap() {
         Map<String, String> transportProperties = new HashMap<>();
@@ -118,6 +141,18 @@ public class FtpBinding extends ProtocolBinding {
         transportProperties.put(FtpTransportHints.DATA_TYPE, getDataType());
         transportProperties.put(FtpTransportHints.USE_PASV, String.valueOf(isUsePasv()));
 
+        if (getResumeAttempts() != null) {
+            transportProperties.put(FtpTransportHints.RESUME_ATTEMPTS, String.valueOf(getResumeAttempts()));
+        }
+
+        if (getResumeDelayMs() != null) {
+            transportProperties.put(FtpTransportHints.RESUME_DELAY_MS, String.valueOf(getResumeDelayMs()));
+        }
+
+        if (getTimeoutMs() != null) {
+            transportProperties.put(TRANSPORT_TIMEOUT_MS, String.valueOf(getTimeoutMs()));
+        }
+
         return transportProperties;
     }
 
@@ -132,12 +167,15 @@ public class FtpBinding extends ProtocolBinding {
                 Objects.equals(password, that.password) &&
                 Objects.equals(dataType, that.dataType) &&
                 Objects.equals(transferMode, that.transferMode) &&
-                Objects.equals(defaultDirectory, that.defaultDirectory);
+                Objects.equals(defaultDirectory, that.defaultDirectory) &&
+                Objects.equals(resumeAttempts, that.resumeAttempts) &&
+                Objects.equals(resumeDelayMs, that.resumeDelayMs);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), username, password, dataType, transferMode, usePasv, defaultDirectory);
+        return Objects.hash(super.hashCode(), username, password, dataType, transferMode, usePasv, defaultDirectory,
+                resumeAttempts, resumeDelayMs);
     }
 
 }
@@ -41,6 +41,9 @@ public abstract class ProtocolBinding {
     @JsonProperty("server-port")
     private String serverPort;
 
+    @JsonProperty("timeout-ms")
+    private Long timeoutMs;
+
     public String getProtocol() {
         return protocol;
     }
@@ -65,6 +68,14 @@ public abstract class ProtocolBinding {
         this.serverPort = serverPort;
     }
 
+    public Long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public void setTimeoutMs(Long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
     public abstract Map<String, String> asPropertiesMap();
 
     @Override
@@ -80,7 +91,9 @@ public abstract class ProtocolBinding {
             return false;
         if (serverFqdn != null ? !serverFqdn.equals(that.serverFqdn) : that.serverFqdn != null)
             return false;
-        return serverPort != null ? serverPort.equals(that.serverPort) : that.serverPort == null;
+        if (serverPort != null ? !serverPort.equals(that.serverPort) : that.serverPort != null)
+            return false;
+        return timeoutMs != null ? timeoutMs.equals(that.timeoutMs) : that.timeoutMs == null;
     }
 
     @Override
@@ -88,6 +101,7 @@ public abstract class ProtocolBinding {
         int result = protocol != null ? protocol.hashCode() : 0;
         result = 31 * result + (serverFqdn != null ? serverFqdn.hashCode() : 0);
         result = 31 * result + (serverPort != null ? serverPort.hashCode() : 0);
+        result = 31 * result + (timeoutMs != null ? timeoutMs.hashCode() : 0);
         return result;
     }
 }
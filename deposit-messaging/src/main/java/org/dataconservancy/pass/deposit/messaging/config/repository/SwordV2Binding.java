@@ -29,6 +29,7 @@ import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_PAS
 import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_PROTOCOL;
 import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_SERVER_FQDN;
 import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_SERVER_PORT;
+import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_TIMEOUT_MS;
 import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_USERNAME;
 
 public class SwordV2Binding extends ProtocolBinding {
@@ -130,6 +131,10 @@ public class SwordV2Binding extends ProtocolBinding {
         transportProperties.put(Sword2TransportHints.SWORD_DEPOSIT_RECEIPT_FLAG, String.valueOf(isDepositReceipt()));
         transportProperties.put(Sword2TransportHints.SWORD_CLIENT_USER_AGENT, getUserAgent());
 
+        if (getTimeoutMs() != null) {
+            transportProperties.put(TRANSPORT_TIMEOUT_MS, String.valueOf(getTimeoutMs()));
+        }
+
         return transportProperties;
     }
 
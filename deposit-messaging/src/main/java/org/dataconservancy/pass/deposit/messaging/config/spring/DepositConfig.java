@@ -33,6 +33,7 @@ import org.dataconservancy.pass.deposit.messaging.status.DepositStatusResolver;
 import org.dataconservancy.pass.deposit.messaging.support.swordv2.PassAbderaClient;
 import org.dataconservancy.pass.deposit.transport.Transport;
 import org.dataconservancy.pass.deposit.transport.ftp.FtpTransport;
+import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.client.PassClientDefault;
 import org.dataconservancy.pass.client.adapter.PassJsonAdapterBasic;
 import org.dataconservancy.pass.deposit.assembler.dspace.mets.DspaceMetsAssembler;
@@ -45,6 +46,7 @@ import org.dataconservancy.pass.deposit.messaging.policy.DirtyDepositPolicy;
 import org.dataconservancy.pass.deposit.messaging.service.DepositTask;
 import org.dataconservancy.pass.deposit.messaging.status.DefaultDepositStatusProcessor;
 import org.dataconservancy.pass.deposit.messaging.support.CriticalRepositoryInteraction;
+import org.dataconservancy.pass.deposit.messaging.support.PassEntityCache;
 import org.dataconservancy.pass.deposit.messaging.support.swordv2.AtomFeedStatusResolver;
 import org.dataconservancy.pass.deposit.transport.sword2.Sword2Transport;
 import org.slf4j.Logger;
@@ -111,7 +113,7 @@ public class DepositConfig {
     private Resource repositoryConfigResource;
 
     @Bean
-    public PassClientDefault passClient() {
+    public PassClient passClient(PassEntityCache passEntityCache) {
 
         // PassClientDefault can't be injected with configuration; requires system properties be set.
         // If a system property is already set, allow it to override what is resolved by the Spring environment.
@@ -139,7 +141,17 @@ public class DepositConfig {
             System.setProperty("http.agent", passHttpAgent);
         }
 
-        return new PassClientDefault();
+        return passEntityCache.decorate(new PassClientDefault());
+    }
+
+    @Bean
+    public PassEntityCache passEntityCache(OkHttpClient okHttpClient,
+                                           @Value("${pass.deposit.cache.ttl-seconds:}") String ttls,
+                                           @Value("${pass.deposit.cache.max-size:1000}") int maxSize) {
+        PassEntityCache cache = new PassEntityCache(okHttpClient);
+        cache.setTtls(ttls);
+        cache.setMaxSize(maxSize);
+        return cache;
     }
 
     @Bean
@@ -154,8 +166,14 @@ public class DepositConfig {
     }
 
     @Bean
-    public FcrepoModelBuilder fcrepoModelBuilder() {
-        return new FcrepoModelBuilder();
+    public FcrepoModelBuilder fcrepoModelBuilder(
+            @Value("${pass.deposit.builder.describe-files:false}") boolean describeFiles, PassClient passClient,
+            OkHttpClient okHttpClient) {
+        FcrepoModelBuilder builder = new FcrepoModelBuilder();
+        builder.setPassClient(passClient);
+        builder.setDescribeFiles(describeFiles);
+        builder.setHttpClient(okHttpClient);
+        return builder;
     }
 
     @Bean
@@ -21,6 +21,7 @@ import org.dataconservancy.pass.deposit.messaging.policy.JmsMessagePolicy;
 import org.dataconservancy.pass.deposit.messaging.service.DepositUtil;
 import org.dataconservancy.pass.deposit.messaging.support.Constants;
 import org.dataconservancy.pass.deposit.messaging.support.JsonParser;
+import org.dataconservancy.pass.deposit.messaging.support.PassEntityCache;
 import org.dataconservancy.pass.model.Deposit;
 import org.dataconservancy.pass.model.Submission;
 import org.slf4j.Logger;
@@ -40,12 +41,17 @@ import javax.jms.ConnectionFactory;
 import javax.jms.Session;
 import java.net.URI;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.dataconservancy.pass.deposit.messaging.service.DepositUtil.ackMessage;
 import static org.dataconservancy.pass.deposit.messaging.service.DepositUtil.toMessageContext;
 
 /**
+ * Listens to the {@code submission} and {@code deposit} queues.  When sharding is enabled, accepted messages are
+ * forwarded to grouped queues by the {@link MessageGroupRouter}, and processed by the listeners of the grouped queues.
+ * When the {@link PassEntityCache} is enabled, the Fedora topic is listened to as well, to invalidate cached entities.
+ *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
 @EnableJms
@@ -73,6 +79,18 @@ public class JmsConfig {
     @Autowired
     private Consumer<Deposit> depositConsumer;
 
+    @Autowired
+    private MessageGroupRouter groupRouter;
+
+    @Autowired
+    private PassEntityCache entityCache;
+
+    @Value("${pass.deposit.queue.submission.grouped.name:submission.grouped}")
+    private String groupedSubmissionQueue;
+
+    @Value("${pass.deposit.queue.deposit.grouped.name:deposit.grouped}")
+    private String groupedDepositQueue;
+
     @Bean
     public DefaultJmsListenerContainerFactory jmsListenerContainerFactory(DepositServiceErrorHandler errorHandler,
                                                                           @Value("${spring.jms.listener.concurrency}")
@@ -89,6 +107,47 @@ public class JmsConfig {
         return factory;
     }
 
+    /**
+     * Listener containers for the grouped queues, which are only started when sharding is enabled.
+     *
+     * @see MessageGroupRouter
+     */
+    @Bean
+    public DefaultJmsListenerContainerFactory groupedJmsListenerContainerFactory(
+            DepositServiceErrorHandler errorHandler,
+            @Value("${spring.jms.listener.concurrency}") String concurrency,
+            @Value("${spring.jms.listener.auto-startup}") boolean autoStart,
+            @Value("${pass.deposit.jms.sharding:false}") boolean sharding,
+            ConnectionFactory connectionFactory) {
+        DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
+        factory.setSessionAcknowledgeMode(Session.CLIENT_ACKNOWLEDGE);
+        factory.setErrorHandler(errorHandler);
+        factory.setConcurrency(concurrency);
+        factory.setConnectionFactory(connectionFactory);
+        factory.setAutoStartup(autoStart && sharding);
+        return factory;
+    }
+
+    /**
+     * Listener container for the Fedora topic, which is only started when the {@link PassEntityCache} caches a type.
+     * Messages on the topic are only used to invalidate cached entities, and are acknowledged as they are received.
+     */
+    @Bean
+    public DefaultJmsListenerContainerFactory cacheJmsListenerContainerFactory(
+            DepositServiceErrorHandler errorHandler,
+            @Value("${spring.jms.listener.auto-startup}") boolean autoStart,
+            PassEntityCache passEntityCache,
+            ConnectionFactory connectionFactory) {
+        DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
+        factory.setPubSubDomain(true);
+        factory.setSessionAcknowledgeMode(Session.AUTO_ACKNOWLEDGE);
+        factory.setErrorHandler(errorHandler);
+        factory.setConcurrency("1");
+        factory.setConnectionFactory(connectionFactory);
+        factory.setAutoStartup(autoStart && !passEntityCache.getTtlMs().isEmpty());
+        return factory;
+    }
+
     @JmsListener(destination = "${pass.deposit.queue.submission.name}", containerFactory = "jmsListenerContainerFactory")
     public void processSubmissionMessage(@Header(Constants.JmsFcrepoHeader.FCREPO_RESOURCE_TYPE) String resourceType,
                                @Header(Constants.JmsFcrepoHeader.FCREPO_EVENT_TYPE) String eventType,
@@ -106,16 +165,10 @@ public class JmsConfig {
             return;
         }
 
-        // Parse the identity of the Submission from the message
-
-        try {
-            URI submissionUri = parseResourceUri(mc, jsonParser);
-            submissionConsumer.accept(passClient.readResource(submissionUri, Submission.class));
-        } catch (Exception e) {
-            LOG.error("Error parsing submission URI from JMS message: {}\nPayload (if available): '{}'",
-                    e.getMessage(), mc.message().getPayload(), e);
-        } finally {
-            ackMessage(mc);
+        if (groupRouter.isEnabled()) {
+            forwardMessage(mc, "submission", groupedSubmissionQueue, submissionUri -> submissionUri);
+        } else {
+            processMessage(mc, "submission", this::acceptSubmission);
         }
 
     }
@@ -136,17 +189,140 @@ public class JmsConfig {
             return;
         }
 
-        // Parse the identity of the Deposit from the message
+        if (groupRouter.isEnabled()) {
+            // grouped by the Submission, so that it is only updated by the instance processing the Submission
+            forwardMessage(mc, "deposit", groupedDepositQueue,
+                    depositUri -> passClient.readResource(depositUri, Deposit.class).getSubmission());
+        } else {
+            processMessage(mc, "deposit", this::acceptDeposit);
+        }
+
+    }
+
+    /**
+     * Processes the submission messages forwarded by {@link #processSubmissionMessage}, which have already been
+     * accepted by the submission message policy, when sharding is enabled.
+     */
+    @JmsListener(destination = "${pass.deposit.queue.submission.grouped.name:submission.grouped}",
+            containerFactory = "groupedJmsListenerContainerFactory")
+    public void processGroupedSubmissionMessage(
+            @Header(Constants.JmsFcrepoHeader.FCREPO_RESOURCE_TYPE) String resourceType,
+            @Header(Constants.JmsFcrepoHeader.FCREPO_EVENT_TYPE) String eventType,
+            @Header(JmsHeaders.TIMESTAMP) long timeStamp,
+            @Header(JmsHeaders.MESSAGE_ID) String id,
+            Session session,
+            Message<String> message,
+            javax.jms.Message jmsMessage) {
+
+        processMessage(toMessageContext(resourceType, eventType, timeStamp, id, session, message, jmsMessage),
+                "submission", this::acceptSubmission);
+    }
+
+    /**
+     * Processes the deposit messages forwarded by {@link #processDepositMessage}, which have already been accepted by
+     * the deposit message policy, when sharding is enabled.  The Deposit is read again, as it may have been modified
+     * since it was forwarded.
+     */
+    @JmsListener(destination = "${pass.deposit.queue.deposit.grouped.name:deposit.grouped}",
+            containerFactory = "groupedJmsListenerContainerFactory")
+    public void processGroupedDepositMessage(
+            @Header(Constants.JmsFcrepoHeader.FCREPO_RESOURCE_TYPE) String resourceType,
+            @Header(Constants.JmsFcrepoHeader.FCREPO_EVENT_TYPE) String eventType,
+            @Header(JmsHeaders.TIMESTAMP) long timeStamp,
+            @Header(JmsHeaders.MESSAGE_ID) String id,
+            Session session,
+            Message<String> message,
+            javax.jms.Message jmsMessage) {
+
+        processMessage(toMessageContext(resourceType, eventType, timeStamp, id, session, message, jmsMessage),
+                "deposit", this::acceptDeposit);
+    }
+
+    /**
+     * Discards the cached entities of the resources whose modification or deletion is announced by Fedora.  The
+     * {@code submission} and {@code deposit} queues only carry messages for {@code Submission} and {@code Deposit}
+     * resources, so the modification of a cached type is only announced on the topic Fedora publishes to.
+     */
+    @JmsListener(destination = "${pass.deposit.cache.topic:fedora}",
+            containerFactory = "cacheJmsListenerContainerFactory")
+    public void processFedoraMessage(@Header(Constants.JmsFcrepoHeader.FCREPO_RESOURCE_TYPE) String resourceType,
+                                     @Header(Constants.JmsFcrepoHeader.FCREPO_EVENT_TYPE) String eventType,
+                                     @Header(JmsHeaders.TIMESTAMP) long timeStamp,
+                                     @Header(JmsHeaders.MESSAGE_ID) String id,
+                                     Session session,
+                                     Message<String> message,
+                                     javax.jms.Message jmsMessage) {
+
+        invalidateCachedEntity(toMessageContext(resourceType, eventType, timeStamp, id, session, message, jmsMessage),
+                entityCache, jsonParser);
+    }
+
+    private void acceptSubmission(URI submissionUri) {
+        submissionConsumer.accept(passClient.readResource(submissionUri, Submission.class));
+    }
+
+    private void acceptDeposit(URI depositUri) {
+        depositConsumer.accept(passClient.readResource(depositUri, Deposit.class));
+    }
+
+    /**
+     * Parses the URI of the PASS resource represented in the message, and hands it to the {@code processor}.  The
+     * message is acknowledged once it has been processed, whether or not processing succeeded.
+     *
+     * @param mc the message context
+     * @param type the type of the resource represented in the message, used for logging
+     * @param processor processes the resource identified by the URI
+     */
+    private void processMessage(DepositUtil.MessageContext mc, String type, Consumer<URI> processor) {
         try {
-            URI depositUri = parseResourceUri(mc, jsonParser);
-            depositConsumer.accept(passClient.readResource(depositUri, Deposit.class));
+            processor.accept(parseResourceUri(mc, jsonParser));
         } catch (Exception e) {
-            LOG.error("Error parsing deposit URI from JMS message: {}\nPayload (if available): '{}'",
-                    e.getMessage(), mc.message().getPayload(), e);
+            LOG.error("Error processing {} from JMS message: {}\nPayload (if available): '{}'",
+                    type, e.getMessage(), mc.message().getPayload(), e);
         } finally {
             ackMessage(mc);
         }
+    }
 
+    /**
+     * Forwards the message to a grouped queue, in the group of the submission answered by {@code groupOf} for the URI
+     * of the PASS resource represented in the message.  A message that cannot be parsed, or whose submission cannot be
+     * determined, is acknowledged and dropped, like any message that fails processing.  A message that cannot be
+     * forwarded is <em>not</em> acknowledged: the exception is rethrown so that the message is redelivered.
+     *
+     * @param mc the message context
+     * @param type the type of the resource represented in the message, used for logging
+     * @param destination the name of the grouped queue
+     * @param groupOf answers the URI of the submission concerned by the resource
+     */
+    private void forwardMessage(DepositUtil.MessageContext mc, String type, String destination,
+                                Function<URI, URI> groupOf) {
+        URI group;
+        try {
+            group = groupOf.apply(parseResourceUri(mc, jsonParser));
+        } catch (Exception e) {
+            LOG.error("Error resolving the submission of the {} in JMS message: {}\nPayload (if available): '{}'",
+                    type, e.getMessage(), mc.message().getPayload(), e);
+            ackMessage(mc);
+            return;
+        }
+
+        if (group == null) {
+            LOG.error("Unable to forward JMS message {}: the {} does not belong to a submission.\n" +
+                    "Payload (if available): '{}'", mc.id(), type, mc.message().getPayload());
+            ackMessage(mc);
+            return;
+        }
+
+        try {
+            groupRouter.forward(mc, destination, group);
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to forward JMS message {} to '{}', it will be redelivered: {}",
+                    mc.id(), destination, e.getMessage());
+            throw e;
+        }
+
+        ackMessage(mc);
     }
 
     /**
@@ -168,6 +344,30 @@ public class JmsConfig {
         return false;
     }
 
+    /**
+     * Discards the cached entity of the resource represented in the message, if the message announces the
+     * modification or deletion of a resource of a cached type.
+     *
+     * @param mc the message context
+     * @param entityCache the cache of PASS entities
+     * @param jsonParser vanilla Jackson JSON parser used to parse the JMS message payload
+     */
+    private static void invalidateCachedEntity(DepositUtil.MessageContext mc, PassEntityCache entityCache,
+                                               JsonParser jsonParser) {
+        String eventType = mc.eventType();
+        if (eventType == null || !entityCache.isCached(mc.resourceType()) ||
+                !(eventType.contains(Constants.JmsFcrepoEvent.RESOURCE_MODIFICATION) ||
+                        eventType.contains(Constants.JmsFcrepoEvent.RESOURCE_DELETION))) {
+            return;
+        }
+
+        try {
+            entityCache.invalidate(parseResourceUri(mc, jsonParser));
+        } catch (Exception e) {
+            LOG.warn("Unable to invalidate the cached entity of JMS message {}: {}", mc.id(), e.getMessage(), e);
+        }
+    }
+
     /**
      * Parse the Fedora repository URI of the PASS entity represented in the message.
      *
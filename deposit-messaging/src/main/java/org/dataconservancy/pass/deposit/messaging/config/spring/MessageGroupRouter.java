@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.config.spring;
+
+import org.dataconservancy.pass.deposit.messaging.service.DepositUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+import java.net.URI;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shards the processing of submissions across the Deposit Services instances consuming from the same JMS broker.
+ * <p>
+ * The updates made to a {@code Submission} and its {@code Deposit}s are serialized by the {@code CriticalPath}, which
+ * locks within a single JVM.  When more than one instance consumes the {@code submission} and {@code deposit} queues,
+ * the messages for a submission must all be processed by the same instance.  When sharding is {@link
+ * #setEnabled(boolean) enabled}, the {@code JmsConfig} listeners on those queues do not process the messages they
+ * accept: they forward each one to a <em>grouped</em> queue with the {@code JMSXGroupID} property set to the URI of the
+ * submission the message concerns (for a {@code Deposit}, the submission it belongs to).  The broker delivers every
+ * message of a group to the same consumer until that consumer goes away, at which point the group is reassigned, so
+ * all the processing of a submission happens on one instance, and instances may be added or removed at any time.
+ * </p>
+ * <p>
+ * Forwarded messages carry the payload and the properties of the original message, so they are processed exactly as
+ * the original would have been.  The original is acknowledged once it is forwarded; if it cannot be forwarded, it is
+ * left unacknowledged, and is redelivered by the broker.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@Component
+public class MessageGroupRouter {
+
+    /**
+     * The JMS property identifying the message group a message belongs to
+     */
+    static final String JMSX_GROUP_ID = "JMSXGroupID";
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageGroupRouter.class);
+
+    private final JmsTemplate jmsTemplate;
+
+    private final AtomicLong forwarded = new AtomicLong();
+
+    private boolean enabled = false;
+
+    @Autowired
+    public MessageGroupRouter(ConnectionFactory connectionFactory) {
+        this(new JmsTemplate(connectionFactory));
+    }
+
+    MessageGroupRouter(JmsTemplate jmsTemplate) {
+        this.jmsTemplate = jmsTemplate;
+    }
+
+    /**
+     * Forwards the message to the {@code destination} queue as a member of the {@code group}.
+     *
+     * @param mc the context of the message being forwarded
+     * @param destination the name of the grouped queue
+     * @param group the URI of the submission the message concerns
+     */
+    public void forward(DepositUtil.MessageContext mc, String destination, URI group) {
+        if (group == null) {
+            throw new IllegalArgumentException("Unable to forward message " + mc.id() + " to '" + destination +
+                    "': the submission it concerns is unknown.");
+        }
+
+        jmsTemplate.send(destination, session -> {
+            TextMessage grouped = session.createTextMessage(mc.message().getPayload());
+            copyProperties(mc.jmsMessage(), grouped);
+            grouped.setStringProperty(JMSX_GROUP_ID, group.toString());
+            return grouped;
+        });
+
+        forwarded.incrementAndGet();
+        LOG.trace(">>>> Forwarded message {} to '{}' in group {}", mc.id(), destination, group);
+    }
+
+    /**
+     * @return the number of messages forwarded to a grouped queue
+     */
+    public long getForwardedCount() {
+        return forwarded.get();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Value("${pass.deposit.jms.sharding:false}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Copies the application properties of the {@code source} message to the {@code target}.  Properties set by the
+     * JMS provider ({@code JMSX} and {@code JMS_} prefixed properties) are not copied.
+     */
+    private static void copyProperties(Message source, Message target) throws JMSException {
+        Enumeration<?> names = source.getPropertyNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            if (name.startsWith("JMSX") || name.startsWith("JMS_")) {
+                continue;
+            }
+            target.setObjectProperty(name, source.getObjectProperty(name));
+        }
+    }
+
+}
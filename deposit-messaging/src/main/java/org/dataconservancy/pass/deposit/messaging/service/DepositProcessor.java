@@ -20,6 +20,7 @@ import com.fasterxml.jackson.databind.exc.InvalidTypeIdException;
 import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.deposit.messaging.policy.Policy;
 import org.dataconservancy.pass.deposit.messaging.support.CriticalRepositoryInteraction;
+import org.dataconservancy.pass.deposit.messaging.support.CriticalRepositoryInteraction.CriticalResult;
 import org.dataconservancy.pass.model.Deposit;
 import org.dataconservancy.pass.model.Submission;
 import org.slf4j.Logger;
@@ -68,8 +69,11 @@ public class DepositProcessor implements Consumer<Deposit> {
         if (terminalDepositStatusPolicy.accept(deposit.getDepositStatus())) {
             // terminal Deposit status, so update its Submission aggregate deposit status.
 
-            // obtain a critical over the submission
-            cri.performCritical(deposit.getSubmission(), Submission.class,
+            // obtain a critical over the submission; when serial execution is enabled the update is queued behind
+            // other updates to the submission rather than parking this thread on its lock.  Either way, this thread
+            // waits for the update to be performed, so the message is not acknowledged before it is.
+            CriticalResult<Submission, Submission> cr = cri.performCriticalAsync(deposit.getSubmission(),
+                    Submission.class,
 
                     /*
                      * The Submission must not be in a terminal state in order for us to update its status
@@ -79,7 +83,7 @@ public class DepositProcessor implements Consumer<Deposit> {
                     /*
                      * Any (or no) updates to the Submission are acceptable
                      */
-                    (criSubmission) -> true,
+                    (criSubmission, result) -> true,
 
                     /*
                      * Update the status of the Submission only if all of its Deposits are in a terminal state
@@ -117,7 +121,13 @@ public class DepositProcessor implements Consumer<Deposit> {
                         }
 
                         return criSubmission;
-                    });
+                    }).join();
+
+            if (!cr.success() && cr.throwable().isPresent()) {
+                Throwable t = cr.throwable().get();
+                LOG.warn("Failed to update the aggregated deposit status of {}: {}", deposit.getSubmission(),
+                        t.getMessage(), t);
+            }
         } else {
             // intermediate status, process the Deposit depositStatusRef
 
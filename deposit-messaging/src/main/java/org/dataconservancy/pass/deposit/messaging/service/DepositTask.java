@@ -15,7 +15,10 @@
  */
 package org.dataconservancy.pass.deposit.messaging.service;
 
+import org.dataconservancy.pass.deposit.assembler.Assembler;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
+import org.dataconservancy.pass.deposit.assembler.shared.SharedContentStage;
 import org.dataconservancy.pass.deposit.transport.TransportResponse;
 import org.dataconservancy.pass.deposit.transport.TransportSession;
 import org.dataconservancy.pass.client.PassClient;
@@ -32,6 +35,8 @@ import org.dataconservancy.pass.model.RepositoryCopy.CopyStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collections;
@@ -83,6 +88,9 @@ public class DepositTask implements Runnable {
     // e.g. https://jscholarship.library.jhu.edu/swordv2
     private String replacementPrefix;
 
+    // shares custodial content among the Deposits of a Submission, may be null
+    private SharedContentStage contentStage;
+
     public DepositTask(DepositWorkerContext dc,
                        PassClient passClient,
                        Policy<Deposit.DepositStatus> intermediateDepositStatusPolicy,
@@ -97,6 +105,17 @@ public class DepositTask implements Runnable {
 
     @Override
     public void run() {
+        try {
+            performDeposit();
+        } finally {
+            // Custodial content staged for this submission is no longer needed by this Deposit
+            if (contentStage != null) {
+                contentStage.release();
+            }
+        }
+    }
+
+    private void performDeposit() {
 
         LOG.debug(">>>> Running {}@{}", DepositTask.class.getSimpleName(), toHexString(identityHashCode(this)));
 
@@ -138,7 +157,7 @@ public class DepositTask implements Runnable {
                  */
                 (deposit) -> {
                     Packager packager = dc.packager();
-                    PackageStream packageStream = packager.getAssembler().assemble(dc.depositSubmission());
+                    PackageStream packageStream = assemble(packager.getAssembler());
                     Map<String, String> packagerConfig = packager.getConfiguration();
                     try (TransportSession transport = packager.getTransport().open(packagerConfig)) {
                         TransportResponse tr = transport.send(packageStream, packagerConfig);
@@ -147,6 +166,16 @@ public class DepositTask implements Runnable {
                     } catch (Exception e) {
                         throw new RuntimeException("Error closing transport session for deposit " +
                                 dc.deposit().getId() + ": " + e.getMessage(), e);
+                    } finally {
+                        // Spooled packages hold a temporary file which must be removed after transport
+                        if (packageStream instanceof Closeable) {
+                            try {
+                                ((Closeable) packageStream).close();
+                            } catch (IOException e) {
+                                LOG.warn("Error closing package for deposit {}: {}", dc.deposit().getId(),
+                                        e.getMessage(), e);
+                            }
+                        }
                     }
                 });
 
@@ -306,10 +335,36 @@ public class DepositTask implements Runnable {
         return this.replacementPrefix;
     }
 
+    /**
+     * Assembles the package for the Deposit, sharing custodial content through the {@link #getContentStage() stage}
+     * when the assembler supports it.
+     */
+    private PackageStream assemble(Assembler assembler) {
+        if (contentStage != null && assembler instanceof AbstractAssembler) {
+            return ((AbstractAssembler) assembler).assemble(dc.depositSubmission(), contentStage);
+        }
+
+        return assembler.assemble(dc.depositSubmission());
+    }
+
     public DepositWorkerContext getDepositWorkerContext() {
         return dc;
     }
 
+    public SharedContentStage getContentStage() {
+        return contentStage;
+    }
+
+    /**
+     * Sets the stage sharing custodial content among the Deposits of the Submission.  The stage is released once by
+     * this task when it completes.
+     *
+     * @param contentStage the stage, may be {@code null}
+     */
+    public void setContentStage(SharedContentStage contentStage) {
+        this.contentStage = contentStage;
+    }
+
     public long getSwordSleepTimeMs() {
         return swordSleepTimeMs;
     }
@@ -15,6 +15,7 @@
  */
 package org.dataconservancy.pass.deposit.messaging.service;
 
+import org.dataconservancy.pass.deposit.assembler.shared.SharedContentStage;
 import org.dataconservancy.pass.deposit.messaging.config.repository.AuthRealm;
 import org.dataconservancy.pass.deposit.messaging.config.repository.BasicAuthRealm;
 import org.dataconservancy.pass.deposit.messaging.config.repository.Repositories;
@@ -132,6 +133,24 @@ public class DepositTaskHelper {
      */
     public void submitDeposit(Submission submission, DepositSubmission depositSubmission, Repository repo, Deposit deposit,
                        Packager packager) {
+        submitDeposit(submission, depositSubmission, repo, deposit, packager, null);
+    }
+
+    /**
+     * Composes a {@link DepositTask} for the supplied tuple and submits it for execution.  If a {@code stage} is
+     * supplied, the custodial content of the submission is shared with the other Deposits using the stage, and the
+     * task releases the stage when it completes.  If the task is not accepted for execution, the caller remains
+     * responsible for releasing the stage.
+     *
+     * @param submission the Submission
+     * @param depositSubmission the Submission adapted to the deposit services model
+     * @param repo the Repository being deposited to
+     * @param deposit the Deposit
+     * @param packager the Packager for the Repository
+     * @param stage the stage sharing custodial content among the Deposits of the Submission, may be {@code null}
+     */
+    public void submitDeposit(Submission submission, DepositSubmission depositSubmission, Repository repo, Deposit deposit,
+                              Packager packager, SharedContentStage stage) {
         try {
             DepositWorkerContext dc = toDepositWorkerContext(
                     deposit, submission, depositSubmission, repo, packager);
@@ -139,6 +158,7 @@ public class DepositTaskHelper {
             depositTask.setSwordSleepTimeMs(swordDepositSleepTimeMs);
             depositTask.setPrefixToMatch(statementUriPrefix);
             depositTask.setReplacementPrefix(statementUriReplacement);
+            depositTask.setContentStage(stage);
 
             LOG.debug(">>>> Submitting task ({}@{}) for tuple [{}, {}, {}]",
                     depositTask.getClass().getSimpleName(), toHexString(identityHashCode(depositTask)),
@@ -167,7 +187,7 @@ public class DepositTaskHelper {
         //
         // To insure that the depositStatusRef from the 'deposit' method parameter is stored on the 'deposit' from
         // the CRI, the field is copied in the "critical update" lambda below.  This insures if a conflict arises,
-        // the ConflictHandler will retry the critical update, including the copy of the depositStatusRef.
+        // the ConflictHandler will replay the changes made by the critical update, including the depositStatusRef.
 
         CriticalResult<RepositoryCopy, Deposit> cr = cri.performCritical(depositUri, Deposit.class,
 
@@ -16,6 +16,11 @@
 package org.dataconservancy.pass.deposit.messaging.service;
 
 import org.dataconservancy.pass.client.PassClient;
+import org.dataconservancy.pass.deposit.assembler.Assembler;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
+import org.dataconservancy.pass.deposit.assembler.shared.MultiDigestInputStream;
+import org.dataconservancy.pass.deposit.assembler.shared.SharedContentStage;
 import org.dataconservancy.pass.deposit.builder.InvalidModel;
 import org.dataconservancy.pass.deposit.builder.SubmissionBuilder;
 import org.dataconservancy.pass.deposit.messaging.DepositServiceRuntimeException;
@@ -33,8 +38,14 @@ import org.dataconservancy.pass.model.Submission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -67,6 +78,12 @@ public class SubmissionProcessor implements Consumer<Submission> {
 
     protected DepositTaskHelper depositTaskHelper;
 
+    @Value("${pass.deposit.assembler.fanout:false}")
+    private boolean fanOut = false;
+
+    @Value("${pass.deposit.assembler.fanout.dir:}")
+    private String fanOutDirectory;
+
     @Autowired
     public SubmissionProcessor(PassClient passClient, JsonParser jsonParser, SubmissionBuilder fcrepoModelBuilder,
                                Registry<Packager> packagerRegistry, SubmissionPolicy passUserSubmittedPolicy,
@@ -157,27 +174,109 @@ public class SubmissionProcessor implements Consumer<Submission> {
 
         LOG.debug(">>>> Processing Submission {}", submission.getId());
 
-        updatedS.getRepositories().stream().map(repoUri -> passClient.readResource(repoUri, Repository.class))
-                .forEach(repo -> {
-                    Deposit deposit = null;
-                    Packager packager = null;
-                    try {
-                        deposit = createDeposit(updatedS, repo);
-                        packager = packagerRegistry.get(repo.getName());
-                        if (packager == null) {
-                            throw new NullPointerException(format("No Packager found for tuple [%s, %s, %s]: " +
-                                            "Missing Packager for Repository named '%s'",
-                                    updatedS.getId(), deposit.getId(), repo.getId(), repo.getName()));
-                        }
-                        deposit = passClient.createAndReadResource(deposit, Deposit.class);
-                    } catch (Exception e) {
-                        String msg = format(FAILED_TO_PROCESS_DEPOSIT, updatedS.getId(), repo.getId(),
-                                (deposit == null) ? "null" : deposit.getId(), e.getMessage());
-                        throw new DepositServiceRuntimeException(msg, e, deposit);
+        List<Repository> repositories = updatedS.getRepositories().stream()
+                .map(repoUri -> passClient.readResource(repoUri, Repository.class))
+                .collect(Collectors.toList());
+
+        // Each custodial file is retrieved once, and shared among the packages for each Repository
+        SharedContentStage stage = openStage(depositSubmission, repositories);
+        int handedOff = 0;
+
+        try {
+            for (Repository repo : repositories) {
+                Deposit deposit = null;
+                Packager packager = null;
+                try {
+                    deposit = createDeposit(updatedS, repo);
+                    packager = packagerRegistry.get(repo.getName());
+                    if (packager == null) {
+                        throw new NullPointerException(format("No Packager found for tuple [%s, %s, %s]: " +
+                                        "Missing Packager for Repository named '%s'",
+                                updatedS.getId(), deposit.getId(), repo.getId(), repo.getName()));
                     }
+                    deposit = passClient.createAndReadResource(deposit, Deposit.class);
+                } catch (Exception e) {
+                    String msg = format(FAILED_TO_PROCESS_DEPOSIT, updatedS.getId(), repo.getId(),
+                            (deposit == null) ? "null" : deposit.getId(), e.getMessage());
+                    throw new DepositServiceRuntimeException(msg, e, deposit);
+                }
+
+                depositTaskHelper.submitDeposit(updatedS, depositSubmission, repo, deposit, packager, stage);
+                handedOff++;
+            }
+        } finally {
+            // Release the stage on behalf of any Deposits that will not be performed
+            if (stage != null && handedOff < repositories.size()) {
+                stage.release(repositories.size() - handedOff);
+            }
+        }
+    }
 
-                    depositTaskHelper.submitDeposit(updatedS, depositSubmission, repo, deposit, packager);
-                });
+    /**
+     * Opens a {@link SharedContentStage} for the custodial content of the submission, if it is to be deposited to more
+     * than one repository and fan-out is enabled.  The stage computes the checksums of each custodial file once, using
+     * the union of the digest algorithms configured for the assemblers of the repositories; each package is
+     * characterized using the checksums of the algorithms configured for its own assembler.
+     *
+     * @param depositSubmission the submission
+     * @param repositories the repositories the submission is deposited to
+     * @return the stage, or {@code null} if the custodial content will not be shared
+     */
+    private SharedContentStage openStage(DepositSubmission depositSubmission, List<Repository> repositories) {
+        if (!fanOut || repositories.size() < 2 || depositSubmission.getId() == null) {
+            return null;
+        }
+
+        try {
+            return SharedContentStage.open(depositSubmission.getId(), repositories.size(),
+                    fanOutDirectory == null || fanOutDirectory.trim().isEmpty() ? null : Paths.get(fanOutDirectory),
+                    digestAlgorithms(repositories));
+        } catch (IOException e) {
+            LOG.warn("Unable to open a shared content stage for {}, custodial content will be retrieved for each " +
+                    "repository: {}", depositSubmission.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Answers the union of the digest algorithms configured for the assemblers of the {@code repositories}.  The
+     * default algorithms are used for an assembler whose configuration is not known.  Repositories without a
+     * {@code Packager} are skipped; they fail when their Deposit is created.
+     *
+     * @param repositories the repositories the submission is deposited to
+     * @return the digest algorithms, in the order they are first configured
+     */
+    private Set<PackageStream.Algo> digestAlgorithms(List<Repository> repositories) {
+        Set<PackageStream.Algo> algorithms = new LinkedHashSet<>();
+        repositories.forEach(repo -> {
+            Packager packager = packagerRegistry.get(repo.getName());
+            if (packager == null) {
+                return;
+            }
+            Assembler assembler = packager.getAssembler();
+            if (assembler instanceof AbstractAssembler) {
+                algorithms.addAll(((AbstractAssembler) assembler).getDigestAlgorithms());
+            } else {
+                algorithms.addAll(MultiDigestInputStream.DEFAULT_ALGORITHMS);
+            }
+        });
+        return algorithms;
+    }
+
+    public boolean isFanOut() {
+        return fanOut;
+    }
+
+    public void setFanOut(boolean fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    public String getFanOutDirectory() {
+        return fanOutDirectory;
+    }
+
+    public void setFanOutDirectory(String fanOutDirectory) {
+        this.fanOutDirectory = fanOutDirectory;
     }
 
     private Deposit createDeposit(Submission submission, Repository repo) {
@@ -43,6 +43,7 @@ public interface ConflictHandler {
      * the supplied {@code resource} will <em>always</em> fail.  Implementations will need to re-retrieve the the latest
      * state of the resource, optionally apply the {@code preCondition} (insuring that the new state of the resource is
      * still valid with respect to the {@code criticalUpdate} to be applied), and invoke the {@code criticalUpdate}.
+     * Implementations may invoke the {@code criticalUpdate} more than once, so it must be idempotent.
      * </p>
      *
      * @param conflictedResource the resource with the state to be updated
@@ -54,6 +54,8 @@ public class Constants {
         public static final String RESOURCE_MODIFICATION = "http://fedora" +
                 ".info/definitions/v4/event#ResourceModification";
 
+        public static final String RESOURCE_DELETION = "http://fedora.info/definitions/v4/event#ResourceDeletion";
+
     }
 
     /**
@@ -20,9 +20,14 @@ import org.dataconservancy.pass.client.fedora.UpdateConflictException;
 import org.dataconservancy.pass.model.PassEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.beans.PropertyDescriptor;
 import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -31,7 +36,8 @@ import static java.lang.String.format;
 
 /**
  * Provides the guarantees set by {@link CriticalRepositoryInteraction}, and boilerplate for interacting with, and
- * modifying the state of, repository resources.
+ * modifying the state of, repository resources.  Interactions with a resource are serialized by the lock of its URI,
+ * obtained from a {@link ResourceLockManager}.
  *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
@@ -44,9 +50,17 @@ public class CriticalPath implements CriticalRepositoryInteraction {
 
     private ConflictHandler conflictHandler;
 
+    private ResourceLockManager lockManager;
+
     public CriticalPath(PassClient passClient, ConflictHandler conflictHandler) {
+        this(passClient, conflictHandler, new ResourceLockManager());
+    }
+
+    @Autowired
+    public CriticalPath(PassClient passClient, ConflictHandler conflictHandler, ResourceLockManager lockManager) {
         this.passClient = passClient;
         this.conflictHandler = conflictHandler;
+        this.lockManager = lockManager;
     }
 
     /**
@@ -54,8 +68,10 @@ public class CriticalPath implements CriticalRepositoryInteraction {
      * <h4>Implementation notes</h4>
      * Executes in order:
      * <ol>
-     *     <li>Obtain a lock over the interned, string form of the {@code uri}, insuring no interference from other
-     *         threads executing in this JVM</li>
+     *     <li>Obtain the lock of the {@code uri} from the {@link ResourceLockManager}, insuring no interference from
+     *         other threads executing in this JVM.  If the lock cannot be obtained within the lock timeout, the
+     *         interaction is short-circuited by returning a {@code CriticalResult} carrying a
+     *         {@code TimeoutException}</li>
      *     <li>Read the {@code PassEntity} identified by {@code uri} from the repository, short-circuiting the
      *         interaction by returning a {@code CriticalResult} if an {@code Exception} is thrown</li>
      *     <li>Apply the pre-condition {@code Predicate}, short-circuiting the interaction by returning a
@@ -63,8 +79,10 @@ public class CriticalPath implements CriticalRepositoryInteraction {
      *     <li>Perform the {@code critical} interaction, short-circuiting the interaction by returning a
      *         {@code CriticalResult} if an {@code Exception} is thrown</li>
      *     <li>Update the resource, and re-read it from the repository.  If a {@code ConflictUpdateException} is thrown,
-     *         it is supplied to the {@link ConflictHandler} for resolution.  If any other {@code Exception} is thrown,
-     *         the interaction is short-circuited, and a {@code CriticalResult} returned.</li>
+     *         the lock is released, and the conflict supplied to the {@link ConflictHandler} for resolution along with
+     *         a function that replays the changes the {@code critical} interaction made to the resource; the
+     *         {@code critical} interaction itself is never performed more than once.  If any other {@code Exception}
+     *         is thrown, the interaction is short-circuited, and a {@code CriticalResult} returned.</li>
      *     <li>Apply the post-condition {@code Predicate} and returns {@code CriticalResult}</li>
      * </ol>
      * @param uri the uri of the {@code PassEntity} which is the subject of the {@code critical} pathv
@@ -91,8 +109,10 @@ public class CriticalPath implements CriticalRepositoryInteraction {
      * <h4>Implementation notes</h4>
      * Executes in order:
      * <ol>
-     *     <li>Obtain a lock over the interned, string form of the {@code uri}, insuring no interference from other
-     *         threads executing in this JVM</li>
+     *     <li>Obtain the lock of the {@code uri} from the {@link ResourceLockManager}, insuring no interference from
+     *         other threads executing in this JVM.  If the lock cannot be obtained within the lock timeout, the
+     *         interaction is short-circuited by returning a {@code CriticalResult} carrying a
+     *         {@code TimeoutException}</li>
      *     <li>Read the {@code PassEntity} identified by {@code uri} from the repository, short-circuiting the
      *         interaction by returning a {@code CriticalResult} if an {@code Exception} is thrown</li>
      *     <li>Apply the pre-condition {@code Predicate}, short-circuiting the interaction by returning a
@@ -100,8 +120,10 @@ public class CriticalPath implements CriticalRepositoryInteraction {
      *     <li>Perform the {@code critical} interaction, short-circuiting the interaction by returning a
      *         {@code CriticalResult} if an {@code Exception} is thrown</li>
      *     <li>Update the resource, and re-read it from the repository.  If a {@code ConflictUpdateException} is thrown,
-     *         it is supplied to the {@link ConflictHandler} for resolution.  If any other {@code Exception} is thrown,
-     *         the interaction is short-circuited, and a {@code CriticalResult} returned.</li>
+     *         the lock is released, and the conflict supplied to the {@link ConflictHandler} for resolution along with
+     *         a function that replays the changes the {@code critical} interaction made to the resource; the
+     *         {@code critical} interaction itself is never performed more than once.  If any other {@code Exception}
+     *         is thrown, the interaction is short-circuited, and a {@code CriticalResult} returned.</li>
      *     <li>Apply the post-condition {@code BiPredicate} and returns {@code CriticalResult}</li>
      * </ol>
      * @param uri the uri of the {@code PassEntity} which is the subject of the {@code critical} pathv
@@ -116,93 +138,181 @@ public class CriticalPath implements CriticalRepositoryInteraction {
      *         any exception thrown, and the overall success as determined by the post-condition
      */
     @Override
-    @SuppressWarnings("unchecked")
     public <R, T extends PassEntity> CriticalResult<R, T> performCritical(URI uri, Class<T> clazz,
                                                                           Predicate<T> precondition,
                                                                           BiPredicate<T, R> postcondition,
                                                                           Function<T, R> critical) {
 
-        CriticalResult<R, T> cr = null;
+        // 1. Obtain the lock of the repository resource URI, then enter the critical section
 
-        // 1. Obtain a lock over the repository resource URI, then enter the critical section
+        CriticalResult<R, T> result;
+        try (ResourceLockManager.Lock ignored = lockManager.lock(uri)) {
+            result = critical(uri, clazz, precondition, postcondition, critical);
+        } catch (TimeoutException e) {
+            LOG.warn("Unable to perform the critical path on resource {}: {}", uri, e.getMessage());
+            return new CriticalResult<>(null, null, false, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new CriticalResult<>(null, null, false, e);
+        }
 
-        synchronized (uri.toString().intern()) {
+        // 5a. Resolve a conflicting update outside of the lock, so that the ConflictHandler may back off between
+        //     retries without blocking other interactions with the resource.  Retries are guarded by the version of
+        //     the resource, rather than the lock.
 
-            // 2. Read the resource from the repository
+        if (result instanceof Conflict) {
+            result = resolve((Conflict<R, T>) result, clazz, precondition, postcondition);
+        }
 
-            T resource = null;
-            try {
-                resource = passClient.readResource(uri, clazz);
-            } catch (Exception e) {
-                return new CriticalResult<>(null, null,false, e);
-            }
+        return result;
+    }
 
-            // 3. Verify that the state of the resource is what is expected from the caller.  If not, return indicating
-            //    failure, with a copy of the resource.
+    /**
+     * {@inheritDoc}
+     * <h4>Implementation notes</h4>
+     * When serial execution is enabled on the {@link ResourceLockManager}, the interaction is queued behind earlier
+     * interactions submitted for the {@code uri}, and performed on the lock manager's serial executor.  Otherwise it
+     * is performed by the calling thread, as {@link #performCritical(URI, Class, Predicate, BiPredicate, Function)
+     * performCritical} is.  The future completes once the interaction, including the resolution of any conflict, has
+     * been performed.
+     */
+    @Override
+    public <R, T extends PassEntity> CompletableFuture<CriticalResult<R, T>> performCriticalAsync(
+            URI uri, Class<T> clazz, Predicate<T> precondition, BiPredicate<T, R> postcondition,
+            Function<T, R> critical) {
+        return lockManager.submit(uri, () -> critical(uri, clazz, precondition, postcondition, critical))
+                .thenApply(result -> result instanceof Conflict
+                        ? resolve((Conflict<R, T>) result, clazz, precondition, postcondition) : result)
+                .exceptionally(t -> {
+                    LOG.warn("Unable to perform the critical path on resource {}: {}", uri, t.getMessage());
+                    return new CriticalResult<>(null, null, false, t);
+                });
+    }
 
-            try {
-                if (!precondition.test(resource)) {
-                    LOG.debug("Precondition for applying the critical path on resource {} failed.", resource.getId());
-                    return new CriticalResult<>(null, resource, false);
-                }
-            } catch (Exception e) {
-                return new CriticalResult<>(null, resource, false, e);
-            }
+    /**
+     * Performs steps 2 through 6 of the critical path, while the lock of the {@code uri} is held.  An update that
+     * conflicts is answered as a {@link Conflict}, to be resolved once the lock has been released.
+     */
+    @SuppressWarnings("unchecked")
+    private <R, T extends PassEntity> CriticalResult<R, T> critical(URI uri, Class<T> clazz,
+                                                                   Predicate<T> precondition,
+                                                                   BiPredicate<T, R> postcondition,
+                                                                   Function<T, R> critical) {
 
-            // 4.  Apply the critical update to the resource.
+        // 2. Read the resource from the repository
 
-            R updateResult = null;
-            try {
-                updateResult = critical.apply(resource);
-            } catch (Exception e) {
-                return new CriticalResult<>(updateResult, resource,false, e);
-            }
+        T resource = null;
+        try {
+            resource = passClient.readResource(uri, clazz);
+        } catch (Exception e) {
+            return new CriticalResult<>(null, null,false, e);
+        }
+
+        // 3. Verify that the state of the resource is what is expected from the caller.  If not, return indicating
+        //    failure, with a copy of the resource.
 
-            // 5. Attempt to update the resource, knowing that another process may have modified the state of the
-            //    resource in the interim.  Any conflicts are handled by the ConflictHandler
-            // TODO: update this class to allow the ConflictHandler to be pluggable
-
-            try {
-                resource = passClient.updateAndReadResource(resource, (Class<T>)resource.getClass());
-            } catch (UpdateConflictException e) {
-                try {
-                    // If the ConflictHandler is successful, the resource with its updated state is returned
-                    // (presumably a merge of the state in the repository with the state from the critical function)
-                    updateResult = conflictHandler.handleConflict(resource, clazz, precondition, critical);
-
-                    if (updateResult == null) {
-                        // Do not include the exception on the CriticalResult, because a UpdateConflictException is not
-                        // a reason to fail a Submission or Deposit (another thread may successfully process the update)
-                        return new CriticalResult<>(null, resource, false);
-                    }
-
-                    // Get the latest version of the resource after the conflict has been resolved
-                    resource = passClient.readResource(resource.getId(), (Class<T>)resource.getClass());
-                } catch (Exception handlerE) {
-                    return new CriticalResult<>(updateResult, resource, false, handlerE);
-                }
-            } catch (Exception e) {
-                return new CriticalResult<>(updateResult, resource, false, e);
+        try {
+            if (!precondition.test(resource)) {
+                LOG.debug("Precondition for applying the critical path on resource {} failed.", resource.getId());
+                return new CriticalResult<>(null, resource, false);
             }
+        } catch (Exception e) {
+            return new CriticalResult<>(null, resource, false, e);
+        }
+
+        // 4.  Apply the critical update to the resource.
+
+        R updateResult = null;
+        EntityChanges snapshot = null;
+        try {
+            snapshot = EntityChanges.snapshot(resource);
+            updateResult = critical.apply(resource);
+        } catch (Exception e) {
+            return new CriticalResult<>(updateResult, resource,false, e);
+        }
 
-            // 6. Verify the expected end state, and create the result.  Note that the success or failure of a
-            //    critical path rests entirely on the verification of this final state: the caller wants to know:
-            //    "Did the update I perform result in the state I expected?"
-
-            try {
-                if (!postcondition.test(resource, updateResult)) {
-                    LOG.debug("Postcondition over resource {} and result {} failed.", resource.getId(), updateResult);
-                    return new CriticalResult<>(updateResult, resource, false);
-                }
-            } catch (Exception e) {
-                return new CriticalResult<>(updateResult, resource, false, e);
+        // 5. Attempt to update the resource, knowing that another process may have modified the state of the
+        //    resource in the interim.  Any conflicts are handled by the ConflictHandler
+        // TODO: update this class to allow the ConflictHandler to be pluggable
+
+        try {
+            resource = passClient.updateAndReadResource(resource, (Class<T>)resource.getClass());
+        } catch (UpdateConflictException e) {
+            // Resolved by the ConflictHandler once the lock has been released
+            return new Conflict<>(updateResult, resource, snapshot.changes(resource));
+        } catch (Exception e) {
+            return new CriticalResult<>(updateResult, resource, false, e);
+        }
+
+        return verify(resource, updateResult, postcondition);
+    }
+
+    /**
+     * Resolves a conflicting update with the {@link ConflictHandler}, which re-reads the resource and replays the
+     * changes made to it by the critical function, then performs step 6 of the critical path.
+     */
+    @SuppressWarnings("unchecked")
+    private <R, T extends PassEntity> CriticalResult<R, T> resolve(Conflict<R, T> conflict, Class<T> clazz,
+                                                                  Predicate<T> precondition,
+                                                                  BiPredicate<T, R> postcondition) {
+        T resource = conflict.resource().get();
+        R updateResult = conflict.result().orElse(null);
+        try {
+            // The changes are replayed, rather than the critical function re-applied, because critical functions
+            // may not be idempotent (e.g. transporting a package to a remote repository)
+            R resolved = conflictHandler.handleConflict(resource, clazz, precondition, latest -> {
+                EntityChanges.replay(conflict.changes, latest);
+                return updateResult;
+            });
+
+            if (resolved == null) {
+                // The precondition no longer holds: another thread has processed the resource.  Do not include an
+                // exception on the CriticalResult, because that is not a reason to fail a Submission or Deposit
+                return new CriticalResult<>(null, resource, false);
             }
 
-            cr = new CriticalResult<>(updateResult, resource, true);
+            // Get the latest version of the resource after the conflict has been resolved
+            resource = passClient.readResource(resource.getId(), (Class<T>)resource.getClass());
+        } catch (Exception handlerE) {
+            return new CriticalResult<>(updateResult, resource, false, handlerE);
+        }
+
+        return verify(resource, updateResult, postcondition);
+    }
+
+    /**
+     * Performs step 6 of the critical path.
+     */
+    private <R, T extends PassEntity> CriticalResult<R, T> verify(T resource, R updateResult,
+                                                                 BiPredicate<T, R> postcondition) {
+
+        // 6. Verify the expected end state, and create the result.  Note that the success or failure of a
+        //    critical path rests entirely on the verification of this final state: the caller wants to know:
+        //    "Did the update I perform result in the state I expected?"
+
+        try {
+            if (!postcondition.test(resource, updateResult)) {
+                LOG.debug("Postcondition over resource {} and result {} failed.", resource.getId(), updateResult);
+                return new CriticalResult<>(updateResult, resource, false);
+            }
+        } catch (Exception e) {
+            return new CriticalResult<>(updateResult, resource, false, e);
         }
 
-        return cr;
+        return new CriticalResult<>(updateResult, resource, true);
     }
 
+    /**
+     * The result of a critical path whose update conflicted, carrying the changes made by the critical function.
+     */
+    private static class Conflict<R, T> extends CriticalResult<R, T> {
+
+        private final Map<PropertyDescriptor, Object> changes;
+
+        private Conflict(R result, T resource, Map<PropertyDescriptor, Object> changes) {
+            super(result, resource, false);
+            this.changes = changes;
+        }
+    }
 
 }
@@ -19,6 +19,7 @@ import org.dataconservancy.pass.model.PassEntity;
 
 import java.net.URI;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -131,6 +132,30 @@ public interface CriticalRepositoryInteraction {
     <R, T extends PassEntity> CriticalResult<R, T> performCritical(
             URI uri, Class<T> clazz, Predicate<T> precondition, BiPredicate<T, R> postcondition, Function<T, R> critical);
 
+    /**
+     * Execute a critical interaction with the repository, as {@link #performCritical(URI, Class, Predicate,
+     * BiPredicate, Function) performCritical} does.  Implementations may queue the interaction behind other
+     * interactions with the same {@code PassEntity}, and perform it on another thread, rather than park the calling
+     * thread on the lock of the {@code PassEntity}.  The returned future completes once the interaction has been
+     * performed; callers that must not complete their own work (e.g. acknowledge a message) before the interaction is
+     * performed wait for it.  By default the interaction is performed by the calling thread.
+     *
+     * @param uri the uri of the {@code PassEntity} which is the subject of the {@code critical} path
+     * @param clazz the concrete {@code Class} of the {@code PassEntity} represented by {@code uri}
+     * @param precondition precondition that must evaluate to {@code true} for the {@code critical} path to execute
+     * @param postcondition postcondition that must evaluate to {@code true} for the {@code CriticalResult} to be
+     *                      considered successful
+     * @param critical the critical interaction with the repository, which may return a result of type {@code R}
+     * @param <T> the type of {@code PassEntity}
+     * @param <R> the type of the result returned by {@code critical}
+     * @return the future {@code CriticalResult} recording the success or failure of the interaction, and any results.
+     */
+    default <R, T extends PassEntity> CompletableFuture<CriticalResult<R, T>> performCriticalAsync(
+            URI uri, Class<T> clazz, Predicate<T> precondition, BiPredicate<T, R> postcondition,
+            Function<T, R> critical) {
+        return CompletableFuture.completedFuture(performCritical(uri, clazz, precondition, postcondition, critical));
+    }
+
     /**
      * Encapsulates the result of a critical interaction with the repository.
      *
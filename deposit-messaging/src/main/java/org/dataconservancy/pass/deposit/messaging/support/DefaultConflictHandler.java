@@ -16,17 +16,36 @@
 package org.dataconservancy.pass.deposit.messaging.support;
 
 import org.dataconservancy.pass.client.PassClient;
+import org.dataconservancy.pass.client.fedora.UpdateConflictException;
 import org.dataconservancy.pass.model.PassEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
  * Resolves {@code 412 Precondition Failed} responses by re-retrieving the latest state of the resource from the
  * repository, insuring the pre-condition for applying the update still holds, and then applying the update.
+ * <p>
+ * If the update conflicts again, it is retried up to {@link #setRetries(int) retries} times in all.  Before each
+ * retry the handler sleeps for a random interval of up to {@link #setBackoffMs(long) backoff-ms}, doubled for each
+ * retry up to {@link #setMaxBackoffMs(long) max-backoff-ms}; the random jitter keeps threads that conflicted with each
+ * other from retrying in lock step.  Because the update is applied once per retry, it must be idempotent; the
+ * {@link CriticalPath} supplies an update that replays the changes made by its critical function, rather than the
+ * critical function itself.  If every retry conflicts, an {@link UnresolvedConflictException} is thrown.
+ * </p>
+ * <p>
+ * Conflicts are counted by the simple name of the resource class, along with the number of conflicts that were
+ * resolved by a retry, and the number that were abandoned after all retries conflicted.
+ * </p>
  *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
@@ -37,6 +56,18 @@ public class DefaultConflictHandler implements ConflictHandler {
 
     private PassClient passClient;
 
+    private final Map<String, AtomicLong> conflicts = new ConcurrentHashMap<>();
+
+    private final AtomicLong resolved = new AtomicLong();
+
+    private final AtomicLong exhausted = new AtomicLong();
+
+    private int retries = 3;
+
+    private long backoffMs = 50;
+
+    private long maxBackoffMs = 1000;
+
     public DefaultConflictHandler(PassClient passClient) {
         this.passClient = passClient;
     }
@@ -45,7 +76,10 @@ public class DefaultConflictHandler implements ConflictHandler {
      * {@inheritDoc}
      * <h4>Implementation notes</h4>
      * Resolves {@code 412 Precondition Failed} responses by re-retrieving the latest state of the resource from the
-     * repository, insuring the pre-condition for applying the update still holds, and then applying the update.
+     * repository, insuring the pre-condition for applying the update still holds, and then applying the update.  The
+     * update is retried, after a jittered exponential backoff, while it conflicts, up to {@code retries} times.
+     * {@code null} is returned if the pre-condition no longer holds, or if the update fails for any other reason.
+     * The {@code criticalUpdate} is applied once per retry, so it must be idempotent.
      *
      * @param conflictedResource the resource with the state to be updated
      * @param resourceClass the runtime class of the resource
@@ -54,40 +88,157 @@ public class DefaultConflictHandler implements ConflictHandler {
      * @param <T> {@inheritDoc}
      * @param <R> {@inheritDoc}
      * @return {@inheritDoc}
+     * @throws UnresolvedConflictException if every retry conflicts, or the thread is interrupted while backing off
      */
     @Override
     public <T extends PassEntity, R> R handleConflict(T conflictedResource, Class<T> resourceClass, Predicate<T>
             preCondition, Function<T, R> criticalUpdate) {
 
-        LOG.debug(">>>> Retrying update for {}, version {}",
-                conflictedResource.getId(), conflictedResource.getVersionTag());
+        AtomicLong conflictCount = conflicts.computeIfAbsent(resourceClass.getSimpleName(), k -> new AtomicLong());
+        conflictCount.incrementAndGet();
 
-        T toUpdate = null;
-        try {
-            toUpdate = passClient.readResource(conflictedResource.getId(), resourceClass);
-        } catch (Exception e) {
-            String msg = String.format("Update retry failed for %s (version %s): Unable to successfully re-read the " +
-                            "latest version of the resource when retrying: %s", conflictedResource.getId(),
-                    conflictedResource.getVersionTag(), e.getMessage());
-            LOG.info(msg, e);
-        }
+        for (int attempt = 1; attempt <= retries; attempt++) {
+            if (!backoff(attempt)) {
+                throw new UnresolvedConflictException(String.format("Update retry abandoned for %s (version %s): " +
+                        "interrupted while backing off", conflictedResource.getId(),
+                        conflictedResource.getVersionTag()), conflictedResource);
+            }
 
-        try {
-            if (!preCondition.test(toUpdate)) {
-                String msg = String.format("Update retry failed for %s (version %s to %s): does "
-                        + "not the satisfy the precondition for update.",
+            LOG.debug(">>>> Retrying update for {}, version {} (attempt {} of {})",
+                    conflictedResource.getId(), conflictedResource.getVersionTag(), attempt, retries);
+
+            T toUpdate = null;
+            try {
+                toUpdate = passClient.readResource(conflictedResource.getId(), resourceClass);
+            } catch (Exception e) {
+                String msg = String.format("Update retry failed for %s (version %s): Unable to successfully re-read " +
+                                "the latest version of the resource when retrying: %s", conflictedResource.getId(),
+                        conflictedResource.getVersionTag(), e.getMessage());
+                LOG.info(msg, e);
+                continue;
+            }
+
+            try {
+                if (!preCondition.test(toUpdate)) {
+                    LOG.info("Update retry failed for {} (version {} to {}): does not the satisfy the precondition " +
+                                    "for update.", conflictedResource.getId(), conflictedResource.getVersionTag(),
+                            toUpdate.getVersionTag());
+                    return null;
+                }
+                R toReturn = criticalUpdate.apply(toUpdate);
+                passClient.updateResource(toUpdate);
+                resolved.incrementAndGet();
+                return toReturn;
+            } catch (UpdateConflictException e) {
+                conflictCount.incrementAndGet();
+                LOG.debug("Update retry conflicted for {} (version {} to {})",
+                        conflictedResource.getId(), conflictedResource.getVersionTag(), toUpdate.getVersionTag());
+            } catch (Exception e) {
+                String msg = String.format("Update retry failed for %s (version %s to %s)",
                         conflictedResource.getId(), conflictedResource.getVersionTag(), toUpdate.getVersionTag());
-                throw new RuntimeException(msg);
+                LOG.info(msg, e);
+                return null;
             }
-            R toReturn = criticalUpdate.apply(toUpdate);
-            passClient.updateResource(toUpdate);
-            return toReturn;
-        } catch (Exception e) {
-            String msg = String.format("Update retry failed for %s (version %s to %s)",
-                    conflictedResource.getId(), conflictedResource.getVersionTag(), toUpdate.getVersionTag());
-            LOG.info(msg, e);
         }
 
-        return null;
+        exhausted.incrementAndGet();
+        String msg = String.format("Update of %s (version %s) abandoned: it could not be applied after %s retries",
+                conflictedResource.getId(), conflictedResource.getVersionTag(), retries);
+        LOG.warn(msg);
+        throw new UnresolvedConflictException(msg, conflictedResource);
+    }
+
+    /**
+     * @param resourceClass the runtime class of a resource
+     * @return the number of update conflicts handled for resources of the class, including conflicting retries
+     */
+    public long getConflictCount(Class<? extends PassEntity> resourceClass) {
+        AtomicLong count = conflicts.get(resourceClass.getSimpleName());
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the number of update conflicts handled, including conflicting retries, keyed by the simple name of the
+     *         resource class
+     */
+    public Map<String, Long> getConflictCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        conflicts.forEach((type, count) -> counts.put(type, count.get()));
+        return counts;
+    }
+
+    /**
+     * @return the number of conflicts resolved by a retry
+     */
+    public long getResolvedCount() {
+        return resolved.get();
+    }
+
+    /**
+     * @return the number of conflicts abandoned because every retry conflicted
+     */
+    public long getExhaustedCount() {
+        return exhausted.get();
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    @Value("${pass.deposit.conflict.retries:3}")
+    public void setRetries(int retries) {
+        if (retries < 1) {
+            throw new IllegalArgumentException("Number of conflict retries must be a positive integer.");
+        }
+        this.retries = retries;
+    }
+
+    public long getBackoffMs() {
+        return backoffMs;
+    }
+
+    @Value("${pass.deposit.conflict.backoff-ms:50}")
+    public void setBackoffMs(long backoffMs) {
+        if (backoffMs < 0) {
+            throw new IllegalArgumentException("Conflict backoff must not be negative.");
+        }
+        this.backoffMs = backoffMs;
+    }
+
+    public long getMaxBackoffMs() {
+        return maxBackoffMs;
+    }
+
+    @Value("${pass.deposit.conflict.max-backoff-ms:1000}")
+    public void setMaxBackoffMs(long maxBackoffMs) {
+        if (maxBackoffMs < 0) {
+            throw new IllegalArgumentException("Maximum conflict backoff must not be negative.");
+        }
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    /**
+     * Sleeps for a random interval of up to {@code backoff-ms * 2^(attempt - 1)}, capped at {@code max-backoff-ms}.
+     *
+     * @param attempt the number of the retry about to be attempted, starting at 1
+     * @return false if the thread was interrupted while sleeping
+     */
+    private boolean backoff(int attempt) {
+        long ceiling = backoffMs;
+        for (int i = 1; i < attempt && ceiling < maxBackoffMs; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maxBackoffMs);
+        if (ceiling == 0) {
+            return true;
+        }
+
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support;
+
+import org.dataconservancy.pass.model.PassEntity;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Records the properties of a {@code PassEntity} changed by a critical function, so that the changes can be replayed
+ * on a later version of the entity without running the critical function again.
+ * <p>
+ * A snapshot of the writable properties of the entity is taken before the critical function is applied.  Once it has
+ * been applied, the properties whose values differ from the snapshot are the changes made by the function.  Replaying
+ * the changes sets those properties, and only those properties, on another instance of the entity, which makes a
+ * replay idempotent: it may be applied to each re-read version of a resource whose update conflicted, however many
+ * times the update is retried.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+class EntityChanges {
+
+    private static final Set<String> IGNORED = new HashSet<>();
+
+    static {
+        // Identity and optimistic locking state belong to the version of the resource being updated
+        IGNORED.add("id");
+        IGNORED.add("versionTag");
+        IGNORED.add("context");
+    }
+
+    private final List<PropertyDescriptor> properties;
+
+    private final Map<String, Object> snapshot;
+
+    private EntityChanges(List<PropertyDescriptor> properties, Map<String, Object> snapshot) {
+        this.properties = properties;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Takes a snapshot of the writable properties of {@code entity}, before it is modified by a critical function.
+     *
+     * @param entity the entity
+     * @return the snapshot, used to determine the changes made to {@code entity}
+     */
+    static EntityChanges snapshot(PassEntity entity) {
+        List<PropertyDescriptor> properties = new ArrayList<>();
+        try {
+            for (PropertyDescriptor pd : Introspector.getBeanInfo(entity.getClass()).getPropertyDescriptors()) {
+                if (pd.getReadMethod() != null && pd.getWriteMethod() != null && !IGNORED.contains(pd.getName())) {
+                    properties.add(pd);
+                }
+            }
+        } catch (IntrospectionException e) {
+            throw new RuntimeException("Unable to introspect " + entity.getClass().getName() + ": " + e.getMessage(),
+                    e);
+        }
+
+        Map<String, Object> snapshot = new HashMap<>();
+        properties.forEach(pd -> snapshot.put(pd.getName(), copy(read(pd, entity))));
+        return new EntityChanges(properties, snapshot);
+    }
+
+    /**
+     * Answers the properties of {@code modified} that differ from the snapshot, along with their values.
+     *
+     * @param modified the entity, after it has been modified by a critical function
+     * @return the changed properties and their values, which may be empty
+     */
+    Map<PropertyDescriptor, Object> changes(PassEntity modified) {
+        Map<PropertyDescriptor, Object> changes = new HashMap<>();
+        properties.forEach(pd -> {
+            Object value = read(pd, modified);
+            if (!Objects.equals(snapshot.get(pd.getName()), value)) {
+                changes.put(pd, copy(value));
+            }
+        });
+        return changes;
+    }
+
+    /**
+     * Sets the {@code changes} on {@code target}.
+     *
+     * @param changes the changed properties and their values, as answered by {@link #changes(PassEntity)}
+     * @param target the entity to apply the changes to
+     */
+    static void replay(Map<PropertyDescriptor, Object> changes, PassEntity target) {
+        changes.forEach((pd, value) -> {
+            try {
+                pd.getWriteMethod().invoke(target, copy(value));
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException("Unable to set '" + pd.getName() + "' on " + target.getId() + ": " +
+                        e.getMessage(), e);
+            }
+        });
+    }
+
+    private static Object read(PropertyDescriptor pd, PassEntity entity) {
+        try {
+            return pd.getReadMethod().invoke(entity);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Unable to read '" + pd.getName() + "' of " + entity.getId() + ": " +
+                    e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lists are copied, so that changes made to a list in place are detected, and replayed lists are not shared
+     * between entities.  Other property values of a {@code PassEntity} are immutable.
+     */
+    private static Object copy(Object value) {
+        if (value instanceof Collection) {
+            return new ArrayList<>((Collection<?>) value);
+        }
+        return value;
+    }
+
+}
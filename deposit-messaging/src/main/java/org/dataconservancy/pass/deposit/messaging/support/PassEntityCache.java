@@ -0,0 +1,518 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.dataconservancy.pass.client.PassClient;
+import org.dataconservancy.pass.model.PassEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the PASS entities of slow-changing types, like {@code Repository}, {@code Grant} or {@code User}, read through
+ * a {@link PassClient}.
+ * <p>
+ * The client answered by {@link #decorate(PassClient)} answers {@code readResource(URI, Class)} for a cached type
+ * from the cache.  Each type is cached for its own {@link #setTtls(String) time to live}; types without a time to live
+ * are not cached.  Once an entry has lived for its time to live, it is revalidated with a {@code HEAD} request: if the
+ * {@code ETag} of the resource still matches the version tag of the cached entity, the entry lives on, otherwise the
+ * entity is read again.  The cache holds at most {@link #setMaxSize(int) max-size} entities, evicting the least
+ * recently used.
+ * </p>
+ * <p>
+ * An entry is invalidated when the entity is created, updated, or deleted through the decorated client, or when a
+ * modification of the resource is {@link #invalidate(URI) announced} on the Fedora topic.  A read that is under way
+ * when its resource is invalidated answers the entity it read, but does not cache it, so a stale entity is never put
+ * back in the cache.
+ * </p>
+ * <p>
+ * Only the slow-changing types {@code Funder}, {@code Grant}, {@code Journal}, {@code Policy}, {@code Repository} and
+ * {@code User} may be cached.  Each reader is answered its own copy of a cached entity, so an entity modified by one
+ * reader is not seen by the others.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class PassEntityCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PassEntityCache.class);
+
+    private static final String READ_RESOURCE = "readResource";
+
+    private static final String PASS_NS = "http://oapass.org/ns/pass#";
+
+    /**
+     * The simple names of the types that may be cached
+     */
+    static final Set<String> CACHEABLE_TYPES = Collections.unmodifiableSet(new TreeSet<>(
+            Arrays.asList("Funder", "Grant", "Journal", "Policy", "Repository", "User")));
+
+    /**
+     * The readable and writable properties of each cached type, used to copy cached entities
+     */
+    private static final Map<Class<?>, List<PropertyDescriptor>> PROPERTIES = new ConcurrentHashMap<>();
+
+    private final OkHttpClient httpClient;
+
+    /**
+     * Cached entities by URI, in access order, so the eldest entry is the least recently used
+     */
+    private final LinkedHashMap<URI, Entry> entries = new LinkedHashMap<URI, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<URI, Entry> eldest) {
+            if (size() > maxSize) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Reads of cached types under way, by URI, counting the invalidations of each resource while it is read.  Guarded
+     * by the lock of {@link #entries}.
+     */
+    private final Map<URI, Pending> pending = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong revalidations = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private volatile Map<String, Long> ttlMs = Collections.emptyMap();
+
+    private int maxSize = 1000;
+
+    private LongSupplier clock = System::currentTimeMillis;
+
+    /**
+     * @param httpClient used to revalidate expired entries, or {@code null} to read expired entities again
+     */
+    public PassEntityCache(OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Decorates a client, answering the entities of cached types from this cache.
+     *
+     * @param client the client
+     * @return the caching client
+     */
+    public PassClient decorate(PassClient client) {
+        return (PassClient) Proxy.newProxyInstance(PassClient.class.getClassLoader(),
+                new Class<?>[] { PassClient.class }, new CachingHandler(client));
+    }
+
+    /**
+     * Discards the cached entity of a resource.
+     *
+     * @param uri the URI of the resource
+     */
+    public void invalidate(URI uri) {
+        if (uri == null) {
+            return;
+        }
+        synchronized (entries) {
+            Pending reading = pending.get(uri);
+            if (reading != null) {
+                reading.generation++;
+            }
+            if (entries.remove(uri) != null) {
+                invalidations.incrementAndGet();
+                LOG.trace(">>>> Invalidated cached entity {}", uri);
+            }
+        }
+    }
+
+    /**
+     * Answers whether resources of any of the supplied types are cached.
+     *
+     * @param resourceTypes comma-delimited resource types, as carried by Fedora JMS messages
+     * @return true if one of the types is a cached PASS type
+     */
+    public boolean isCached(String resourceTypes) {
+        if (resourceTypes == null) {
+            return false;
+        }
+        for (String type : ttlMs.keySet()) {
+            if (resourceTypes.contains(PASS_NS + type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Discards every cached entity.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return the number of entities read from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of entities of cached types read from the repository
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of expired entries found to be unchanged when revalidated
+     */
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    /**
+     * @return the number of entries evicted to bound the size of the cache
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of entries invalidated
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return the number of cached entities
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public Map<String, Long> getTtlMs() {
+        return ttlMs;
+    }
+
+    /**
+     * Sets the time to live of each cached type, as comma-separated {@code type:seconds} pairs, e.g. {@code
+     * Repository:600,User:300}.  The type is the simple name of the PASS entity class, and must be one of the
+     * {@link #CACHEABLE_TYPES cacheable types}.
+     *
+     * @param ttls the times to live, or an empty string to cache nothing
+     * @throws IllegalArgumentException if a time to live is malformed, or names a type that may not be cached
+     */
+    public void setTtls(String ttls) {
+        Map<String, Long> parsed = new HashMap<>();
+        if (ttls != null) {
+            for (String pair : ttls.split(",")) {
+                if (pair.trim().isEmpty()) {
+                    continue;
+                }
+                String[] typeAndTtl = pair.split(":");
+                if (typeAndTtl.length != 2) {
+                    throw new IllegalArgumentException("Invalid time to live '" + pair + "': expected type:seconds");
+                }
+                String type = typeAndTtl[0].trim();
+                if (!CACHEABLE_TYPES.contains(type)) {
+                    throw new IllegalArgumentException("Invalid time to live '" + pair + "': " + type + " may not " +
+                            "be cached; cacheable types are " + CACHEABLE_TYPES);
+                }
+                long seconds = Long.parseLong(typeAndTtl[1].trim());
+                if (seconds < 0) {
+                    throw new IllegalArgumentException("Invalid time to live '" + pair + "': must not be negative");
+                }
+                if (seconds > 0) {
+                    parsed.put(type, TimeUnit.SECONDS.toMillis(seconds));
+                }
+            }
+        }
+        this.ttlMs = Collections.unmodifiableMap(parsed);
+        clear();
+    }
+
+    public int getMaxSize() {
+        synchronized (entries) {
+            return maxSize;
+        }
+    }
+
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size of the entity cache must be a positive integer.");
+        }
+        synchronized (entries) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    /**
+     * Supplies the current time, in milliseconds, to expire entries.
+     *
+     * @param clock the clock
+     */
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Answers a copy of the entity of a resource from the cache, revalidating or reading it as necessary.
+     */
+    private Object read(PassClient client, Method method, Object[] args, long ttl) throws Throwable {
+        URI uri = (URI) args[0];
+        Class<?> type = (Class<?>) args[1];
+        Entry entry;
+        long generation;
+        synchronized (entries) {
+            entry = entries.get(uri);
+            long now = clock.getAsLong();
+            if (entry != null && now < entry.expiresAt) {
+                hits.incrementAndGet();
+                return copy(entry.entity, type);
+            }
+            Pending reading = pending.computeIfAbsent(uri, key -> new Pending());
+            reading.readers++;
+            generation = reading.generation;
+        }
+
+        try {
+            long now = clock.getAsLong();
+            if (entry != null && unchanged(uri, entry.entity)) {
+                revalidations.incrementAndGet();
+                hits.incrementAndGet();
+                put(uri, new Entry(entry.entity, now + ttl), generation);
+                return copy(entry.entity, type);
+            }
+
+            misses.incrementAndGet();
+            Object entity = invoke(client, method, args);
+            if (entity == null) {
+                return null;
+            }
+            put(uri, new Entry((PassEntity) entity, now + ttl), generation);
+            return copy((PassEntity) entity, type);
+        } finally {
+            synchronized (entries) {
+                Pending reading = pending.get(uri);
+                if (--reading.readers == 0) {
+                    pending.remove(uri);
+                }
+            }
+        }
+    }
+
+    /**
+     * Caches an entry read while the resource was at {@code generation}, unless the resource has been invalidated
+     * since, in which case the entry may be stale.
+     */
+    private void put(URI uri, Entry entry, long generation) {
+        synchronized (entries) {
+            if (pending.get(uri).generation != generation) {
+                LOG.trace(">>>> Not caching entity {}: invalidated while it was read", uri);
+                return;
+            }
+            entries.put(uri, entry);
+        }
+    }
+
+    /**
+     * Copies the readable and writable properties of a cached entity to a new instance of its type.  Collections are
+     * copied, so the copy shares no mutable state with the cached entity.
+     */
+    private static Object copy(PassEntity entity, Class<?> type) {
+        try {
+            Object copy = type.newInstance();
+            for (PropertyDescriptor pd : properties(type)) {
+                Object value = pd.getReadMethod().invoke(entity);
+                if (value instanceof Collection) {
+                    value = new ArrayList<>((Collection<?>) value);
+                }
+                pd.getWriteMethod().invoke(copy, value);
+            }
+            return copy;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Unable to copy cached entity " + entity.getId() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static List<PropertyDescriptor> properties(Class<?> type) {
+        return PROPERTIES.computeIfAbsent(type, t -> {
+            List<PropertyDescriptor> properties = new ArrayList<>();
+            try {
+                for (PropertyDescriptor pd : Introspector.getBeanInfo(t).getPropertyDescriptors()) {
+                    if (pd.getReadMethod() != null && pd.getWriteMethod() != null) {
+                        properties.add(pd);
+                    }
+                }
+            } catch (IntrospectionException e) {
+                throw new RuntimeException("Unable to introspect " + t.getName() + ": " + e.getMessage(), e);
+            }
+            return properties;
+        });
+    }
+
+    /**
+     * Answers whether the {@code ETag} of the resource matches the version tag of the cached entity.  Any failure
+     * to obtain the {@code ETag} is treated as a change.
+     */
+    private boolean unchanged(URI uri, PassEntity entity) {
+        String versionTag = normalize(entity.getVersionTag());
+        if (httpClient == null || versionTag == null) {
+            return false;
+        }
+
+        Request head = new Request.Builder().head().url(uri.toString()).build();
+        try (Response res = httpClient.newCall(head).execute()) {
+            return res.code() == 200 && versionTag.equals(normalize(res.header("ETag")));
+        } catch (Exception e) {
+            LOG.debug("Unable to revalidate cached entity {}: {}", uri, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Strips the weak indicator and quotes of an entity tag.
+     */
+    private static String normalize(String etag) {
+        if (etag == null) {
+            return null;
+        }
+        String normalized = etag.trim();
+        if (normalized.startsWith("W/")) {
+            normalized = normalized.substring(2);
+        }
+        if (normalized.length() > 1 && normalized.startsWith("\"") && normalized.endsWith("\"")) {
+            normalized = normalized.substring(1, normalized.length() - 1);
+        }
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    private static Object invoke(PassClient client, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(client, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Answers reads of cached types from the cache, invalidates the entries of resources modified through the client,
+     * and otherwise delegates to the decorated client.
+     */
+    private class CachingHandler implements InvocationHandler {
+
+        private final PassClient client;
+
+        private CachingHandler(PassClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "Caching " + client;
+                }
+            }
+
+            if (READ_RESOURCE.equals(method.getName()) && args != null && args.length == 2 &&
+                    args[0] instanceof URI && args[1] instanceof Class) {
+                Long ttl = ttlMs.get(((Class<?>) args[1]).getSimpleName());
+                if (ttl != null) {
+                    return read(client, method, args, ttl);
+                }
+            }
+
+            if (modifies(method) && args != null) {
+                for (Object arg : args) {
+                    if (arg instanceof URI) {
+                        invalidate((URI) arg);
+                    } else if (arg instanceof PassEntity) {
+                        invalidate(((PassEntity) arg).getId());
+                    }
+                }
+            }
+
+            return PassEntityCache.invoke(client, method, args);
+        }
+
+        private boolean modifies(Method method) {
+            String name = method.getName();
+            return name.startsWith("create") || name.startsWith("update") || name.startsWith("delete") ||
+                    name.startsWith("upload");
+        }
+    }
+
+    private static class Pending {
+
+        private int readers;
+
+        private long generation;
+    }
+
+    private static class Entry {
+
+        private final PassEntity entity;
+
+        private final long expiresAt;
+
+        private Entry(PassEntity entity, long expiresAt) {
+            this.entity = entity;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
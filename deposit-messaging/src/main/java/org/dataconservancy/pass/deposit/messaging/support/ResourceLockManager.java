@@ -0,0 +1,420 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes work on repository resources within the running JVM, with a lock for each resource URI.
+ * <p>
+ * A lock exists only while it is held or waited for: locks are counted by their holders and waiters, and discarded by
+ * the last of them, so the locks of every resource ever seen are not retained.  Locks are {@link #setFair(boolean)
+ * fair} by default, granting a resource to waiting threads in the order they asked for it.  A thread waits at most
+ * {@link #setTimeoutMs(long) timeout-ms} for a lock ({@code 0} waits indefinitely).
+ * </p>
+ * <p>
+ * When {@link #setSerial(boolean) serial} execution is enabled, work {@link #submit(URI, Supplier) submitted} for a
+ * resource is queued behind the earlier work for that resource, and run on a bounded pool of threads, instead of
+ * parking the submitting thread on the lock of the resource.  Submitted work holds the lock of its resource while it
+ * runs, so it is serialized with work performed under {@link #lock(URI)} as well.  The future result of the work is
+ * completed once the work has run and the lock has been released.  When serial execution is disabled, submitted work
+ * is performed by the submitting thread.
+ * </p>
+ * <p>
+ * The number of acquisitions, the number of them that waited for another holder, the number that timed out, and the
+ * total time spent waiting for and holding locks are counted, so that contention is visible.  The counts are logged
+ * as locks are released, at most once every {@link #setLogIntervalMs(long) log-interval-ms}.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@Component
+public class ResourceLockManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceLockManager.class);
+
+    private static final CompletableFuture<Void> IDLE = CompletableFuture.completedFuture(null);
+
+    private final Map<String, KeyLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * The last work submitted for each resource, which later work is queued behind
+     */
+    private final Map<String, CompletableFuture<?>> queues = new ConcurrentHashMap<>();
+
+    private final AtomicLong acquired = new AtomicLong();
+
+    private final AtomicLong contended = new AtomicLong();
+
+    private final AtomicLong timedOut = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private final AtomicLong holdNanos = new AtomicLong();
+
+    private final AtomicLong lastLogged = new AtomicLong(System.nanoTime());
+
+    private volatile boolean fair = true;
+
+    private volatile long timeoutMs = 0;
+
+    private volatile long logIntervalMs = 600000;
+
+    private volatile boolean serial = false;
+
+    private int serialThreads = 4;
+
+    private volatile ThreadPoolExecutor serialExecutor;
+
+    /**
+     * Obtains the lock of a resource, waiting at most {@code timeout-ms} if it is held by another thread.  The lock is
+     * released by closing the answered {@code Lock}, e.g. in a try-with-resources block.
+     *
+     * @param uri the URI of the resource
+     * @return the held lock
+     * @throws TimeoutException if the lock could not be obtained within {@code timeout-ms}
+     * @throws InterruptedException if the thread is interrupted while waiting for the lock
+     */
+    public Lock lock(URI uri) throws TimeoutException, InterruptedException {
+        String key = uri.toString();
+        KeyLock lock = locks.compute(key, (k, existing) -> {
+            KeyLock keyLock = existing != null ? existing : new KeyLock(fair);
+            keyLock.references++;
+            return keyLock;
+        });
+
+        long start = System.nanoTime();
+        boolean locked = false;
+        try {
+            locked = lock.tryLock();
+            if (!locked) {
+                contended.incrementAndGet();
+                LOG.trace("Waiting for the lock of {} ({} threads waiting)", key, lock.getQueueLength());
+                if (timeoutMs > 0) {
+                    locked = lock.tryLock(timeoutMs, TimeUnit.MILLISECONDS);
+                } else {
+                    lock.lockInterruptibly();
+                    locked = true;
+                }
+            }
+        } finally {
+            long waited = System.nanoTime() - start;
+            waitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            if (!locked) {
+                release(key, lock);
+            }
+        }
+
+        if (!locked) {
+            timedOut.incrementAndGet();
+            throw new TimeoutException("Timed out after " + timeoutMs + " ms waiting for the lock of " + key);
+        }
+
+        acquired.incrementAndGet();
+        return new Lock(key, lock);
+    }
+
+    /**
+     * Performs work on a resource while holding its lock.  When serial execution is enabled, the work is queued
+     * behind earlier work submitted for the resource, and performed on the serial executor; otherwise it is performed
+     * by the calling thread.  Either way, the answered future is completed after the work has run, and the lock of the
+     * resource has been released.
+     *
+     * @param uri the URI of the resource
+     * @param work the work
+     * @param <R> the type of the result of the work
+     * @return the future result of the work, which fails if the work throws, or the lock cannot be obtained
+     */
+    public <R> CompletableFuture<R> submit(URI uri, Supplier<R> work) {
+        if (!serial) {
+            CompletableFuture<R> result = new CompletableFuture<>();
+            perform(uri, work, result);
+            return result;
+        }
+
+        String key = uri.toString();
+        CompletableFuture<R> result = new CompletableFuture<>();
+        ThreadPoolExecutor executor = serialExecutor();
+
+        CompletableFuture<?> queued = queues.compute(key, (k, last) ->
+                (last != null ? last : IDLE).handleAsync((ignored, t) -> perform(uri, work, result), executor));
+
+        queued.whenComplete((ignored, t) -> queues.remove(key, queued));
+
+        return result;
+    }
+
+    /**
+     * @return the number of locks obtained
+     */
+    public long getAcquiredCount() {
+        return acquired.get();
+    }
+
+    /**
+     * @return the number of lock acquisitions that waited for another thread to release the lock
+     */
+    public long getContendedCount() {
+        return contended.get();
+    }
+
+    /**
+     * @return the number of lock acquisitions that timed out
+     */
+    public long getTimeoutCount() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return the total number of nanoseconds spent waiting for locks
+     */
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+    /**
+     * @return the longest number of nanoseconds spent waiting for a lock
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    /**
+     * @return the total number of nanoseconds locks were held
+     */
+    public long getHoldNanos() {
+        return holdNanos.get();
+    }
+
+    /**
+     * @return the number of resources whose lock is currently held or waited for
+     */
+    public int getLockedCount() {
+        return locks.size();
+    }
+
+    /**
+     * @return the number of resources with submitted work queued or running
+     */
+    public int getQueuedCount() {
+        return queues.size();
+    }
+
+    public boolean isFair() {
+        return fair;
+    }
+
+    @Value("${pass.deposit.critical.lock.fair:true}")
+    public void setFair(boolean fair) {
+        this.fair = fair;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    @Value("${pass.deposit.critical.lock.timeout-ms:0}")
+    public void setTimeoutMs(long timeoutMs) {
+        if (timeoutMs < 0) {
+            throw new IllegalArgumentException("Lock timeout must not be negative.");
+        }
+        this.timeoutMs = timeoutMs;
+    }
+
+    public boolean isSerial() {
+        return serial;
+    }
+
+    @Value("${pass.deposit.critical.serial:false}")
+    public void setSerial(boolean serial) {
+        this.serial = serial;
+    }
+
+    public synchronized int getSerialThreads() {
+        return serialThreads;
+    }
+
+    @Value("${pass.deposit.critical.serial.threads:4}")
+    public synchronized void setSerialThreads(int serialThreads) {
+        if (serialThreads < 1) {
+            throw new IllegalArgumentException("Number of serial threads must be a positive integer.");
+        }
+        this.serialThreads = serialThreads;
+        if (serialExecutor != null) {
+            if (serialThreads > serialExecutor.getMaximumPoolSize()) {
+                serialExecutor.setMaximumPoolSize(serialThreads);
+                serialExecutor.setCorePoolSize(serialThreads);
+            } else {
+                serialExecutor.setCorePoolSize(serialThreads);
+                serialExecutor.setMaximumPoolSize(serialThreads);
+            }
+        }
+    }
+
+    public long getLogIntervalMs() {
+        return logIntervalMs;
+    }
+
+    /**
+     * Sets the least number of milliseconds between the logging of lock statistics.
+     *
+     * @param logIntervalMs the interval, or {@code 0} to never log statistics
+     */
+    @Value("${pass.deposit.critical.lock.log-interval-ms:600000}")
+    public void setLogIntervalMs(long logIntervalMs) {
+        if (logIntervalMs < 0) {
+            throw new IllegalArgumentException("Lock statistics log interval must not be negative.");
+        }
+        this.logIntervalMs = logIntervalMs;
+    }
+
+    /**
+     * Runs the work while holding the lock of the resource, and completes the result once the lock is released, so
+     * that stages dependent on the result do not run under the lock.
+     */
+    private <R> Void perform(URI uri, Supplier<R> work, CompletableFuture<R> result) {
+        R value;
+        try (Lock ignored = lock(uri)) {
+            value = work.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return null;
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+            return null;
+        }
+
+        result.complete(value);
+        return null;
+    }
+
+    private ThreadPoolExecutor serialExecutor() {
+        ThreadPoolExecutor executor = serialExecutor;
+        if (executor != null) {
+            return executor;
+        }
+
+        synchronized (this) {
+            if (serialExecutor == null) {
+                AtomicInteger count = new AtomicInteger();
+                serialExecutor = new ThreadPoolExecutor(serialThreads, serialThreads, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), r -> {
+                            Thread t = new Thread(r, "Critical-Serial-" + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        });
+                serialExecutor.allowCoreThreadTimeOut(true);
+            }
+            return serialExecutor;
+        }
+    }
+
+    /**
+     * Logs the lock statistics, if they have not been logged within the log interval.
+     */
+    private void logStatistics() {
+        long interval = TimeUnit.MILLISECONDS.toNanos(logIntervalMs);
+        long last = lastLogged.get();
+        long now = System.nanoTime();
+        if (interval == 0 || now - last < interval || !lastLogged.compareAndSet(last, now)) {
+            return;
+        }
+
+        long acquisitions = acquired.get();
+        LOG.info("Resource locks: {} acquired, {} contended, {} timed out; waited {} ms (longest {} ms, " +
+                        "average {} ms), held {} ms; {} currently locked",
+                acquisitions, contended.get(), timedOut.get(),
+                TimeUnit.NANOSECONDS.toMillis(waitNanos.get()),
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()),
+                acquisitions > 0 ? TimeUnit.NANOSECONDS.toMillis(waitNanos.get() / acquisitions) : 0,
+                TimeUnit.NANOSECONDS.toMillis(holdNanos.get()),
+                locks.size());
+    }
+
+    private void release(String key, KeyLock lock) {
+        locks.computeIfPresent(key, (k, existing) -> {
+            if (existing != lock) {
+                return existing;
+            }
+            return --existing.references == 0 ? null : existing;
+        });
+    }
+
+    /**
+     * A held lock of a resource, released when closed.
+     */
+    public class Lock implements AutoCloseable {
+
+        private final String key;
+
+        private final KeyLock lock;
+
+        private final long lockedAt = System.nanoTime();
+
+        private boolean closed;
+
+        private Lock(String key, KeyLock lock) {
+            this.key = key;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            holdNanos.addAndGet(System.nanoTime() - lockedAt);
+            lock.unlock();
+            release(key, lock);
+            logStatistics();
+        }
+    }
+
+    /**
+     * The lock of a resource, with the number of threads holding or waiting for it.  The count is only modified while
+     * the lock is mapped, within {@code compute} of the lock map.
+     */
+    private static class KeyLock extends ReentrantLock {
+
+        private int references;
+
+        private KeyLock(boolean fair) {
+            super(fair);
+        }
+    }
+
+}
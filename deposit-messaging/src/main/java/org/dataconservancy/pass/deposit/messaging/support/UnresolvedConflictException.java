@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support;
+
+import org.dataconservancy.pass.deposit.messaging.DepositServiceRuntimeException;
+import org.dataconservancy.pass.model.PassEntity;
+
+/**
+ * Thrown by a {@link ConflictHandler} when an update that conflicted could not be applied, because every retry of the
+ * update conflicted, or the retries were interrupted.  The update has <em>not</em> been applied to the resource.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class UnresolvedConflictException extends DepositServiceRuntimeException {
+
+    /**
+     * Constructs a new exception that relates to the supplied {@code resource}
+     *
+     * @param message exception message
+     * @param resource the repository resource whose update could not be applied
+     */
+    public UnresolvedConflictException(String message, PassEntity resource) {
+        super(message, resource);
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.config.spring;
+
+import org.dataconservancy.pass.deposit.messaging.service.DepositUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+import org.springframework.messaging.Message;
+
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.dataconservancy.pass.deposit.messaging.support.Constants.JmsFcrepoHeader.FCREPO_EVENT_TYPE;
+import static org.dataconservancy.pass.deposit.messaging.support.Constants.JmsFcrepoHeader.FCREPO_RESOURCE_TYPE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class MessageGroupRouterTest {
+
+    private static final URI SUBMISSION = URI.create("http://localhost:8080/fcrepo/rest/submissions/1");
+
+    private static final String PAYLOAD = "{\"id\":\"http://localhost:8080/fcrepo/rest/deposits/1\"}";
+
+    private JmsTemplate jmsTemplate;
+
+    private DepositUtil.MessageContext mc;
+
+    private javax.jms.Message original;
+
+    private MessageGroupRouter underTest;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        jmsTemplate = mock(JmsTemplate.class);
+        mc = mock(DepositUtil.MessageContext.class);
+        original = mock(javax.jms.Message.class);
+        Message<String> message = mock(Message.class);
+
+        when(mc.id()).thenReturn("ID:1");
+        when(mc.message()).thenReturn(message);
+        when(mc.jmsMessage()).thenReturn(original);
+        when(message.getPayload()).thenReturn(PAYLOAD);
+
+        underTest = new MessageGroupRouter(jmsTemplate);
+    }
+
+    /**
+     * The forwarded message carries the payload and application properties of the original, and the URI of the
+     * submission as its group.
+     */
+    @Test
+    public void testForwardSetsGroup() throws Exception {
+        when(original.getPropertyNames()).thenReturn(Collections.enumeration(
+                Arrays.asList(FCREPO_RESOURCE_TYPE, FCREPO_EVENT_TYPE, "JMSXDeliveryCount")));
+        when(original.getObjectProperty(FCREPO_RESOURCE_TYPE)).thenReturn("http://oapass.org/ns/pass#Deposit");
+        when(original.getObjectProperty(FCREPO_EVENT_TYPE)).thenReturn("ResourceModification");
+
+        underTest.forward(mc, "deposit.grouped", SUBMISSION);
+
+        ArgumentCaptor<MessageCreator> creator = ArgumentCaptor.forClass(MessageCreator.class);
+        verify(jmsTemplate).send(eq("deposit.grouped"), creator.capture());
+
+        Session session = mock(Session.class);
+        TextMessage forwarded = mock(TextMessage.class);
+        when(session.createTextMessage(PAYLOAD)).thenReturn(forwarded);
+
+        assertSame(forwarded, creator.getValue().createMessage(session));
+        verify(forwarded).setStringProperty(MessageGroupRouter.JMSX_GROUP_ID, SUBMISSION.toString());
+        verify(forwarded).setObjectProperty(FCREPO_RESOURCE_TYPE, "http://oapass.org/ns/pass#Deposit");
+        verify(forwarded).setObjectProperty(FCREPO_EVENT_TYPE, "ResourceModification");
+        verify(forwarded, never()).setObjectProperty(eq("JMSXDeliveryCount"), any());
+        assertEquals(1, underTest.getForwardedCount());
+    }
+
+    /**
+     * A message that cannot be assigned a group is not forwarded.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testForwardWithoutGroup() throws Exception {
+        try {
+            underTest.forward(mc, "deposit.grouped", null);
+        } finally {
+            verify(jmsTemplate, never()).send(anyString(), any(MessageCreator.class));
+            verifyZeroInteractions(original);
+        }
+    }
+
+}
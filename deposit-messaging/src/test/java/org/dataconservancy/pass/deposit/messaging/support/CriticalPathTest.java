@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support;
+
+import org.dataconservancy.pass.client.PassClient;
+import org.dataconservancy.pass.client.fedora.UpdateConflictException;
+import org.dataconservancy.pass.deposit.messaging.support.CriticalRepositoryInteraction.CriticalResult;
+import org.dataconservancy.pass.model.Submission;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.dataconservancy.pass.model.Submission.AggregatedDepositStatus.ACCEPTED;
+import static org.dataconservancy.pass.model.Submission.AggregatedDepositStatus.IN_PROGRESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class CriticalPathTest {
+
+    private static final URI SUBMISSION_URI = URI.create("http://localhost:8080/fcrepo/rest/submissions/1");
+
+    private PassClient passClient;
+
+    private ResourceLockManager lockManager;
+
+    private DefaultConflictHandler conflictHandler;
+
+    private CriticalPath underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        passClient = mock(PassClient.class);
+        when(passClient.readResource(SUBMISSION_URI, Submission.class)).thenAnswer(inv -> {
+            Submission submission = new Submission();
+            submission.setId(SUBMISSION_URI);
+            submission.setAggregatedDepositStatus(IN_PROGRESS);
+            return submission;
+        });
+        when(passClient.updateAndReadResource(any(), eq(Submission.class))).thenThrow(UpdateConflictException.class);
+
+        lockManager = new ResourceLockManager();
+        conflictHandler = new DefaultConflictHandler(passClient);
+        conflictHandler.setBackoffMs(0);
+        underTest = new CriticalPath(passClient, conflictHandler, lockManager);
+    }
+
+    /**
+     * A conflicting update is resolved by replaying the changes made by the critical function on the latest version
+     * of the resource, without performing the critical function again, and without holding the lock of the resource.
+     */
+    @Test
+    public void testConflictReplaysChanges() throws Exception {
+        List<Integer> lockedDuringRetry = new ArrayList<>();
+        doAnswer(inv -> {
+            lockedDuringRetry.add(lockManager.getLockedCount());
+            return null;
+        }).when(passClient).updateResource(any());
+        AtomicInteger performed = new AtomicInteger();
+
+        CriticalResult<String, Submission> result = underTest.performCritical(SUBMISSION_URI, Submission.class,
+                s -> s.getAggregatedDepositStatus() == IN_PROGRESS, s -> true,
+                s -> {
+                    performed.incrementAndGet();
+                    s.setAggregatedDepositStatus(ACCEPTED);
+                    return "deposited";
+                });
+
+        assertTrue(result.success());
+        assertEquals("deposited", result.result().get());
+        assertEquals(1, performed.get());
+
+        ArgumentCaptor<Submission> updated = ArgumentCaptor.forClass(Submission.class);
+        verify(passClient).updateResource(updated.capture());
+        assertEquals(ACCEPTED, updated.getValue().getAggregatedDepositStatus());
+        assertEquals(0, (int) lockedDuringRetry.get(0));
+    }
+
+    /**
+     * When every retry of a conflicting update conflicts, the critical path fails with an
+     * UnresolvedConflictException, and the critical function is performed only once.
+     */
+    @Test
+    public void testUnresolvedConflictFails() throws Exception {
+        conflictHandler.setRetries(2);
+        doThrow(UpdateConflictException.class).when(passClient).updateResource(any());
+        AtomicInteger performed = new AtomicInteger();
+
+        CriticalResult<String, Submission> result = underTest.performCritical(SUBMISSION_URI, Submission.class,
+                s -> true, s -> true,
+                s -> {
+                    performed.incrementAndGet();
+                    s.setAggregatedDepositStatus(ACCEPTED);
+                    return "deposited";
+                });
+
+        assertFalse(result.success());
+        assertTrue(result.throwable().get() instanceof UnresolvedConflictException);
+        assertEquals(1, performed.get());
+        assertEquals(0, lockManager.getLockedCount());
+    }
+
+}
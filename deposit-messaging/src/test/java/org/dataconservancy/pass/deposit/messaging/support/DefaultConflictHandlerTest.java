@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support;
+
+import org.dataconservancy.pass.client.PassClient;
+import org.dataconservancy.pass.client.fedora.UpdateConflictException;
+import org.dataconservancy.pass.model.Deposit;
+import org.dataconservancy.pass.model.Submission;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class DefaultConflictHandlerTest {
+
+    private static final URI SUBMISSION_URI = URI.create("http://localhost:8080/fcrepo/rest/submissions/1");
+
+    private PassClient passClient;
+
+    private Submission submission;
+
+    private DefaultConflictHandler underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        passClient = mock(PassClient.class);
+        submission = new Submission();
+        submission.setId(SUBMISSION_URI);
+        when(passClient.readResource(SUBMISSION_URI, Submission.class)).thenReturn(submission);
+
+        underTest = new DefaultConflictHandler(passClient);
+        underTest.setBackoffMs(0);
+    }
+
+    /**
+     * An update that conflicts again is retried until it succeeds, and each conflict is counted.
+     */
+    @Test
+    public void testRetriesUntilResolved() throws Exception {
+        doThrow(UpdateConflictException.class)
+                .doThrow(UpdateConflictException.class)
+                .doAnswer(inv -> null)
+                .when(passClient).updateResource(any());
+        AtomicInteger applied = new AtomicInteger();
+
+        Integer result = underTest.handleConflict(submission, Submission.class, s -> true,
+                s -> applied.incrementAndGet());
+
+        assertEquals(3, (int) result);
+        verify(passClient, times(3)).readResource(SUBMISSION_URI, Submission.class);
+        verify(passClient, times(3)).updateResource(submission);
+        assertEquals(3, underTest.getConflictCount(Submission.class));
+        assertEquals(0, underTest.getConflictCount(Deposit.class));
+        assertEquals(1, underTest.getResolvedCount());
+        assertEquals(0, underTest.getExhaustedCount());
+    }
+
+    /**
+     * When every retry conflicts, the update is abandoned after the configured number of retries, and an
+     * UnresolvedConflictException is thrown.
+     */
+    @Test
+    public void testRetriesExhausted() throws Exception {
+        underTest.setRetries(2);
+        doThrow(UpdateConflictException.class).when(passClient).updateResource(any());
+
+        try {
+            underTest.handleConflict(submission, Submission.class, s -> true, s -> "updated");
+            fail("Expected an UnresolvedConflictException");
+        } catch (UnresolvedConflictException e) {
+            assertEquals(submission, e.getResource());
+        }
+
+        verify(passClient, times(2)).updateResource(submission);
+        assertEquals(3, underTest.getConflictCount(Submission.class));
+        assertEquals(1, underTest.getExhaustedCount());
+        assertEquals(0, underTest.getResolvedCount());
+    }
+
+    /**
+     * An update whose precondition no longer holds is not retried.
+     */
+    @Test
+    public void testPreconditionFailureIsNotRetried() throws Exception {
+        assertNull(underTest.handleConflict(submission, Submission.class, s -> false, s -> "updated"));
+
+        verify(passClient).readResource(SUBMISSION_URI, Submission.class);
+        verify(passClient, never()).updateResource(any());
+        assertEquals(1, underTest.getConflictCount(Submission.class));
+        assertEquals(0, underTest.getExhaustedCount());
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.dataconservancy.pass.client.PassClient;
+import org.dataconservancy.pass.model.Repository;
+import org.dataconservancy.pass.model.Submission;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class PassEntityCacheTest {
+
+    private static final URI REPOSITORY_URI = URI.create("http://localhost:8080/fcrepo/rest/repositories/1");
+
+    private static final URI SUBMISSION_URI = URI.create("http://localhost:8080/fcrepo/rest/submissions/1");
+
+    private PassClient delegate;
+
+    private OkHttpClient httpClient;
+
+    private Repository repository;
+
+    private AtomicLong now = new AtomicLong();
+
+    private PassEntityCache underTest;
+
+    private PassClient passClient;
+
+    @Before
+    public void setUp() throws Exception {
+        delegate = mock(PassClient.class);
+        httpClient = mock(OkHttpClient.class);
+        repository = mock(Repository.class);
+        when(repository.getId()).thenReturn(REPOSITORY_URI);
+        when(repository.getVersionTag()).thenReturn("W/\"1\"");
+        when(delegate.readResource(REPOSITORY_URI, Repository.class)).thenReturn(repository);
+
+        underTest = new PassEntityCache(httpClient);
+        underTest.setTtls("Repository:60, User:60");
+        underTest.setClock(now::get);
+        passClient = underTest.decorate(delegate);
+    }
+
+    /**
+     * Entities of a cached type are read from the repository once, until they expire.  Each read answers a copy.
+     */
+    @Test
+    public void testReadIsCached() throws Exception {
+        Repository first = passClient.readResource(REPOSITORY_URI, Repository.class);
+        Repository second = passClient.readResource(REPOSITORY_URI, Repository.class);
+        assertEquals(REPOSITORY_URI, first.getId());
+        assertEquals(REPOSITORY_URI, second.getId());
+        assertNotSame(first, second);
+        assertNotSame(repository, first);
+
+        verify(delegate).readResource(REPOSITORY_URI, Repository.class);
+        assertEquals(1, underTest.getHitCount());
+        assertEquals(1, underTest.getMissCount());
+        assertTrue(underTest.isCached("http://oapass.org/ns/pass#Repository,http://fedora.info/definitions/v4/" +
+                "repository#Resource"));
+    }
+
+    /**
+     * Entities of types without a time to live are always read from the repository.
+     */
+    @Test
+    public void testUncachedTypeIsNotCached() throws Exception {
+        passClient.readResource(SUBMISSION_URI, Submission.class);
+        passClient.readResource(SUBMISSION_URI, Submission.class);
+
+        verify(delegate, times(2)).readResource(SUBMISSION_URI, Submission.class);
+        assertEquals(0, underTest.size());
+        assertFalse(underTest.isCached("http://oapass.org/ns/pass#Submission"));
+    }
+
+    /**
+     * Updating an entity through the client, or announcing its modification, discards the cached entity.
+     */
+    @Test
+    public void testModificationInvalidates() throws Exception {
+        passClient.readResource(REPOSITORY_URI, Repository.class);
+        passClient.updateResource(repository);
+        passClient.readResource(REPOSITORY_URI, Repository.class);
+        underTest.invalidate(REPOSITORY_URI);
+        passClient.readResource(REPOSITORY_URI, Repository.class);
+
+        verify(delegate).updateResource(repository);
+        verify(delegate, times(3)).readResource(REPOSITORY_URI, Repository.class);
+        assertEquals(2, underTest.getInvalidationCount());
+    }
+
+    /**
+     * A cached entity modified by one reader is not seen by the other readers.
+     */
+    @Test
+    public void testReadersAreAnsweredCopies() throws Exception {
+        URI otherUri = URI.create("http://localhost:8080/fcrepo/rest/repositories/2");
+        Repository other = new Repository();
+        other.setId(otherUri);
+        other.setName("Original");
+        when(delegate.readResource(otherUri, Repository.class)).thenReturn(other);
+
+        passClient.readResource(otherUri, Repository.class).setName("Modified");
+
+        assertEquals("Original", passClient.readResource(otherUri, Repository.class).getName());
+        assertEquals("Original", other.getName());
+        verify(delegate).readResource(otherUri, Repository.class);
+    }
+
+    /**
+     * An entity whose resource is invalidated while it is being read is answered, but not cached, so the stale entity
+     * is not put back after the invalidation.
+     */
+    @Test
+    public void testInvalidationDuringReadIsNotUndone() throws Exception {
+        when(delegate.readResource(REPOSITORY_URI, Repository.class)).thenAnswer(inv -> {
+            underTest.invalidate(REPOSITORY_URI);
+            return repository;
+        });
+
+        assertEquals(REPOSITORY_URI, passClient.readResource(REPOSITORY_URI, Repository.class).getId());
+        assertEquals(0, underTest.size());
+
+        passClient.readResource(REPOSITORY_URI, Repository.class);
+        verify(delegate, times(2)).readResource(REPOSITORY_URI, Repository.class);
+    }
+
+    /**
+     * Types that change as they are processed, like Submission and Deposit, may not be cached.
+     */
+    @Test
+    public void testFrequentlyModifiedTypeIsRejected() throws Exception {
+        try {
+            underTest.setTtls("Repository:60,Submission:60");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Submission"));
+        }
+    }
+
+    /**
+     * An expired entity is kept if its ETag is unchanged, and read again otherwise.
+     */
+    @Test
+    public void testExpiredEntityIsRevalidated() throws Exception {
+        Call call = mock(Call.class);
+        when(httpClient.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(head("W/\"1\""), head("W/\"2\""));
+
+        passClient.readResource(REPOSITORY_URI, Repository.class);
+        now.addAndGet(61000);
+        passClient.readResource(REPOSITORY_URI, Repository.class);
+
+        verify(delegate).readResource(REPOSITORY_URI, Repository.class);
+        assertEquals(1, underTest.getRevalidationCount());
+
+        now.addAndGet(61000);
+        passClient.readResource(REPOSITORY_URI, Repository.class);
+
+        verify(delegate, times(2)).readResource(REPOSITORY_URI, Repository.class);
+        assertEquals(1, underTest.getRevalidationCount());
+    }
+
+    /**
+     * The least recently used entity is evicted when the cache is full.
+     */
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        URI otherUri = URI.create("http://localhost:8080/fcrepo/rest/repositories/2");
+        Repository other = mock(Repository.class);
+        when(delegate.readResource(otherUri, Repository.class)).thenReturn(other);
+        underTest.setMaxSize(1);
+
+        passClient.readResource(REPOSITORY_URI, Repository.class);
+        passClient.readResource(otherUri, Repository.class);
+        passClient.readResource(REPOSITORY_URI, Repository.class);
+
+        verify(delegate, times(2)).readResource(REPOSITORY_URI, Repository.class);
+        assertEquals(1, underTest.size());
+        assertEquals(2, underTest.getEvictionCount());
+    }
+
+    private static Response head(String etag) {
+        return new Response.Builder()
+                .request(new Request.Builder().head().url(REPOSITORY_URI.toString()).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .header("ETag", etag)
+                .build();
+    }
+
+}
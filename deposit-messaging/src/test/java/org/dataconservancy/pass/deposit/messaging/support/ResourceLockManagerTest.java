@@ -0,0 +1,197 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.messaging.support;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ResourceLockManagerTest {
+
+    private static final URI SUBMISSION = URI.create("http://localhost:8080/fcrepo/rest/submissions/1");
+
+    private static final URI DEPOSIT = URI.create("http://localhost:8080/fcrepo/rest/deposits/1");
+
+    private ResourceLockManager underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        underTest = new ResourceLockManager();
+    }
+
+    /**
+     * The lock of a resource does not exclude other resources, and is discarded once it is released.
+     */
+    @Test
+    public void testLockIsPerResource() throws Exception {
+        underTest.setTimeoutMs(50);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = holdLock(SUBMISSION, locked, release);
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        try (ResourceLockManager.Lock deposit = underTest.lock(DEPOSIT)) {
+            assertEquals(2, underTest.getLockedCount());
+        }
+
+        release.countDown();
+        holder.join(10000);
+
+        assertEquals(0, underTest.getLockedCount());
+        assertEquals(2, underTest.getAcquiredCount());
+        assertEquals(0, underTest.getContendedCount());
+    }
+
+    /**
+     * A thread waiting longer than the lock timeout for a resource fails with a TimeoutException, and is counted.
+     */
+    @Test
+    public void testLockTimesOut() throws Exception {
+        underTest.setTimeoutMs(50);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = holdLock(SUBMISSION, locked, release);
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        try {
+            underTest.lock(SUBMISSION);
+            fail("Expected TimeoutException");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        release.countDown();
+        holder.join(10000);
+
+        assertEquals(1, underTest.getTimeoutCount());
+        assertEquals(1, underTest.getContendedCount());
+        assertTrue(underTest.getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(0, underTest.getLockedCount());
+    }
+
+    /**
+     * Work submitted in serial mode does not block the submitting thread, and is performed in the order it was
+     * submitted, once the resource is released.
+     */
+    @Test
+    public void testSerialSubmissionIsQueued() throws Exception {
+        underTest.setSerial(true);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = holdLock(SUBMISSION, locked, release);
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        List<Integer> performed = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger concurrent = new AtomicInteger();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int order = i;
+            results.add(underTest.submit(SUBMISSION, () -> {
+                assertEquals(1, concurrent.incrementAndGet());
+                performed.add(order);
+                concurrent.decrementAndGet();
+                return order;
+            }));
+        }
+
+        assertFalse(results.get(0).isDone());
+        release.countDown();
+        holder.join(10000);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) results.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(10, performed.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) performed.get(i));
+        }
+        assertEquals(0, underTest.getLockedCount());
+    }
+
+    /**
+     * The result of work submitted in serial mode completes only after the work has run and the lock of the resource
+     * has been released, so a message is not acknowledged before its work is performed.
+     */
+    @Test
+    public void testSerialResultCompletesAfterWork() throws Exception {
+        underTest.setSerial(true);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = holdLock(SUBMISSION, locked, release);
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        AtomicBoolean performed = new AtomicBoolean();
+        CompletableFuture<Integer> lockedOnCompletion = underTest.submit(SUBMISSION, () -> performed.getAndSet(true))
+                .thenApply(ignored -> underTest.getLockedCount());
+
+        Thread.sleep(100);
+        assertFalse(lockedOnCompletion.isDone());
+        assertFalse(performed.get());
+
+        release.countDown();
+        holder.join(10000);
+
+        assertEquals(0, (int) lockedOnCompletion.get(10, TimeUnit.SECONDS));
+        assertTrue(performed.get());
+    }
+
+    /**
+     * Work submitted when serial mode is disabled is performed by the submitting thread.
+     */
+    @Test
+    public void testSubmissionIsPerformedByCaller() throws Exception {
+        Thread caller = Thread.currentThread();
+        CompletableFuture<Thread> result = underTest.submit(SUBMISSION, Thread::currentThread);
+
+        assertTrue(result.isDone());
+        assertEquals(caller, result.get());
+    }
+
+    /**
+     * Starts a thread holding the lock of the resource until {@code release} is counted down.
+     */
+    private Thread holdLock(URI uri, CountDownLatch locked, CountDownLatch release) {
+        Thread holder = new Thread(() -> {
+            try (ResourceLockManager.Lock lock = underTest.lock(uri)) {
+                locked.countDown();
+                release.await();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        holder.start();
+        return holder;
+    }
+
+}
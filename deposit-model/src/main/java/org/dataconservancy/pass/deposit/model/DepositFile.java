@@ -16,6 +16,11 @@
 
 package org.dataconservancy.pass.deposit.model;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * Represents a file that was uploaded by a user into PASS; e.g. a manuscript or supplement material for a specific
  * submission.
@@ -46,6 +51,22 @@ public class DepositFile {
      */
     private String location;
 
+    /**
+     * The MIME type of the file, as declared by PASS; may be {@code null}
+     */
+    private String mimeType;
+
+    /**
+     * The size of the file in bytes, as declared by PASS or the repository holding the file; {@code -1} if unknown
+     */
+    private long size = -1;
+
+    /**
+     * Known digests of the file, keyed by the standard name of the digest algorithm (e.g. {@code MD5}, {@code SHA-256})
+     * with lower-case, hex-encoded values
+     */
+    private Map<String, String> digests = new LinkedHashMap<>();
+
     public DepositFileType getType() {
         return type;
     }
@@ -78,6 +99,43 @@ public class DepositFile {
         this.location = location;
     }
 
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public Map<String, String> getDigests() {
+        return Collections.unmodifiableMap(digests);
+    }
+
+    public void setDigests(Map<String, String> digests) {
+        this.digests = new LinkedHashMap<>();
+        if (digests != null) {
+            digests.forEach(this::addDigest);
+        }
+    }
+
+    /**
+     * Records a known digest of the file.
+     *
+     * @param algorithm the standard name of the digest algorithm, e.g. {@code SHA-256}
+     * @param hex the hex-encoded digest
+     */
+    public void addDigest(String algorithm, String hex) {
+        digests.put(algorithm.toUpperCase(Locale.ENGLISH), hex.toLowerCase(Locale.ENGLISH));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -107,6 +165,9 @@ public class DepositFile {
                 ", name='" + name + '\'' +
                 ", label='" + label + '\'' +
                 ", location='" + location + '\'' +
+                ", mimeType='" + mimeType + '\'' +
+                ", size=" + size +
+                ", digests=" + digests +
                 '}';
     }
 
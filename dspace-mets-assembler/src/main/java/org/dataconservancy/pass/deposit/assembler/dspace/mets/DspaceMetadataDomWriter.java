@@ -78,9 +78,12 @@ import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstant
 import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.XSI_NS_PREFIX;
 
 /**
+ * Composes the METS.xml in a DOM, which is held in memory until it is written.
+ *
  * @author Elliot Metsger (emetsger@jhu.edu)
+ * @see DspaceMetadataStreamWriter
  */
-public class DspaceMetadataDomWriter {
+public class DspaceMetadataDomWriter implements DspaceMetsWriter {
 
     static final String METS_ID = "DSPACE-METS-SWORD";
 
@@ -118,7 +121,8 @@ public class DspaceMetadataDomWriter {
         }
     }
 
-    void write(OutputStream out) {
+    @Override
+    public void write(OutputStream out) {
         METSWrapper wrapper = null;
         try {
             wrapper = new METSWrapper(metsDocument);
@@ -128,7 +132,8 @@ public class DspaceMetadataDomWriter {
         wrapper.write(out);
     }
 
-    void addSubmission(DepositSubmission submission) {
+    @Override
+    public void addSubmission(DepositSubmission submission) {
         try {
             if (getFileGrpByUse(CONTENT_USE) == null || getFileGrpByUse(CONTENT_USE).getFiles().isEmpty()) {
                 throw new IllegalStateException("No <fileGrp USE=\"" + CONTENT_USE + "\"> element was found, or was" +
@@ -378,7 +383,8 @@ public class DspaceMetadataDomWriter {
      *
      * @param resource the package resource to be represented in the DOM
      */
-    void addResource(PackageStream.Resource resource) {
+    @Override
+    public void addResource(PackageStream.Resource resource) {
         File resourceFile = null;
         try {
             resourceFile = createFile(CONTENT_USE);
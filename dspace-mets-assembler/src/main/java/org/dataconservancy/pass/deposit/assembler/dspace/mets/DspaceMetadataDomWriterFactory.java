@@ -16,11 +16,17 @@
 package org.dataconservancy.pass.deposit.assembler.dspace.mets;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLOutputFactory;
 
 /**
+ * Creates the {@link DspaceMetsWriter} used to compose the METS.xml of each package.  By default the METS.xml is
+ * streamed by a {@link DspaceMetadataStreamWriter}; the {@link DspaceMetadataDomWriter} is used if streaming is
+ * disabled.
+ *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
 @Component
@@ -28,12 +34,30 @@ public class DspaceMetadataDomWriterFactory {
 
     private DocumentBuilderFactory dbf;
 
+    private XMLOutputFactory xof;
+
+    private boolean streaming = true;
+
     @Autowired
     public DspaceMetadataDomWriterFactory(DocumentBuilderFactory dbf) {
         this.dbf = dbf;
+        this.xof = XMLOutputFactory.newInstance();
     }
 
-    public DspaceMetadataDomWriter newInstance() {
+    public DspaceMetsWriter newInstance() {
+        if (streaming) {
+            return new DspaceMetadataStreamWriter(xof);
+        }
+
         return new DspaceMetadataDomWriter(dbf);
     }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    @Value("${pass.deposit.assembler.dspace.mets.streaming:true}")
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
 }
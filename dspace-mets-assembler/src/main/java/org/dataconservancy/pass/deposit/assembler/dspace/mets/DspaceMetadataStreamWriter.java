@@ -0,0 +1,428 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.dspace.mets;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositMetadata;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.DspaceMetadataDomWriter.CONTENT_USE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.DspaceMetadataDomWriter.LOCTYPE_URL;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.DspaceMetadataDomWriter.METS_DSPACE_LABEL;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.DspaceMetadataDomWriter.METS_DSPACE_PROFILE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.MetsMdType.DC;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.MetsMdType.OTHER;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DCTERMS_NS;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DCTERMS_NS_PREFIX;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DCT_ABSTRACT;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DCT_HASVERSION;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DC_CONTRIBUTOR;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DC_DESCRIPTION;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DC_NS;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DC_NS_PREFIX;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DC_TITLE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_DESCRIPTION;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_ELEMENT;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_EMBARGO;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_EMBARGO_LIFT;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_EMBARGO_TERMS;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_FIELD;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_MDSCHEMA;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_MDSCHEMA_DC;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_MDSCHEMA_LOCAL;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_NS;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_NS_PREFIX;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_PROVENANCE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.DIM_QUALIFIER;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_CHECKSUM;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_CHECKSUM_TYPE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_DIV;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_DMDID;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_DMDSEC;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_FILE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_FILEGRP;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_FILEID;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_FILESEC;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_FLOCAT;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_FPTR;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_GROUPID;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_ID;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_LABEL;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_LOCTYPE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_MDTYPE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_MDWRAP;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_MIMETYPE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_NS;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_OTHERMDTYPE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_OTHERMDTYPE_TYPE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_PROFILE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_SIZE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_STRUCTMAP;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_USE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_XMLDATA;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.XLINK_HREF;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.XLINK_NS;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.XLINK_PREFIX;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.XSI_NS;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.XSI_NS_PREFIX;
+
+/**
+ * Streams the METS.xml to an {@code OutputStream} using StAX, producing the same document as the {@link
+ * DspaceMetadataDomWriter}.
+ * <p>
+ * No document is built in memory: resources and the submission are retained by reference when they are added, and
+ * each element of the METS.xml is serialized as it is composed when {@link #write(OutputStream)} is invoked.  Apart
+ * from a reference and an identifier per resource, memory use does not grow with the size of the package, which
+ * allows the METS.xml to be written directly to its archive entry.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class DspaceMetadataStreamWriter implements DspaceMetsWriter {
+
+    private static final String METS = "mets";
+
+    private static final String QUALIFIED_DC = "qualifieddc";
+
+    private static final String STRUCTMAP_LABEL = "DSpace CONTENT bundle structure";
+
+    private static final String ITEM_DIV_LABEL = "DSpace Item Div";
+
+    private static final String DOI_COMMENT = "This DOI points to the published version of the manuscript, " +
+            "available after any embargo period has been satisfied.";
+
+    private static final String EMBARGO_DESCRIPTION = "Submission published under an embargo, which will last until %s";
+
+    private final XMLOutputFactory xof;
+
+    private final Supplier<String> idSupplier;
+
+    private final List<PackageStream.Resource> resources = new ArrayList<>();
+
+    private DepositSubmission submission;
+
+    DspaceMetadataStreamWriter(XMLOutputFactory xof) {
+        this(xof, () -> UUID.randomUUID().toString());
+    }
+
+    /**
+     * Package-private for unit testing
+     *
+     * @param xof the factory used to create the {@code XMLStreamWriter}
+     * @param idSupplier mints the identifiers of METS elements
+     */
+    DspaceMetadataStreamWriter(XMLOutputFactory xof, Supplier<String> idSupplier) {
+        if (xof == null) {
+            throw new IllegalArgumentException("XMLOutputFactory must not be null.");
+        }
+
+        if (idSupplier == null) {
+            throw new IllegalArgumentException("Identifier supplier must not be null.");
+        }
+
+        this.xof = xof;
+        this.idSupplier = idSupplier;
+    }
+
+    /**
+     * Adds a {@link PackageStream.Resource resource} to the METS.xml.  A METS {@code File} with a {@code FLocat} is
+     * written for the resource, including its primary checksum, size, mime type, and name.  The {@code FLocat} will be
+     * a URL type, using the resource name as the location.
+     *
+     * @param resource the package resource to be represented in the METS.xml
+     */
+    @Override
+    public void addResource(PackageStream.Resource resource) {
+        resources.add(resource);
+    }
+
+    @Override
+    public void addSubmission(DepositSubmission submission) {
+        if (resources.isEmpty()) {
+            throw new IllegalStateException("No <fileGrp USE=\"" + CONTENT_USE + "\"> element was found, or was" +
+                    " empty.  Resources must be added before submissions.  Has addResource(Resource) been called?");
+        }
+
+        // Fail when the submission is added, as the DOM writer does, rather than part-way through the METS.xml
+        if (submission.getMetadata().getManuscriptMetadata().getTitle() == null) {
+            throw new RuntimeException("No title found in the NIHMS manuscript metadata!");
+        }
+
+        this.submission = submission;
+    }
+
+    @Override
+    public void write(OutputStream out) {
+        XMLStreamWriter xml = null;
+        try {
+            xml = xof.createXMLStreamWriter(out, UTF_8.name());
+            xml.writeStartDocument(UTF_8.name(), "1.0");
+            writeMets(xml);
+            xml.writeEndDocument();
+            xml.flush();
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        } finally {
+            if (xml != null) {
+                try {
+                    // closes the writer, but not the underlying OutputStream
+                    xml.close();
+                } catch (XMLStreamException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private void writeMets(XMLStreamWriter xml) throws XMLStreamException {
+        xml.writeStartElement(METS);
+        xml.writeDefaultNamespace(METS_NS);
+        xml.writeAttribute(METS_ID, mintId());
+        xml.writeAttribute(METS_LABEL, METS_DSPACE_LABEL);
+        xml.writeAttribute(METS_PROFILE, METS_DSPACE_PROFILE);
+
+        List<String> dmdSecIds = new ArrayList<>(2);
+        if (submission != null) {
+            dmdSecIds.add(writeDmdSec(xml, DC, () -> writeDublinCoreMetadata(xml)));
+            if (submission.getMetadata().getArticleMetadata().getEmbargoLiftDate() != null) {
+                dmdSecIds.add(writeDmdSec(xml, OTHER, () -> writeDimMetadataForEmbargo(xml)));
+            }
+        }
+
+        List<String> fileIds = writeFileSec(xml);
+
+        if (submission != null) {
+            writeStructMap(xml, dmdSecIds, fileIds);
+        }
+
+        xml.writeEndElement();
+    }
+
+    /**
+     * Writes a {@code <dmdSec>} wrapping the metadata written by {@code xmlData}.
+     *
+     * @return the identifier of the {@code <dmdSec>}
+     */
+    private String writeDmdSec(XMLStreamWriter xml, MetsMdType mdType, XmlWriterCallback xmlData)
+            throws XMLStreamException {
+        String dmdSecId = mintId();
+        xml.writeStartElement(METS_DMDSEC);
+        xml.writeAttribute(METS_GROUPID, mintId());
+        xml.writeAttribute(METS_ID, dmdSecId);
+
+        xml.writeStartElement(METS_MDWRAP);
+        xml.writeAttribute(METS_ID, mintId());
+        xml.writeAttribute(METS_MDTYPE, mdType.getType());
+        if (mdType == OTHER) {
+            xml.writeAttribute(METS_OTHERMDTYPE, METS_OTHERMDTYPE_TYPE);
+        }
+
+        xml.writeStartElement(METS_XMLDATA);
+        xmlData.write();
+        xml.writeEndElement();
+
+        xml.writeEndElement();
+        xml.writeEndElement();
+        return dmdSecId;
+    }
+
+    /**
+     * Writes the Dublin Core metadata of the submission, as documented by {@link
+     * DspaceMetadataDomWriter#createDublinCoreMetadata(DepositSubmission)}.
+     */
+    private void writeDublinCoreMetadata(XMLStreamWriter xml) throws XMLStreamException {
+        DepositMetadata nimsMd = submission.getMetadata();
+        DepositMetadata.Manuscript manuscriptMd = nimsMd.getManuscriptMetadata();
+        DepositMetadata.Article articleMd = nimsMd.getArticleMetadata();
+
+        xml.writeStartElement(QUALIFIED_DC);
+        xml.writeDefaultNamespace(DCTERMS_NS);
+        writeNamespaces(xml, null);
+
+        for (DepositMetadata.Person p : nimsMd.getPersons()) {
+            // Only include authors, PIs and CoPIs as contributors
+            if (p.getType() != DepositMetadata.PERSON_TYPE.submitter) {
+                writeElement(xml, DC_NS_PREFIX, DC_CONTRIBUTOR, DC_NS, p.getName());
+            }
+        }
+
+        writeElement(xml, DC_NS_PREFIX, DC_TITLE, DC_NS, manuscriptMd.getTitle());
+
+        if (articleMd.getDoi() != null) {
+            xml.writeComment(DOI_COMMENT);
+            writeElement(xml, DCTERMS_NS_PREFIX, DCT_HASVERSION, DCTERMS_NS, articleMd.getDoi().toString());
+        }
+
+        if (manuscriptMd.getMsAbstract() != null) {
+            writeElement(xml, DCTERMS_NS_PREFIX, DCT_ABSTRACT, DCTERMS_NS, manuscriptMd.getMsAbstract());
+        }
+
+        if (articleMd.getEmbargoLiftDate() != null) {
+            writeElement(xml, DC_NS_PREFIX, DC_DESCRIPTION, DC_NS, String.format(EMBARGO_DESCRIPTION,
+                    articleMd.getEmbargoLiftDate().format(DateTimeFormatter.ISO_LOCAL_DATE)));
+        }
+
+        xml.writeEndElement();
+    }
+
+    /**
+     * Writes the DSpace internal metadata describing the embargo of the submission.
+     */
+    private void writeDimMetadataForEmbargo(XMLStreamWriter xml) throws XMLStreamException {
+        String formattedDate = submission.getMetadata().getArticleMetadata().getEmbargoLiftDate()
+                .format(DateTimeFormatter.ISO_LOCAL_DATE);
+
+        xml.writeStartElement(DIM_NS_PREFIX, DIM, DIM_NS);
+        xml.writeNamespace(DIM_NS_PREFIX, DIM_NS);
+        writeNamespaces(xml, DIM_NS_PREFIX);
+
+        writeDimField(xml, DIM_MDSCHEMA_LOCAL, DIM_EMBARGO, DIM_EMBARGO_LIFT, formattedDate);
+        writeDimField(xml, DIM_MDSCHEMA_LOCAL, DIM_EMBARGO, DIM_EMBARGO_TERMS, formattedDate);
+        writeDimField(xml, DIM_MDSCHEMA_DC, DIM_DESCRIPTION, DIM_PROVENANCE,
+                String.format(EMBARGO_DESCRIPTION, formattedDate));
+
+        xml.writeEndElement();
+    }
+
+    private static void writeDimField(XMLStreamWriter xml, String mdschema, String element, String qualifier,
+                                      String value) throws XMLStreamException {
+        xml.writeStartElement(DIM_NS_PREFIX, DIM_FIELD, DIM_NS);
+        xml.writeAttribute(DIM_ELEMENT, element);
+        xml.writeAttribute(DIM_MDSCHEMA, mdschema);
+        xml.writeAttribute(DIM_QUALIFIER, qualifier);
+        xml.writeCharacters(value);
+        xml.writeEndElement();
+    }
+
+    /**
+     * Writes the {@code <fileSec>}, with a {@code <file>} for each resource, in the order the resources were added.
+     *
+     * @return the identifiers of the {@code <file>} elements, in document order
+     */
+    private List<String> writeFileSec(XMLStreamWriter xml) throws XMLStreamException {
+        List<String> fileIds = new ArrayList<>(resources.size());
+        if (resources.isEmpty()) {
+            return fileIds;
+        }
+
+        xml.writeStartElement(METS_FILESEC);
+        xml.writeAttribute(METS_ID, mintId());
+
+        xml.writeStartElement(METS_FILEGRP);
+        xml.writeAttribute(METS_ID, mintId());
+        xml.writeAttribute(METS_USE, CONTENT_USE);
+
+        for (PackageStream.Resource resource : resources) {
+            String fileId = mintId();
+            fileIds.add(fileId);
+
+            xml.writeStartElement(METS_FILE);
+            if (resource.checksum() != null) {
+                xml.writeAttribute(METS_CHECKSUM, resource.checksum().asHex());
+                xml.writeAttribute(METS_CHECKSUM_TYPE, resource.checksum().algorithm().name());
+            }
+            xml.writeAttribute(METS_ID, fileId);
+            if (resource.mimeType() != null && resource.mimeType().trim().length() > 0) {
+                xml.writeAttribute(METS_MIMETYPE, resource.mimeType());
+            }
+            if (resource.sizeBytes() > -1) {
+                xml.writeAttribute(METS_SIZE, String.valueOf(resource.sizeBytes()));
+            }
+
+            xml.writeStartElement(METS_FLOCAT);
+            xml.writeAttribute(METS_ID, mintId());
+            xml.writeAttribute(METS_LOCTYPE, LOCTYPE_URL);
+            xml.writeNamespace(XLINK_PREFIX, XLINK_NS);
+            xml.writeAttribute(XLINK_PREFIX, XLINK_NS, XLINK_HREF, resource.name());
+            xml.writeEndElement();
+
+            xml.writeEndElement();
+        }
+
+        xml.writeEndElement();
+        xml.writeEndElement();
+        return fileIds;
+    }
+
+    private void writeStructMap(XMLStreamWriter xml, List<String> dmdSecIds, List<String> fileIds)
+            throws XMLStreamException {
+        xml.writeStartElement(METS_STRUCTMAP);
+        xml.writeAttribute(METS_ID, mintId());
+        xml.writeAttribute(METS_LABEL, STRUCTMAP_LABEL);
+
+        xml.writeStartElement(METS_DIV);
+        xml.writeAttribute(METS_DMDID, String.join(" ", dmdSecIds));
+        xml.writeAttribute(METS_ID, mintId());
+        xml.writeAttribute(METS_LABEL, ITEM_DIV_LABEL);
+
+        for (String fileId : fileIds) {
+            xml.writeEmptyElement(METS_FPTR);
+            xml.writeAttribute(METS_FILEID, fileId);
+            xml.writeAttribute(METS_ID, mintId());
+        }
+
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    /**
+     * Declares the namespace prefixes of {@link XMLConstants#NS_TO_PREFIX_MAP}, and the {@code xsi} prefix, on the
+     * current element, in the same manner as {@link DspaceMetadataDomWriter#newRootElement}.
+     *
+     * @param xml the writer
+     * @param elementPrefix the prefix of the current element, which is already declared, may be {@code null}
+     */
+    private static void writeNamespaces(XMLStreamWriter xml, String elementPrefix) throws XMLStreamException {
+        xml.writeNamespace(XSI_NS_PREFIX, XSI_NS);
+        for (Map.Entry<String, String> nsToPrefix : XMLConstants.NS_TO_PREFIX_MAP.entrySet()) {
+            if (!nsToPrefix.getValue().equals(elementPrefix)) {
+                xml.writeNamespace(nsToPrefix.getValue(), nsToPrefix.getKey());
+            }
+        }
+    }
+
+    private static void writeElement(XMLStreamWriter xml, String prefix, String localName, String namespace,
+                                     String text) throws XMLStreamException {
+        xml.writeStartElement(prefix, localName, namespace);
+        if (text != null) {
+            xml.writeCharacters(text);
+        }
+        xml.writeEndElement();
+    }
+
+    private String mintId() {
+        return idSupplier.get();
+    }
+
+    @FunctionalInterface
+    private interface XmlWriterCallback {
+        void write() throws XMLStreamException;
+    }
+
+}
@@ -24,6 +24,7 @@ import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
 import org.dataconservancy.pass.deposit.assembler.shared.MetadataBuilderFactory;
 import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -58,6 +59,17 @@ public class DspaceMetsAssembler extends AbstractAssembler {
         this.metsWriterFactory = metsWriterFactory;
     }
 
+    /**
+     * The METS {@code CHECKSUM} of each file is its primary (i.e. first) checksum.
+     *
+     * @param digestAlgorithms the algorithm names
+     */
+    @Override
+    @Value("${pass.deposit.assembler.dspace.digests:MD5,SHA-256}")
+    public void setDigests(String digestAlgorithms) {
+        super.setDigests(digestAlgorithms);
+    }
+
     @Override
     protected PackageStream createPackageStream(DepositSubmission submission, List<DepositFileResource> custodialResources,
                                                 MetadataBuilder mb, ResourceBuilderFactory rbf) {
@@ -67,7 +79,8 @@ public class DspaceMetsAssembler extends AbstractAssembler {
         mb.compressed(true);
         mb.compression(PackageStream.COMPRESSION.ZIP);
         mb.mimeType(APPLICATION_ZIP);
-        return new DspaceMetsZippedPackageStream(submission, custodialResources, mb, rbf, metsWriterFactory);
+        return new DspaceMetsZippedPackageStream(submission, custodialResources, mb, rbf, metsWriterFactory,
+                getOptions());
     }
 
 }
@@ -17,6 +17,8 @@ package org.dataconservancy.pass.deposit.assembler.dspace.mets;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
@@ -37,17 +39,17 @@ public class DspaceMetsThreadedOutputStreamWriter extends AbstractThreadedOutput
 
     private static final String METS_XML = "mets.xml";
 
-    private DspaceMetadataDomWriter metsWriter;
+    private DspaceMetsWriter metsWriter;
 
     public DspaceMetsThreadedOutputStreamWriter(String threadName, ArchiveOutputStream archiveOut,
                                                 DepositSubmission submission,
                                                 List<DepositFileResource> packageFiles, ResourceBuilderFactory rbf,
                                                 MetadataBuilder metadataBuilder,
-                                                DspaceMetadataDomWriter metsWriter) {
+                                                DspaceMetsWriter metsWriter) {
         super(threadName, archiveOut, submission, packageFiles, rbf, metadataBuilder);
 
         if (metsWriter == null) {
-            throw new IllegalArgumentException("DspaceMetadataDomWriter must not be null.");
+            throw new IllegalArgumentException("DspaceMetsWriter must not be null.");
         }
         this.metsWriter = metsWriter;
     }
@@ -55,19 +57,27 @@ public class DspaceMetsThreadedOutputStreamWriter extends AbstractThreadedOutput
     @Override
     public void assembleResources(DepositSubmission submission, List<PackageStream.Resource> resources)
             throws IOException {
-        resources.forEach(r -> System.err.println(">>>> Got resource: " + r));
+        resources.forEach(r -> LOG.trace(">>>> Got resource: {}", r));
 
         // this is where we compose and write the METS xml to the ArchiveOutputStream
         resources.forEach(r -> metsWriter.addResource(r));
         metsWriter.addSubmission(submission);
 
-        ByteArrayOutputStream metsOut = new ByteArrayOutputStream();
-        metsWriter.write(metsOut);
-        ByteArrayInputStream metsIn = new ByteArrayInputStream(metsOut.toByteArray());
+        ArchiveEntry metsEntry = createEntry(METS_XML, -1);
 
-        ArchiveEntry metsEntry = createEntry(METS_XML, metsOut.size());
+        if (metsEntry instanceof TarArchiveEntry) {
+            // tar entries must be sized before they are written, so the METS xml is buffered
+            ByteArrayOutputStream metsOut = new ByteArrayOutputStream();
+            metsWriter.write(metsOut);
+            ((TarArchiveEntry) metsEntry).setSize(metsOut.size());
+            putResource(archiveOut, metsEntry, new ByteArrayInputStream(metsOut.toByteArray()));
+            return;
+        }
 
-        putResource(archiveOut, metsEntry, metsIn);
+        // zip entries may be written without a known size, so the METS xml is streamed directly into the entry
+        archiveOut.putArchiveEntry(metsEntry);
+        metsWriter.write(new CloseShieldOutputStream(archiveOut));
+        archiveOut.closeArchiveEntry();
     }
 
     /**
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.dspace.mets;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+
+import java.io.OutputStream;
+
+/**
+ * Composes the DSpace METS.xml for a package.  Resources are added first, followed by the submission, and then the
+ * METS.xml is written.  Instances are not thread-safe, and are used to compose a single METS.xml.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public interface DspaceMetsWriter {
+
+    /**
+     * Adds a {@link PackageStream.Resource resource} of the package to the METS.xml, as a {@code file} of the {@code
+     * CONTENT} {@code fileGrp}.
+     *
+     * @param resource the package resource
+     */
+    void addResource(PackageStream.Resource resource);
+
+    /**
+     * Adds the descriptive metadata of the submission to the METS.xml, along with a {@code structMap} linking the
+     * descriptive metadata to the resources.  Resources must be added before the submission.
+     *
+     * @param submission the submission
+     * @throws IllegalStateException if no resources have been added
+     */
+    void addSubmission(DepositSubmission submission);
+
+    /**
+     * Writes the METS.xml to the supplied {@code OutputStream}.  The stream is not closed.
+     *
+     * @param out the stream to write the METS.xml to
+     */
+    void write(OutputStream out);
+
+}
@@ -22,6 +22,7 @@ import org.dataconservancy.pass.deposit.model.DepositSubmission;
 import org.dataconservancy.pass.deposit.assembler.shared.AbstractZippedPackageStream;
 import org.dataconservancy.pass.deposit.assembler.shared.AbstractThreadedOutputStreamWriter;
 import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.dataconservancy.pass.deposit.assembler.shared.PackageStreamOptions;
 import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
 
 import java.util.List;
@@ -38,8 +39,16 @@ public class DspaceMetsZippedPackageStream extends AbstractZippedPackageStream {
                                          List<DepositFileResource> custodialResources,
                                          MetadataBuilder metadataBuilder, ResourceBuilderFactory rbf,
                                          DspaceMetadataDomWriterFactory metsWriterFactory) {
+        this(submission, custodialResources, metadataBuilder, rbf, metsWriterFactory, PackageStreamOptions.DEFAULTS);
+    }
+
+    public DspaceMetsZippedPackageStream(DepositSubmission submission,
+                                         List<DepositFileResource> custodialResources,
+                                         MetadataBuilder metadataBuilder, ResourceBuilderFactory rbf,
+                                         DspaceMetadataDomWriterFactory metsWriterFactory,
+                                         PackageStreamOptions options) {
 
-        super(custodialResources, metadataBuilder, rbf);
+        super(custodialResources, metadataBuilder, rbf, options);
 
         if (metsWriterFactory == null) {
             throw new IllegalArgumentException("METS writer must not be null.");
@@ -45,7 +45,7 @@ class DspaceDepositTestUtil {
     private static final Logger LOG = LoggerFactory.getLogger(DspaceDepositTestUtil.class);
 
     /**
-     * Invokes {@link DspaceMetadataDomWriter#write(OutputStream)}, and returns a {@link Document} containing the the
+     * Invokes {@link DspaceMetsWriter#write(OutputStream)}, and returns a {@link Document} containing the the
      * parsed output.  This allows the internals of the {@code DspaceMetadataDomWriter} to change (to using SAX, for
      * example), without this test depending on the internal XML parsing model used by the writer.
      *
@@ -56,7 +56,7 @@ class DspaceDepositTestUtil {
      * @throws IOException
      * @throws ParserConfigurationException
      */
-    static Document writeAndParseResults(DocumentBuilderFactory dbf, DspaceMetadataDomWriter underTest)
+    static Document writeAndParseResults(DocumentBuilderFactory dbf, DspaceMetsWriter underTest)
             throws SAXException, IOException, ParserConfigurationException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         underTest.write(out);
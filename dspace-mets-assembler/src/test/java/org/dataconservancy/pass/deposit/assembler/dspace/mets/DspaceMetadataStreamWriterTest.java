@@ -0,0 +1,209 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.dspace.mets;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositMetadata;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.NodeList;
+import org.xmlunit.builder.DiffBuilder;
+import org.xmlunit.diff.Diff;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLOutputFactory;
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_DMDID;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_DMDSEC;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_FILE;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_FILEID;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_GROUPID;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_ID;
+import static org.dataconservancy.pass.deposit.assembler.dspace.mets.XMLConstants.METS_NS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Insures the {@link DspaceMetadataStreamWriter} writes the same METS.xml as the {@link DspaceMetadataDomWriter}.
+ * <p>
+ * Element identifiers are random, so before the documents are compared each distinct identifier is replaced by a
+ * sequential identifier, in order of its first appearance in the document.  This preserves the links between
+ * elements (e.g. {@code FILEID} and {@code DMDID}) while allowing the documents to be compared.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class DspaceMetadataStreamWriterTest {
+
+    private static final List<String> ID_ATTRIBUTES = Arrays.asList(METS_ID, METS_GROUPID, METS_DMDID, METS_FILEID);
+
+    private DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+
+    private DspaceMetadataDomWriter domWriter;
+
+    private DspaceMetadataStreamWriter underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        dbf.setNamespaceAware(true);
+        domWriter = new DspaceMetadataDomWriter(dbf);
+        underTest = new DspaceMetadataStreamWriter(XMLOutputFactory.newInstance());
+    }
+
+    /**
+     * A submission with contributors, a DOI, an abstract, and an embargo, and resources with and without optional
+     * properties, results in the same METS.xml from both writers.
+     */
+    @Test
+    public void testSameAsDomWriter() throws Exception {
+        List<PackageStream.Resource> resources = Arrays.asList(
+                resource("data/manuscript.pdf", "application/pdf", 1234, "abcdef12345"),
+                resource("data/figure & table.tif", "image/tiff", 5678, "12345abcdef"),
+                resource("data/supplement.bin", null, -1, null));
+
+        DepositSubmission submission = submission(ZonedDateTime.now().plusDays(30), URI.create(
+                "https://dx.doi.org/10.1234/5678"));
+
+        assertSameMets(resources, submission);
+    }
+
+    /**
+     * A submission without an embargo or DOI has a single {@code dmdSec}, and results in the same METS.xml from both
+     * writers.
+     */
+    @Test
+    public void testSameAsDomWriterNoEmbargo() throws Exception {
+        List<PackageStream.Resource> resources = Arrays.asList(
+                resource("data/manuscript.txt", "text/plain", 72, "03ffb26edcf6efe77c8acfaefa5ceffb"));
+
+        DepositSubmission submission = submission(null, null);
+
+        assertSameMets(resources, submission);
+
+        Document result = DspaceDepositTestUtil.writeAndParseResults(dbf, underTest);
+        assertEquals(1, result.getElementsByTagNameNS(METS_NS, METS_DMDSEC).getLength());
+        assertEquals(1, result.getElementsByTagNameNS(METS_NS, METS_FILE).getLength());
+    }
+
+    /**
+     * Resources must be added before the submission, as they are for the {@link DspaceMetadataDomWriter}.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testAddSubmissionBeforeResources() throws Exception {
+        underTest.addSubmission(submission(null, null));
+    }
+
+    private void assertSameMets(List<PackageStream.Resource> resources, DepositSubmission submission)
+            throws Exception {
+        resources.forEach(r -> {
+            domWriter.addResource(r);
+            underTest.addResource(r);
+        });
+        domWriter.addSubmission(submission);
+        underTest.addSubmission(submission);
+
+        Document expected = normalizeIds(DspaceDepositTestUtil.writeAndParseResults(dbf, domWriter));
+        Document actual = normalizeIds(DspaceDepositTestUtil.writeAndParseResults(dbf, underTest));
+
+        Diff diff = DiffBuilder.compare(expected)
+                .withTest(actual)
+                .ignoreWhitespace()
+                .checkForSimilar()
+                .build();
+
+        assertFalse(diff.toString(), diff.hasDifferences());
+    }
+
+    /**
+     * Replaces each distinct identifier in the document with a sequential identifier, in document order.
+     */
+    private static Document normalizeIds(Document doc) {
+        Map<String, String> ids = new HashMap<>();
+        NodeList elements = doc.getElementsByTagNameNS(METS_NS, "*");
+        for (int i = 0; i < elements.getLength(); i++) {
+            NamedNodeMap attributes = elements.item(i).getAttributes();
+            for (int j = 0; j < attributes.getLength(); j++) {
+                Attr attr = (Attr) attributes.item(j);
+                if (attr.getNamespaceURI() == null && ID_ATTRIBUTES.contains(attr.getLocalName())) {
+                    attr.setValue(Arrays.stream(attr.getValue().split(" "))
+                            .map(id -> ids.computeIfAbsent(id, key -> "ID-" + ids.size()))
+                            .collect(Collectors.joining(" ")));
+                }
+            }
+        }
+        return doc;
+    }
+
+    private static PackageStream.Resource resource(String name, String mimeType, long sizeBytes, String md5) {
+        PackageStream.Resource resource = mock(PackageStream.Resource.class);
+        when(resource.name()).thenReturn(name);
+        when(resource.mimeType()).thenReturn(mimeType);
+        when(resource.sizeBytes()).thenReturn(sizeBytes);
+        if (md5 != null) {
+            PackageStream.Checksum checksum = mock(PackageStream.Checksum.class);
+            when(checksum.algorithm()).thenReturn(PackageStream.Algo.MD5);
+            when(checksum.asHex()).thenReturn(md5);
+            when(resource.checksum()).thenReturn(checksum);
+        }
+        return resource;
+    }
+
+    private static DepositSubmission submission(ZonedDateTime embargoLiftDate, URI doi) {
+        List<DepositMetadata.Person> persons = new ArrayList<>();
+        persons.add(person("Jane Doe", DepositMetadata.PERSON_TYPE.author));
+        persons.add(person("John Doe", DepositMetadata.PERSON_TYPE.pi));
+        persons.add(person("John Q Public", DepositMetadata.PERSON_TYPE.submitter));
+
+        DepositMetadata.Manuscript msMd = mock(DepositMetadata.Manuscript.class);
+        when(msMd.getTitle()).thenReturn("Two stupendous minds & <their> \"works\".");
+        when(msMd.getMsAbstract()).thenReturn("This is an abstract for the manuscript, provided by the submitter.");
+
+        DepositMetadata.Article artMd = mock(DepositMetadata.Article.class);
+        when(artMd.getEmbargoLiftDate()).thenReturn(embargoLiftDate);
+        when(artMd.getDoi()).thenReturn(doi);
+
+        DepositMetadata md = mock(DepositMetadata.class);
+        when(md.getPersons()).thenReturn(persons);
+        when(md.getManuscriptMetadata()).thenReturn(msMd);
+        when(md.getArticleMetadata()).thenReturn(artMd);
+
+        DepositSubmission submission = mock(DepositSubmission.class);
+        when(submission.getMetadata()).thenReturn(md);
+        return submission;
+    }
+
+    private static DepositMetadata.Person person(String name, DepositMetadata.PERSON_TYPE type) {
+        DepositMetadata.Person person = mock(DepositMetadata.Person.class);
+        when(person.getName()).thenReturn(name);
+        when(person.getType()).thenReturn(type);
+        return person;
+    }
+
+}
@@ -16,25 +16,66 @@
 
 package org.dataconservancy.pass.deposit.builder.fs;
 
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.deposit.builder.InvalidModel;
 import org.dataconservancy.pass.deposit.builder.SubmissionBuilder;
+import org.dataconservancy.pass.deposit.model.DepositFile;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.model.File;
 import org.dataconservancy.pass.model.PassEntity;
 import org.dataconservancy.pass.model.Submission;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Builds a submission from a file on a locally mounted filesystem.
  * The file contains JSON data representing PassEntity objects that have unique IDs and link to each other.
  * The file must contain a single Submission object, which is the root of the data tree for a deposit.
+ * <p>
+ * When {@link #setDescribeFiles(boolean) enabled}, the digests of each File of the submission are obtained from
+ * Fedora with a {@code HEAD} request, asking for the digests with a {@code Want-Digest} header, and recorded on its
+ * {@code DepositFile}.  The request is made once per submission with the {@link #setHttpClient(OkHttpClient) supplied
+ * client}, which is responsible for authenticating to Fedora.  The assemblers of each repository receiving the
+ * submission use the declared digests instead of computing them, unless they are configured to verify them.  The size
+ * of a File is not requested: it is taken from the File entity where the entity carries one, and otherwise counted by
+ * the assemblers as the file is packaged.
+ * </p>
  *
  * @author Ben Trumbore (wbt3@cornell.edu)
  */
 public class FcrepoModelBuilder extends ModelBuilder implements SubmissionBuilder {
 
+    private static final Logger LOG = LoggerFactory.getLogger(FcrepoModelBuilder.class);
+
+    static final String WANT_DIGEST = "md5, sha-256, sha-512";
+
+    private static final Map<String, String> DIGEST_ALGORITHMS = new HashMap<String, String>() {
+        {
+            put("md5", "MD5");
+            put("sha", "SHA-1");
+            put("sha-256", "SHA-256");
+            put("sha-512", "SHA-512");
+        }
+    };
+
+    private boolean describeFiles = false;
+
+    private OkHttpClient httpClient;
+
+    private PassClient passClient;
+
     /***
      * Build a DepositSubmission from the JSON data in named file.
      * @param formDataUrl url to the local file containing the JSON data
@@ -44,7 +85,8 @@ public class FcrepoModelBuilder extends ModelBuilder implements SubmissionBuilde
     @Override
     public DepositSubmission build(String formDataUrl) throws InvalidModel {
         try {
-            PassJsonFedoraAdapter reader = new PassJsonFedoraAdapter();
+            PassJsonFedoraAdapter reader =
+                    passClient != null ? new PassJsonFedoraAdapter(passClient) : new PassJsonFedoraAdapter();
             HashMap<URI, PassEntity> entities = new HashMap<>();
             Submission submissionEntity = reader.fcrepoToPass(new URI(formDataUrl), entities);
             return createDepositSubmission(submissionEntity, entities);
@@ -53,4 +95,117 @@ public class FcrepoModelBuilder extends ModelBuilder implements SubmissionBuilde
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Issues a {@code HEAD} request for the binary content of the File, recording any digests in the {@code Digest}
+     * header of the response.  Failures are logged and otherwise ignored: the File is then packaged without declared
+     * digests.
+     * </p>
+     */
+    @Override
+    protected void describeFile(File file, DepositFile depositFile) {
+        if (!describeFiles || httpClient == null || file.getUri() == null || file.getUri().getScheme() == null ||
+                !file.getUri().getScheme().startsWith("http")) {
+            return;
+        }
+
+        Request head = new Request.Builder()
+                .head()
+                .url(file.getUri().toString())
+                .header("Want-Digest", WANT_DIGEST)
+                .build();
+
+        try (Response res = httpClient.newCall(head).execute()) {
+            if (res.code() != 200) {
+                LOG.debug("Unable to describe File {}: HEAD {} returned {}", file.getId(), file.getUri(), res.code());
+                return;
+            }
+
+            parseDigests(res.header("Digest")).forEach(depositFile::addDigest);
+            LOG.trace(">>>> Described File {}: {}", file.getId(), depositFile);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Unable to describe File {}: {}", file.getId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses the value of an RFC 3230 {@code Digest} header, e.g. {@code md5=HUXZLQLMuI/KZ5KDcJPcOA==,sha=...}.
+     * Digest values are base64-encoded according to the RFC, although some versions of Fedora encode them as hex;
+     * both are accepted.  Digests using unknown algorithms are ignored.
+     *
+     * @param header the value of the header, may be {@code null}
+     * @return hex-encoded digests keyed by the standard name of their algorithm
+     */
+    static Map<String, String> parseDigests(String header) {
+        Map<String, String> digests = new LinkedHashMap<>();
+        if (header == null) {
+            return digests;
+        }
+
+        for (String instance : header.split(",")) {
+            int eq = instance.indexOf('=');
+            if (eq < 1) {
+                continue;
+            }
+
+            String algorithm = DIGEST_ALGORITHMS.get(instance.substring(0, eq).trim().toLowerCase(Locale.ENGLISH));
+            String value = instance.substring(eq + 1).trim();
+            if (algorithm == null || value.isEmpty()) {
+                continue;
+            }
+
+            try {
+                digests.put(algorithm, value.matches("[0-9a-fA-F]+") && value.length() % 2 == 0 &&
+                        value.length() >= 32 ? value.toLowerCase(Locale.ENGLISH) : hex(Base64.getDecoder()
+                        .decode(value)));
+            } catch (IllegalArgumentException e) {
+                LOG.debug("Ignoring malformed {} digest '{}'", algorithm, value);
+            }
+        }
+
+        return digests;
+    }
+
+    /**
+     * Whether the digests of each File are obtained from Fedora when the submission is built.
+     *
+     * @return true if Files are described
+     */
+    public boolean isDescribeFiles() {
+        return describeFiles;
+    }
+
+    public void setDescribeFiles(boolean describeFiles) {
+        this.describeFiles = describeFiles;
+    }
+
+    /**
+     * The client used to describe Files.  The client is expected to authenticate to Fedora; Files are not described
+     * without a client.
+     *
+     * @param httpClient the client
+     */
+    public void setHttpClient(OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * The client used to read the resources of the submission; by default, the client of the {@code
+     * PassClientFactory} is used.
+     *
+     * @param passClient the client
+     */
+    public void setPassClient(PassClient passClient) {
+        this.passClient = passClient;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
 }
@@ -358,6 +358,8 @@ abstract class ModelBuilder {
                     // TODO - The client model currently only has "manuscript" and "supplement" roles.
                     depositFile.setType(getTypeForRole(file.getFileRole()));
                     depositFile.setLabel(file.getDescription());
+                    depositFile.setMimeType(file.getMimeType());
+                    describeFile(file, depositFile);
                     files.add(depositFile);
                 }
             }
@@ -366,6 +368,18 @@ abstract class ModelBuilder {
         return submission;
     }
 
+    /**
+     * Allows sub-classes to record the size and known digests of a file on its {@code DepositFile}, so that the
+     * assemblers need not probe the file for its length, or digest it, when it is packaged.  This implementation
+     * does nothing: the {@code File} entity does not carry a size or digests.
+     *
+     * @param file the File entity
+     * @param depositFile the DepositFile being populated from the entity
+     */
+    protected void describeFile(File file, DepositFile depositFile) {
+        // no-op
+    }
+
     private DepositFileType getTypeForRole(File.FileRole role) {
         if (role.equals(File.FileRole.SUPPLEMENTAL)) {
             return DepositFileType.supplement;
@@ -73,6 +73,24 @@ public class PassJsonFedoraAdapter {
 
     private static final Logger LOG = LoggerFactory.getLogger(PassJsonFedoraAdapter.class);
 
+    private final PassClient passClient;
+
+    /**
+     * Reads and writes Fedora resources with the client of the {@code PassClientFactory}.
+     */
+    public PassJsonFedoraAdapter() {
+        this(null);
+    }
+
+    /**
+     * Reads and writes Fedora resources with the supplied client, e.g. one caching slow-changing entities.
+     *
+     * @param passClient the client, or {@code null} to use the client of the {@code PassClientFactory}
+     */
+    public PassJsonFedoraAdapter(PassClient passClient) {
+        this.passClient = passClient;
+    }
+
     /**
      * Extract PassEntity data from a JSON input stream and fill a collection of PassEntity objects.
      * @param is the input stream carrying the JSON data.
@@ -191,7 +209,7 @@ public class PassJsonFedoraAdapter {
      * @return the URI on the Fedora server of the newly created Submission resource.
      */
     public URI passToFcrepo(HashMap<URI, PassEntity> entities) {
-        PassClient client = PassClientFactory.getPassClient();
+        PassClient client = client();
         HashMap<URI, URI> uriMap = new HashMap<>();
         URI submissionUri = null;
 
@@ -355,7 +373,7 @@ public class PassJsonFedoraAdapter {
      * @return the Submission entity that corresponds to the provided URI.
      */
     public Submission fcrepoToPass(URI submissionUri, HashMap<URI, PassEntity> entities) {
-        PassClient client = PassClientFactory.getPassClient();
+        PassClient client = client();
 
         Submission submission = client.readResource(submissionUri, Submission.class);
         entities.put(submissionUri, submission);
@@ -487,10 +505,14 @@ public class PassJsonFedoraAdapter {
      * @param entities
      */
     public void deleteFromFcrepo(HashMap<URI, PassEntity> entities) {
-        PassClient client = PassClientFactory.getPassClient();
+        PassClient client = client();
         for (URI key : entities.keySet()) {
             PassEntity entity = entities.get(key);
             client.deleteResource(entity.getId());
         }
     }
+
+    private PassClient client() {
+        return passClient != null ? passClient : PassClientFactory.getPassClient();
+    }
 }
\ No newline at end of file
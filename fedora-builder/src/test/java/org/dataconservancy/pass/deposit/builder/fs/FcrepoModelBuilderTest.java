@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.builder.fs;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.dataconservancy.pass.model.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class FcrepoModelBuilderTest {
+
+    private static final String MD5_HEX = "1d45d92d02cc8b8fca6792837093dc38";
+
+    private static final String MD5_BASE64 = "HUXZLQLMi4/KZ5KDcJPcOA==";
+
+    private HttpServer server;
+
+    private AtomicReference<String> wantDigest = new AtomicReference<>();
+
+    private FcrepoModelBuilder underTest = new FcrepoModelBuilder();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/binary", exchange -> {
+            wantDigest.set(exchange.getRequestHeaders().getFirst("Want-Digest"));
+            exchange.getResponseHeaders().add("Digest", "md5=" + MD5_BASE64 + ",sha=" +
+                    "f1d2d2f924e986ac86fdf7b36c94bcdf32beec15");
+            exchange.getResponseHeaders().add("Content-Length", "1234");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        underTest.setHttpClient(new OkHttpClient());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    /**
+     * Base64 and hex encoded digests are both accepted, and digests using unknown algorithms are ignored.
+     */
+    @Test
+    public void testParseDigests() throws Exception {
+        Map<String, String> digests = FcrepoModelBuilder.parseDigests(
+                "md5=" + MD5_BASE64 + ", SHA=f1d2d2f924e986ac86fdf7b36c94bcdf32beec15, unixsum=1234");
+
+        assertEquals(2, digests.size());
+        assertEquals(MD5_HEX, digests.get("MD5"));
+        assertEquals("f1d2d2f924e986ac86fdf7b36c94bcdf32beec15", digests.get("SHA-1"));
+
+        assertTrue(FcrepoModelBuilder.parseDigests(null).isEmpty());
+        assertTrue(FcrepoModelBuilder.parseDigests("md5=not base64!").isEmpty());
+    }
+
+    /**
+     * When enabled, the digests of a File are obtained with a HEAD request asking for them.  The size is not taken
+     * from the response.
+     */
+    @Test
+    public void testDescribeFile() throws Exception {
+        underTest.setDescribeFiles(true);
+        DepositFile depositFile = new DepositFile();
+
+        underTest.describeFile(file(), depositFile);
+
+        assertEquals(FcrepoModelBuilder.WANT_DIGEST, wantDigest.get());
+        assertEquals(-1, depositFile.getSize());
+        assertEquals(MD5_HEX, depositFile.getDigests().get("MD5"));
+        assertEquals("f1d2d2f924e986ac86fdf7b36c94bcdf32beec15", depositFile.getDigests().get("SHA-1"));
+    }
+
+    /**
+     * By default Files are not described.
+     */
+    @Test
+    public void testDescribeFileDisabled() throws Exception {
+        DepositFile depositFile = new DepositFile();
+
+        underTest.describeFile(file(), depositFile);
+
+        assertEquals(-1, depositFile.getSize());
+        assertTrue(depositFile.getDigests().isEmpty());
+        assertEquals(null, wantDigest.get());
+    }
+
+    private File file() {
+        File file = new File();
+        file.setUri(URI.create("http://localhost:" + server.getAddress().getPort() + "/binary"));
+        return file;
+    }
+
+}
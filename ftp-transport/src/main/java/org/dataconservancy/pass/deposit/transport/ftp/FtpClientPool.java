@@ -0,0 +1,497 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.transport.ftp;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.lang.Integer.toHexString;
+import static java.lang.System.identityHashCode;
+
+/**
+ * Pools {@link FTPClient}s that are connected and logged in to an FTP server, so that opening a transport session does
+ * not pay for connecting, authenticating and setting the transfer mode each time.
+ * <p>
+ * Clients are pooled by {@link Key}: the server, port, credentials and transfer mode used to open them.  A client
+ * {@link #borrow(Key, Supplier) borrowed} from the pool is leased to a single session until it is {@link
+ * #release(FTPClient) released} back to the pool or {@link #invalidate(FTPClient) invalidated}.  An idle client is
+ * validated with a {@code NOOP} before it is leased again; clients that fail validation are disconnected and replaced
+ * with a newly opened client.
+ * </p>
+ * <p>
+ * At most {@link #setMaxPerHost(int) max-per-host} clients, leased or idle, are connected to the same server and
+ * port.  When that many clients are connected, borrowing a client evicts an idle client opened with another key, or
+ * otherwise waits up to {@link #setMaxWaitMs(long) max-wait-ms} for a leased client to be returned.  Idle clients are
+ * disconnected once they have been idle for {@link #setMaxIdleMs(long) max-idle-ms}, before the FTP server times them
+ * out; a {@code max-idle-ms} of {@code 0} disables pooling, and clients are disconnected as soon as they are released.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@Component
+public class FtpClientPool implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FtpClientPool.class);
+
+    private static final long MIN_EVICTION_INTERVAL_MS = 1000;
+
+    private int maxPerHost = 4;
+
+    private long maxIdleMs = 60000;
+
+    private long maxWaitMs = 60000;
+
+    /**
+     * Idle clients by key, most recently released first
+     */
+    private final Map<Key, Deque<PooledClient>> idle = new HashMap<>();
+
+    /**
+     * Leased clients, by identity
+     */
+    private final Map<FTPClient, PooledClient> leased = new IdentityHashMap<>();
+
+    /**
+     * The number of clients, leased or idle, connected to each server and port
+     */
+    private final Map<String, Integer> connected = new HashMap<>();
+
+    private ScheduledFuture<?> evictor;
+
+    private boolean closed = false;
+
+    /**
+     * Leases a client opened with the supplied key.  An idle client is leased if one passes validation, otherwise a
+     * client is opened using {@code opener}.
+     *
+     * @param key identifies the server, credentials and transfer mode of the client
+     * @param opener opens a new client that is connected and logged in using the key
+     * @return a leased client, which must be {@link #release(FTPClient) released} or {@link #invalidate(FTPClient)
+     *         invalidated} by the caller
+     * @throws RuntimeException if a client cannot be opened, or no client is available within {@code max-wait-ms}
+     */
+    public FTPClient borrow(Key key, Supplier<FTPClient> opener) {
+        long deadline = System.currentTimeMillis() + maxWaitMs;
+
+        while (true) {
+            PooledClient candidate = null;
+            List<PooledClient> evicted = new ArrayList<>();
+            boolean open = false;
+
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("FTP client pool has been closed.");
+                }
+
+                evictExpired(evicted);
+
+                Deque<PooledClient> idleForKey = idle.get(key);
+                if (idleForKey != null && !idleForKey.isEmpty()) {
+                    candidate = idleForKey.pollFirst();
+                    leased.put(candidate.client, candidate);
+                } else if (connected.getOrDefault(key.host(), 0) < maxPerHost) {
+                    connected.merge(key.host(), 1, Integer::sum);
+                    open = true;
+                } else {
+                    PooledClient other = evictIdle(key.host());
+                    if (other != null) {
+                        evicted.add(other);
+                    } else {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            throw new RuntimeException("Timed out after " + maxWaitMs + " ms waiting for a " +
+                                    "connection to " + key.host() + " (" + maxPerHost + " connections in use)");
+                        }
+                        try {
+                            wait(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RuntimeException("Interrupted waiting for a connection to " + key.host(), e);
+                        }
+                    }
+                }
+            }
+
+            evicted.forEach(FtpClientPool::disconnectQuietly);
+
+            if (candidate != null) {
+                if (validate(candidate.client)) {
+                    LOG.debug("Leased pooled FTP client {}@{} for {}", candidate.client.getClass().getSimpleName(),
+                            toHexString(identityHashCode(candidate.client)), key);
+                    return candidate.client;
+                }
+                LOG.debug("Pooled FTP client {}@{} for {} failed validation, discarding it",
+                        candidate.client.getClass().getSimpleName(),
+                        toHexString(identityHashCode(candidate.client)), key);
+                invalidate(candidate.client);
+                continue;
+            }
+
+            if (open) {
+                FTPClient client;
+                try {
+                    client = opener.get();
+                } catch (RuntimeException e) {
+                    discard(key);
+                    throw e;
+                }
+
+                synchronized (this) {
+                    leased.put(client, new PooledClient(key, client));
+                }
+                return client;
+            }
+        }
+    }
+
+    /**
+     * Returns a leased client to the pool, so it may be leased again.  The client is disconnected instead if it is no
+     * longer connected, if pooling is disabled, or if the pool has been closed.  Clients that were not leased from this
+     * pool are ignored.
+     *
+     * @param client a client leased from this pool
+     */
+    public void release(FTPClient client) {
+        PooledClient pooled;
+        boolean keep;
+
+        synchronized (this) {
+            pooled = leased.remove(client);
+            if (pooled == null) {
+                return;
+            }
+
+            keep = !closed && maxIdleMs > 0 && client.isConnected();
+
+            if (keep) {
+                pooled.idleSince = System.currentTimeMillis();
+                idle.computeIfAbsent(pooled.key, k -> new ArrayDeque<>()).addFirst(pooled);
+                scheduleEviction();
+            } else {
+                decrement(pooled.key.host());
+            }
+
+            notifyAll();
+        }
+
+        if (!keep) {
+            disconnectQuietly(pooled);
+        }
+    }
+
+    /**
+     * Disconnects a leased client, and removes it from the pool.  Used when the state of the client is unknown, e.g.
+     * after a transfer was interrupted.  Clients that were not leased from this pool are ignored.
+     *
+     * @param client a client leased from this pool
+     */
+    public void invalidate(FTPClient client) {
+        PooledClient pooled;
+
+        synchronized (this) {
+            pooled = leased.remove(client);
+            if (pooled == null) {
+                return;
+            }
+            decrement(pooled.key.host());
+            notifyAll();
+        }
+
+        disconnectQuietly(pooled);
+    }
+
+    /**
+     * Disconnects idle clients that have been idle for longer than {@code max-idle-ms}.
+     */
+    public void evictIdle() {
+        List<PooledClient> evicted = new ArrayList<>();
+        synchronized (this) {
+            evictExpired(evicted);
+        }
+        evicted.forEach(FtpClientPool::disconnectQuietly);
+    }
+
+    /**
+     * Disconnects every idle client.  Leased clients are disconnected when they are released.
+     */
+    @Override
+    public void close() {
+        List<PooledClient> evicted = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            if (evictor != null) {
+                evictor.cancel(false);
+                evictor = null;
+            }
+            idle.values().forEach(evicted::addAll);
+            idle.clear();
+            evicted.forEach(pooled -> decrement(pooled.key.host()));
+            notifyAll();
+        }
+        evicted.forEach(FtpClientPool::disconnectQuietly);
+    }
+
+    /**
+     * @return the number of idle clients in the pool
+     */
+    public synchronized int idleCount() {
+        return idle.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    /**
+     * @return the number of clients leased from the pool
+     */
+    public synchronized int leasedCount() {
+        return leased.size();
+    }
+
+    public int getMaxPerHost() {
+        return maxPerHost;
+    }
+
+    @Value("${pass.deposit.transport.ftp.pool.max-per-host:4}")
+    public void setMaxPerHost(int maxPerHost) {
+        if (maxPerHost < 1) {
+            throw new IllegalArgumentException("Maximum connections per host must be a positive integer.");
+        }
+        this.maxPerHost = maxPerHost;
+    }
+
+    public long getMaxIdleMs() {
+        return maxIdleMs;
+    }
+
+    @Value("${pass.deposit.transport.ftp.pool.max-idle-ms:60000}")
+    public void setMaxIdleMs(long maxIdleMs) {
+        if (maxIdleMs < 0) {
+            throw new IllegalArgumentException("Maximum idle time must not be negative.");
+        }
+        this.maxIdleMs = maxIdleMs;
+    }
+
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    @Value("${pass.deposit.transport.ftp.pool.max-wait-ms:60000}")
+    public void setMaxWaitMs(long maxWaitMs) {
+        if (maxWaitMs < 0) {
+            throw new IllegalArgumentException("Maximum wait time must not be negative.");
+        }
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    /**
+     * Answers whether the client is still connected and logged in, by issuing a {@code NOOP}.
+     */
+    private static boolean validate(FTPClient client) {
+        try {
+            return client.isConnected() && client.sendNoOp();
+        } catch (IOException e) {
+            LOG.trace("NOOP failed for {}@{}: {}", client.getClass().getSimpleName(),
+                    toHexString(identityHashCode(client)), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private synchronized void discard(Key key) {
+        decrement(key.host());
+        notifyAll();
+    }
+
+    private void evictExpired(List<PooledClient> evicted) {
+        long expiry = System.currentTimeMillis() - maxIdleMs;
+        Iterator<Deque<PooledClient>> deques = idle.values().iterator();
+        while (deques.hasNext()) {
+            Deque<PooledClient> deque = deques.next();
+            // The least recently released clients are at the end of each deque
+            while (!deque.isEmpty() && deque.peekLast().idleSince <= expiry) {
+                PooledClient pooled = deque.pollLast();
+                decrement(pooled.key.host());
+                evicted.add(pooled);
+            }
+            if (deque.isEmpty()) {
+                deques.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently released idle client connected to the supplied host, if any.
+     */
+    private PooledClient evictIdle(String host) {
+        PooledClient oldest = null;
+        for (Deque<PooledClient> deque : idle.values()) {
+            PooledClient candidate = deque.peekLast();
+            if (candidate != null && candidate.key.host().equals(host) &&
+                    (oldest == null || candidate.idleSince < oldest.idleSince)) {
+                oldest = candidate;
+            }
+        }
+
+        if (oldest != null) {
+            Deque<PooledClient> deque = idle.get(oldest.key);
+            deque.pollLast();
+            if (deque.isEmpty()) {
+                idle.remove(oldest.key);
+            }
+            decrement(host);
+        }
+
+        return oldest;
+    }
+
+    private void decrement(String host) {
+        connected.computeIfPresent(host, (h, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void scheduleEviction() {
+        if (evictor != null) {
+            return;
+        }
+        long interval = Math.max(MIN_EVICTION_INTERVAL_MS, maxIdleMs / 2);
+        evictor = Holder.EVICTOR.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private static void disconnectQuietly(PooledClient pooled) {
+        LOG.debug("Disconnecting pooled FTP client {}@{} for {}", pooled.client.getClass().getSimpleName(),
+                toHexString(identityHashCode(pooled.client)), pooled.key);
+        try {
+            if (pooled.client.isConnected()) {
+                pooled.client.logout();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.trace("Error logging out FTP client {}@{}: {}", pooled.client.getClass().getSimpleName(),
+                    toHexString(identityHashCode(pooled.client)), e.getMessage(), e);
+        } finally {
+            // the client may have failed validation because the server closed the connection, which fails the logout
+            try {
+                pooled.client.disconnect();
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("Error disconnecting FTP client {}@{}: {}", pooled.client.getClass().getSimpleName(),
+                        toHexString(identityHashCode(pooled.client)), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Identifies the clients that may be shared by transport sessions: those connected to the same server and port,
+     * logged in as the same user, and using the same transfer mode.
+     */
+    public static class Key {
+
+        private final String serverName;
+
+        private final int serverPort;
+
+        private final String username;
+
+        private final String password;
+
+        private final String transferMode;
+
+        public Key(String serverName, int serverPort, String username, String password, String transferMode) {
+            this.serverName = serverName;
+            this.serverPort = serverPort;
+            this.username = username;
+            this.password = password;
+            this.transferMode = transferMode;
+        }
+
+        /**
+         * @return the server and port, used to limit the number of connections per server
+         */
+        String host() {
+            return serverName + ":" + serverPort;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return serverPort == key.serverPort &&
+                    Objects.equals(serverName, key.serverName) &&
+                    Objects.equals(username, key.username) &&
+                    Objects.equals(password, key.password) &&
+                    Objects.equals(transferMode, key.transferMode);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serverName, serverPort, username, password, transferMode);
+        }
+
+        @Override
+        public String toString() {
+            // the password is deliberately omitted
+            return "Key{" + "server='" + serverName + ':' + serverPort + '\'' + ", username='" + username + '\'' +
+                    ", transferMode='" + transferMode + '\'' + '}';
+        }
+    }
+
+    private static class PooledClient {
+
+        private final Key key;
+
+        private final FTPClient client;
+
+        private long idleSince;
+
+        private PooledClient(Key key, FTPClient client) {
+            this.key = key;
+            this.client = client;
+        }
+    }
+
+    private static class Holder {
+        private static final ScheduledThreadPoolExecutor EVICTOR;
+
+        static {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "Ftp-Pool-Evictor");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            EVICTOR = executor;
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.transport.ftp;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.dataconservancy.pass.deposit.transport.ftp.FtpUtil.PATH_SEP;
+
+/**
+ * Remembers the directories known to exist on each FTP server, so that changing into a directory that has already been
+ * created is a single {@code CWD}, rather than a {@code MKD}, {@code CWD} and {@code PWD} for each of its path
+ * segments.
+ * <p>
+ * Directories are remembered by their absolute path, for {@link #setTtlMs(long) ttl-ms} after they were last created
+ * or changed into.  A directory is forgotten as soon as the FTP server replies {@code 550} to a command using it (e.g.
+ * it was removed on the server), and is then created again.  A {@code ttl-ms} of {@code 0} disables the cache.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@Component
+public class FtpDirectoryCache {
+
+    /**
+     * Expired directories are pruned when a server has more than this many directories
+     */
+    private static final int PRUNE_THRESHOLD = 256;
+
+    private final Map<String, Directories> servers = new ConcurrentHashMap<>();
+
+    private long ttlMs = 600000;
+
+    /**
+     * The directories known to exist on a server, as seen by a user.
+     *
+     * @param serverName the FTP server
+     * @param serverPort the FTP control port
+     * @param username the user logged in to the server, whose view of the server may differ from other users
+     * @return the directories of the server
+     */
+    public Directories forServer(String serverName, int serverPort, String username) {
+        return servers.computeIfAbsent(username + "@" + serverName + ":" + serverPort, key -> new Directories());
+    }
+
+    public long getTtlMs() {
+        return ttlMs;
+    }
+
+    @Value("${pass.deposit.transport.ftp.dir-cache-ttl-ms:600000}")
+    public void setTtlMs(long ttlMs) {
+        if (ttlMs < 0) {
+            throw new IllegalArgumentException("Directory cache TTL must not be negative.");
+        }
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * The absolute paths of directories known to exist on a single server.
+     */
+    public class Directories {
+
+        private final Map<String, Long> expiries = new ConcurrentHashMap<>();
+
+        private Directories() {
+        }
+
+        /**
+         * @param path an absolute path
+         * @return {@code true} if the directory is known to exist
+         */
+        public boolean exists(String path) {
+            Long expiry = expiries.get(normalize(path));
+            return expiry != null && expiry > System.currentTimeMillis();
+        }
+
+        /**
+         * The longest path, among the supplied path and its ancestors, that is known to exist.
+         *
+         * @param path an absolute path
+         * @return the existing path, or {@code null} if none of the path is known to exist
+         */
+        public String existingAncestor(String path) {
+            String candidate = normalize(path);
+            while (candidate.length() > 0) {
+                if (exists(candidate)) {
+                    return candidate;
+                }
+                int sep = candidate.lastIndexOf(PATH_SEP);
+                candidate = sep > 0 ? candidate.substring(0, sep) : "";
+            }
+            return null;
+        }
+
+        /**
+         * Records that the directory, and therefore each of its ancestors, exists.
+         *
+         * @param path an absolute path
+         */
+        public void put(String path) {
+            if (ttlMs == 0) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            if (expiries.size() > PRUNE_THRESHOLD) {
+                expiries.values().removeIf(expiry -> expiry <= now);
+            }
+
+            String candidate = normalize(path);
+            while (candidate.length() > 0) {
+                expiries.put(candidate, now + ttlMs);
+                int sep = candidate.lastIndexOf(PATH_SEP);
+                candidate = sep > 0 ? candidate.substring(0, sep) : "";
+            }
+        }
+
+        /**
+         * Forgets the directory, and each of its descendants.
+         *
+         * @param path an absolute path
+         */
+        public void invalidate(String path) {
+            String normalized = normalize(path);
+            expiries.keySet().removeIf(candidate ->
+                    candidate.equals(normalized) || candidate.startsWith(normalized + PATH_SEP));
+        }
+
+    }
+
+    /**
+     * Collapses repeated separators, and removes any trailing separator, so that the root directory is the empty
+     * string.
+     *
+     * @param path a path
+     * @return the normalized path
+     */
+    static String normalize(String path) {
+        String normalized = path.trim().replaceAll(PATH_SEP + "+", PATH_SEP);
+        while (normalized.endsWith(PATH_SEP)) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+}
@@ -16,16 +16,21 @@
 package org.dataconservancy.pass.deposit.transport.ftp;
 
 import org.apache.commons.net.ftp.FTPClient;
+import org.dataconservancy.pass.deposit.transport.TransferFuture;
 import org.dataconservancy.pass.deposit.transport.Transport;
 import org.dataconservancy.pass.deposit.transport.TransportSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static java.lang.Integer.toHexString;
 import static java.lang.System.identityHashCode;
@@ -44,6 +49,21 @@ import static org.dataconservancy.pass.deposit.transport.ftp.FtpUtil.setWorkingD
  * </ol>
  * In other words, a caller executing a {@link FtpTransport#open(Map)} will receive a {@link FtpTransportSession} that
  * is connected, logged in, and set to a certain working directory.
+ * <p>
+ * When the transport is constructed with an {@link FtpClientPool}, the {@code FTPClient} underlying a session is
+ * borrowed from the pool, and returned to the pool when the session is closed.  Only the first session opened with a
+ * given server, port, user, password and transfer mode connects, logs in and sets the transfer mode; subsequent sessions
+ * re-use a pooled client, and only change into the base working directory.
+ * </p>
+ * <p>
+ * When the transport is constructed with an {@link FtpDirectoryCache}, directories created on a server, whether the
+ * base working directory or a directory named by a package, are remembered; subsequent sessions change into them with a
+ * single {@code CWD} instead of creating each segment of their path.
+ * </p>
+ * <p>
+ * Sessions opened by the transport perform their transfers on an executor shared by the transport, which performs at
+ * most {@link #setMaxTransfers(int) max-transfers} transfers at once.
+ * </p>
  *
  * Hints accepted by this transport are:
  * <dl>
@@ -72,15 +92,64 @@ public class FtpTransport implements Transport {
 
     private FtpClientFactory ftpClientFactory;
 
+    private FtpClientPool ftpClientPool;
+
+    private FtpDirectoryCache directoryCache;
+
+    /**
+     * The working directory of pooled clients after logging in, by pool key
+     */
+    private final Map<FtpClientPool.Key, String> homeDirectories = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum number of concurrent transfers, unless {@link #setMaxTransfers(int) configured}
+     */
+    static final int DEFAULT_MAX_TRANSFERS = 8;
+
+    /**
+     * Performs the transfers of sessions opened by this transport
+     */
+    private final ThreadPoolExecutor transferExecutor =
+            TransferFuture.newExecutor("Ftp-Transfer", DEFAULT_MAX_TRANSFERS);
+
     /**
      * Constructs a new FtpTransport with the supplied {@link FtpClientFactory}.  The client factory is used to create
-     * instances of {@link FTPClient} that underly {@link #open(Map) opened sessions}.
+     * instances of {@link FTPClient} that underly {@link #open(Map) opened sessions}.  Each session uses a new client,
+     * which is disconnected when the session is closed.
      *
      * @param ftpClientFactory used to create instances of {@link FTPClient}
      */
-    @Autowired
     public FtpTransport(FtpClientFactory ftpClientFactory) {
+        this(ftpClientFactory, null);
+    }
+
+    /**
+     * Constructs a new FtpTransport with the supplied {@link FtpClientFactory} and {@link FtpClientPool}.  Sessions
+     * borrow logged-in clients from the pool, and the client factory is used to create instances of {@link FTPClient}
+     * when the pool has none to lend.
+     *
+     * @param ftpClientFactory used to create instances of {@link FTPClient}
+     * @param ftpClientPool pools logged-in clients between sessions, may be {@code null} to disable pooling
+     */
+    public FtpTransport(FtpClientFactory ftpClientFactory, FtpClientPool ftpClientPool) {
+        this(ftpClientFactory, ftpClientPool, null);
+    }
+
+    /**
+     * Constructs a new FtpTransport with the supplied {@link FtpClientFactory}, {@link FtpClientPool} and {@link
+     * FtpDirectoryCache}.
+     *
+     * @param ftpClientFactory used to create instances of {@link FTPClient}
+     * @param ftpClientPool pools logged-in clients between sessions, may be {@code null} to disable pooling
+     * @param directoryCache remembers the directories created on each server, may be {@code null} to create
+     *                       directories for each session
+     */
+    @Autowired
+    public FtpTransport(FtpClientFactory ftpClientFactory, FtpClientPool ftpClientPool,
+                        FtpDirectoryCache directoryCache) {
         this.ftpClientFactory = ftpClientFactory;
+        this.ftpClientPool = ftpClientPool;
+        this.directoryCache = directoryCache;
     }
 
     /**
@@ -94,7 +163,47 @@ public class FtpTransport implements Transport {
      */
     @Override
     public TransportSession open(Map<String, String> hints) {
-        return open(ftpClientFactory.newInstance(hints), hints);
+        if (ftpClientPool == null) {
+            return open(ftpClientFactory.newInstance(hints), hints);
+        }
+
+        String serverName = hints.get(Transport.TRANSPORT_SERVER_FQDN);
+        int serverPort = Integer.parseInt(hints.get(Transport.TRANSPORT_SERVER_PORT));
+        FtpClientPool.Key key = new FtpClientPool.Key(serverName, serverPort, hints.get(TRANSPORT_USERNAME),
+                hints.get(TRANSPORT_PASSWORD), hints.get(FtpTransportHints.TRANSFER_MODE));
+        FtpDirectoryCache.Directories directories = directoryCache != null ?
+                directoryCache.forServer(serverName, serverPort, hints.get(TRANSPORT_USERNAME)) : null;
+
+        FTPClient ftpClient = ftpClientPool.borrow(key, () -> {
+            FTPClient newClient = ftpClientFactory.newInstance(hints);
+            try {
+                login(newClient, hints);
+                homeDirectories.put(key, FtpUtil.performSilently(newClient, FTPClient::printWorkingDirectory));
+                return newClient;
+            } catch (RuntimeException e) {
+                // a client that fails to open is never leased, so disconnect it here
+                try {
+                    newClient.disconnect();
+                } catch (IOException inner) {
+                    LOG.trace("Error disconnecting FTP client: {}", inner.getMessage(), inner);
+                }
+                throw e;
+            }
+        });
+
+        try {
+            changeToBaseDirectory(ftpClient, hints, homeDirectories.get(key), directories);
+        } catch (RuntimeException e) {
+            ftpClientPool.invalidate(ftpClient);
+            throw e;
+        }
+
+        FtpTransportSession session = new FtpTransportSession(ftpClient, ftpClientPool, directories,
+                transferExecutor);
+        LOG.debug("Opened {}@{} using pooled client {}@{}...", session.getClass().getSimpleName(),
+                toHexString(identityHashCode(session)), ftpClient.getClass().getSimpleName(),
+                toHexString(identityHashCode(ftpClient)));
+        return session;
     }
 
     /**
@@ -110,29 +219,101 @@ public class FtpTransport implements Transport {
      * @throws RuntimeException if the session cannot be successfully opened
      */
     FtpTransportSession open(FTPClient ftpClient, Map<String, String> hints) {
+        login(ftpClient, hints);
+        changeToBaseDirectory(ftpClient, hints, null, null);
+
+        FtpTransportSession session = new FtpTransportSession(ftpClient, null, null, transferExecutor);
+        LOG.debug("Opened {}@{}...", session.getClass().getSimpleName(), toHexString(identityHashCode(session)));
+        return session;
+    }
+
+    /**
+     * Answers the maximum number of transfers performed at once by sessions opened by this transport.
+     *
+     * @return the maximum number of concurrent transfers
+     */
+    public int getMaxTransfers() {
+        return transferExecutor.getMaximumPoolSize();
+    }
+
+    @Value("${pass.deposit.transport.ftp.max-transfers:8}")
+    public void setMaxTransfers(int maxTransfers) {
+        TransferFuture.resize(transferExecutor, maxTransfers);
+    }
+
+    /**
+     * Connects and logs in to the FTP server, and sets the transfer mode, leaving the client in a state that may be
+     * shared by sessions using the same server, credentials and transfer mode.
+     *
+     * @param ftpClient the FTP client, not yet connected
+     * @param hints configuration hints
+     * @throws RuntimeException if the client cannot be connected or logged in
+     */
+    private void login(FTPClient ftpClient, Map<String, String> hints) {
         String serverName = hints.get(Transport.TRANSPORT_SERVER_FQDN);
         String serverPort = hints.get(Transport.TRANSPORT_SERVER_PORT);
         String transferMode = hints.get(FtpTransportHints.TRANSFER_MODE);
-        String baseDir = hints.get(FtpTransportHints.BASE_DIRECTORY);
 
         FtpUtil.connect(ftpClient, serverName, Integer.parseInt(serverPort));
         FtpUtil.login(ftpClient, hints.get(TRANSPORT_USERNAME), hints.get(TRANSPORT_PASSWORD));
         setTransferMode(ftpClient, transferMode);
 
-        if (baseDir != null && baseDir.trim().length() > 0) {
-            if (baseDir.contains("%s")) {
-                baseDir = String.format(baseDir, OffsetDateTime.now(ZoneId.of("UTC")).format(ISO_LOCAL_DATE));
-            }
-            setWorkingDirectory(ftpClient, baseDir);
-        }
-
         // Initialize the system type, which is cached for the duration of an FTP Client instance
         // Having this value cached will resolve some issues with aborted file transfers and directory listings
         FtpUtil.performSilently(ftpClient, ftpClient::getSystemType);
+    }
 
-        FtpTransportSession session = new FtpTransportSession(ftpClient);
-        LOG.debug("Opened {}@{}...", session.getClass().getSimpleName(), toHexString(identityHashCode(session)));
-        return session;
+    /**
+     * Changes into the base working directory, if one is supplied by the hints, creating it if needed.
+     * <p>
+     * A client borrowed from the pool is left in the working directory of the session that last used it, so a relative
+     * base directory is resolved against the {@code homeDirectory} the client logged in to.  The base directory has
+     * most likely been created by an earlier session, so a single {@code CWD} is attempted before the directory is
+     * created, unless the {@code directories} of the server record whether the directory exists.
+     * </p>
+     *
+     * @param ftpClient the logged in FTP client
+     * @param hints configuration hints
+     * @param homeDirectory the working directory of the client after logging in, or {@code null} if the client is not
+     *                      pooled
+     * @param directories the directories known to exist on the server, or {@code null} if they are not cached
+     */
+    private void changeToBaseDirectory(FTPClient ftpClient, Map<String, String> hints, String homeDirectory,
+                                       FtpDirectoryCache.Directories directories) {
+        String baseDir = hints.get(FtpTransportHints.BASE_DIRECTORY);
+
+        if (baseDir == null || baseDir.trim().length() == 0) {
+            if (homeDirectory == null) {
+                return;
+            }
+            baseDir = homeDirectory;
+        }
+
+        if (baseDir.contains("%s")) {
+            baseDir = String.format(baseDir, OffsetDateTime.now(ZoneId.of("UTC")).format(ISO_LOCAL_DATE));
+        }
+
+        if (homeDirectory != null) {
+            if (!FtpUtil.isPathAbsolute(baseDir)) {
+                baseDir = homeDirectory.endsWith(FtpUtil.PATH_SEP) ?
+                        homeDirectory + baseDir : homeDirectory + FtpUtil.PATH_SEP + baseDir;
+            }
+
+            if (directories != null) {
+                setWorkingDirectory(ftpClient, baseDir, directories);
+                return;
+            }
+
+            try {
+                if (ftpClient.changeWorkingDirectory(baseDir)) {
+                    return;
+                }
+            } catch (IOException e) {
+                LOG.trace("Unable to change into base directory '{}': {}", baseDir, e.getMessage(), e);
+            }
+        }
+
+        setWorkingDirectory(ftpClient, baseDir);
     }
 
 
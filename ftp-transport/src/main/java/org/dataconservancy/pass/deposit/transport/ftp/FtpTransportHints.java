@@ -26,6 +26,24 @@ public class FtpTransportHints {
 
     public static final String DATA_TYPE = "deposit.transport.protocol.ftp.data-type";
 
+    /**
+     * The number of times an interrupted transfer is resumed from the number of bytes the FTP server received, using
+     * {@code REST} and {@code STOR} (or {@code APPE} if the server refuses {@code REST}).  Only packages that can be
+     * re-opened at an offset (i.e. spooled packages) are resumed.  Defaults to {@link #DEFAULT_RESUME_ATTEMPTS}; {@code
+     * 0} disables resumption.
+     */
+    public static final String RESUME_ATTEMPTS = "deposit.transport.protocol.ftp.resume-attempts";
+
+    /**
+     * The number of milliseconds to wait before the first attempt to resume an interrupted transfer; the wait grows
+     * linearly with each attempt.  Defaults to {@link #DEFAULT_RESUME_DELAY_MS}.
+     */
+    public static final String RESUME_DELAY_MS = "deposit.transport.protocol.ftp.resume-delay-ms";
+
+    public static final int DEFAULT_RESUME_ATTEMPTS = 3;
+
+    public static final long DEFAULT_RESUME_DELAY_MS = 2000;
+
     public enum MODE {
         stream,
         block,
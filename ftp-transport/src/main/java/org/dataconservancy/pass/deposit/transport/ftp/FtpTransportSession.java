@@ -16,7 +16,12 @@
 package org.dataconservancy.pass.deposit.transport.ftp;
 
 import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.io.CopyStreamException;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.transport.TransferFuture;
+import org.dataconservancy.pass.deposit.transport.Transport;
 import org.dataconservancy.pass.deposit.transport.TransportResponse;
 import org.dataconservancy.pass.deposit.transport.TransportSession;
 import org.slf4j.Logger;
@@ -24,11 +29,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -43,6 +48,22 @@ import static org.dataconservancy.pass.deposit.transport.ftp.FtpUtil.setPasv;
 
 /**
  * Encapsulates a logged-in connection to an FTP server.
+ * <p>
+ * A session opened with a client borrowed from an {@link FtpClientPool} returns the client to the pool when it is
+ * closed, rather than logging out.  If a transfer is still in progress when the session is closed, the state of the
+ * control connection is unknown, and the client is invalidated instead.
+ * </p>
+ * <p>
+ * A transfer interrupted by a failure of the data connection is resumed from the number of bytes received by the
+ * server, if the package can be {@link PackageStream#open(long) re-opened at an offset}, up to the number of attempts
+ * given by the {@link FtpTransportHints#RESUME_ATTEMPTS} hint.
+ * </p>
+ * <p>
+ * Transfers are performed on the bounded executor supplied on construction, which is shared by the sessions opened by
+ * a transport.  A transfer that is cancelled, or has not completed by the deadline given by the {@link
+ * Transport#TRANSPORT_TIMEOUT_MS} hint, is aborted by disconnecting the client, and a pooled client is invalidated
+ * rather than returned to the pool.
+ * </p>
  *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
@@ -63,72 +84,108 @@ public class FtpTransportSession implements TransportSession {
     /**
      * Used to submit jobs for transferring files
      */
-    private ExecutorService executorService;
+    private Executor executor;
 
     /**
      * A connected FTP client
      */
     private FTPClient ftpClient;
 
+    /**
+     * The pool the {@link #ftpClient} was borrowed from, or {@code null} if the client is not pooled
+     */
+    private FtpClientPool ftpClientPool;
+
+    /**
+     * The directories known to exist on the FTP server, or {@code null} if directories are not cached
+     */
+    private FtpDirectoryCache.Directories directories;
+
     /**
      * A transfer that may still be in-progress
      */
-    private FutureTask<TransportResponse> transfer;
+    private volatile TransferFuture transfer;
+
+    /**
+     * Whether or not a transfer was aborted, leaving the {@link #ftpClient} disconnected
+     */
+    private volatile boolean aborted = false;
 
-    public FtpTransportSession(FTPClient ftpClient) {
-        this(ftpClient, Executors.newSingleThreadExecutor());
+    /**
+     * Constructs a session performing its transfers on the supplied executor, typically the executor of the {@link
+     * FtpTransport} opening the session.
+     *
+     * @param ftpClient a connected, logged in client
+     * @param executor performs transfers, shared with other sessions
+     */
+    public FtpTransportSession(FTPClient ftpClient, Executor executor) {
+        this(ftpClient, null, null, executor);
     }
 
-    private FtpTransportSession(FTPClient ftpClient, ExecutorService executorService) {
-        this.executorService = executorService;
+    /**
+     * Constructs a session performing its transfers on the supplied executor.
+     *
+     * @param ftpClient a connected, logged in client
+     * @param ftpClientPool the pool the client was borrowed from, or {@code null} if the client is not pooled
+     * @param directories the directories known to exist on the FTP server, may be {@code null}
+     * @param executor performs transfers, shared with other sessions
+     */
+    FtpTransportSession(FTPClient ftpClient, FtpClientPool ftpClientPool,
+                        FtpDirectoryCache.Directories directories, Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Transfer executor must not be null.");
+        }
+        this.executor = executor;
         this.ftpClient = ftpClient;
+        this.ftpClientPool = ftpClientPool;
+        this.directories = directories;
     }
 
     @Override
     public TransportResponse send(PackageStream packageStream, Map<String, String> metadata) {
+        String name = packageStream.metadata().name();
+        TransportResponse response = TransferFuture.await(sendAsync(packageStream, metadata));
+
+        if (!response.success() && response.error() != null) {
+            LOG.info(format(ERR_TRANSFER, name, "<host>", "<port>", response.error().getMessage()), response.error());
+        }
+
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> sendAsync(PackageStream packageStream, Map<String, String> metadata) {
 
         PackageStream.Metadata streamMetadata = packageStream.metadata();
 
         validateDestinationResource(streamMetadata.name());
 
-        this.transfer = new FutureTask<>(() -> {
+        Resumption resumption = new Resumption(packageStream,
+                intHint(metadata, FtpTransportHints.RESUME_ATTEMPTS, FtpTransportHints.DEFAULT_RESUME_ATTEMPTS),
+                longHint(metadata, FtpTransportHints.RESUME_DELAY_MS, FtpTransportHints.DEFAULT_RESUME_DELAY_MS));
+
+        this.transfer = TransferFuture.submit(executor, () -> {
             try (InputStream inputStream = packageStream.open()){
-                return storeFile(streamMetadata.name(), inputStream);
+                return storeFile(streamMetadata.name(), inputStream, resumption.attempts > 0 ? resumption : null);
             }
-        });
+        }, this::abort, longHint(metadata, Transport.TRANSPORT_TIMEOUT_MS, 0));
 
-        executorService.submit(transfer);
+        return transfer;
+    }
 
+    /**
+     * Aborts a transfer by disconnecting the client, which closes the control connection and, with it, the data
+     * connection a blocked transfer is writing to.
+     */
+    private void abort() {
+        LOG.debug("Aborting transfer of {}@{}, disconnecting FTP client.",
+                this.getClass().getSimpleName(), toHexString(identityHashCode(this)));
+        aborted = true;
         try {
-            return transfer.get();
-        } catch (InterruptedException e) {
-            LOG.info(format(ERR_TRANSFER, streamMetadata.name(), "<host>", "<port>", "transfer was cancelled!"));
-            return new TransportResponse() {
-                @Override
-                public boolean success() {
-                    return false;
-                }
-
-                @Override
-                public Throwable error() {
-                    return e;
-                }
-            };
-        } catch (ExecutionException e) {
-            LOG.info(format(ERR_TRANSFER, streamMetadata.name(), "<host>", "<port>", e.getMessage()), e);
-            return new TransportResponse() {
-                @Override
-                public boolean success() {
-                    return false;
-                }
-
-                @Override
-                public Throwable error() {
-                    return e;
-                }
-            };
+            ftpClient.disconnect();
+        } catch (IOException e) {
+            LOG.trace("Error disconnecting FTP client: {}", e.getMessage(), e);
         }
-
     }
 
     @Override
@@ -140,10 +197,13 @@ public class FtpTransportSession implements TransportSession {
     public void close() throws Exception {
         LOG.debug("Closing {}@{}...",
                 this.getClass().getSimpleName(), toHexString(identityHashCode(this)));
+        boolean cancelled = false;
+        TransferFuture transfer = this.transfer;
         if (transfer != null && !transfer.isDone()) {
             LOG.debug("Closing {}@{}, cancelling pending transfer...",
                     this.getClass().getSimpleName(), toHexString(identityHashCode(this)));
             transfer.cancel(true);
+            cancelled = true;
         }
 
         if (this.isClosed) {
@@ -152,6 +212,27 @@ public class FtpTransportSession implements TransportSession {
             return;
         }
 
+        if (ftpClientPool != null) {
+            if (cancelled || aborted) {
+                LOG.debug("Closing {}@{}, invalidating pooled FTP client after aborting its transfer.",
+                        this.getClass().getSimpleName(), toHexString(identityHashCode(this)));
+                ftpClientPool.invalidate(ftpClient);
+            } else {
+                LOG.debug("Closing {}@{}, returning FTP client to the pool.",
+                        this.getClass().getSimpleName(), toHexString(identityHashCode(this)));
+                ftpClientPool.release(ftpClient);
+            }
+            this.isClosed = true;
+            return;
+        }
+
+        if (cancelled || aborted) {
+            LOG.debug("Marking {}@{} as closed, its FTP client was disconnected when its transfer was aborted.",
+                    this.getClass().getSimpleName(), toHexString(identityHashCode(this)));
+            this.isClosed = true;
+            return;
+        }
+
         try {
             FtpUtil.disconnect(ftpClient);
         } catch (IOException e) {
@@ -172,6 +253,20 @@ public class FtpTransportSession implements TransportSession {
      * @return
      */
     TransportResponse storeFile(String destinationResource, InputStream content) {
+        return storeFile(destinationResource, content, null);
+    }
+
+    /**
+     * Streams the supplied {@code content} to the destination resource.  If the transfer is interrupted (e.g. the data
+     * connection is reset, or the server replies {@code 426}) and a {@code resumption} is supplied, the transfer is
+     * {@link #resume(String, Resumption) resumed} from the number of bytes received by the server.
+     *
+     * @param destinationResource the path of the file on the FTP server, relative to the working directory
+     * @param content the bytes of the file
+     * @param resumption re-opens the package to resume an interrupted transfer, may be {@code null}
+     * @return the response
+     */
+    TransportResponse storeFile(String destinationResource, InputStream content, Resumption resumption) {
         String cwd = performSilently(ftpClient, FTPClient::printWorkingDirectory);
 
         String directory;
@@ -190,13 +285,46 @@ public class FtpTransportSession implements TransportSession {
             directory = destinationResource.substring(0, destinationResource.lastIndexOf(PATH_SEP));
         }
 
+        // the absolute path of the directory receiving the file, if known
+        String target = cwd;
+        if (directory != null) {
+            target = FtpUtil.isPathAbsolute(directory) ? directory :
+                    (cwd.endsWith(PATH_SEP) ? cwd + directory : cwd + PATH_SEP + directory);
+        }
+
         try {
             if (directory != null) {
-                FtpUtil.setWorkingDirectory(ftpClient, directory);
+                if (directories != null) {
+                    FtpUtil.setWorkingDirectory(ftpClient, target, directories);
+                } else {
+                    FtpUtil.setWorkingDirectory(ftpClient, directory);
+                }
             }
             setPasv(ftpClient, true);
             setDataType(ftpClient, FtpTransportHints.TYPE.binary.name());
-            boolean result = ftpClient.storeFile(fileName, content);
+            boolean result;
+            IOException interrupted = null;
+            try {
+                result = ftpClient.storeFile(fileName, content);
+            } catch (IOException e) {
+                if (resumption == null || !isTransferInterrupted(e)) {
+                    throw e;
+                }
+                LOG.info(format(ERR_TRANSFER, destinationResource, "<host>", "<port>", e.getMessage()));
+                interrupted = e;
+                result = false;
+                completePendingCommandQuietly();
+            }
+
+            if (!result && resumption != null &&
+                    (interrupted != null || isTransferFailure(ftpClient.getReplyCode()))) {
+                result = resume(fileName, resumption);
+            }
+
+            if (!result && interrupted != null) {
+                throw interrupted;
+            }
+
             success.set(result);
             ftpReplyCode.set(ftpClient.getReplyCode());
             ftpReplyString.set(ftpClient.getReplyString());
@@ -214,6 +342,10 @@ public class FtpTransportSession implements TransportSession {
                 // ignore
             }
         } finally {
+            if (directories != null && ftpReplyCode.get() == FTPReply.FILE_UNAVAILABLE) {
+                // the directory may have been removed from the server since it was cached
+                directories.invalidate(target);
+            }
             if (directory != null) {
                 try {
                     performSilently(ftpClient, ftpClient -> ftpClient.changeWorkingDirectory(cwd));
@@ -244,6 +376,159 @@ public class FtpTransportSession implements TransportSession {
         return response;
     }
 
+    /**
+     * Resumes an interrupted transfer of {@code fileName}, up to the number of attempts allowed by the {@code
+     * resumption}.  Each attempt asks the server for the {@code SIZE} of the partially transferred file, re-opens the
+     * package at that offset, and sends the remainder with {@code REST} and {@code STOR}.  If the server refuses
+     * {@code REST}, the remainder is sent with {@code APPE} instead.  If the size of the partial file is unknown, or
+     * exceeds the size of the package, the package is sent again from the beginning.
+     *
+     * @param fileName the name of the file in the current working directory
+     * @param resumption re-opens the package, and bounds the number of attempts
+     * @return {@code true} if the transfer was completed
+     * @throws IOException if the transfer fails for a reason other than an interrupted data connection
+     */
+    private boolean resume(String fileName, Resumption resumption) throws IOException {
+        boolean append = false;
+        long packageSize = resumption.packageStream.metadata().sizeBytes();
+
+        for (int attempt = 1; attempt <= resumption.attempts; attempt++) {
+            try {
+                Thread.sleep(resumption.delayMs * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            long offset = remoteSize(fileName);
+            if (offset < 0 || (packageSize > 0 && offset > packageSize)) {
+                offset = 0;
+            }
+
+            LOG.info("Resuming transfer of {} at offset {} (attempt {} of {})", fileName, offset, attempt,
+                    resumption.attempts);
+
+            InputStream remainder;
+            try {
+                remainder = resumption.packageStream.open(offset);
+            } catch (UnsupportedOperationException e) {
+                LOG.info("Unable to resume transfer of {}: {}", fileName, e.getMessage());
+                return false;
+            }
+
+            try (InputStream in = remainder) {
+                boolean stored;
+                if (offset == 0) {
+                    stored = ftpClient.storeFile(fileName, in);
+                } else if (!append) {
+                    ftpClient.setRestartOffset(offset);
+                    try {
+                        stored = ftpClient.storeFile(fileName, in);
+                    } finally {
+                        ftpClient.setRestartOffset(0);
+                    }
+                    if (!stored && isRestRefused(ftpClient.getReplyCode())) {
+                        // no data connection was opened, so nothing has been read from the remainder
+                        LOG.debug("Server refused REST ({}), resuming transfer of {} with APPE",
+                                ftpClient.getReplyCode(), fileName);
+                        append = true;
+                        stored = ftpClient.appendFile(fileName, in);
+                    }
+                } else {
+                    stored = ftpClient.appendFile(fileName, in);
+                }
+
+                if (stored) {
+                    LOG.info("Resumed transfer of {} completed", fileName);
+                    return true;
+                }
+
+                if (!isTransferFailure(ftpClient.getReplyCode())) {
+                    return false;
+                }
+            } catch (IOException e) {
+                if (!isTransferInterrupted(e)) {
+                    throw e;
+                }
+                LOG.info("Resumed transfer of {} was interrupted: {}", fileName, e.getMessage());
+                completePendingCommandQuietly();
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Answers the size of the named file on the server, using the {@code SIZE} command.
+     *
+     * @param fileName the name of the file in the current working directory
+     * @return the size of the file in bytes, or {@code -1} if it is unknown
+     */
+    private long remoteSize(String fileName) throws IOException {
+        if (ftpClient.sendCommand("SIZE", fileName) != FTPReply.FILE_STATUS) {
+            return -1;
+        }
+
+        String reply = ftpClient.getReplyString().trim();
+        try {
+            return Long.parseLong(reply.substring(reply.lastIndexOf(' ') + 1));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            LOG.debug("Unable to parse SIZE reply '{}'", reply);
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the reply to an interrupted {@code STOR} or {@code APPE}, which commons-net leaves pending on the control
+     * connection when the data connection fails.
+     */
+    private void completePendingCommandQuietly() {
+        try {
+            ftpClient.completePendingCommand();
+        } catch (IOException e) {
+            LOG.trace("Error reading reply to the interrupted transfer: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Answers whether the exception indicates the data connection failed during a transfer, while the control
+     * connection remains usable.
+     */
+    static boolean isTransferInterrupted(IOException e) {
+        if (e instanceof FTPConnectionClosedException) {
+            return false;
+        }
+        return e instanceof CopyStreamException || e instanceof SocketException ||
+                e instanceof SocketTimeoutException;
+    }
+
+    /**
+     * Answers whether the reply code indicates the data connection failed: 425 (can't open data connection), 426
+     * (connection closed, transfer aborted) or 451 (local error in processing).
+     */
+    static boolean isTransferFailure(int replyCode) {
+        return replyCode == FTPReply.CANNOT_OPEN_DATA_CONNECTION ||
+                replyCode == FTPReply.TRANSFER_ABORTED ||
+                replyCode == FTPReply.ACTION_ABORTED;
+    }
+
+    /**
+     * Answers whether the reply code indicates the server does not support {@code REST} in stream mode.
+     */
+    private static boolean isRestRefused(int replyCode) {
+        return replyCode >= 500 && replyCode <= 504;
+    }
+
+    private static int intHint(Map<String, String> hints, String key, int defaultValue) {
+        String value = hints != null ? hints.get(key) : null;
+        return value != null && value.trim().length() > 0 ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private static long longHint(Map<String, String> hints, String key, long defaultValue) {
+        String value = hints != null ? hints.get(key) : null;
+        return value != null && value.trim().length() > 0 ? Long.parseLong(value.trim()) : defaultValue;
+    }
+
     void validateDestinationResource(String destinationResource) {
         // at a minimum, the destination resource must specify a file name (i.e. not end with a directory separator)
         if (destinationResource.endsWith(PATH_SEP)) {
@@ -252,4 +537,22 @@ public class FtpTransportSession implements TransportSession {
         }
     }
 
+    /**
+     * Re-opens a package to resume its interrupted transfer.
+     */
+    static class Resumption {
+
+        private final PackageStream packageStream;
+
+        private final int attempts;
+
+        private final long delayMs;
+
+        Resumption(PackageStream packageStream, int attempts, long delayMs) {
+            this.packageStream = packageStream;
+            this.attempts = attempts;
+            this.delayMs = delayMs;
+        }
+    }
+
 }
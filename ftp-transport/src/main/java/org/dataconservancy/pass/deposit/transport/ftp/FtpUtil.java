@@ -264,6 +264,64 @@ public class FtpUtil {
         performSilently(ftpClient, () -> ftpClient.changeWorkingDirectory(directoryPath));
     }
 
+    /**
+     * Changes into the directory, creating it if needed, using the supplied cache to avoid creating directories that are
+     * known to exist.
+     * <p>
+     * If the directory is known to exist, a single {@code CWD} is issued.  Otherwise, only the segments of the path
+     * below its longest ancestor known to exist are created.  If the FTP server replies {@code 550} when changing into
+     * a directory the cache believes exists, the directory is removed from the cache, and created again.  Relative
+     * paths, and a {@code null} cache, fall back to {@link #setWorkingDirectory(FTPClient, String)}.
+     * </p>
+     *
+     * @param ftpClient the FTP client, which is connected and logged in to a remote FTP server
+     * @param directoryPath the directory to change into, which should be absolute
+     * @param directories the directories known to exist on the server the client is connected to, may be {@code null}
+     */
+    static void setWorkingDirectory(FTPClient ftpClient, String directoryPath,
+                                    FtpDirectoryCache.Directories directories) {
+        if (directories == null || directoryPath == null || directoryPath.trim().length() == 0 ||
+                !isPathAbsolute(directoryPath)) {
+            setWorkingDirectory(ftpClient, directoryPath);
+            return;
+        }
+
+        String path = FtpDirectoryCache.normalize(directoryPath);
+        if (path.length() == 0) {
+            // the root directory always exists
+            setWorkingDirectory(ftpClient, PATH_SEP);
+            return;
+        }
+
+        String existing = directories.existingAncestor(path);
+
+        if (existing != null) {
+            LOG.trace("Directory '{}' of '{}' is known to exist, changing into it", existing, directoryPath);
+            try {
+                performSilently(ftpClient, () -> ftpClient.changeWorkingDirectory(existing));
+            } catch (RuntimeException e) {
+                if (ftpClient.getReplyCode() != FTPReply.FILE_UNAVAILABLE) {
+                    throw e;
+                }
+                LOG.debug("Directory '{}' no longer exists, removing it from the directory cache", existing);
+                directories.invalidate(existing);
+                setWorkingDirectory(ftpClient, path);
+                directories.put(path);
+                return;
+            }
+
+            if (existing.length() < path.length()) {
+                String remainder = path.substring(existing.length() + 1);
+                // creates the remaining directories relative to the existing directory
+                setWorkingDirectory(ftpClient, remainder);
+            }
+        } else {
+            setWorkingDirectory(ftpClient, path);
+        }
+
+        directories.put(path);
+    }
+
     /**
      * Creates the directories specified in {@code directories}.
      * <h3>Example invocation: <em>FtpUtil.makeDirectories(client, "/foo/bar");</em></h3>
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.transport.ftp;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class FtpClientPoolTest {
+
+    private static final FtpClientPool.Key KEY =
+            new FtpClientPool.Key("ftp.example.org", 21, "nihmsftpuser", "nihmsftppass", "stream");
+
+    private static final FtpClientPool.Key OTHER_KEY =
+            new FtpClientPool.Key("ftp.example.org", 21, "otheruser", "otherpass", "stream");
+
+    private FtpClientPool pool;
+
+    private AtomicInteger opened;
+
+    @Before
+    public void setUp() {
+        pool = new FtpClientPool();
+        opened = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * A released client is validated with a NOOP and leased again, without opening a new client.
+     */
+    @Test
+    public void testReleasedClientIsReused() throws IOException {
+        FTPClient client = pool.borrow(KEY, opener());
+        when(client.sendNoOp()).thenReturn(true);
+        pool.release(client);
+
+        assertEquals(1, pool.idleCount());
+        assertSame(client, pool.borrow(KEY, opener()));
+        assertEquals(1, opened.get());
+        assertEquals(1, pool.leasedCount());
+        verify(client).sendNoOp();
+        verify(client, never()).disconnect();
+    }
+
+    /**
+     * An idle client that fails the NOOP is disconnected, and replaced by a newly opened client.
+     */
+    @Test
+    public void testInvalidClientIsReplaced() throws IOException {
+        FTPClient client = pool.borrow(KEY, opener());
+        when(client.sendNoOp()).thenReturn(false);
+        pool.release(client);
+
+        FTPClient replacement = pool.borrow(KEY, opener());
+
+        assertNotSame(client, replacement);
+        assertEquals(2, opened.get());
+        verify(client).disconnect();
+    }
+
+    /**
+     * Clients are pooled by key: a client opened with another user is not leased.
+     */
+    @Test
+    public void testClientsArePooledByKey() throws IOException {
+        FTPClient client = pool.borrow(KEY, opener());
+        pool.release(client);
+
+        FTPClient other = pool.borrow(OTHER_KEY, opener());
+
+        assertNotSame(client, other);
+        assertEquals(2, opened.get());
+        assertEquals(1, pool.idleCount());
+        verify(client, never()).sendNoOp();
+    }
+
+    /**
+     * When the maximum number of clients are connected to a host, an idle client opened with another key is evicted
+     * to make room for a new client.
+     */
+    @Test
+    public void testMaxPerHostEvictsIdleClient() throws IOException {
+        pool.setMaxPerHost(1);
+        FTPClient client = pool.borrow(KEY, opener());
+        pool.release(client);
+
+        FTPClient other = pool.borrow(OTHER_KEY, opener());
+
+        assertNotSame(client, other);
+        assertEquals(0, pool.idleCount());
+        verify(client).disconnect();
+    }
+
+    /**
+     * When the maximum number of clients are connected to a host and leased, borrowing a client times out.
+     */
+    @Test
+    public void testMaxPerHostTimesOut() {
+        pool.setMaxPerHost(1);
+        pool.setMaxWaitMs(10);
+        pool.borrow(KEY, opener());
+
+        try {
+            pool.borrow(KEY, opener());
+            fail("Expected RuntimeException");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Timed out"));
+        }
+
+        assertEquals(1, opened.get());
+    }
+
+    /**
+     * Invalidating a leased client frees its place, so another client may be opened to the host.
+     */
+    @Test
+    public void testInvalidateFreesConnection() throws IOException {
+        pool.setMaxPerHost(1);
+        pool.setMaxWaitMs(10);
+        FTPClient client = pool.borrow(KEY, opener());
+        pool.invalidate(client);
+
+        FTPClient replacement = pool.borrow(KEY, opener());
+
+        assertNotSame(client, replacement);
+        verify(client).disconnect();
+    }
+
+    /**
+     * A client that fails to open does not count toward the maximum number of connections.
+     */
+    @Test
+    public void testFailedOpenFreesConnection() {
+        pool.setMaxPerHost(1);
+        pool.setMaxWaitMs(10);
+
+        try {
+            pool.borrow(KEY, () -> {
+                throw new RuntimeException("Login failed");
+            });
+            fail("Expected RuntimeException");
+        } catch (RuntimeException e) {
+            assertEquals("Login failed", e.getMessage());
+        }
+
+        pool.borrow(KEY, opener());
+        assertEquals(1, opened.get());
+    }
+
+    /**
+     * Clients idle for longer than the maximum idle time are disconnected.
+     */
+    @Test
+    public void testIdleClientsAreEvicted() throws Exception {
+        pool.setMaxIdleMs(1);
+        FTPClient client = pool.borrow(KEY, opener());
+        pool.release(client);
+
+        Thread.sleep(10);
+        pool.evictIdle();
+
+        assertEquals(0, pool.idleCount());
+        verify(client).disconnect();
+    }
+
+    /**
+     * With a maximum idle time of 0, clients are disconnected as soon as they are released.
+     */
+    @Test
+    public void testPoolingDisabled() throws IOException {
+        pool.setMaxIdleMs(0);
+        FTPClient client = pool.borrow(KEY, opener());
+        pool.release(client);
+
+        assertEquals(0, pool.idleCount());
+        verify(client).disconnect();
+    }
+
+    private Supplier<FTPClient> opener() {
+        return () -> {
+            opened.incrementAndGet();
+            FTPClient client = mock(FTPClient.class);
+            when(client.isConnected()).thenReturn(true);
+            return client;
+        };
+    }
+
+}
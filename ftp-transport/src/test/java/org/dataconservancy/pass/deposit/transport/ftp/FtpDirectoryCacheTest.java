@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.transport.ftp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class FtpDirectoryCacheTest {
+
+    private FtpDirectoryCache cache;
+
+    private FtpDirectoryCache.Directories directories;
+
+    @Before
+    public void setUp() {
+        cache = new FtpDirectoryCache();
+        directories = cache.forServer("ftp.example.org", 21, "nihmsftpuser");
+    }
+
+    /**
+     * A directory that has been put exists, as do its ancestors.
+     */
+    @Test
+    public void testPutIncludesAncestors() {
+        directories.put("/logs/upload/2018-06-01");
+
+        assertTrue(directories.exists("/logs/upload/2018-06-01"));
+        assertTrue(directories.exists("/logs/upload/"));
+        assertTrue(directories.exists("/logs"));
+        assertFalse(directories.exists("/logs/upload/2018-06-02"));
+    }
+
+    /**
+     * The longest existing ancestor of a directory is found.
+     */
+    @Test
+    public void testExistingAncestor() {
+        directories.put("/logs/upload");
+
+        assertEquals("/logs/upload", directories.existingAncestor("/logs/upload/2018-06-01/sub"));
+        assertEquals("/logs/upload", directories.existingAncestor("//logs//upload/"));
+        assertNull(directories.existingAncestor("/other/upload"));
+    }
+
+    /**
+     * Invalidating a directory forgets the directory and its descendants, but not its ancestors.
+     */
+    @Test
+    public void testInvalidate() {
+        directories.put("/logs/upload/2018-06-01");
+        directories.put("/logs/uploaded");
+
+        directories.invalidate("/logs/upload");
+
+        assertFalse(directories.exists("/logs/upload/2018-06-01"));
+        assertFalse(directories.exists("/logs/upload"));
+        assertTrue(directories.exists("/logs/uploaded"));
+        assertTrue(directories.exists("/logs"));
+    }
+
+    /**
+     * Directories are forgotten once their TTL elapses.
+     */
+    @Test
+    public void testExpiry() throws Exception {
+        cache.setTtlMs(1);
+        directories.put("/logs/upload");
+
+        Thread.sleep(10);
+
+        assertFalse(directories.exists("/logs/upload"));
+        assertNull(directories.existingAncestor("/logs/upload"));
+    }
+
+    /**
+     * A TTL of 0 disables the cache.
+     */
+    @Test
+    public void testDisabled() {
+        cache.setTtlMs(0);
+        directories.put("/logs/upload");
+
+        assertFalse(directories.exists("/logs/upload"));
+    }
+
+    /**
+     * Directories are cached separately for each server and user.
+     */
+    @Test
+    public void testDirectoriesPerServer() {
+        directories.put("/logs/upload");
+
+        assertTrue(cache.forServer("ftp.example.org", 21, "nihmsftpuser").exists("/logs/upload"));
+        assertFalse(cache.forServer("ftp.example.org", 21, "otheruser").exists("/logs/upload"));
+        assertFalse(cache.forServer("ftp.example.org", 2121, "nihmsftpuser").exists("/logs/upload"));
+    }
+
+}
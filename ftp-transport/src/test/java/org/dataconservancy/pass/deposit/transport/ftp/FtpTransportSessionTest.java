@@ -20,12 +20,27 @@ import org.apache.commons.io.input.NullInputStream;
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.io.CopyStreamException;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.transport.TransferFuture;
+import org.dataconservancy.pass.deposit.transport.Transport;
 import org.dataconservancy.pass.deposit.transport.TransportResponse;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.dataconservancy.pass.deposit.transport.ftp.FtpTestUtil.FTP_ROOT_DIR;
@@ -34,12 +49,16 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -52,13 +71,21 @@ public class FtpTransportSessionTest {
 
     private FtpTransportSession ftpSession;
 
+    private ThreadPoolExecutor executor;
+
     /**
      * Configure the FtpTransportSession under test with a mock FTPClient instance.
      */
     @Before
     public void setUp() {
         ftpClient = mock(FTPClient.class);
-        ftpSession = new FtpTransportSession(ftpClient);
+        executor = TransferFuture.newExecutor("Ftp-Transfer", FtpTransport.DEFAULT_MAX_TRANSFERS);
+        ftpSession = new FtpTransportSession(ftpClient, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
     }
 
     /**
@@ -197,6 +224,154 @@ public class FtpTransportSessionTest {
         verify(ftpClient).setFileType(FTP.BINARY_FILE_TYPE);
     }
 
+    /**
+     * When the data connection fails part way through a transfer, the transfer is resumed from the size of the file
+     * on the server, using REST and STOR, with the package re-opened at that offset.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testResumeInterruptedTransfer() throws Exception {
+        String destinationResource = "package.tar.gz";
+        InputStream content = new NullInputStream(ONE_MIB);
+        InputStream remainder = new NullInputStream(ONE_MIB);
+        PackageStream packageStream = mock(PackageStream.class);
+        PackageStream.Metadata metadata = mock(PackageStream.Metadata.class);
+        when(packageStream.metadata()).thenReturn(metadata);
+        when(metadata.sizeBytes()).thenReturn(2048L);
+        when(packageStream.open(1024L)).thenReturn(remainder);
+
+        when(ftpClient.printWorkingDirectory()).thenReturn(FTP_ROOT_DIR);
+        when(ftpClient.setFileType(FTP.BINARY_FILE_TYPE)).thenReturn(true);
+        when(ftpClient.storeFile(destinationResource, content)).thenThrow(
+                new CopyStreamException("Connection reset", 1024, new SocketException("Connection reset")));
+        when(ftpClient.storeFile(destinationResource, remainder)).thenReturn(true);
+        when(ftpClient.sendCommand("SIZE", destinationResource)).thenReturn(FTPReply.FILE_STATUS);
+        when(ftpClient.getReplyString()).thenReturn("213 1024");
+        when(ftpClient.getReplyCode()).thenReturn(FTPReply.COMMAND_OK);
+
+        TransportResponse response = ftpSession.storeFile(destinationResource, content,
+                new FtpTransportSession.Resumption(packageStream, 1, 0));
+
+        assertTrue(response.success());
+        assertNull(response.error());
+        verify(ftpClient).completePendingCommand();
+        verify(ftpClient).setRestartOffset(1024L);
+        verify(ftpClient).storeFile(destinationResource, remainder);
+        verify(ftpClient, never()).abort();
+    }
+
+    /**
+     * A package that cannot be re-opened at an offset is not resumed, and the original exception is reported.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testResumeUnsupported() throws Exception {
+        String destinationResource = "package.tar.gz";
+        InputStream content = new NullInputStream(ONE_MIB);
+        CopyStreamException expectedException =
+                new CopyStreamException("Connection reset", 1024, new SocketException("Connection reset"));
+        PackageStream packageStream = mock(PackageStream.class);
+        PackageStream.Metadata metadata = mock(PackageStream.Metadata.class);
+        when(packageStream.metadata()).thenReturn(metadata);
+        when(packageStream.open(anyLong())).thenThrow(new UnsupportedOperationException("Not spooled"));
+
+        when(ftpClient.printWorkingDirectory()).thenReturn(FTP_ROOT_DIR);
+        when(ftpClient.setFileType(FTP.BINARY_FILE_TYPE)).thenReturn(true);
+        when(ftpClient.storeFile(destinationResource, content)).thenThrow(expectedException);
+        when(ftpClient.sendCommand("SIZE", destinationResource)).thenReturn(FTPReply.FILE_STATUS);
+        when(ftpClient.getReplyString()).thenReturn("213 1024");
+        when(ftpClient.getReplyCode()).thenReturn(FTPReply.COMMAND_OK);
+
+        TransportResponse response = ftpSession.storeFile(destinationResource, content,
+                new FtpTransportSession.Resumption(packageStream, 3, 0));
+
+        assertFalse(response.success());
+        assertEquals(expectedException, response.error().getCause());
+        verify(ftpClient).storeFile(destinationResource, content);
+        verify(ftpClient, never()).setRestartOffset(anyLong());
+    }
+
+    /**
+     * A transfer that does not complete by its deadline fails with a TimeoutException, and is aborted by disconnecting
+     * the client, which a pooled session then invalidates rather than returning to the pool.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSendAsyncTimesOut() throws Exception {
+        FtpClientPool pool = mock(FtpClientPool.class);
+        ftpSession = new FtpTransportSession(ftpClient, pool, null, executor);
+        CountDownLatch disconnected = blockTransferUntilDisconnected();
+
+        Map<String, String> hints = new HashMap<>();
+        hints.put(Transport.TRANSPORT_TIMEOUT_MS, "50");
+        hints.put(FtpTransportHints.RESUME_ATTEMPTS, "0");
+
+        CompletableFuture<TransportResponse> response = ftpSession.sendAsync(packageStream("package.tar.gz"), hints);
+
+        try {
+            response.get(10, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        assertTrue(disconnected.await(10, TimeUnit.SECONDS));
+        ftpSession.close();
+        verify(pool).invalidate(ftpClient);
+        verify(pool, never()).release(any());
+    }
+
+    /**
+     * Cancelling a transfer aborts it by disconnecting the client, and the synchronous send answers a failed response.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCancelAbortsTransfer() throws Exception {
+        CountDownLatch disconnected = blockTransferUntilDisconnected();
+        Map<String, String> hints = new HashMap<>();
+        hints.put(FtpTransportHints.RESUME_ATTEMPTS, "0");
+
+        CompletableFuture<TransportResponse> response = ftpSession.sendAsync(packageStream("package.tar.gz"), hints);
+
+        assertTrue(response.cancel(true));
+        assertTrue(disconnected.await(10, TimeUnit.SECONDS));
+        assertFalse(TransferFuture.await(response).success());
+        assertTrue(TransferFuture.await(response).error() instanceof CancellationException);
+    }
+
+    /**
+     * Blocks FTPClient.storeFile(...) until the client is disconnected, as a transfer to an unresponsive server would.
+     *
+     * @return counted down when the client is disconnected
+     */
+    private CountDownLatch blockTransferUntilDisconnected() throws IOException {
+        CountDownLatch disconnected = new CountDownLatch(1);
+        doAnswer(inv -> {
+            disconnected.countDown();
+            return null;
+        }).when(ftpClient).disconnect();
+        when(ftpClient.printWorkingDirectory()).thenReturn(FTP_ROOT_DIR);
+        when(ftpClient.setFileType(FTP.BINARY_FILE_TYPE)).thenReturn(true);
+        when(ftpClient.storeFile(any(), any())).thenAnswer(inv -> {
+            disconnected.await();
+            throw new SocketException("Socket closed");
+        });
+        return disconnected;
+    }
+
+    private static PackageStream packageStream(String name) throws IOException {
+        PackageStream packageStream = mock(PackageStream.class);
+        PackageStream.Metadata metadata = mock(PackageStream.Metadata.class);
+        when(packageStream.metadata()).thenReturn(metadata);
+        when(metadata.name()).thenReturn(name);
+        when(packageStream.open()).thenReturn(new NullInputStream(ONE_MIB));
+        return packageStream;
+    }
+
     private void verifyDestinationResource(String destinationResource) throws IOException {
         verifyDestinationResource(destinationResource, any(InputStream.class));
     }
@@ -34,6 +34,7 @@ import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_SER
 import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_SERVER_PORT;
 import static org.dataconservancy.pass.deposit.transport.Transport.TRANSPORT_USERNAME;
 import static org.dataconservancy.pass.deposit.transport.ftp.FtpTestUtil.FTP_ROOT_DIR;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -41,6 +42,8 @@ import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -138,4 +141,42 @@ public class FtpTransportTest {
         verify(ftpClient, atLeastOnce()).getReplyCode();
         verify(ftpClient, atLeastOnce()).getReplyString();
     }
-}
\ No newline at end of file
+
+    /**
+     * A session opened by a pooling transport returns its client to the pool when it is closed, and the next session
+     * re-uses the client without connecting or logging in again.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOpenPooled() throws Exception {
+        FtpClientPool pool = new FtpClientPool();
+        transport = new FtpTransport(ftpClientFactory, pool);
+
+        when(ftpClient.login(anyString(), anyString())).thenReturn(true);
+        when(ftpClient.sendNoOp()).thenReturn(true);
+        when(ftpClient.isConnected()).thenReturn(true);
+        when(ftpClient.setFileTransferMode(anyInt())).thenReturn(true);
+        when(ftpClient.printWorkingDirectory()).thenReturn(FTP_ROOT_DIR);
+        when(ftpClient.changeWorkingDirectory(FTP_ROOT_DIR)).thenReturn(true);
+        when(ftpClient.getReplyCode()).thenReturn(FTPReply.COMMAND_OK);
+
+        transport.open(expectedHints).close();
+        assertEquals(1, pool.idleCount());
+
+        TransportSession session = transport.open(expectedHints);
+        assertEquals(0, pool.idleCount());
+        assertEquals(1, pool.leasedCount());
+        session.close();
+
+        verify(ftpClientFactory).newInstance(anyMap());
+        verify(ftpClient).login("nihmsftpuser", "nihmsftppass");
+        verify(ftpClient).setFileTransferMode(FTP.STREAM_TRANSFER_MODE);
+        // once when connecting, and once when validating the pooled client
+        verify(ftpClient, times(2)).sendNoOp();
+        verify(ftpClient, never()).logout();
+
+        pool.close();
+        verify(ftpClient).logout();
+    }
+}
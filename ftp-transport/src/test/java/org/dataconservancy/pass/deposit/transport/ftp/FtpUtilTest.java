@@ -27,6 +27,7 @@ import org.junit.rules.ExpectedException;
 import java.io.IOException;
 
 import static org.dataconservancy.pass.deposit.transport.ftp.FtpUtil.PATH_SEP;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -399,4 +400,71 @@ public class FtpUtilTest {
         verify(ftpClient).makeDirectory(eq("dir"));
         verify(ftpClient).changeWorkingDirectory(FtpTestUtil.FTP_ROOT_DIR);
     }
-}
\ No newline at end of file
+
+    /**
+     * Changing into a directory known to exist issues a single CWD, without creating any directories.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void setWorkingDirectoryCached() throws IOException {
+        FtpDirectoryCache.Directories directories = new FtpDirectoryCache().forServer("localhost", 21, "user");
+        directories.put("/logs/upload/2018-06-01");
+        when(ftpClient.changeWorkingDirectory(anyString())).thenReturn(true);
+        when(ftpClient.getReplyCode()).thenReturn(FTPReply.COMMAND_OK);
+
+        FtpUtil.setWorkingDirectory(ftpClient, "/logs/upload/2018-06-01", directories);
+
+        verify(ftpClient).changeWorkingDirectory("/logs/upload/2018-06-01");
+        verify(ftpClient, never()).makeDirectory(anyString());
+        verify(ftpClient, never()).printWorkingDirectory();
+    }
+
+    /**
+     * Only the directories below the longest ancestor known to exist are created, and the created directory is cached.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void setWorkingDirectoryCachedAncestor() throws IOException {
+        FtpDirectoryCache.Directories directories = new FtpDirectoryCache().forServer("localhost", 21, "user");
+        directories.put("/logs/upload");
+        when(ftpClient.changeWorkingDirectory(anyString())).thenReturn(true);
+        when(ftpClient.makeDirectory(anyString())).thenReturn(true);
+        when(ftpClient.printWorkingDirectory()).thenReturn("/logs/upload");
+        when(ftpClient.getReplyCode()).thenReturn(FTPReply.COMMAND_OK);
+
+        FtpUtil.setWorkingDirectory(ftpClient, "/logs/upload/2018-06-01", directories);
+
+        verify(ftpClient).changeWorkingDirectory("/logs/upload");
+        verify(ftpClient).makeDirectory("2018-06-01");
+        verify(ftpClient, never()).makeDirectory("logs");
+        verify(ftpClient, never()).makeDirectory("upload");
+        assertTrue(directories.exists("/logs/upload/2018-06-01"));
+    }
+
+    /**
+     * A 550 reply when changing into a cached directory removes it from the cache, and the directory is created again.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void setWorkingDirectoryCachedStale() throws IOException {
+        FtpDirectoryCache.Directories directories = new FtpDirectoryCache().forServer("localhost", 21, "user");
+        directories.put("/logs/upload/2018-06-01");
+        when(ftpClient.changeWorkingDirectory(anyString())).thenReturn(true);
+        when(ftpClient.makeDirectory(anyString())).thenReturn(true);
+        when(ftpClient.printWorkingDirectory()).thenReturn(PATH_SEP);
+        when(ftpClient.getReplyCode())
+                .thenReturn(FTPReply.FILE_UNAVAILABLE)
+                .thenReturn(FTPReply.FILE_UNAVAILABLE)
+                .thenReturn(FTPReply.COMMAND_OK);
+
+        FtpUtil.setWorkingDirectory(ftpClient, "/logs/upload/2018-06-01", directories);
+
+        verify(ftpClient).makeDirectory("logs");
+        verify(ftpClient).makeDirectory("upload");
+        verify(ftpClient).makeDirectory("2018-06-01");
+        assertTrue(directories.exists("/logs/upload/2018-06-01"));
+    }
+}
@@ -25,11 +25,13 @@ import org.dataconservancy.pass.deposit.assembler.shared.Extension;
 import org.dataconservancy.pass.deposit.assembler.shared.MetadataBuilderFactory;
 import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.net.URI;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -52,6 +54,14 @@ public class NihmsAssembler extends AbstractAssembler {
     @Autowired
     public NihmsAssembler(MetadataBuilderFactory mbf, ResourceBuilderFactory rbf) {
         super(mbf, rbf);
+        // nothing in a NIHMS package, nor the FTP transport, consumes the SHA-256 checksum of custodial content
+        setDigestAlgorithms(Collections.singletonList(PackageStream.Algo.MD5));
+    }
+
+    @Override
+    @Value("${pass.deposit.assembler.nihms.digests:MD5}")
+    public void setDigests(String digestAlgorithms) {
+        super.setDigests(digestAlgorithms);
     }
 
     @Override
@@ -67,7 +77,8 @@ public class NihmsAssembler extends AbstractAssembler {
 
         namePackage(submission, mb);
 
-        NihmsZippedPackageStream stream = new NihmsZippedPackageStream(submission, custodialResources, mb, rbf);
+        NihmsZippedPackageStream stream = new NihmsZippedPackageStream(submission, custodialResources, mb, rbf,
+                getOptions());
         stream.setManifestSerializer(new NihmsManifestSerializer(submission.getManifest()));
         stream.setMetadataSerializer(new NihmsMetadataSerializer(submission.getMetadata()));
         return stream;
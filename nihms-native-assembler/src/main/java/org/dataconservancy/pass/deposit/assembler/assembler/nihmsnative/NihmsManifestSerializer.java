@@ -23,6 +23,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -30,6 +32,8 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * This class is a serializer for NihmsManifest which produces output conforming with the
  * NIHMS Bulk Submission Specifications for Publishers document. For each file in the manifest's file list,
@@ -41,21 +45,24 @@ import java.util.Set;
  *
  * “bulksub_meta_xml”, “manuscript”, “supplement”, “figure”, or “table”
  *
+ * The manifest is encoded as UTF-8.  Instances are reusable and thread-safe; a new label maker is used each time the
+ * manifest is serialized.
+ *
  * @author Jim Martino (jrm@jhu.edu)
  */
 
 public class NihmsManifestSerializer implements StreamingSerializer{
 
-    private DepositManifest manifest;
+    private final DepositManifest manifest;
 
     public NihmsManifestSerializer(DepositManifest manifest) {
         this.manifest = manifest;
     }
 
 
-    public InputStream serialize(){
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        PrintWriter writer = new PrintWriter(os);
+    @Override
+    public void serialize(OutputStream out) throws IOException {
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, UTF_8));
 
         DepositFileLabelMaker labelMaker = new DepositFileLabelMaker();
         for (DepositFile file : manifest.getFiles() ){
@@ -76,16 +83,27 @@ public class NihmsManifestSerializer implements StreamingSerializer{
             includeBulkMetadataInManifest(writer, labelMaker);
         }
 
-        writer.close();
-
-        byte[] bytes = os.toByteArray();
+        // flush, but do not close, the supplied stream
+        writer.flush();
+        if (writer.checkError()) {
+            throw new IOException("Could not write the manifest to the Output Stream");
+        }
+    }
 
-        try (InputStream is = new ByteArrayInputStream(bytes)) {
-            os.close();
-            return is;
+    /**
+     * Serializes to memory, without the {@code IOException} declared by {@link StreamingSerializer#serialize()}.
+     *
+     * @return an {@code InputStream} of the serialization
+     */
+    @Override
+    public InputStream serialize() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            serialize(out);
         } catch (IOException ioe) {
-            throw new RuntimeException("Could not create Input Stream, or close Output Stream", ioe);
+            throw new RuntimeException("Could not create Input Stream", ioe);
         }
+        return new ByteArrayInputStream(out.toByteArray());
     }
 
     protected static void includeBulkMetadataInManifest(PrintWriter writer, DepositFileLabelMaker labelMaker) {
@@ -28,42 +28,56 @@ import org.dataconservancy.pass.deposit.model.DepositMetadata;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
  * XML serialization of our NihmsMetadata to conform with the bulk submission dtd
+ * <p>
+ * A single {@code XStream}, configured once, is shared by every instance: {@code XStream} is thread-safe once it is
+ * configured, and its configuration is the bulk of the cost of serializing the metadata.  The XML is written directly
+ * to the supplied {@code OutputStream}, encoded as UTF-8.
+ * </p>
  *
  * @author Jim Martino (jrm@jhu.edu)
  */
 public class NihmsMetadataSerializer implements StreamingSerializer{
 
-    private DepositMetadata metadata;
+    private static final XStream XSTREAM = newXStream();
+
+    private final DepositMetadata metadata;
 
     public NihmsMetadataSerializer(DepositMetadata metadata){
         this.metadata = metadata;
     }
 
+    @Override
+    public void serialize(OutputStream out) {
+        // XStream flushes, but does not close, the supplied stream
+        XSTREAM.toXML(metadata, out);
+    }
+
+    /**
+     * Serializes to memory, without the {@code IOException} declared by {@link StreamingSerializer#serialize()}.
+     *
+     * @return an {@code InputStream} of the serialization
+     */
+    @Override
     public InputStream serialize() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serialize(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    private static XStream newXStream() {
         XStream xstream = new XStream(new DomDriver("UTF-8", new XmlFriendlyNameCoder("_-", "_")));
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
         xstream.registerConverter(new MetadataConverter());
         xstream.alias("nihms-submit", DepositMetadata.class);
-        xstream.toXML(metadata, os);
-
-        byte[] bytes = os.toByteArray();
-
-        try (InputStream is = new ByteArrayInputStream(bytes)) {
-            os.close();
-            return is;
-        } catch (IOException ioe) {
-            throw new RuntimeException("Could not create Input Stream, or close Output Stream", ioe);
-        }
-
+        return xstream;
     }
 
-    private class MetadataConverter implements Converter {
+    private static class MetadataConverter implements Converter {
         public boolean canConvert(Class clazz) {
             return DepositMetadata.class == clazz;
         }
@@ -178,7 +192,7 @@ public class NihmsMetadataSerializer implements StreamingSerializer{
      * @param  b the boolean to convert
      * @return yes if true, no if false
      */
-    String booleanConvert(boolean b){
+    static String booleanConvert(boolean b){
         return(b?"yes":"no");
     }
 
@@ -23,6 +23,7 @@ import org.dataconservancy.pass.deposit.model.DepositSubmission;
 import org.dataconservancy.pass.deposit.assembler.shared.AbstractZippedPackageStream;
 import org.dataconservancy.pass.deposit.assembler.shared.AbstractThreadedOutputStreamWriter;
 import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.dataconservancy.pass.deposit.assembler.shared.PackageStreamOptions;
 import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,7 +50,13 @@ public class NihmsZippedPackageStream extends AbstractZippedPackageStream {
 
     public NihmsZippedPackageStream(DepositSubmission submission, List<DepositFileResource> custodialResources,
                                     MetadataBuilder metadata, ResourceBuilderFactory rbf) {
-        super(custodialResources, metadata, rbf);
+        this(submission, custodialResources, metadata, rbf, PackageStreamOptions.DEFAULTS);
+    }
+
+    public NihmsZippedPackageStream(DepositSubmission submission, List<DepositFileResource> custodialResources,
+                                    MetadataBuilder metadata, ResourceBuilderFactory rbf,
+                                    PackageStreamOptions options) {
+        super(custodialResources, metadata, rbf, options);
         this.submission = submission;
         this.metadata = metadata;
     }
@@ -16,11 +16,58 @@
 
 package org.dataconservancy.pass.deposit.assembler.assembler.nihmsnative;
 
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
+/**
+ * Serializes a metadata file of a package, like the manifest or the bulk submission metadata, directly to the package.
+ * <p>
+ * Implementations are reusable and thread-safe: each invocation serializes the current state of the object supplied
+ * when the serializer was constructed, and shares no mutable state with concurrent invocations.  Serializing the same
+ * state always produces the same bytes, so {@link #length()} may be used to size an archive entry before the content is
+ * serialized to it.
+ * </p>
+ */
 interface StreamingSerializer {
 
-    InputStream serialize() throws IOException;
+    /**
+     * Serializes to the supplied {@code OutputStream}.  The stream is flushed, but not closed.
+     *
+     * @param out the stream to serialize to
+     * @throws IOException if the stream cannot be written
+     */
+    void serialize(OutputStream out) throws IOException;
+
+    /**
+     * Answers the exact number of bytes written by {@link #serialize(OutputStream)}, by serializing to a stream that
+     * counts and discards the bytes.
+     *
+     * @return the length of the serialization, in bytes
+     * @throws IOException if the serialization fails
+     */
+    default long length() throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        serialize(counter);
+        return counter.getByteCount();
+    }
+
+    /**
+     * Serializes to memory, for callers that require an {@code InputStream}.  Prefer {@link
+     * #serialize(OutputStream)}.
+     *
+     * @return an {@code InputStream} of the serialization
+     * @throws IOException if the serialization fails
+     */
+    default InputStream serialize() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serialize(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
 
 }
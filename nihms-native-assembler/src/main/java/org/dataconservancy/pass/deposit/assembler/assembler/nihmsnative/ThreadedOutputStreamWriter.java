@@ -18,6 +18,8 @@ package org.dataconservancy.pass.deposit.assembler.assembler.nihmsnative;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
@@ -53,13 +55,30 @@ class ThreadedOutputStreamWriter extends AbstractThreadedOutputStreamWriter {
     @Override
     public void assembleResources(DepositSubmission submission, List<PackageStream.Resource> resources)
             throws IOException {
-        ArchiveEntry manifestEntry = createEntry(NihmsZippedPackageStream.MANIFEST_ENTRY_NAME, -1);
-        ArchiveEntry metadataEntry = createEntry(NihmsZippedPackageStream.METADATA_ENTRY_NAME, -1);
-        putResource(archiveOut, manifestEntry, updateLength(manifestEntry, manifestSerializer.serialize()));
-        putResource(archiveOut, metadataEntry, updateLength(metadataEntry, metadataSerializer.serialize()));
+        putSerializedResource(NihmsZippedPackageStream.MANIFEST_ENTRY_NAME, manifestSerializer);
+        putSerializedResource(NihmsZippedPackageStream.METADATA_ENTRY_NAME, metadataSerializer);
         debugResources(resources);
     }
 
+    /**
+     * Serializes directly into a new archive entry.  Tar entries must be sized before they are written, so their
+     * length is computed by the serializer first; zip entries are written without a known size.
+     *
+     * @param name the name of the archive entry
+     * @param serializer the serializer supplying the content of the entry
+     * @throws IOException if the archive cannot be written
+     */
+    private void putSerializedResource(String name, StreamingSerializer serializer) throws IOException {
+        ArchiveEntry entry = createEntry(name, -1);
+        if (entry instanceof TarArchiveEntry) {
+            ((TarArchiveEntry) entry).setSize(serializer.length());
+        }
+
+        archiveOut.putArchiveEntry(entry);
+        serializer.serialize(new CloseShieldOutputStream(archiveOut));
+        archiveOut.closeArchiveEntry();
+    }
+
     private void debugResources(List<PackageStream.Resource> resources) {
         resources.forEach(r -> LOG.debug(">>>> Assembling resource: {}", r));
     }
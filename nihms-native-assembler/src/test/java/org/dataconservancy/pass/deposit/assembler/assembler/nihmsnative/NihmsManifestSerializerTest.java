@@ -21,9 +21,11 @@ import org.apache.commons.io.IOUtils;
 import org.dataconservancy.pass.deposit.model.DepositFile;
 import org.dataconservancy.pass.deposit.model.DepositFileType;
 import org.dataconservancy.pass.deposit.model.DepositManifest;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -141,5 +143,42 @@ public class NihmsManifestSerializerTest {
 
     }
     
+
+    /**
+     * Serializing to an OutputStream produces the same manifest as reading it from an InputStream, of the length
+     * reported by the serializer, and the serializer may be reused.
+     */
+    @Test
+    public void testSerializeToOutputStream() throws Exception {
+        DepositFile figure = new DepositFile();
+        figure.setName("figure.png");
+        figure.setType(DepositFileType.figure);
+
+        DepositFile manuscript = new DepositFile();
+        manuscript.setLabel("Manuscript \u00e9");
+        manuscript.setName("manuscript.pdf");
+        manuscript.setType(DepositFileType.manuscript);
+
+        List<DepositFile> files = new ArrayList<>();
+        files.add(figure);
+        files.add(manuscript);
+
+        DepositManifest manifest = new DepositManifest();
+        manifest.setFiles(files);
+
+        NihmsManifestSerializer underTest = new NihmsManifestSerializer(manifest);
+
+        byte[] expected = IOUtils.toByteArray(underTest.serialize());
+        assertEquals(expected.length, underTest.length());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        underTest.serialize(out);
+        assertArrayEquals(expected, out.toByteArray());
+
+        // labels are not carried over from one serialization to the next
+        assertEquals("figure\tfigure-1\tfigure.png\n" +
+                "manuscript\tManuscript \u00e9\tmanuscript.pdf\n" +
+                "bulksub_meta_xml\tSubmission Metadata\tbulk_meta.xml", new String(out.toByteArray(), "UTF-8"));
+    }
+
 }
-    
@@ -16,6 +16,7 @@
 
 package org.dataconservancy.pass.deposit.assembler.assembler.nihmsnative;
 
+import org.apache.commons.io.IOUtils;
 import org.dataconservancy.pass.deposit.model.DepositMetadata;
 import org.dataconservancy.pass.deposit.model.JournalPublicationType;
 import org.junit.BeforeClass;
@@ -28,6 +29,7 @@ import org.xmlunit.validation.Validator;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
@@ -37,7 +39,12 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -174,4 +181,33 @@ public class NihmsMetadataSerializerTest {
         assertTrue("http:// prefix and/or domain not stripped from DOI during export.", doi.contentEquals(path));
     }
 
-}
\ No newline at end of file
+
+    /**
+     * A single serializer may be used concurrently, and each serialization written to an OutputStream is the same as
+     * the serialization read from an InputStream, and has the length reported by the serializer.
+     */
+    @Test
+    public void testConcurrentSerialization() throws Exception {
+        byte[] expected = IOUtils.toByteArray(underTest.serialize());
+        assertEquals(expected.length, underTest.length());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    underTest.serialize(out);
+                    return out.toByteArray();
+                }));
+            }
+
+            for (Future<byte[]> result : results) {
+                assertArrayEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
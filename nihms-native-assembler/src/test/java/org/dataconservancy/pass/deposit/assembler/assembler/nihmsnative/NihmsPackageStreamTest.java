@@ -38,7 +38,6 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 
-import static org.dataconservancy.deposit.util.function.FunctionUtil.performSilently;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -54,9 +53,9 @@ public class NihmsPackageStreamTest {
 
     private static final Logger LOG = LoggerFactory.getLogger(NihmsPackageStreamTest.class);
 
-    private StreamingSerializer manifestSerializer = () -> performSilently(() -> IOUtils.toInputStream("This is the manifest.", "UTF-8"));
+    private StreamingSerializer manifestSerializer = out -> IOUtils.write("This is the manifest.", out, "UTF-8");
 
-    private StreamingSerializer metadataSerializer = () -> performSilently(() -> IOUtils.toInputStream("This is the metadata", "UTF-8"));
+    private StreamingSerializer metadataSerializer = out -> IOUtils.write("This is the metadata", out, "UTF-8");
 
     private List<DepositFileResource> custodialContent;
 
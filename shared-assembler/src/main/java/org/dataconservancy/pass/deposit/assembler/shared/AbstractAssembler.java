@@ -24,6 +24,7 @@ import org.dataconservancy.pass.deposit.model.DepositFile;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.FileSystemResource;
@@ -31,9 +32,11 @@ import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.web.util.UriUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -71,6 +74,22 @@ public abstract class AbstractAssembler implements Assembler {
 
     private String fedoraPassword;
 
+    private PackageStreamOptions options = PackageStreamOptions.DEFAULTS;
+
+    private List<PackageStream.Algo> digestAlgorithms;
+
+    private boolean spool = false;
+
+    private String spoolDirectory;
+
+    private volatile CustodialContentCache contentCache;
+
+    private String cacheDirectory;
+
+    private long cacheMaxBytes = 1024L * 1024 * 1024;
+
+    private boolean cacheVerify = false;
+
     /**
      * Constructs a new assembler that provides {@link MetadataBuilderFactory} and {@link ResourceBuilderFactory} for
      * implementations to create and amend the state of package metadata and resources.
@@ -93,12 +112,37 @@ public abstract class AbstractAssembler implements Assembler {
      */
     @Override
     public PackageStream assemble(DepositSubmission submission) {
+        return assemble(submission, null);
+    }
+
+    /**
+     * Assembles a package of the {@code submission}, reading its custodial content through the supplied {@code stage}
+     * when the submission is being deposited to multiple repositories.
+     *
+     * @param submission the custodial content being packaged
+     * @param stage shares the custodial content among the packages of the submission, may be {@code null}
+     * @return a PackageStream which actually creates the stream for the archive
+     */
+    public PackageStream assemble(DepositSubmission submission, SharedContentStage stage) {
         MetadataBuilder metadataBuilder = mbf.newInstance();
         metadataBuilder.name(sanitizeFilename(submission.getName()));
 
         List<DepositFileResource> custodialResources = resolveCustodialResources(submission.getFiles());
 
-        return createPackageStream(submission, custodialResources, metadataBuilder, rbf);
+        // When the submission is being deposited to multiple repositories, share its custodial content among them
+        if (stage != null) {
+            custodialResources.forEach(dfr -> dfr.setResource(
+                    new StagedResource(stage, dfr.getDepositFile().getLocation(), dfr.getResource())));
+        }
+
+        PackageStream stream = createPackageStream(submission, custodialResources, metadataBuilder, rbf);
+
+        if (spool) {
+            return new SpoolingPackageStream(stream,
+                    spoolDirectory == null || spoolDirectory.trim().isEmpty() ? null : new File(spoolDirectory));
+        }
+
+        return stream;
     }
 
     /**
@@ -115,6 +159,10 @@ public abstract class AbstractAssembler implements Assembler {
      * will be responsible for generating the various BagIt tag files.  These package-specific metadata are <em>not</em>
      * provided as {@code custodialResources}.
      * </p>
+     * <p>
+     * Implementations are expected to stream the package according to the {@link #getOptions() options} of this
+     * assembler.
+     * </p>
      *
      * @param submission the submission of content and metadata
      * @param custodialResources
@@ -220,7 +268,11 @@ public abstract class AbstractAssembler implements Assembler {
                         if (fedoraUser != null) {
                             try {
                                 LOG.trace(">>>> Returning AuthenticatedResource for {}", location);
-                                delegateResource = new AuthenticatedResource(new URL(location), fedoraUser, fedoraPassword);
+                                CustodialContentCache cache = getContentCache();
+                                delegateResource = (cache != null) ?
+                                        new CachingAuthenticatedResource(new URL(location), fedoraUser,
+                                                fedoraPassword, cache) :
+                                        new AuthenticatedResource(new URL(location), fedoraUser, fedoraPassword);
                             } catch (MalformedURLException e) {
                                 throw new RuntimeException(e.getMessage(), e);
                             }
@@ -297,6 +349,158 @@ public abstract class AbstractAssembler implements Assembler {
         this.fedoraPassword = fedoraPassword;
     }
 
+    /**
+     * Answers the options used to stream the packages assembled by this assembler.  The {@link
+     * #setDigestAlgorithms(List) digest algorithms} of this assembler, if set, override those of the {@link
+     * #setOptions(PackageStreamOptions) supplied options}.
+     *
+     * @return the package stream options
+     */
+    public PackageStreamOptions getOptions() {
+        return digestAlgorithms == null ? options : options.toBuilder().digestAlgorithms(digestAlgorithms).build();
+    }
+
+    /**
+     * The options used to stream the packages assembled by this assembler, typically the options bound from the
+     * {@code pass.deposit.assembler.*} properties.
+     *
+     * @param options the package stream options
+     */
+    @Autowired(required = false)
+    public void setOptions(PackageStreamOptions options) {
+        if (options == null) {
+            throw new IllegalArgumentException("Package stream options must not be null.");
+        }
+        this.options = options;
+    }
+
+    public List<PackageStream.Algo> getDigestAlgorithms() {
+        return getOptions().getDigestAlgorithms();
+    }
+
+    /**
+     * The algorithms used to compute the checksums of each custodial resource, in the order the checksums are reported.
+     * Assemblers should compute only the checksums consumed by their packaging format or transport.
+     *
+     * @param digestAlgorithms the digest algorithms
+     * @see MultiDigestInputStream
+     */
+    public void setDigestAlgorithms(List<PackageStream.Algo> digestAlgorithms) {
+        if (digestAlgorithms == null) {
+            throw new IllegalArgumentException("Digest algorithms must not be null.");
+        }
+        this.digestAlgorithms = digestAlgorithms;
+    }
+
+    /**
+     * Sets the digest algorithms from a comma-separated list of algorithm names, e.g. {@code MD5,SHA-256}.  Sub-classes
+     * may override this method in order to inject an assembler-specific configuration property.
+     *
+     * @param digestAlgorithms the algorithm names
+     * @see MultiDigestInputStream#parseAlgorithms(String)
+     */
+    public void setDigests(String digestAlgorithms) {
+        setDigestAlgorithms(MultiDigestInputStream.parseAlgorithms(digestAlgorithms));
+    }
+
+    public boolean isSpool() {
+        return spool;
+    }
+
+    /**
+     * When {@code true}, packages are assembled to a temporary file before they are returned from {@link
+     * #assemble(DepositSubmission)}, so that their size and checksums are known before they are transported.
+     *
+     * @param spool whether or not packages are spooled to disk
+     * @see SpoolingPackageStream
+     */
+    @Value("${pass.deposit.assembler.spool:false}")
+    public void setSpool(boolean spool) {
+        this.spool = spool;
+    }
+
+    public String getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    /**
+     * The directory holding spooled packages.  If empty, the default temporary-file directory is used.
+     *
+     * @param spoolDirectory the spool directory
+     */
+    @Value("${pass.deposit.assembler.spool.dir:}")
+    public void setSpoolDirectory(String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * Answers the cache used for custodial content retrieved from Fedora.  Unless a cache has been {@link
+     * #setContentCache(CustodialContentCache) set} explicitly, the cache is shared by all assemblers configured with
+     * the same {@link #setCacheDirectory(String) cache directory}.
+     *
+     * @return the custodial content cache, or {@code null} if custodial content is not cached
+     */
+    public CustodialContentCache getContentCache() {
+        if (contentCache == null && cacheDirectory != null && !cacheDirectory.trim().isEmpty()) {
+            contentCache = CustodialContentCache.shared(Paths.get(cacheDirectory), cacheMaxBytes, cacheVerify);
+        }
+
+        return contentCache;
+    }
+
+    /**
+     * The cache used for custodial content retrieved from Fedora, overriding the {@link #setCacheDirectory(String)
+     * cache directory}.
+     *
+     * @param contentCache the custodial content cache, may be {@code null}
+     */
+    public void setContentCache(CustodialContentCache contentCache) {
+        this.contentCache = contentCache;
+    }
+
+    /**
+     * The directory of the custodial content cache.  If empty, custodial content is retrieved from Fedora each time a
+     * package is assembled.
+     *
+     * @param cacheDirectory the cache directory
+     */
+    @Value("${pass.deposit.assembler.cache.dir:}")
+    public void setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    /**
+     * The maximum size of the custodial content cache, in bytes.
+     *
+     * @param cacheMaxBytes the maximum size of the cache
+     */
+    @Value("${pass.deposit.assembler.cache.max-bytes:1073741824}")
+    public void setCacheMaxBytes(long cacheMaxBytes) {
+        this.cacheMaxBytes = cacheMaxBytes;
+    }
+
+    public boolean isCacheVerify() {
+        return cacheVerify;
+    }
+
+    /**
+     * Whether or not cached custodial content is verified against its recorded digest each time it is read.
+     *
+     * @param cacheVerify {@code true} to verify cached content when it is read
+     */
+    @Value("${pass.deposit.assembler.cache.verify:false}")
+    public void setCacheVerify(boolean cacheVerify) {
+        this.cacheVerify = cacheVerify;
+    }
+
     /**
      * Returns {@code true} if the supplied character is acceptable for use in a posix file name
      *
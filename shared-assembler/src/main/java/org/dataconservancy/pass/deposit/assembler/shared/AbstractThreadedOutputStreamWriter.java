@@ -19,16 +19,14 @@ import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.ContentLengthObserver;
-import org.apache.commons.io.input.DigestObserver;
-import org.apache.commons.io.input.ObservableInputStream;
-import org.apache.tika.detect.DefaultDetector;
-import org.apache.tika.metadata.Metadata;
-import org.apache.tika.mime.MediaType;
 import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 import org.dataconservancy.pass.deposit.assembler.ResourceBuilder;
+import org.dataconservancy.pass.deposit.model.DepositFile;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,11 +37,21 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
 
 /**
- * A {@link Thread} responsible for assembling the custodial content and metadata of a package, and writing each
- * resource to the {@link ArchiveOutputStream} supplied on construction.
+ * A {@link Runnable} responsible for assembling the custodial content and metadata of a package, and writing each
+ * resource to the {@link ArchiveOutputStream} supplied on construction.  Writers are executed on the threads of an
+ * {@link ArchiveWriterExecutor}, and are named for the package they write while they execute.
  * <p>
  * Assembling {@code PackageStream.Resource} objects includes characterizing the resource in the form of
  * {@link PackageStream.Resource#metadata() resource metadata}, and writing the bytes of the resource to the package
@@ -57,7 +65,9 @@ import java.util.List;
  *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
-public abstract class AbstractThreadedOutputStreamWriter extends Thread {
+public abstract class AbstractThreadedOutputStreamWriter implements Runnable {
+
+    private String name;
 
     private List<DepositFileResource> packageFiles;
 
@@ -71,9 +81,19 @@ public abstract class AbstractThreadedOutputStreamWriter extends Thread {
 
     private DepositSubmission submission;
 
+    private PackageStreamOptions options = PackageStreamOptions.DEFAULTS;
+
+    private MimeTypeDetector mimeTypeDetector = MimeTypeDetector.shared();
+
+    private ZipCompressionPolicy zipCompression = options.getZipCompression();
+
+    private Consumer<List<PackageStream.Resource>> assembledResourcesHandler;
+
     protected static final Logger LOG = LoggerFactory.getLogger(AbstractThreadedOutputStreamWriter.class);
 
-    protected static final int THIRTY_TWO_KIB = 32 * 2 ^ 10;
+    protected static final int THIRTY_TWO_KIB = 32 * 1024;
+
+    static final String ERR_DECLARED = "Declared %s of '%s' does not match its content: declared %s, but was %s";
 
     protected ArchiveOutputStream archiveOut;
 
@@ -81,7 +101,7 @@ public abstract class AbstractThreadedOutputStreamWriter extends Thread {
      * Constructs an {@code ArchiveOutputStream} that is supplied with the output stream being written to, the custodial
      * content being packaged, the submission, and other supporting classes.
      *
-     * @param threadName the name used by this {@code Thread}
+     * @param threadName the name assumed by the executing {@code Thread} while this writer is running
      * @param archiveOut the output stream being written to by this writer
      * @param submission the submission
      * @param packageFiles the custodial content of the package
@@ -91,7 +111,7 @@ public abstract class AbstractThreadedOutputStreamWriter extends Thread {
     public AbstractThreadedOutputStreamWriter(String threadName, ArchiveOutputStream archiveOut,
                                               DepositSubmission submission, List<DepositFileResource> packageFiles,
                                               ResourceBuilderFactory rbf, MetadataBuilder metadataBuilder) {
-        super(threadName);
+        this.name = threadName;
         this.archiveOut = archiveOut;
         this.packageFiles = packageFiles;
         this.rbf = rbf;
@@ -104,7 +124,7 @@ public abstract class AbstractThreadedOutputStreamWriter extends Thread {
      * <ol>
      *     <li>Creating {@link PackageStream.Resource}s for the custodial content of the package
      *     <ul>
-     *         <li>Includes setting up the {@link ObservableInputStream} for characterizing each {@link Resource SpringResource} in the package</li>
+     *         <li>Includes setting up the {@link MultiDigestInputStream} for characterizing each {@link Resource SpringResource} in the package</li>
      *     </ul></li>
      *     <li>Creating an {@link ArchiveEntry} for each {@code PackageStream.Resource}, and writing the resource to
      *         the output stream</li>
@@ -114,6 +134,18 @@ public abstract class AbstractThreadedOutputStreamWriter extends Thread {
      */
     @Override
     public void run() {
+        Thread current = Thread.currentThread();
+        String executorThreadName = current.getName();
+        current.setName(name);
+        try {
+            write();
+        } finally {
+            current.setName(executorThreadName);
+        }
+    }
+
+    private void write() {
+        List<Supplier<PackageStream.Resource>> writtenResources = new ArrayList<>();
         List<PackageStream.Resource> assembledResources = new ArrayList<>();
 
         try {
@@ -127,49 +159,34 @@ public abstract class AbstractThreadedOutputStreamWriter extends Thread {
                         "to this " + this.getClass().getName());
             }
 
-            packageFiles.forEach(resource -> {
-                ResourceBuilder rb = rbf.newInstance();
-                try (InputStream resourceIn = resource.getInputStream();
-                     BufferedInputStream buffIn = resourceIn.markSupported() ?
-                             null : new BufferedInputStream(resourceIn)) {
-
-                    InputStream in;
-
-                    if (buffIn != null) {
-                        in = buffIn;
-                    } else {
-                        in = resourceIn;
-                    }
-
-                    DefaultDetector detector = new DefaultDetector();
-                    MediaType mimeType = detector.detect(in, new Metadata());
-                    in.reset();
-                    rb.mimeType(mimeType.toString());
-
-
-
-                    ContentLengthObserver clObs = new ContentLengthObserver(rb);
-                    DigestObserver md5Obs = new DigestObserver(rb, PackageStream.Algo.MD5);
-                    DigestObserver sha256Obs = new DigestObserver(rb, PackageStream.Algo.SHA_256);
-                    try (ObservableInputStream observableIn = new ObservableInputStream(in)) {
-                        observableIn.add(clObs);
-                        observableIn.add(md5Obs);
-                        observableIn.add(sha256Obs);
+            if (archiveOut instanceof ZipArchiveOutputStream) {
+                ((ZipArchiveOutputStream) archiveOut).setLevel(zipCompression.getLevel());
+            }
 
-                        rb.name(nameResource(resource));
-                        PackageStream.Resource packageResource = rb.build();
-                        long length = resource.contentLength();
-                        ArchiveEntry archiveEntry = createEntry(packageResource.name(), length);
-                        putResource(archiveOut, archiveEntry, observableIn);
+            try (ResourcePrefetcher prefetcher = new ResourcePrefetcher(packageFiles,
+                    options.getPrefetchDepth(), options.getPrefetchByteBudget());
+                 ParallelZipDeflater deflater = archiveOut instanceof ZipArchiveOutputStream &&
+                         zipCompression.isParallel() ?
+                         new ParallelZipDeflater((ZipArchiveOutputStream) archiveOut, zipCompression.getLevel()) :
+                         null) {
+                while (prefetcher.hasNext()) {
+                    ResourcePrefetcher.PrefetchedResource prefetched = prefetcher.next();
+                    DepositFileResource resource = prefetched.getResource();
+                    try {
+                        writtenResources.add(writeResource(prefetched, deflater));
+                    } catch (IOException e) {
+                        throw new RuntimeException(String.format(AbstractZippedPackageStream.ERR_PUT_RESOURCE,
+                                resource.getFilename(), e.getMessage()), e);
                     }
+                }
 
-                    LOG.debug(">>>> Adding resource: {}", rb.build());
-                    assembledResources.add(rb.build());
-                    rb.reset();
-                } catch (IOException e) {
-                    throw new RuntimeException(String.format(AbstractZippedPackageStream.ERR_PUT_RESOURCE, resource.getFilename(), e.getMessage()), e);
+                if (deflater != null) {
+                    deflater.finish();
                 }
-            });
+            }
+
+            // Resources are characterized once their bytes have been written to the package
+            writtenResources.forEach(written -> assembledResources.add(written.get()));
 
             // TODO: manifests, etc are built and serialized to the archiveOut stream
             // (must create TarArchiveEntry for each manifest)
@@ -179,6 +196,10 @@ public abstract class AbstractThreadedOutputStreamWriter extends Thread {
 
             assembleResources(submission, assembledResources);
 
+            if (assembledResourcesHandler != null) {
+                assembledResourcesHandler.accept(Collections.unmodifiableList(assembledResources));
+            }
+
             // TODO: archiveOut should be closed and finished by the parent thread?
             archiveOut.finish();
             archiveOut.close();
@@ -187,14 +208,14 @@ public abstract class AbstractThreadedOutputStreamWriter extends Thread {
                             "and any underlying output streams", archiveOut);
 
             if (uncaughtExceptionHandler != null) {
-                uncaughtExceptionHandler.uncaughtException(this, e);
+                uncaughtExceptionHandler.uncaughtException(Thread.currentThread(), e);
             }
 
             // special care needs to be taken when exceptions are encountered.  it is essential that the underlying
-            // pipedoutputstream be closed. (1) the archive output stream prevents the underlying output streams from
+            // pipe output stream be closed. (1) the archive output stream prevents the underlying output streams from
             // being closed (2) this class isn't aware of the underlying output streams; there may be multiple of them
             // so the creator of this instance also supplies a callback which is invoked to close each of the underlying
-            // streams, insuring that the pipedoutputstream is closed.
+            // streams, insuring that the pipe output stream is closed.
             if (closeStreamHandler != null) {
                 closeStreamHandler.closeAll();
             }
@@ -209,6 +230,259 @@ public abstract class AbstractThreadedOutputStreamWriter extends Thread {
         }
     }
 
+    /**
+     * Detects the MIME type of the supplied resource, and writes its bytes to the archive output stream.  Zip entries
+     * are compressed according to the {@link PackageStreamOptions#getZipCompression() zip compression policy}: when a {@code deflater} is
+     * supplied, the bytes are handed to it and written to the archive once they have been compressed, unless they are
+     * read through a {@link SharedContentStage}.
+     *
+     * @param prefetched the resource, along with its bytes
+     * @param deflater compresses zip entries in parallel, may be {@code null} to write the bytes on this thread
+     * @return supplies the package resource describing the bytes, once they have been written to the archive
+     * @throws IOException if the resource cannot be read or written
+     */
+    private Supplier<PackageStream.Resource> writeResource(ResourcePrefetcher.PrefetchedResource prefetched,
+                                                           ParallelZipDeflater deflater) throws IOException {
+        DepositFileResource resource = prefetched.getResource();
+        // Custodial content shared with other packages of the same submission is characterized once, by the stage
+        StagedResource staged = resource.getResource() instanceof StagedResource ?
+                (StagedResource) resource.getResource() : null;
+        ResourceBuilder rb = rbf.newInstance();
+        String mimeType = staged != null ? staged.getMimeType() : null;
+        if (mimeType == null) {
+            mimeType = mimeTypeDetector.detect(resource);
+        }
+
+        InputStream resourceIn = prefetched.getInputStream();
+        InputStream in = resourceIn;
+        boolean handedOff = false;
+
+        try {
+            if (mimeType == null && !resourceIn.markSupported()) {
+                in = new BufferedInputStream(resourceIn);
+            }
+
+            // Only read the content to detect its MIME type when it cannot be determined otherwise
+            if (mimeType == null) {
+                mimeType = mimeTypeDetector.detect(resource, in);
+            }
+
+            if (staged != null && staged.getMimeType() == null) {
+                staged.setMimeType(mimeType);
+            }
+            rb.mimeType(mimeType);
+
+            rb.name(nameResource(resource));
+            PackageStream.Resource packageResource = rb.build();
+            long length = prefetched.getLength();
+            ArchiveEntry archiveEntry = createEntry(packageResource.name(), length);
+            boolean stored = zipCompression.isStored(mimeType);
+
+            // Digests declared by the DepositFile are not computed again, unless they are to be verified
+            Map<PackageStream.Algo, PackageStream.Checksum> declared =
+                    staged == null && !options.isVerifyDeclaredDigests() ?
+                            declaredChecksums(resource) : Collections.emptyMap();
+            List<PackageStream.Algo> algorithms = options.getDigestAlgorithms().stream()
+                    .filter(algo -> !declared.containsKey(algo))
+                    .collect(Collectors.toList());
+
+            // Local files are transferred from their channel, unless they are compressed in parallel
+            if (prefetched.getChannel() != null && staged == null && deflater == null) {
+                LocalFileTransfer transfer = new LocalFileTransfer(prefetched.getChannel(), algorithms);
+                putLocalResource(archiveEntry, transfer, stored);
+                return () -> characterize(rb, resource,
+                        digested(transfer::size, transfer::getChecksums, declared), staged);
+            }
+
+            MultiDigestInputStream digestIn = staged == null ?
+                    new MultiDigestInputStream(in, algorithms,
+                            options.isPipelineDigests() ? MultiDigestInputStream.sharedExecutor() : null, null) : null;
+            InputStream content = digestIn != null ? digestIn : in;
+
+            if (deflater != null && staged == null) {
+                handedOff = true;
+                deflater.addEntry((ZipArchiveEntry) archiveEntry, content, stored);
+            } else {
+                // Staged content may follow another package, whose entries could be waiting on the same compressing
+                // threads, so it is compressed on this thread once the entries preceding it have been written
+                if (deflater != null) {
+                    deflater.finish();
+                }
+                try (InputStream toPut = content) {
+                    if (archiveOut instanceof ZipArchiveOutputStream && stored) {
+                        // Stored entries require their CRC up-front when the archive is streamed, so the content is
+                        // buffered to compute it, exactly as when it is stored by the parallel deflater
+                        ParallelZipDeflater.putStoredEntry((ZipArchiveOutputStream) archiveOut,
+                                (ZipArchiveEntry) archiveEntry, toPut);
+                    } else {
+                        putResource(archiveOut, archiveEntry, toPut);
+                    }
+                }
+            }
+
+            Consumer<ResourceBuilder> digested = digestIn != null ?
+                    digested(digestIn::getLength, digestIn::getChecksums, declared) : null;
+            return () -> characterize(rb, resource, digested, staged);
+        } finally {
+            if (!handedOff) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Answers the checksums declared by the {@code DepositFile} of the supplied resource, e.g. those obtained from
+     * Fedora when the submission was built, for each of the {@link PackageStreamOptions#getDigestAlgorithms() digest
+     * algorithms} they cover.  Malformed digests are ignored.
+     *
+     * @param resource the resource
+     * @return the declared checksums, keyed by their algorithm, which may be empty
+     */
+    private Map<PackageStream.Algo, PackageStream.Checksum> declaredChecksums(DepositFileResource resource) {
+        Map<PackageStream.Algo, PackageStream.Checksum> checksums = new EnumMap<>(PackageStream.Algo.class);
+        DepositFile file = resource.getDepositFile();
+        if (file == null || file.getDigests().isEmpty()) {
+            return checksums;
+        }
+
+        for (PackageStream.Algo algo : options.getDigestAlgorithms()) {
+            String hex = file.getDigests().get(MultiDigestInputStream.algorithmName(algo));
+            if (hex == null) {
+                continue;
+            }
+            try {
+                byte[] value = Hex.decodeHex(hex.toCharArray());
+                checksums.put(algo, new ChecksumImpl(algo, value, Base64.getEncoder().encodeToString(value), hex));
+            } catch (DecoderException e) {
+                LOG.debug("Ignoring malformed {} digest '{}' declared by {}", algo, hex, file.getLocation());
+            }
+        }
+
+        return checksums;
+    }
+
+    /**
+     * Answers a characterization of a resource written to the package, combining the length and checksums computed as
+     * it was written with the checksums declared for the algorithms that were not computed.  The checksums are set in
+     * the order of the {@link PackageStreamOptions#getDigestAlgorithms() digest algorithms}.
+     *
+     * @param length supplies the number of bytes written
+     * @param computed supplies the checksums computed as the resource was written, or {@code null} if the resource
+     *                 was not written in its entirety
+     * @param declared the declared checksums
+     * @return the characterization
+     */
+    private Consumer<ResourceBuilder> digested(LongSupplier length, Supplier<List<PackageStream.Checksum>> computed,
+                                               Map<PackageStream.Algo, PackageStream.Checksum> declared) {
+        return builder -> {
+            List<PackageStream.Checksum> checksums = computed.get();
+            if (checksums == null) {
+                throw new IllegalStateException("Resource has not been written in its entirety.");
+            }
+
+            Map<PackageStream.Algo, PackageStream.Checksum> byAlgorithm = new EnumMap<>(PackageStream.Algo.class);
+            byAlgorithm.putAll(declared);
+            checksums.forEach(checksum -> byAlgorithm.put(checksum.algorithm(), checksum));
+
+            builder.sizeBytes(length.getAsLong());
+            options.getDigestAlgorithms().forEach(algo -> builder.checksum(byAlgorithm.get(algo)));
+        };
+    }
+
+    /**
+     * Verifies the size and digests declared by the {@code DepositFile} of the supplied resource, e.g. those obtained
+     * from Fedora when the submission was built, against the size and digests computed as the resource was written to
+     * the package.  Digests of algorithms that were not computed are not verified.
+     *
+     * @param resource the resource
+     * @param assembled the resource as written to the package
+     * @throws RuntimeException if the declared size or a declared digest does not match
+     */
+    private static void verifyDeclared(DepositFileResource resource, PackageStream.Resource assembled) {
+        DepositFile file = resource.getDepositFile();
+        if (file == null) {
+            return;
+        }
+
+        if (file.getSize() >= 0 && file.getSize() != assembled.sizeBytes()) {
+            throw new RuntimeException(String.format(ERR_DECLARED, "size", file.getLocation(), file.getSize(),
+                    assembled.sizeBytes()));
+        }
+
+        for (PackageStream.Checksum checksum : assembled.checksums()) {
+            String declared = file.getDigests().get(MultiDigestInputStream.algorithmName(checksum.algorithm()));
+            if (declared != null && !declared.equalsIgnoreCase(checksum.asHex())) {
+                throw new RuntimeException(String.format(ERR_DECLARED, checksum.algorithm() + " digest",
+                        file.getLocation(), declared, checksum.asHex()));
+            }
+        }
+    }
+
+    /**
+     * Writes a resource residing on the local filesystem to the archive output stream from its channel.  The entry of
+     * a zip package whose content is not compressed is written as a stored entry: the resource is digested, and its
+     * CRC computed, before the entry is put, and its bytes are transferred to the package unaltered.  Otherwise the
+     * resource is digested as it is transferred.
+     *
+     * @param archiveEntry the entry describing the resource
+     * @param transfer transfers the resource from its channel
+     * @param stored true if the content of a zip entry is not compressed
+     * @throws IOException if the resource cannot be read or written
+     */
+    private void putLocalResource(ArchiveEntry archiveEntry, LocalFileTransfer transfer, boolean stored)
+            throws IOException {
+        boolean zip = archiveOut instanceof ZipArchiveOutputStream;
+
+        if (archiveEntry instanceof TarArchiveEntry) {
+            ((TarArchiveEntry) archiveEntry).setSize(transfer.size());
+        } else if (archiveEntry instanceof ZipArchiveEntry) {
+            ((ZipArchiveEntry) archiveEntry).setSize(transfer.size());
+        }
+
+        if (zip && stored) {
+            transfer.scan(true);
+            ZipArchiveEntry zipEntry = (ZipArchiveEntry) archiveEntry;
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setCompressedSize(transfer.size());
+            zipEntry.setCrc(transfer.getCrc());
+        } else if (zip) {
+            ((ZipArchiveOutputStream) archiveOut).setLevel(zipCompression.getLevel());
+        }
+
+        archiveOut.putArchiveEntry(archiveEntry);
+        transfer.transferTo(archiveOut);
+        LOG.debug(">>>> Transferred {}: {} bytes", archiveEntry.getName(), transfer.size());
+        archiveOut.closeArchiveEntry();
+    }
+
+    /**
+     * Characterizes a resource whose bytes have been written to the archive output stream, either from the digests
+     * computed as it was written, or by the stage it was shared through.
+     */
+    private PackageStream.Resource characterize(ResourceBuilder rb, DepositFileResource resource,
+                                                 Consumer<ResourceBuilder> digested, StagedResource staged) {
+        if (digested != null) {
+            digested.accept(rb);
+        } else {
+            SharedContentStage.StagedCharacterization characterization = staged.characterization();
+            if (characterization != null) {
+                rb.sizeBytes(characterization.getLength());
+                characterization.getChecksums().stream()
+                        .filter(checksum -> options.getDigestAlgorithms().contains(checksum.algorithm()))
+                        .forEach(rb::checksum);
+            } else {
+                LOG.warn("Missing characterization of staged resource {}", resource.getFilename());
+            }
+        }
+
+        PackageStream.Resource assembled = rb.build();
+        if (options.isVerifyDeclaredDigests()) {
+            verifyDeclared(resource, assembled);
+        }
+        LOG.debug(">>>> Adding resource: {}", assembled);
+        return assembled;
+    }
+
     /**
      * Provide the name to set on the {@code PackageStream.Resource}
      * TODO: have some kind of adapter from a Spring Resource to a PackageStream.Resource
@@ -287,11 +561,66 @@ public abstract class AbstractThreadedOutputStreamWriter extends Thread {
         this.closeStreamHandler = callback;
     }
 
-    @Override
-    public void setUncaughtExceptionHandler(UncaughtExceptionHandler uncaughtExceptionHandler) {
+    /**
+     * Sets the handler notified of any exception encountered while writing the package, prior to the output streams
+     * being closed.  Typically used to report the exception to the reading side of the package stream.
+     *
+     * @param uncaughtExceptionHandler the handler notified of exceptions encountered by this writer
+     */
+    public void setUncaughtExceptionHandler(Thread.UncaughtExceptionHandler uncaughtExceptionHandler) {
         this.uncaughtExceptionHandler = uncaughtExceptionHandler;
     }
 
+    /**
+     * The options tuning how custodial resources are prefetched, digested and compressed, as supplied by the {@link
+     * AbstractZippedPackageStream} executing this writer.
+     *
+     * @return the package stream options
+     */
+    public PackageStreamOptions getOptions() {
+        return options;
+    }
+
+    public void setOptions(PackageStreamOptions options) {
+        if (options == null) {
+            throw new IllegalArgumentException("Package stream options must not be null.");
+        }
+        this.options = options;
+        this.zipCompression = options.getZipCompression();
+    }
+
+    /**
+     * Receives the custodial resources of the package once they have been written and characterized, before the
+     * archive output stream is finished.
+     *
+     * @return the handler of assembled resources, may be {@code null}
+     */
+    public Consumer<List<PackageStream.Resource>> getAssembledResourcesHandler() {
+        return assembledResourcesHandler;
+    }
+
+    public void setAssembledResourcesHandler(Consumer<List<PackageStream.Resource>> assembledResourcesHandler) {
+        this.assembledResourcesHandler = assembledResourcesHandler;
+    }
+
+    public MimeTypeDetector getMimeTypeDetector() {
+        return mimeTypeDetector;
+    }
+
+    public void setMimeTypeDetector(MimeTypeDetector mimeTypeDetector) {
+        if (mimeTypeDetector == null) {
+            throw new IllegalArgumentException("MIME type detector must not be null.");
+        }
+        this.mimeTypeDetector = mimeTypeDetector;
+    }
+
+    /**
+     * @return the name of this writer, assumed by the executing thread while the writer is running
+     */
+    public String getName() {
+        return name;
+    }
+
     /**
      * The bytes of the {@code inputStream} will be copied to the {@code ArchiveOutputStream} using the metadata in
      * {@code ArchiveEntry}.
@@ -326,8 +655,8 @@ public abstract class AbstractThreadedOutputStreamWriter extends Thread {
      * The {@link ArchiveOutputStream} provided on {@link #AbstractThreadedOutputStreamWriter(String, ArchiveOutputStream,
      * DepositSubmission, List, ResourceBuilderFactory, MetadataBuilder) construction} is written to when the
      * {@link #run()} method is executed.  If there is a problem writing to the {@code ArchiveOutputStream}, it <em>must
-     * </em> be {@link ArchiveOutputStream#close() closed} due to the threaded nature of {@link
-     * java.io.PipedOutputStream} and {@link java.io.PipedInputStream}.
+     * </em> be {@link ArchiveOutputStream#close() closed} due to the threaded nature of the {@link
+     * RingBufferPipe} connecting this writer to the reader of the package.
      * <p>
      * Now, the {@code ArchiveOutputStream} may wrap an unknown number of underlying {@code OutputStreams}s, and those
      * underlying streams may not properly chain a call to {@link ArchiveOutputStream#close()} when error conditions
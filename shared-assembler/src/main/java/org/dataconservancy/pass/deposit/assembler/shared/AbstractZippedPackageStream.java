@@ -27,9 +27,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.Deflater;
 
 import static org.dataconservancy.pass.deposit.assembler.PackageStream.ARCHIVE.TAR;
 import static org.dataconservancy.pass.deposit.assembler.PackageStream.ARCHIVE.ZIP;
@@ -40,8 +43,6 @@ public abstract class AbstractZippedPackageStream implements PackageStream {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractZippedPackageStream.class);
 
-    private static final int ONE_MIB = 2 ^ 20;
-
     protected static final String ERR_CREATING_ARCHIVE_STREAM = "Error creating a %s archive output stream: %s";
     protected static final String ERR_NO_ARCHIVE_FORMAT = "No supported archive format was specified in the metadata builder";
 
@@ -51,18 +52,43 @@ public abstract class AbstractZippedPackageStream implements PackageStream {
 
     private ResourceBuilderFactory rbf;
 
+    private final PackageStreamOptions options;
+
+    private Executor writerExecutor = ArchiveWriterExecutor.shared();
+
+    private volatile List<PackageStream.Resource> assembledResources;
+
     public AbstractZippedPackageStream(List<DepositFileResource> custodialContent,
                                        MetadataBuilder metadataBuilder, ResourceBuilderFactory rbf) {
+        this(custodialContent, metadataBuilder, rbf, PackageStreamOptions.DEFAULTS);
+    }
+
+    /**
+     * @param custodialContent the custodial content of the package
+     * @param metadataBuilder builds the metadata of the package
+     * @param rbf the builder factory used to create package resources
+     * @param options tune how the package is streamed, and are handed to the {@link
+     *                #getStreamWriter(ArchiveOutputStream, ResourceBuilderFactory) stream writer}
+     */
+    public AbstractZippedPackageStream(List<DepositFileResource> custodialContent,
+                                       MetadataBuilder metadataBuilder, ResourceBuilderFactory rbf,
+                                       PackageStreamOptions options) {
+        if (options == null) {
+            throw new IllegalArgumentException("Package stream options must not be null.");
+        }
         this.custodialContent = custodialContent;
         this.metadataBuilder = metadataBuilder;
         this.rbf = rbf;
+        this.options = options;
     }
 
     /**
      * {@inheritDoc}
      * <p>
      * This implemetation returns an {@code InputStream} whose bytes are supplied by the
-     * {@link #getStreamWriter(ArchiveOutputStream, ResourceBuilderFactory)}
+     * {@link #getStreamWriter(ArchiveOutputStream, ResourceBuilderFactory)}.  The writer is connected to the returned
+     * {@code InputStream} by a {@link RingBufferPipe}, and is executed by the {@link #getWriterExecutor() writer
+     * executor}.
      * </p>
      *
      * @return
@@ -70,27 +96,20 @@ public abstract class AbstractZippedPackageStream implements PackageStream {
     @Override
     public InputStream open() {
 
-        // Create a pipe: bytes written to the PipedOutputStream will be the source of bytes read from the
-        // PipedInputStream.  As the caller reads bytes from the PipedInputStream, bytes will be read from the
-        // PipedOutputStream.
-        ExHandingPipedInputStream pipedIn = new ExHandingPipedInputStream(ONE_MIB);
+        // Create a pipe: bytes written to the output stream of the pipe will be the source of bytes read from the
+        // input stream of the pipe.  Bytes are handed from the writer to the reader in chunks obtained from the pool.
+        RingBufferPipe pipe = new RingBufferPipe(ChunkPool.shared(options.getChunkSize()), options.getPipeCapacity());
+        OutputStream pipedOut = pipe.getOutputStream();
 
         // Set on the writer, and used to report any exceptions caught by the writer to the reader.  That way a full
         // stack trace of the exception will be reported when it is encountered by the reader
         Thread.UncaughtExceptionHandler exceptionHandler = (t, e) -> {
-            // Make the exception caught by the writer available to the reader; set it on the PipedInputStream
+            // Make the exception caught by the writer available to the reader; set it on the pipe.
             // The reader will use this to close any resources it has open when an exception occurs, and allow the
-            // thread to be cleaned up.
-            pipedIn.setWriterEx(e);
+            // writer to be cleaned up.
+            pipe.setWriterEx(e);
         };
 
-        PipedOutputStream pipedOut;
-        try {
-            pipedOut = new PipedOutputStream(pipedIn);
-        } catch (IOException e) {
-            throw new RuntimeException(e.getMessage(), e);
-        }
-
         // Wrap the output stream in an ArchiveOutputStream
         // we support zip, tar and tar.gz so far
         ArchiveOutputStream archiveOut;
@@ -99,7 +118,9 @@ public abstract class AbstractZippedPackageStream implements PackageStream {
         if (metadata.archive().equals(TAR)) {
             try {
                 if (metadata.compression().equals(COMPRESSION.GZIP)) {
-                    archiveOut = new TarArchiveOutputStream(new GzipCompressorOutputStream(pipedOut));
+                    archiveOut = new TarArchiveOutputStream(options.isGzipParallel() ?
+                            new ParallelGzipOutputStream(pipedOut, Deflater.DEFAULT_COMPRESSION) :
+                            new GzipCompressorOutputStream(pipedOut));
                 } else {
                     archiveOut = new TarArchiveOutputStream(pipedOut);
                 }
@@ -120,9 +141,22 @@ public abstract class AbstractZippedPackageStream implements PackageStream {
         AbstractThreadedOutputStreamWriter streamWriter = getStreamWriter(archiveOut, rbf);
         streamWriter.setCloseStreamHandler(getCloseOutputstreamHandler(pipedOut, archiveOut));
         streamWriter.setUncaughtExceptionHandler(exceptionHandler);
-        streamWriter.start();
+        streamWriter.setOptions(options);
+        streamWriter.setAssembledResourcesHandler(resources -> assembledResources = resources);
+        try {
+            writerExecutor.execute(streamWriter);
+        } catch (RejectedExecutionException e) {
+            // Return the chunks of the pipe to the pool; the writer will never run
+            try {
+                pipe.getInputStream().close();
+            } catch (IOException e1) {
+                LOG.trace("Error closing piped input stream: {}", e1.getMessage(), e1);
+            }
+            getCloseOutputstreamHandler(pipedOut, archiveOut).closeAll();
+            throw e;
+        }
 
-        return pipedIn;
+        return pipe.getInputStream();
 
     }
 
@@ -134,21 +168,22 @@ public abstract class AbstractZippedPackageStream implements PackageStream {
      *
      * @param archiveOutputStream the output stream that the package contents will be written to
      * @param rbf the builder factory used to create package resources
-     * @return a {@link Thread} capable of writing a package to {@code archiveOutputStream} in its {@code run()} method
+     * @return a {@link Runnable} capable of writing a package to {@code archiveOutputStream} in its {@code run()}
+     *         method
      */
     public abstract AbstractThreadedOutputStreamWriter getStreamWriter(ArchiveOutputStream archiveOutputStream,
                                                                        ResourceBuilderFactory rbf);
 
     /**
-     * Provides a callback that implements closure of the {@code PipedOutputStream} followed by the {@code
+     * Provides a callback that implements closure of the pipe {@code OutputStream} followed by the {@code
      * ArchiveOutputStream} and any currently open {@code ArchiveEntry}s.
      *
-     * @param pipedOut the {@code PipedOutputStream} to be closed
+     * @param pipedOut the pipe {@code OutputStream} to be closed
      * @param archiveOut the {@code ArchiveOutputStream} to be closed
      * @return the callback providing an orderly closure of the output streams being written to
      */
     private AbstractThreadedOutputStreamWriter.CloseOutputstreamCallback getCloseOutputstreamHandler(
-            PipedOutputStream pipedOut, ArchiveOutputStream archiveOut) {
+            OutputStream pipedOut, ArchiveOutputStream archiveOut) {
         return () -> {
             LOG.debug(">>>> {} closing {} and {}", this, pipedOut, archiveOut);
             try {
@@ -177,19 +212,69 @@ public abstract class AbstractZippedPackageStream implements PackageStream {
         };
     }
 
+    /**
+     * @return the options tuning how the package is streamed
+     */
+    public PackageStreamOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * The {@code Executor} used to run the {@link #getStreamWriter(ArchiveOutputStream, ResourceBuilderFactory) stream
+     * writer} when the package is {@link #open() opened}.  Defaults to the {@link ArchiveWriterExecutor#shared() shared}
+     * {@code ArchiveWriterExecutor}.
+     *
+     * @return the executor running package writers
+     */
+    public Executor getWriterExecutor() {
+        return writerExecutor;
+    }
+
+    public void setWriterExecutor(Executor writerExecutor) {
+        if (writerExecutor == null) {
+            throw new IllegalArgumentException("Writer executor must not be null.");
+        }
+        this.writerExecutor = writerExecutor;
+    }
+
     @Override
     public PackageStream.Metadata metadata() {
         return metadataBuilder.build();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The package is streamed as it is assembled, so its resources cannot be opened individually.  Wrap this stream in
+     * a {@link SpoolingPackageStream} to open individual resources of the assembled package.
+     * </p>
+     *
+     * @throws UnsupportedOperationException always
+     */
     @Override
     public InputStream open(String packageResource) {
-        throw new UnsupportedOperationException();
+        throw new UnsupportedOperationException("Resources of a streamed package cannot be opened individually; " +
+                "spool the package with a " + SpoolingPackageStream.class.getSimpleName());
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Answers the custodial resources, with their MIME types and checksums, of the package most recently assembled by
+     * {@link #open() opening} this stream.  The resources are available once every custodial resource has been
+     * written to the package, i.e. after the opened stream has been read to the end.
+     * </p>
+     *
+     * @throws IllegalStateException if the package has not been assembled
+     */
     @Override
     public Iterator<PackageStream.Resource> resources() {
-        throw new UnsupportedOperationException();
+        List<PackageStream.Resource> resources = assembledResources;
+        if (resources == null) {
+            throw new IllegalStateException("The package has not been assembled: open and read the package " +
+                    "before requesting its resources.");
+        }
+        return resources.iterator();
     }
 
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes {@link AbstractThreadedOutputStreamWriter}s, the writing side of each {@link RingBufferPipe}, on a bounded
+ * pool of re-usable threads that is shared by all package streams.
+ * <p>
+ * A writer can only make progress while its package stream is being read, so writers are never queued behind one
+ * another: a caller that opens two package streams and reads them one after the other would otherwise deadlock if the
+ * second writer waited on the first.  When every pooled thread is busy, the writer is instead run on a dedicated,
+ * short-lived overflow thread (the behavior prior to the introduction of the pool) and the overflow is logged.  Size
+ * the pool for the expected number of concurrently streamed packages using the {@value #POOL_SIZE_PROPERTY} system
+ * property.
+ * </p>
+ * <p>
+ * The number of overflow threads running at once is bounded as well, by the {@value #OVERFLOW_PROPERTY} system
+ * property.  When the overflow is exhausted, {@link #execute(Runnable)} waits up to {@value #OVERFLOW_WAIT_PROPERTY}
+ * seconds for an overflow thread to finish, and then rejects the writer with a {@code RejectedExecutionException}.
+ * A caller reading package streams in sequence is therefore failed, rather than deadlocked, if it opens more packages
+ * than there are writer threads.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ArchiveWriterExecutor implements Executor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveWriterExecutor.class);
+
+    /**
+     * System property used to size the {@link #shared() shared} executor
+     */
+    public static final String POOL_SIZE_PROPERTY = "pass.deposit.assembler.writer.threads";
+
+    /**
+     * System property used to bound the number of overflow threads of the {@link #shared() shared} executor
+     */
+    public static final String OVERFLOW_PROPERTY = "pass.deposit.assembler.writer.overflow";
+
+    /**
+     * System property used to set how long, in seconds, the {@link #shared() shared} executor waits for an overflow
+     * thread
+     */
+    public static final String OVERFLOW_WAIT_PROPERTY = "pass.deposit.assembler.writer.overflow.wait";
+
+    private static final long DEFAULT_OVERFLOW_WAIT_SECONDS = 60;
+
+    private static final int DEFAULT_POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+
+    private final ThreadPoolExecutor pool;
+
+    private final AtomicInteger overflow = new AtomicInteger(0);
+
+    private final int maxOverflow;
+
+    private final Semaphore overflowPermits;
+
+    private final long overflowWaitMs;
+
+    /**
+     * Creates an executor with at most {@code maxThreads} pooled threads, and as many overflow threads.  Idle threads
+     * are retired after {@code keepAliveSeconds}.
+     *
+     * @param maxThreads the maximum number of pooled writer threads
+     * @param keepAliveSeconds how long an idle writer thread is kept
+     */
+    public ArchiveWriterExecutor(int maxThreads, long keepAliveSeconds) {
+        this(maxThreads, maxThreads, keepAliveSeconds, TimeUnit.SECONDS.toMillis(DEFAULT_OVERFLOW_WAIT_SECONDS));
+    }
+
+    /**
+     * Creates an executor with at most {@code maxThreads} pooled threads, and at most {@code maxOverflow} overflow
+     * threads.  Idle threads are retired after {@code keepAliveSeconds}.
+     *
+     * @param maxThreads the maximum number of pooled writer threads
+     * @param maxOverflow the maximum number of writers run on overflow threads at once, may be zero
+     * @param keepAliveSeconds how long an idle writer thread is kept
+     * @param overflowWaitMs how long a writer waits for an overflow thread before it is rejected
+     */
+    public ArchiveWriterExecutor(int maxThreads, int maxOverflow, long keepAliveSeconds, long overflowWaitMs) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("Maximum threads must be a positive integer.");
+        }
+
+        if (maxOverflow < 0) {
+            throw new IllegalArgumentException("Maximum overflow must not be negative.");
+        }
+
+        if (overflowWaitMs < 0) {
+            throw new IllegalArgumentException("Overflow wait must not be negative.");
+        }
+
+        this.maxOverflow = maxOverflow;
+        this.overflowPermits = new Semaphore(maxOverflow);
+        this.overflowWaitMs = overflowWaitMs;
+
+        ThreadFactory tf = r -> {
+            Thread t = new Thread(r, "Archive-Writer-" + THREAD_COUNTER.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+
+        this.pool = new ThreadPoolExecutor(0, maxThreads, keepAliveSeconds, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), tf, (r, exe) -> runOnOverflowThread(r));
+    }
+
+    /**
+     * Answers the executor shared by all package streams in this JVM.
+     *
+     * @return the shared executor
+     */
+    public static ArchiveWriterExecutor shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws RejectedExecutionException if every pooled and overflow thread remained busy for the overflow wait, or
+     *                                    the caller was interrupted while waiting
+     */
+    @Override
+    public void execute(Runnable writer) {
+        pool.execute(writer);
+    }
+
+    /**
+     * @return the number of writers that were run on an overflow thread because the pool was exhausted
+     */
+    public int getOverflowCount() {
+        return overflow.get();
+    }
+
+    /**
+     * @return the maximum number of pooled writer threads
+     */
+    public int getMaxThreads() {
+        return pool.getMaximumPoolSize();
+    }
+
+    /**
+     * @return the maximum number of writers run on overflow threads at once
+     */
+    public int getMaxOverflow() {
+        return maxOverflow;
+    }
+
+    /**
+     * @return the number of writers currently executing on pooled threads
+     */
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    /**
+     * @return the number of writers currently executing on overflow threads
+     */
+    public int getOverflowActiveCount() {
+        return maxOverflow - overflowPermits.availablePermits();
+    }
+
+    private void runOnOverflowThread(Runnable writer) {
+        try {
+            if (!overflowPermits.tryAcquire(overflowWaitMs, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException(String.format("All %s archive writer threads and %s overflow " +
+                        "threads were busy for %s ms", pool.getMaximumPoolSize(), maxOverflow, overflowWaitMs));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for an archive writer thread", e);
+        }
+
+        int count = overflow.incrementAndGet();
+        LOG.debug("All {} archive writer threads are busy; running writer on an overflow thread " +
+                "(overflow count: {})", pool.getMaximumPoolSize(), count);
+        Thread t = new Thread(() -> {
+            try {
+                writer.run();
+            } finally {
+                overflowPermits.release();
+            }
+        }, "Archive-Writer-Overflow-" + THREAD_COUNTER.getAndIncrement());
+        t.setDaemon(true);
+        try {
+            t.start();
+        } catch (RuntimeException | Error e) {
+            overflowPermits.release();
+            throw e;
+        }
+    }
+
+    private static class Holder {
+        private static final int POOL_SIZE = Integer.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE);
+
+        private static final ArchiveWriterExecutor INSTANCE =
+                new ArchiveWriterExecutor(POOL_SIZE, Integer.getInteger(OVERFLOW_PROPERTY, POOL_SIZE), 60,
+                        TimeUnit.SECONDS.toMillis(Long.getLong(OVERFLOW_WAIT_PROPERTY,
+                                DEFAULT_OVERFLOW_WAIT_SECONDS)));
+    }
+
+}
@@ -52,9 +52,7 @@ public class AuthenticatedResource extends UrlResource {
 
     @Override
     public InputStream getInputStream() throws IOException {
-        URLConnection con = this.url.openConnection();
-        ResourceUtils.useCachesIfNecessary(con);
-        customizeConnection(con);
+        URLConnection con = openConnection();
         try {
             return con.getInputStream();
         }
@@ -67,6 +65,20 @@ public class AuthenticatedResource extends UrlResource {
         }
     }
 
+    /**
+     * Opens a connection to the URL of this resource, supplying the credentials of this resource.  The connection has
+     * not yet been connected, so callers may add request headers before reading from it.
+     *
+     * @return an unconnected, authenticated, connection
+     * @throws IOException if the connection cannot be opened
+     */
+    protected URLConnection openConnection() throws IOException {
+        URLConnection con = this.url.openConnection();
+        ResourceUtils.useCachesIfNecessary(con);
+        customizeConnection(con);
+        return con;
+    }
+
     @Override
     protected void customizeConnection(HttpURLConnection con) throws IOException {
         LOG.trace(">>>> Customizing {}@{}", con.getClass().getName(), toHexString(identityHashCode(con)));
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * An {@link AuthenticatedResource} whose content is read through a {@link CustodialContentCache}.
+ * <p>
+ * Content is streamed from the origin server and cached as it is read, keyed by the {@code ETag} of the response (or
+ * its {@code Digest}, if there is no {@code ETag}).  Responses carrying neither header are not cached.  If the cache
+ * holds content for the URL of this resource, the content is revalidated with the origin server before it is answered
+ * from the cache, so that only response headers cross the network:
+ * </p>
+ * <ul>
+ *     <li>content cached by its {@code ETag} is requested conditionally, using the entity tag in an
+ *         {@code If-None-Match} header, and answered from the cache on a {@code 304 Not Modified} response</li>
+ *     <li>content cached by its {@code Digest} is revalidated with a {@code HEAD} request carrying a
+ *         {@code Want-Digest} header, and answered from the cache if the {@code Digest} of the response is
+ *         unchanged</li>
+ * </ul>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class CachingAuthenticatedResource extends AuthenticatedResource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingAuthenticatedResource.class);
+
+    private static final String IF_NONE_MATCH = "If-None-Match";
+
+    private static final String ETAG = "ETag";
+
+    private static final String DIGEST = "Digest";
+
+    private static final String WANT_DIGEST = "Want-Digest";
+
+    private static final String WANTED_DIGEST = "sha-256";
+
+    private static final String HEAD = "HEAD";
+
+    private final URL url;
+
+    private final CustodialContentCache cache;
+
+    public CachingAuthenticatedResource(URL url, String username, String password, CustodialContentCache cache) {
+        super(url, username, password);
+        if (cache == null) {
+            throw new IllegalArgumentException("CustodialContentCache must not be null.");
+        }
+        this.url = url;
+        this.cache = cache;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        String uri = url.toString();
+        String cachedValidator = cache.validator(uri);
+
+        if (cachedValidator != null) {
+            URLConnection con = openConnection();
+            if (con instanceof HttpURLConnection) {
+                HttpURLConnection httpCon = (HttpURLConnection) con;
+                boolean unchanged;
+                if (isEntityTag(cachedValidator)) {
+                    httpCon.setRequestProperty(IF_NONE_MATCH, cachedValidator);
+                    unchanged = httpCon.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+                    if (!unchanged) {
+                        return cacheResponse(uri, con);
+                    }
+                } else {
+                    // A Digest is not an entity tag, and cannot be used in a conditional request
+                    httpCon.setRequestMethod(HEAD);
+                    httpCon.setRequestProperty(WANT_DIGEST, WANTED_DIGEST);
+                    unchanged = httpCon.getResponseCode() == HttpURLConnection.HTTP_OK &&
+                            cachedValidator.equals(httpCon.getHeaderField(DIGEST));
+                }
+                httpCon.disconnect();
+
+                if (unchanged) {
+                    InputStream cached = cache.get(uri, cachedValidator);
+                    if (cached != null) {
+                        return cached;
+                    }
+                    // the entry was evicted or failed verification; request the content unconditionally
+                }
+            }
+        }
+
+        URLConnection con = openConnection();
+        con.setRequestProperty(WANT_DIGEST, WANTED_DIGEST);
+        return cacheResponse(uri, con);
+    }
+
+    /**
+     * Answers whether the supplied validator is an entity tag, as opposed to a {@code Digest}.  Entity tags are quoted
+     * strings, optionally marked as weak (e.g. {@code "abc"} or {@code W/"abc"}), while a {@code Digest} is a list of
+     * {@code algorithm=value} pairs.
+     *
+     * @param validator the validator of cached content
+     * @return true if the validator may be used in an {@code If-None-Match} header
+     */
+    static boolean isEntityTag(String validator) {
+        return validator.startsWith("\"") || validator.startsWith("W/\"");
+    }
+
+    public CustodialContentCache getCache() {
+        return cache;
+    }
+
+    private InputStream cacheResponse(String uri, URLConnection con) throws IOException {
+        InputStream in;
+        try {
+            in = con.getInputStream();
+        } catch (IOException e) {
+            if (con instanceof HttpURLConnection) {
+                ((HttpURLConnection) con).disconnect();
+            }
+            throw e;
+        }
+
+        String validator = con.getHeaderField(ETAG);
+        if (validator == null) {
+            validator = con.getHeaderField(DIGEST);
+        }
+
+        if (validator == null) {
+            LOG.trace(">>>> No validator present in the response for {}, it will not be cached", uri);
+            return in;
+        }
+
+        return cache.put(uri, validator, in);
+    }
+
+}
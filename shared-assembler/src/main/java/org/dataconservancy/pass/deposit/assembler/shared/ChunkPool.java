@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of fixed-size {@code byte[]} chunks, shared by the {@link RingBufferPipe}s that stream packages.
+ * <p>
+ * Chunks are handed out by {@link #acquire()} and given back by {@link #release(byte[])}.  When the pool is empty a new
+ * chunk is allocated; when the pool already retains {@link #getMaxRetained()} chunks, released chunks are left for the
+ * garbage collector.  The pool never blocks: it bounds the memory it <em>retains</em>, while the memory in flight is
+ * bounded by the capacity of each pipe.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ChunkPool {
+
+    /**
+     * Default size of a chunk, 64 KiB
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Default maximum number of idle chunks retained by a pool
+     */
+    public static final int DEFAULT_MAX_RETAINED = 256;
+
+    private static final ConcurrentMap<Integer, ChunkPool> SHARED = new ConcurrentHashMap<>();
+
+    private final Queue<byte[]> chunks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger retained = new AtomicInteger(0);
+
+    private final int chunkSize;
+
+    private final int maxRetained;
+
+    /**
+     * Creates a pool of chunks, each {@code chunkSize} bytes long, retaining at most {@code maxRetained} idle chunks.
+     *
+     * @param chunkSize the size of each chunk, in bytes
+     * @param maxRetained the maximum number of idle chunks kept by this pool
+     */
+    public ChunkPool(int chunkSize, int maxRetained) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be a positive integer.");
+        }
+
+        if (maxRetained < 0) {
+            throw new IllegalArgumentException("Maximum retained chunks must not be negative.");
+        }
+
+        this.chunkSize = chunkSize;
+        this.maxRetained = maxRetained;
+    }
+
+    /**
+     * Answers the JVM-wide pool for chunks of the supplied size, creating it if necessary.
+     *
+     * @param chunkSize the size of each chunk, in bytes
+     * @return the shared pool
+     */
+    public static ChunkPool shared(int chunkSize) {
+        return SHARED.computeIfAbsent(chunkSize, size -> new ChunkPool(size, DEFAULT_MAX_RETAINED));
+    }
+
+    /**
+     * Obtain a chunk from the pool, allocating a new chunk if none are idle.  The contents of the returned chunk are
+     * undefined.
+     *
+     * @return a chunk of {@link #getChunkSize()} bytes
+     */
+    public byte[] acquire() {
+        byte[] chunk = chunks.poll();
+        if (chunk == null) {
+            return new byte[chunkSize];
+        }
+
+        retained.decrementAndGet();
+        return chunk;
+    }
+
+    /**
+     * Return a chunk to the pool.  Chunks of the wrong size, or chunks exceeding the retention limit of the pool, are
+     * discarded.
+     *
+     * @param chunk the chunk, which must not be used by the caller after it is released
+     */
+    public void release(byte[] chunk) {
+        if (chunk == null || chunk.length != chunkSize) {
+            return;
+        }
+
+        if (retained.incrementAndGet() > maxRetained) {
+            retained.decrementAndGet();
+            return;
+        }
+
+        chunks.offer(chunk);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getMaxRetained() {
+        return maxRetained;
+    }
+
+    /**
+     * @return the number of idle chunks currently held by the pool
+     */
+    public int getRetained() {
+        return retained.get();
+    }
+
+}
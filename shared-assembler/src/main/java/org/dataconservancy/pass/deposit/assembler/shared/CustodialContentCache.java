@@ -0,0 +1,602 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+
+/**
+ * A disk-backed cache of custodial content, so that repeated assemblies of the same submission (e.g. one per target
+ * repository, or a retried deposit) read the bytes of each file from local disk rather than from the origin server.
+ * <p>
+ * Content is keyed by the URI of the file <em>and</em> a validator supplied by the origin server (an HTTP
+ * {@code ETag}, or a {@code Digest} of the content), so a file that changes at the origin is never served from the
+ * cache.  Each entry is stored as a pair of files in the cache directory: the content, named by the SHA-256 of the key,
+ * and a {@code .properties} sidecar recording the URI, validator, length and SHA-256 of the content.  The cache is
+ * re-populated from its directory on start-up.
+ * </p>
+ * <p>
+ * The total size of the cache is bounded: when an entry is added that takes the cache over its maximum size, the least
+ * recently used entries are evicted.  If the cache is configured to verify entries, the content of an entry is
+ * re-digested before it is returned, and an entry that fails verification is evicted and treated as a miss.
+ * </p>
+ * <p>
+ * Entries are added by {@link #put(String, String, InputStream) wrapping} the stream of content from the origin
+ * server: the content is written to the cache as it is read by the caller, and the entry is committed only if the
+ * caller reads the stream in its entirety.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class CustodialContentCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CustodialContentCache.class);
+
+    private static final ConcurrentMap<Path, CustodialContentCache> SHARED = new ConcurrentHashMap<>();
+
+    private static final String SIDECAR_SUFFIX = ".properties";
+
+    private static final String TEMP_SUFFIX = ".part";
+
+    private static final String URI_PROPERTY = "uri";
+
+    private static final String VALIDATOR_PROPERTY = "validator";
+
+    private static final String SIZE_PROPERTY = "size";
+
+    private static final String SHA256_PROPERTY = "sha256";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+
+    private final long maxBytes;
+
+    private final boolean verifyOnRead;
+
+    /**
+     * Entries keyed by URI, in access order: the least recently used entry is first.
+     */
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    /**
+     * Creates a cache in {@code directory}, holding at most {@code maxBytes} of content.  Entries already present in
+     * the directory are added to the cache.
+     *
+     * @param directory the directory holding cached content, created if it does not exist
+     * @param maxBytes the maximum size of the cache, in bytes
+     * @param verifyOnRead whether or not the content of an entry is verified each time it is read
+     * @throws UncheckedIOException if the cache directory cannot be created or read
+     */
+    public CustodialContentCache(Path directory, long maxBytes, boolean verifyOnRead) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Cache directory must not be null.");
+        }
+
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Maximum cache size must be a positive integer.");
+        }
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.verifyOnRead = verifyOnRead;
+
+        try {
+            Files.createDirectories(directory);
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to initialize custodial content cache in " + directory + ": " +
+                    e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Answers the JVM-wide cache for the supplied directory, creating it if necessary.  Assemblers configured with the
+     * same cache directory share a single cache instance, so they must agree on its configuration: two caches indexing
+     * the same directory would evict each other's content.
+     *
+     * @param directory the directory holding cached content
+     * @param maxBytes the maximum size of the cache, in bytes
+     * @param verifyOnRead whether or not entries are verified when read
+     * @return the shared cache
+     * @throws IllegalArgumentException if the cache for {@code directory} already exists with a different maximum size
+     *                                  or verification setting
+     */
+    public static CustodialContentCache shared(Path directory, long maxBytes, boolean verifyOnRead) {
+        CustodialContentCache cache = SHARED.computeIfAbsent(directory.toAbsolutePath().normalize(),
+                dir -> new CustodialContentCache(dir, maxBytes, verifyOnRead));
+
+        if (cache.maxBytes != maxBytes || cache.verifyOnRead != verifyOnRead) {
+            throw new IllegalArgumentException(String.format("The custodial content cache in %s is shared with a " +
+                    "maximum size of %s bytes and verification %s; it cannot also be configured with a maximum size " +
+                    "of %s bytes and verification %s", cache.directory, cache.maxBytes,
+                    cache.verifyOnRead ? "on" : "off", maxBytes, verifyOnRead ? "on" : "off"));
+        }
+
+        return cache;
+    }
+
+    /**
+     * Answers the validator of the content cached for {@code uri}, suitable for use in a conditional request to the
+     * origin server (e.g. as the value of an {@code If-None-Match} header).
+     *
+     * @param uri the URI of the custodial content
+     * @return the validator of the cached content, or {@code null} if the cache has no content for {@code uri}
+     */
+    public synchronized String validator(String uri) {
+        Entry entry = index.get(uri);
+        return entry == null ? null : entry.validator;
+    }
+
+    /**
+     * Opens the content cached for {@code uri}, if its validator matches {@code validator}.
+     *
+     * @param uri the URI of the custodial content
+     * @param validator the validator of the content at the origin server
+     * @return a stream of the cached content, or {@code null} if the cache has no matching content
+     */
+    public InputStream get(String uri, String validator) {
+        Entry entry;
+        synchronized (this) {
+            entry = index.get(uri);
+        }
+
+        if (entry == null || !entry.validator.equals(validator)) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        Path content = directory.resolve(entry.key);
+
+        try {
+            if (verifyOnRead && !entry.sha256.equals(digest(content))) {
+                LOG.warn("Cached content for {} failed verification, evicting it from the cache", uri);
+                remove(uri, entry);
+                misses.incrementAndGet();
+                return null;
+            }
+
+            InputStream in = Files.newInputStream(content);
+            Files.setLastModifiedTime(content, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            LOG.trace(">>>> Cache hit for {} ({})", uri, validator);
+            return in;
+        } catch (IOException e) {
+            LOG.warn("Unable to read cached content for {}, evicting it from the cache: {}", uri, e.getMessage());
+            remove(uri, entry);
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Wraps the stream of content read from the origin server, so that the content is added to the cache as it is
+     * read.  The entry is committed when the returned stream has been read to its end.  If the returned stream is
+     * closed before it is fully read, or the content exceeds the maximum size of the cache, nothing is cached.
+     * Failures writing to the cache are logged, and do not affect the caller.
+     *
+     * @param uri the URI of the custodial content
+     * @param validator the validator of the content at the origin server
+     * @param source the content read from the origin server
+     * @return a stream of the content, which must be used by the caller in place of {@code source}
+     */
+    public InputStream put(String uri, String validator, InputStream source) {
+        try {
+            return new CachingInputStream(uri, validator, source);
+        } catch (IOException e) {
+            LOG.warn("Unable to cache content for {}: {}", uri, e.getMessage());
+            return source;
+        }
+    }
+
+    /**
+     * Removes the content cached for {@code uri}, if any.
+     *
+     * @param uri the URI of the custodial content
+     */
+    public void remove(String uri) {
+        Entry entry;
+        synchronized (this) {
+            entry = index.remove(uri);
+            if (entry != null) {
+                totalBytes -= entry.size;
+            }
+        }
+
+        if (entry != null) {
+            delete(entry);
+        }
+    }
+
+    /**
+     * Removes the content cached for {@code uri} only if it is still {@code expected}, so that an entry committed by
+     * another thread in the meantime is not evicted in its place.
+     *
+     * @param uri the URI of the custodial content
+     * @param expected the entry found to be unreadable or invalid
+     */
+    private void remove(String uri, Entry expected) {
+        synchronized (this) {
+            if (!index.remove(uri, expected)) {
+                return;
+            }
+            totalBytes -= expected.size;
+        }
+
+        delete(expected);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public boolean isVerifyOnRead() {
+        return verifyOnRead;
+    }
+
+    /**
+     * @return the number of bytes of content currently held by the cache
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the number of entries currently held by the cache
+     */
+    public synchronized int getEntryCount() {
+        return index.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Adds a completely written entry to the index, replacing any existing entry for the same URI, and evicts least
+     * recently used entries until the cache is within its size bound.
+     */
+    private void commit(Entry entry) {
+        List<Entry> evicted = new ArrayList<>();
+
+        synchronized (this) {
+            Entry previous = index.put(entry.uri, entry);
+            totalBytes += entry.size;
+            if (previous != null) {
+                totalBytes -= previous.size;
+                if (!previous.key.equals(entry.key)) {
+                    evicted.add(previous);
+                }
+            }
+
+            Iterator<Map.Entry<String, Entry>> itr = index.entrySet().iterator();
+            while (totalBytes > maxBytes && itr.hasNext()) {
+                Entry eldest = itr.next().getValue();
+                if (eldest == entry) {
+                    continue;
+                }
+                itr.remove();
+                totalBytes -= eldest.size;
+                evicted.add(eldest);
+                evictions.incrementAndGet();
+            }
+        }
+
+        evicted.forEach(e -> {
+            LOG.trace(">>>> Evicting {} ({}) from the cache", e.uri, e.validator);
+            delete(e);
+        });
+    }
+
+    private void delete(Entry entry) {
+        try {
+            Files.deleteIfExists(directory.resolve(entry.key + SIDECAR_SUFFIX));
+            Files.deleteIfExists(directory.resolve(entry.key));
+        } catch (IOException e) {
+            LOG.warn("Unable to delete cached content {} for {}: {}", entry.key, entry.uri, e.getMessage());
+        }
+    }
+
+    /**
+     * Populates the index from the sidecar files in the cache directory, least recently used first.  Incomplete or
+     * unreadable entries, and temporary files left over from interrupted writes, are removed.
+     */
+    private void load() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(directory)) {
+            for (Path p : dir) {
+                String fileName = p.getFileName().toString();
+                if (fileName.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(p);
+                    continue;
+                }
+
+                if (!fileName.endsWith(SIDECAR_SUFFIX)) {
+                    continue;
+                }
+
+                String key = fileName.substring(0, fileName.length() - SIDECAR_SUFFIX.length());
+                Path content = directory.resolve(key);
+                Properties props = new Properties();
+                try (Reader r = Files.newBufferedReader(p, StandardCharsets.UTF_8)) {
+                    props.load(r);
+                    Entry entry = new Entry(key, props.getProperty(URI_PROPERTY),
+                            props.getProperty(VALIDATOR_PROPERTY), Long.parseLong(props.getProperty(SIZE_PROPERTY)),
+                            props.getProperty(SHA256_PROPERTY));
+                    if (entry.uri == null || entry.validator == null || entry.sha256 == null ||
+                            !Files.exists(content) || Files.size(content) != entry.size) {
+                        throw new IOException("incomplete cache entry");
+                    }
+                    entry.lastUsed = Files.getLastModifiedTime(content).toMillis();
+                    entries.add(entry);
+                } catch (IOException | RuntimeException e) {
+                    LOG.debug("Removing invalid cache entry {}: {}", key, e.getMessage());
+                    Files.deleteIfExists(p);
+                    Files.deleteIfExists(content);
+                }
+            }
+        }
+
+        entries.sort(Comparator.comparingLong(e -> e.lastUsed));
+        entries.forEach(this::commit);
+
+        LOG.debug("Loaded {} entries ({} bytes) into the custodial content cache at {}", index.size(), totalBytes,
+                directory);
+    }
+
+    private static String key(String uri, String validator) {
+        MessageDigest sha256 = newSha256();
+        sha256.update(uri.getBytes(StandardCharsets.UTF_8));
+        sha256.update((byte) '\n');
+        sha256.update(validator.getBytes(StandardCharsets.UTF_8));
+        return encodeHexString(sha256.digest());
+    }
+
+    private static String digest(Path content) throws IOException {
+        MessageDigest sha256 = newSha256();
+        byte[] buf = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(content)) {
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                sha256.update(buf, 0, read);
+            }
+        }
+        return encodeHexString(sha256.digest());
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Unable to obtain MessageDigest instance for algorithm: SHA-256", e);
+        }
+    }
+
+    private static class Entry {
+
+        private final String key;
+
+        private final String uri;
+
+        private final String validator;
+
+        private final long size;
+
+        private final String sha256;
+
+        private long lastUsed;
+
+        private Entry(String key, String uri, String validator, long size, String sha256) {
+            this.key = key;
+            this.uri = uri;
+            this.validator = validator;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+    }
+
+    /**
+     * Copies the bytes read from the origin server to a temporary file in the cache directory, and commits the entry
+     * when the end of the stream is reached.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        private final String uri;
+
+        private final String validator;
+
+        private final MessageDigest sha256 = newSha256();
+
+        private Path temp;
+
+        private OutputStream out;
+
+        private long size = 0;
+
+        private CachingInputStream(String uri, String validator, InputStream source) throws IOException {
+            super(source);
+            this.uri = uri;
+            this.validator = validator;
+            this.temp = Files.createTempFile(directory, "entry-", TEMP_SUFFIX);
+            this.out = Files.newOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete();
+            } else if (out != null) {
+                cache(new byte[] { (byte) b }, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                complete();
+            } else if (read > 0 && out != null) {
+                cache(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes can't be cached
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                abandon();
+            }
+        }
+
+        private void cache(byte[] b, int off, int len) {
+            size += len;
+            if (size > maxBytes) {
+                LOG.debug("Content for {} exceeds the maximum size of the cache, it will not be cached", uri);
+                abandon();
+                return;
+            }
+
+            try {
+                sha256.update(b, off, len);
+                out.write(b, off, len);
+            } catch (IOException e) {
+                LOG.warn("Unable to cache content for {}: {}", uri, e.getMessage());
+                abandon();
+            }
+        }
+
+        private void complete() {
+            if (out == null) {
+                return;
+            }
+
+            String key = key(uri, validator);
+            Entry entry = new Entry(key, uri, validator, size, encodeHexString(sha256.digest()));
+
+            try {
+                out.close();
+                out = null;
+
+                Files.move(temp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                temp = null;
+
+                Properties props = new Properties();
+                props.setProperty(URI_PROPERTY, uri);
+                props.setProperty(VALIDATOR_PROPERTY, validator);
+                props.setProperty(SIZE_PROPERTY, String.valueOf(size));
+                props.setProperty(SHA256_PROPERTY, entry.sha256);
+                try (Writer w = Files.newBufferedWriter(directory.resolve(key + SIDECAR_SUFFIX),
+                        StandardCharsets.UTF_8)) {
+                    props.store(w, null);
+                }
+
+                commit(entry);
+                LOG.trace(">>>> Cached {} bytes for {} ({})", size, uri, validator);
+            } catch (IOException e) {
+                LOG.warn("Unable to cache content for {}: {}", uri, e.getMessage());
+                abandon();
+                delete(entry);
+            }
+        }
+
+        private void abandon() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                out = null;
+            }
+
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    LOG.debug("Unable to delete temporary cache file {}: {}", temp, e.getMessage());
+                }
+                temp = null;
+            }
+        }
+    }
+
+}
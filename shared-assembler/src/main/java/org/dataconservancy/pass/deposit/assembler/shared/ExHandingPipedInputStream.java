@@ -34,9 +34,15 @@ import java.io.PipedOutputStream;
  * reading side of the pipe will re-throw them to readers if {@link #setWriterEx(Throwable)} is called with a non-{@code
  * null Throwable}.
  * </p>
+ * <p>
+ * Package streams no longer use {@code PipedInputStream}; see {@link RingBufferPipe}, which carries the same
+ * exception handling semantics.
+ * </p>
  *
+ * @deprecated superseded by {@link RingBufferPipe}
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
+@Deprecated
 public class ExHandingPipedInputStream extends PipedInputStream {
 
     private static final Logger LOG = LoggerFactory.getLogger(ExHandingPipedInputStream.class);
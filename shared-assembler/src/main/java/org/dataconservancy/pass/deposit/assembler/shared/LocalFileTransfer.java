@@ -0,0 +1,260 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.ResourceBuilder;
+import org.springframework.core.io.Resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static java.util.Base64.getEncoder;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+
+/**
+ * Copies a custodial resource residing on the local filesystem into a package, digesting it along the way, without
+ * reading it through a chain of {@code InputStream}s.
+ * <p>
+ * The file is read from its channel into a single buffer, which is digested and then written to the package, so no
+ * chunks are taken from the {@link ChunkPool} to prefetch it, and each byte is copied once on its way into the
+ * package.  The copy is not zero-copy: the package is written through an archive output stream, which must see every
+ * byte in order to compress it and compute the CRC of its entry.  When the digests, and optionally the CRC, are
+ * required before the package entry is written (e.g. a stored zip entry, which carries its CRC in its local header),
+ * the file is {@link #scan(boolean) scanned} first, and then read a second time as it is copied.
+ * </p>
+ * <p>
+ * The size of the file is fixed when the transfer is created; an {@code IOException} is raised if the file is
+ * truncated before it is copied in full.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class LocalFileTransfer {
+
+    /**
+     * Default size of the buffer the file is read into, 256 KiB
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private final FileChannel channel;
+
+    private final List<PackageStream.Algo> algorithms;
+
+    private final int bufferSize;
+
+    private final long size;
+
+    private List<PackageStream.Checksum> checksums;
+
+    private long crc = -1;
+
+    /**
+     * Transfers the file open on {@code channel}, digesting it with the supplied algorithms.
+     *
+     * @param channel the file to transfer, which remains owned by the caller
+     * @param algorithms the digest algorithms, in the order the resulting checksums are reported
+     * @throws IOException if the size of the file cannot be determined
+     */
+    public LocalFileTransfer(FileChannel channel, List<PackageStream.Algo> algorithms) throws IOException {
+        this(channel, algorithms, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Transfers the file open on {@code channel}, digesting it with the supplied algorithms.
+     *
+     * @param channel the file to transfer, which remains owned by the caller
+     * @param algorithms the digest algorithms, in the order the resulting checksums are reported
+     * @param bufferSize the number of bytes read from the file at once
+     * @throws IOException if the size of the file cannot be determined
+     */
+    public LocalFileTransfer(FileChannel channel, List<PackageStream.Algo> algorithms, int bufferSize)
+            throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("Channel must not be null.");
+        }
+
+        if (algorithms == null) {
+            throw new IllegalArgumentException("Algorithms must not be null.");
+        }
+
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be a positive integer.");
+        }
+
+        this.channel = channel;
+        this.algorithms = new ArrayList<>(algorithms);
+        this.bufferSize = bufferSize;
+        this.size = channel.size();
+    }
+
+    /**
+     * Answers the path of the file underlying the supplied resource, if the resource is a readable file on the local
+     * filesystem.
+     *
+     * @param resource the resource, may be {@code null}
+     * @return the path of the file, or {@code null} if the resource is not a local file
+     */
+    public static Path localFile(Resource resource) {
+        if (resource == null || !resource.isFile()) {
+            return null;
+        }
+
+        try {
+            File file = resource.getFile();
+            return file.isFile() && file.canRead() ? file.toPath() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of bytes transferred
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Digests the file ahead of {@link #transferTo(OutputStream) transferring} it, optionally computing its CRC.
+     *
+     * @param crc32 whether the CRC-32 of the file is computed
+     * @throws IOException if the file cannot be read
+     */
+    public void scan(boolean crc32) throws IOException {
+        MessageDigest[] digests = newDigests();
+        CRC32 crc = crc32 ? new CRC32() : null;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(bufferSize, Math.max(size, 1)));
+
+        for (long position = 0; position < size; position += buffer.limit()) {
+            read(buffer, position);
+            digest(digests, buffer);
+            if (crc != null) {
+                crc.update(buffer.array(), 0, buffer.limit());
+            }
+        }
+
+        this.checksums = checksums(digests);
+        this.crc = crc != null ? crc.getValue() : -1;
+    }
+
+    /**
+     * Writes the bytes of the file to {@code out}.  If the file has not been {@link #scan(boolean) scanned}, it is
+     * digested as it is written.  The supplied stream is not closed.
+     *
+     * @param out the stream receiving the bytes of the file, typically an archive output stream
+     * @throws IOException if the file cannot be read, or the bytes cannot be written
+     */
+    public void transferTo(OutputStream out) throws IOException {
+        MessageDigest[] digests = checksums == null ? newDigests() : null;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(bufferSize, Math.max(size, 1)));
+
+        for (long position = 0; position < size; position += buffer.limit()) {
+            read(buffer, position);
+            if (digests != null) {
+                digest(digests, buffer);
+            }
+            out.write(buffer.array(), 0, buffer.limit());
+        }
+
+        if (digests != null) {
+            this.checksums = checksums(digests);
+        }
+    }
+
+    /**
+     * @return the checksums of the file, in the order of the supplied algorithms, or {@code null} if the file has not
+     *         been digested
+     */
+    public List<PackageStream.Checksum> getChecksums() {
+        return checksums;
+    }
+
+    /**
+     * @return the CRC-32 of the file, or {@code -1} if it has not been computed
+     */
+    public long getCrc() {
+        return crc;
+    }
+
+    /**
+     * Sets the {@link #size() size} and {@link #getChecksums() checksums} of the file on the supplied builder.
+     *
+     * @param rb the resource builder
+     * @throws IllegalStateException if the file has not been digested
+     */
+    public void characterize(ResourceBuilder rb) {
+        if (checksums == null) {
+            throw new IllegalStateException("File has not been digested.");
+        }
+
+        rb.sizeBytes(size);
+        checksums.forEach(rb::checksum);
+    }
+
+    /**
+     * Fills {@code buffer} with the bytes of the file starting at {@code position}, up to the capacity of the buffer or
+     * the end of the file.  The buffer is flipped, ready to be consumed from its backing array.
+     */
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), size - position));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw truncated(position + buffer.position());
+            }
+        }
+        buffer.flip();
+    }
+
+    private IOException truncated(long position) {
+        return new IOException("File was truncated while being transferred: expected " + size + " bytes, " +
+                "transferred " + position);
+    }
+
+    private MessageDigest[] newDigests() {
+        MessageDigest[] digests = new MessageDigest[algorithms.size()];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = MultiDigestInputStream.newDigest(algorithms.get(i));
+        }
+        return digests;
+    }
+
+    private List<PackageStream.Checksum> checksums(MessageDigest[] digests) {
+        List<PackageStream.Checksum> result = new ArrayList<>(digests.length);
+        for (int i = 0; i < digests.length; i++) {
+            byte[] value = digests[i].digest();
+            result.add(new ChecksumImpl(algorithms.get(i), value, getEncoder().encodeToString(value),
+                    encodeHexString(value)));
+        }
+        return result;
+    }
+
+    private static void digest(MessageDigest[] digests, ByteBuffer buffer) {
+        for (MessageDigest digest : digests) {
+            digest.update(buffer.array(), 0, buffer.limit());
+        }
+    }
+
+}
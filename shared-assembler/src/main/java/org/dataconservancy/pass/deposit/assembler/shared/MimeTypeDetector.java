@@ -0,0 +1,310 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.tika.detect.DefaultDetector;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects the MIME type of custodial content.
+ * <p>
+ * Detection proceeds from the cheapest source of a MIME type to the most expensive:
+ * </p>
+ * <ol>
+ *     <li>the MIME type declared by the {@link DepositFile#getMimeType() DepositFile}, i.e. the MIME type of the PASS
+ *         {@code File}, unless it is missing or {@code application/octet-stream}</li>
+ *     <li>a previous detection of content at the same {@link DepositFile#getLocation() location}, held in a bounded,
+ *         least-recently-used cache</li>
+ *     <li>detection from the leading bytes of the content by a single, shared Tika {@code Detector}</li>
+ *     <li>a well-known extension of the {@link DepositFile#getName() name} of the file, only when the content is not
+ *         recognized by Tika, i.e. is detected as {@code application/octet-stream}</li>
+ * </ol>
+ * <p>
+ * Only the first two answer without reading the content, so callers should first try {@link
+ * #detect(DepositFileResource)}, and only prepare a stream supporting {@code mark} and {@code reset} for {@link
+ * #detect(DepositFileResource, InputStream)} when no MIME type is returned.  Instances are thread-safe; the {@link #shared() shared} instance is
+ * used by every package writer unless another is supplied.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class MimeTypeDetector {
+
+    /**
+     * System property used to size the cache of the {@link #shared() shared} detector
+     */
+    public static final String CACHE_SIZE_PROPERTY = "pass.deposit.assembler.mime.cache.size";
+
+    /**
+     * Default number of detection results cached
+     */
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(MimeTypeDetector.class);
+
+    private static final String OCTET_STREAM = "application/octet-stream";
+
+    /**
+     * The maximum number of bytes read by Tika to detect a MIME type
+     */
+    private static final int MARK_LIMIT = 64 * 1024;
+
+    private static final Map<String, String> EXTENSIONS;
+
+    static {
+        Map<String, String> extensions = new HashMap<>();
+        extensions.put("pdf", "application/pdf");
+        extensions.put("doc", "application/msword");
+        extensions.put("docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+        extensions.put("xls", "application/vnd.ms-excel");
+        extensions.put("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        extensions.put("ppt", "application/vnd.ms-powerpoint");
+        extensions.put("pptx", "application/vnd.openxmlformats-officedocument.presentationml.presentation");
+        extensions.put("odt", "application/vnd.oasis.opendocument.text");
+        extensions.put("rtf", "application/rtf");
+        extensions.put("zip", "application/zip");
+        extensions.put("gz", "application/gzip");
+        extensions.put("tar", "application/x-tar");
+        extensions.put("png", "image/png");
+        extensions.put("jpg", "image/jpeg");
+        extensions.put("jpeg", "image/jpeg");
+        extensions.put("gif", "image/gif");
+        extensions.put("tif", "image/tiff");
+        extensions.put("tiff", "image/tiff");
+        extensions.put("eps", "application/postscript");
+        extensions.put("csv", "text/csv");
+        extensions.put("mp4", "video/mp4");
+        EXTENSIONS = Collections.unmodifiableMap(extensions);
+    }
+
+    private final Detector detector;
+
+    private final Map<String, String> cache;
+
+    private final AtomicLong declared = new AtomicLong();
+
+    private final AtomicLong cached = new AtomicLong();
+
+    private final AtomicLong extension = new AtomicLong();
+
+    private final AtomicLong detected = new AtomicLong();
+
+    private final AtomicLong detectionNanos = new AtomicLong();
+
+    /**
+     * Creates a detector using the Tika {@code DefaultDetector} to detect MIME types from content.
+     *
+     * @param cacheSize the maximum number of detection results cached, zero disables the cache
+     */
+    public MimeTypeDetector(int cacheSize) {
+        this(new DefaultDetector(), cacheSize);
+    }
+
+    /**
+     * Creates a detector using the supplied Tika {@code Detector} to detect MIME types from content.
+     *
+     * @param detector the Tika detector, which must be thread-safe
+     * @param cacheSize the maximum number of detection results cached, zero disables the cache
+     */
+    public MimeTypeDetector(Detector detector, int cacheSize) {
+        if (detector == null) {
+            throw new IllegalArgumentException("Detector must not be null.");
+        }
+
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative.");
+        }
+
+        this.detector = detector;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Answers the JVM-wide detector, sized by the {@link #CACHE_SIZE_PROPERTY} system property.
+     *
+     * @return the shared detector
+     */
+    public static MimeTypeDetector shared() {
+        return Holder.SHARED;
+    }
+
+    /**
+     * Answers the MIME type of the resource without reading its content: from its declared MIME type, or a cached
+     * detection.
+     *
+     * @param resource the resource
+     * @return the MIME type, or {@code null} if its content must be read to detect it
+     */
+    public String detect(DepositFileResource resource) {
+        DepositFile file = resource.getDepositFile();
+
+        if (file != null) {
+            String mimeType = declaredMimeType(file);
+            if (mimeType != null) {
+                declared.incrementAndGet();
+                return mimeType;
+            }
+
+            if (file.getLocation() != null) {
+                mimeType = cache.get(file.getLocation());
+                if (mimeType != null) {
+                    cached.incrementAndGet();
+                    return mimeType;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Answers the MIME type of the resource, reading the leading bytes of its content if necessary.  Content that is
+     * not recognized is typed by its file name extension, if the extension is well-known.  The content is {@code reset}
+     * to its current position before this method returns.
+     *
+     * @param resource the resource
+     * @param content the content of the resource, which must support {@code mark} and {@code reset}
+     * @return the MIME type
+     * @throws IOException if the content cannot be read
+     */
+    public String detect(DepositFileResource resource, InputStream content) throws IOException {
+        String mimeType = detect(resource);
+        if (mimeType != null) {
+            return mimeType;
+        }
+
+        if (!content.markSupported()) {
+            throw new IllegalArgumentException("Content must support mark and reset.");
+        }
+
+        long start = System.nanoTime();
+        content.mark(MARK_LIMIT);
+        try {
+            mimeType = detector.detect(content, new Metadata()).toString();
+        } finally {
+            content.reset();
+            long elapsed = System.nanoTime() - start;
+            detectionNanos.addAndGet(elapsed);
+            detected.incrementAndGet();
+            LOG.trace(">>>> Detected MIME type of {} in {} ms", resource.getFilename(),
+                    elapsed / 1000000);
+        }
+
+        DepositFile file = resource.getDepositFile();
+        if (OCTET_STREAM.equals(mimeType)) {
+            String byExtension = extensionMimeType(file != null && file.getName() != null ?
+                    file.getName() : resource.getFilename());
+            if (byExtension != null) {
+                extension.incrementAndGet();
+                mimeType = byExtension;
+            }
+        }
+
+
+        if (file != null && file.getLocation() != null) {
+            cache.put(file.getLocation(), mimeType);
+        }
+
+        return mimeType;
+    }
+
+    /**
+     * @return the number of MIME types answered from the declared MIME type of a {@code DepositFile}
+     */
+    public long getDeclaredCount() {
+        return declared.get();
+    }
+
+    /**
+     * @return the number of MIME types answered from the cache
+     */
+    public long getCacheHitCount() {
+        return cached.get();
+    }
+
+    /**
+     * @return the number of MIME types answered from a file name extension, for content not recognized by Tika
+     */
+    public long getExtensionCount() {
+        return extension.get();
+    }
+
+    /**
+     * @return the number of MIME types detected from content
+     */
+    public long getDetectedCount() {
+        return detected.get();
+    }
+
+    /**
+     * @return the total time spent detecting MIME types from content, in nanoseconds
+     */
+    public long getDetectionNanos() {
+        return detectionNanos.get();
+    }
+
+    private static String declaredMimeType(DepositFile file) {
+        String mimeType = file.getMimeType();
+        if (mimeType == null || mimeType.trim().isEmpty()) {
+            return null;
+        }
+
+        MediaType parsed = MediaType.parse(mimeType.trim());
+        if (parsed == null || OCTET_STREAM.equals(parsed.getBaseType().toString())) {
+            return null;
+        }
+
+        return parsed.toString();
+    }
+
+    private static String extensionMimeType(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || dot == name.length() - 1) {
+            return null;
+        }
+
+        return EXTENSIONS.get(name.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    private static class Holder {
+        private static final MimeTypeDetector SHARED =
+                new MimeTypeDetector(Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+    }
+
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.ResourceBuilder;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Base64.getEncoder;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+
+/**
+ * Computes the length and any number of digests of the bytes read through it, replacing an
+ * {@code ObservableInputStream} carrying a {@code ContentLengthObserver} and a {@code DigestObserver} per algorithm.
+ * <p>
+ * Digests are updated a block at a time: single-byte and small reads are coalesced into a block before they are
+ * digested, and each block is applied to every digest in turn.  When an {@code Executor} is supplied, blocks are copied
+ * into pooled chunks and digested by a thread of the executor, so that digesting custodial content proceeds on another
+ * core while the reading thread compresses and archives it.  If the executor has no idle thread the digests are
+ * computed by the reading thread instead.
+ * </p>
+ * <p>
+ * The {@link #getLength() length} and {@link #getChecksums() checksums} are available after the stream has been read
+ * to its end.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class MultiDigestInputStream extends FilterInputStream {
+
+    /**
+     * The algorithms used when none are specified: MD5 and SHA-256
+     */
+    public static final List<PackageStream.Algo> DEFAULT_ALGORITHMS =
+            Collections.unmodifiableList(Arrays.asList(PackageStream.Algo.MD5, PackageStream.Algo.SHA_256));
+
+    /**
+     * System property used to size the {@code Executor} shared by all pipelined streams
+     */
+    public static final String POOL_SIZE_PROPERTY = "pass.deposit.assembler.digest.threads";
+
+    private static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+
+    /**
+     * Number of blocks that may be queued for a pipelined digest thread before the reading thread waits
+     */
+    private static final int QUEUE_CAPACITY = 8;
+
+    /**
+     * Reads at least this long are digested in place, rather than coalesced
+     */
+    private static final int COALESCE_THRESHOLD = 1024;
+
+    private static final byte[] END = new byte[0];
+
+    private final List<PackageStream.Algo> algorithms;
+
+    private final MessageDigest[] digests;
+
+    private final ChunkPool pool;
+
+    private BlockingQueue<byte[]> queue;
+
+    private CountDownLatch pipelineDone;
+
+    private byte[] block;
+
+    private int blockLength = 0;
+
+    private long length = 0;
+
+    private boolean eof = false;
+
+    private List<PackageStream.Checksum> checksums;
+
+    /**
+     * Digests the supplied stream on the reading thread using the supplied algorithms.
+     *
+     * @param in the stream to digest
+     * @param algorithms the digest algorithms, in the order the resulting checksums are reported
+     */
+    public MultiDigestInputStream(InputStream in, List<PackageStream.Algo> algorithms) {
+        this(in, algorithms, null, null);
+    }
+
+    /**
+     * Digests the supplied stream using the supplied algorithms.  If an {@code executor} is supplied, digests are
+     * computed by a thread of the executor.
+     *
+     * @param in the stream to digest
+     * @param algorithms the digest algorithms, in the order the resulting checksums are reported
+     * @param executor executes the pipelined digest, may be {@code null} to digest on the reading thread
+     * @param pool supplies the chunks handed to the pipelined digest, may be {@code null} for the shared pool
+     */
+    public MultiDigestInputStream(InputStream in, List<PackageStream.Algo> algorithms, Executor executor,
+                                  ChunkPool pool) {
+        super(in);
+        if (algorithms == null) {
+            throw new IllegalArgumentException("Algorithms must not be null.");
+        }
+
+        this.algorithms = new ArrayList<>(algorithms);
+        this.digests = new MessageDigest[this.algorithms.size()];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = newDigest(this.algorithms.get(i));
+        }
+        this.pool = pool != null ? pool : ChunkPool.shared(ChunkPool.DEFAULT_CHUNK_SIZE);
+
+        if (executor != null && digests.length > 0) {
+            BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            CountDownLatch done = new CountDownLatch(1);
+            try {
+                executor.execute(() -> digestQueued(blocks, done));
+                this.queue = blocks;
+                this.pipelineDone = done;
+            } catch (RejectedExecutionException e) {
+                // every digest thread is busy: digest on the reading thread
+            }
+        }
+
+        this.block = this.pool.acquire();
+    }
+
+    /**
+     * Answers the {@code Executor} shared by pipelined streams.  The executor never queues work: when each of its
+     * threads is busy, the work is rejected, and the stream is digested by its reading thread.
+     *
+     * @return the shared executor
+     */
+    public static Executor sharedExecutor() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * Parses a comma-separated list of algorithm names, e.g. {@code MD5,SHA-256}.  Names are case-insensitive, and may
+     * use a hyphen or an underscore.
+     *
+     * @param algorithms the algorithm names
+     * @return the algorithms, in the order supplied
+     * @throws IllegalArgumentException if an algorithm is not a {@link PackageStream.Algo}
+     */
+    public static List<PackageStream.Algo> parseAlgorithms(String algorithms) {
+        List<PackageStream.Algo> parsed = new ArrayList<>();
+        if (algorithms == null) {
+            return parsed;
+        }
+
+        for (String name : algorithms.split(",")) {
+            String algo = name.trim().toUpperCase().replace('-', '_');
+            if (algo.isEmpty()) {
+                continue;
+            }
+            try {
+                PackageStream.Algo value = PackageStream.Algo.valueOf(algo);
+                if (!parsed.contains(value)) {
+                    parsed.add(value);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown digest algorithm: '" + name.trim() + "'");
+            }
+        }
+
+        return parsed;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b == -1) {
+            finish();
+        } else {
+            if (blockLength == block.length) {
+                flush();
+            }
+            block[blockLength++] = (byte) b;
+            length++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read == -1) {
+            finish();
+        } else if (read > 0) {
+            update(b, off, read);
+        }
+        return read;
+    }
+
+    /**
+     * Skipped bytes are read, so that they are digested.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buf = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // marking would cause bytes to be digested more than once
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (!eof) {
+                eof = true;
+                try {
+                    // abandon the digests, allowing a pipelined digest thread to finish
+                    if (queue != null) {
+                        abandon();
+                    }
+                } finally {
+                    pool.release(block);
+                    block = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes read through this stream
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the algorithms digested by this stream
+     */
+    public List<PackageStream.Algo> getAlgorithms() {
+        return Collections.unmodifiableList(algorithms);
+    }
+
+    /**
+     * @return the checksums of the bytes read through this stream, in the order of {@link #getAlgorithms()}, or
+     *         {@code null} if the stream has not been read to its end
+     */
+    public List<PackageStream.Checksum> getChecksums() {
+        return checksums;
+    }
+
+    /**
+     * Sets the {@link #getLength() length} and {@link #getChecksums() checksums} of this stream on the supplied
+     * builder.
+     *
+     * @param rb the resource builder
+     * @throws IllegalStateException if this stream has not been read to its end
+     */
+    public void characterize(ResourceBuilder rb) {
+        if (checksums == null) {
+            throw new IllegalStateException("Stream has not been read to its end.");
+        }
+
+        rb.sizeBytes(length);
+        checksums.forEach(rb::checksum);
+    }
+
+    private void update(byte[] b, int off, int len) throws IOException {
+        length += len;
+
+        if (queue == null && len >= COALESCE_THRESHOLD) {
+            // digest large reads in place, after any coalesced bytes that precede them
+            if (blockLength > 0) {
+                flush();
+            }
+            digest(b, off, len);
+            return;
+        }
+
+        while (len > 0) {
+            if (blockLength == block.length) {
+                flush();
+            }
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Digests the coalesced block, or hands it to the pipelined digest thread.
+     */
+    private void flush() throws IOException {
+        if (queue == null) {
+            digest(block, 0, blockLength);
+        } else {
+            if (blockLength < block.length) {
+                enqueue(Arrays.copyOf(block, blockLength));
+                pool.release(block);
+            } else {
+                enqueue(block);
+            }
+            block = pool.acquire();
+        }
+        blockLength = 0;
+    }
+
+    private void finish() throws IOException {
+        if (eof) {
+            return;
+        }
+
+        if (blockLength > 0) {
+            flush();
+        }
+
+        if (queue != null) {
+            enqueue(END);
+            try {
+                pipelineDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for digests to complete.");
+            }
+        }
+
+        pool.release(block);
+        block = null;
+        eof = true;
+
+        List<PackageStream.Checksum> result = new ArrayList<>(digests.length);
+        for (int i = 0; i < digests.length; i++) {
+            byte[] value = digests[i].digest();
+            result.add(new ChecksumImpl(algorithms.get(i), value, getEncoder().encodeToString(value),
+                    encodeHexString(value)));
+        }
+        checksums = result;
+    }
+
+    private void enqueue(byte[] chunk) throws IOException {
+        try {
+            queue.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted handing bytes to the digest thread.");
+        }
+    }
+
+    /**
+     * Discards the blocks queued for the pipelined digest thread, returning them to the pool, and signals the end of
+     * the stream without waiting for the digest thread to take a block.  This thread is the only one queueing blocks,
+     * so once the queue is drained, there is room for the end of the stream.
+     */
+    private void abandon() {
+        List<byte[]> discarded = new ArrayList<>(QUEUE_CAPACITY);
+        queue.drainTo(discarded);
+        for (byte[] chunk : discarded) {
+            if (chunk != END) {
+                pool.release(chunk);
+            }
+        }
+        queue.offer(END);
+    }
+
+    private void digest(byte[] b, int off, int len) {
+        for (MessageDigest digest : digests) {
+            digest.update(b, off, len);
+        }
+    }
+
+    /**
+     * Executed by the pipelined digest thread: digests each queued block until the end of the stream is reached.
+     */
+    private void digestQueued(BlockingQueue<byte[]> blocks, CountDownLatch done) {
+        try {
+            byte[] chunk;
+            while ((chunk = blocks.take()) != END) {
+                digest(chunk, 0, chunk.length);
+                pool.release(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            done.countDown();
+        }
+    }
+
+    static MessageDigest newDigest(PackageStream.Algo algo) {
+        try {
+            return MessageDigest.getInstance(algorithmName(algo));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unable to obtain MessageDigest instance for algorithm: " +
+                    algo.name());
+        }
+    }
+
+    /**
+     * Answers the standard {@code MessageDigest} name of the supplied algorithm, e.g. {@code SHA-256}.
+     *
+     * @param algo the algorithm
+     * @return the standard name of the algorithm
+     */
+    static String algorithmName(PackageStream.Algo algo) {
+        switch (algo) {
+            case MD5:
+                return "MD5";
+            case SHA_256:
+                return "SHA-256";
+            case SHA_512:
+                return "SHA-512";
+            default:
+                throw new IllegalArgumentException("Unknown algorithm: " + algo.name());
+        }
+    }
+
+    private static class Holder {
+        private static final Executor EXECUTOR;
+
+        static {
+            int size = Integer.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), r -> {
+                        Thread t = new Thread(r, "Digest-" + THREAD_COUNTER.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+    }
+
+}
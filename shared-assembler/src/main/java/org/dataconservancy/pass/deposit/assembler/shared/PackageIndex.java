@@ -0,0 +1,378 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+import static org.dataconservancy.pass.deposit.assembler.PackageStream.ARCHIVE.TAR;
+import static org.dataconservancy.pass.deposit.assembler.PackageStream.ARCHIVE.ZIP;
+import static org.dataconservancy.pass.deposit.assembler.PackageStream.COMPRESSION.GZIP;
+
+/**
+ * Locates each entry of an assembled package, so that a single entry can be read without reading the package from
+ * the beginning.
+ * <p>
+ * The index maps the name of each file in the package to the offset of its bytes, its size, and the {@link
+ * PackageStream.Resource resource} describing it.  Offsets of zip entries are read from the central directory of the
+ * package, and offsets of tar entries from the tar headers.  The checksums and MIME types recorded when the custodial
+ * content was assembled are carried over to the resources of the index; other entries of the package (e.g. a METS.xml
+ * or manifest) are described by their name and size only.
+ * </p>
+ * <p>
+ * Entries of a zip or uncompressed tar package are {@link #open(Path, String) opened} by seeking directly to their
+ * offset.  A gzip stream cannot be entered part way through, so the offsets of a tar.gz package are offsets into the
+ * uncompressed tar stream: opening an entry inflates the package up to the entry, but skips reading any tar headers or
+ * the content of preceding entries.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class PackageIndex {
+
+    private final PackageStream.ARCHIVE archive;
+
+    private final PackageStream.COMPRESSION compression;
+
+    private final Map<String, Entry> entries;
+
+    private PackageIndex(PackageStream.ARCHIVE archive, PackageStream.COMPRESSION compression,
+                         Map<String, Entry> entries) {
+        this.archive = archive;
+        this.compression = compression;
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Indexes the entries of the assembled package.
+     *
+     * @param packageFile the assembled package
+     * @param metadata describes the archive format and compression of the package
+     * @param assembled the custodial resources recorded when the package was assembled, which may be empty
+     * @return the index of the package
+     * @throws IOException if the package cannot be read, or is not a zip or tar package
+     */
+    public static PackageIndex build(Path packageFile, PackageStream.Metadata metadata,
+                                     Collection<PackageStream.Resource> assembled) throws IOException {
+        Map<String, PackageStream.Resource> assembledByName = new HashMap<>();
+        assembled.forEach(resource -> assembledByName.put(resource.name(), resource));
+
+        PackageStream.ARCHIVE archive = metadata.archive();
+        PackageStream.COMPRESSION compression = metadata.compression();
+
+        if (archive == ZIP) {
+            return new PackageIndex(archive, compression, indexZip(packageFile, assembledByName));
+        }
+
+        if (archive == TAR) {
+            return new PackageIndex(archive, compression, indexTar(packageFile, compression == GZIP,
+                    assembledByName));
+        }
+
+        throw new IOException("Unable to index package '" + metadata.name() + "': unsupported archive format " +
+                archive);
+    }
+
+    /**
+     * The entries of the package, in the order they appear in the package.
+     *
+     * @return the indexed entries
+     */
+    public Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /**
+     * The entry with the supplied name.
+     *
+     * @param name the name of the entry in the package
+     * @return the entry, or {@code null} if the package has no such entry
+     */
+    public Entry entry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * The resources describing the entries of the package, in the order they appear in the package.
+     *
+     * @return the resources of the package
+     */
+    public Iterator<PackageStream.Resource> resources() {
+        List<PackageStream.Resource> resources = new ArrayList<>(entries.size());
+        entries.values().forEach(entry -> resources.add(entry.resource()));
+        return Collections.unmodifiableList(resources).iterator();
+    }
+
+    /**
+     * Opens a stream over the uncompressed content of the named entry.  The caller is responsible for closing the
+     * returned stream.
+     *
+     * @param packageFile the indexed package
+     * @param name the name of the entry in the package
+     * @return the content of the entry
+     * @throws IOException if the package cannot be read
+     * @throws IllegalArgumentException if the package has no such entry
+     */
+    public InputStream open(Path packageFile, String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("Package does not contain a resource named '" + name + "'");
+        }
+
+        if (archive == TAR && compression == GZIP) {
+            InputStream tar = new GzipCompressorInputStream(
+                    new BufferedInputStream(Files.newInputStream(packageFile, StandardOpenOption.READ)));
+            try {
+                IOUtils.skipFully(tar, entry.offset());
+            } catch (IOException | RuntimeException e) {
+                tar.close();
+                throw e;
+            }
+            return new BoundedInputStream(tar, entry.size());
+        }
+
+        FileChannel channel = FileChannel.open(packageFile, StandardOpenOption.READ);
+        try {
+            channel.position(entry.offset());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        InputStream raw = new BoundedInputStream(Channels.newInputStream(channel), entry.compressedSize());
+
+        if (entry.method() != ZipEntry.DEFLATED) {
+            return raw;
+        }
+
+        // A raw ('nowrap') inflater may need one byte beyond the end of the deflated data
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(new SequenceInputStream(raw, new ByteArrayInputStream(new byte[1])),
+                inflater) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private static Map<String, Entry> indexZip(Path packageFile, Map<String, PackageStream.Resource> assembled)
+            throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        try (ZipFile zip = new ZipFile(packageFile.toFile())) {
+            Enumeration<ZipArchiveEntry> zipEntries = zip.getEntriesInPhysicalOrder();
+            while (zipEntries.hasMoreElements()) {
+                ZipArchiveEntry zipEntry = zipEntries.nextElement();
+                if (zipEntry.isDirectory()) {
+                    continue;
+                }
+                entries.put(zipEntry.getName(), new Entry(zipEntry.getDataOffset(), zipEntry.getCompressedSize(),
+                        zipEntry.getMethod(), resource(zipEntry, assembled)));
+            }
+        }
+        return entries;
+    }
+
+    private static Map<String, Entry> indexTar(Path packageFile, boolean gzip,
+                                               Map<String, PackageStream.Resource> assembled) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(packageFile, StandardOpenOption.READ))) {
+            CountingInputStream counting = new CountingInputStream(gzip ? new GzipCompressorInputStream(in) : in);
+            TarArchiveInputStream tar = new TarArchiveInputStream(counting);
+            ArchiveEntry tarEntry;
+            while ((tarEntry = tar.getNextEntry()) != null) {
+                if (tarEntry.isDirectory()) {
+                    continue;
+                }
+                // The tar headers of the entry have been read, so the count is the offset of its content
+                entries.put(tarEntry.getName(), new Entry(counting.count, tarEntry.getSize(), ZipEntry.STORED,
+                        resource(tarEntry, assembled)));
+            }
+        }
+        return entries;
+    }
+
+    private static PackageStream.Resource resource(ArchiveEntry archiveEntry,
+                                                   Map<String, PackageStream.Resource> assembled) {
+        PackageStream.Resource assembledResource = assembled.get(archiveEntry.getName());
+
+        ResourceImpl resource = new ResourceImpl();
+        resource.setName(archiveEntry.getName());
+        resource.setSizeBytes(archiveEntry.getSize());
+        if (assembledResource != null) {
+            resource.setMimeType(assembledResource.mimeType());
+            if (assembledResource.checksums() != null) {
+                assembledResource.checksums().forEach(resource::addChecksum);
+            }
+        }
+        return resource;
+    }
+
+    /**
+     * An entry of the package.
+     */
+    public static class Entry {
+
+        private final long offset;
+
+        private final long compressedSize;
+
+        private final int method;
+
+        private final PackageStream.Resource resource;
+
+        private Entry(long offset, long compressedSize, int method, PackageStream.Resource resource) {
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+            this.method = method;
+            this.resource = resource;
+        }
+
+        /**
+         * The offset of the first byte of the entry content.  For a tar.gz package this is the offset into the
+         * uncompressed tar stream, otherwise the offset into the package.
+         *
+         * @return the offset of the entry content
+         */
+        public long offset() {
+            return offset;
+        }
+
+        /**
+         * The number of bytes occupied by the entry content; equal to the {@link #size() size} unless the entry is
+         * deflated.
+         *
+         * @return the compressed size of the entry
+         */
+        public long compressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * The uncompressed size of the entry content.
+         *
+         * @return the size of the entry
+         */
+        public long size() {
+            return resource.sizeBytes();
+        }
+
+        /**
+         * How the entry content is compressed, either {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+         *
+         * @return the compression method of the entry
+         */
+        public int method() {
+            return method;
+        }
+
+        /**
+         * @return the resource describing the entry
+         */
+        public PackageStream.Resource resource() {
+            return resource;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" + "name='" + resource.name() + '\'' + ", offset=" + offset + ", compressedSize=" +
+                    compressedSize + ", size=" + size() + ", method=" + method + '}';
+        }
+    }
+
+    /**
+     * Counts the bytes read and skipped from the underlying stream.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * The options tuning how packages are streamed: how bytes are handed from the package writer to its reader, how
+ * custodial resources are prefetched and digested, and how packages are compressed.
+ * <p>
+ * Options are immutable.  The Spring bean is bound once from the {@code pass.deposit.assembler.*} properties, and
+ * handed by each {@link AbstractAssembler} to the {@link AbstractZippedPackageStream package streams} it creates, which
+ * in turn hand them to their {@link AbstractThreadedOutputStreamWriter writers}.  Options differing from the bound
+ * values are obtained with a {@link #toBuilder() builder}.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@Component
+public class PackageStreamOptions {
+
+    /**
+     * The options used when none are supplied
+     */
+    public static final PackageStreamOptions DEFAULTS = builder().build();
+
+    private final int chunkSize;
+
+    private final int pipeCapacity;
+
+    private final int prefetchDepth;
+
+    private final long prefetchByteBudget;
+
+    private final List<PackageStream.Algo> digestAlgorithms;
+
+    private final boolean pipelineDigests;
+
+    private final boolean verifyDeclaredDigests;
+
+    private final int zipDeflateLevel;
+
+    private final List<String> zipStoredTypes;
+
+    private final boolean zipParallel;
+
+    private final boolean gzipParallel;
+
+    /**
+     * Binds the options from the {@code pass.deposit.assembler.*} properties.
+     *
+     * @param chunkSize the size, in bytes, of the chunks handed from the package writer to the package reader
+     * @param pipeCapacity the number of chunks that may be buffered between the package writer and reader
+     * @param prefetchDepth the number of custodial resources retrieved ahead of the resource being written
+     * @param prefetchByteBudget the number of bytes of prefetched resources held in memory
+     * @param pipelineDigests whether checksums are computed by a separate thread
+     * @param verifyDeclaredDigests whether declared checksums are computed, and verified, rather than trusted
+     * @param zipDeflateLevel the level used to deflate the entries of zip packages
+     * @param zipStoredTypes comma-separated MIME types of zip entries that are stored rather than deflated
+     * @param zipParallel whether the entries of zip packages are compressed on multiple threads
+     * @param gzipParallel whether gzip compressed packages are deflated on multiple threads
+     */
+    @Autowired
+    public PackageStreamOptions(@Value("${pass.deposit.assembler.pipe.chunk-size:65536}") int chunkSize,
+                                @Value("${pass.deposit.assembler.pipe.capacity:16}") int pipeCapacity,
+                                @Value("${pass.deposit.assembler.prefetch.depth:4}") int prefetchDepth,
+                                @Value("${pass.deposit.assembler.prefetch.byte-budget:33554432}")
+                                        long prefetchByteBudget,
+                                @Value("${pass.deposit.assembler.digest.pipelined:false}") boolean pipelineDigests,
+                                @Value("${pass.deposit.assembler.digest.verify-declared:false}")
+                                        boolean verifyDeclaredDigests,
+                                @Value("${pass.deposit.assembler.zip.deflate-level:-1}") int zipDeflateLevel,
+                                @Value("${pass.deposit.assembler.zip.stored-types:}") String zipStoredTypes,
+                                @Value("${pass.deposit.assembler.zip.parallel:false}") boolean zipParallel,
+                                @Value("${pass.deposit.assembler.gzip.parallel:false}") boolean gzipParallel) {
+        this(builder()
+                .chunkSize(chunkSize)
+                .pipeCapacity(pipeCapacity)
+                .prefetchDepth(prefetchDepth)
+                .prefetchByteBudget(prefetchByteBudget)
+                .pipelineDigests(pipelineDigests)
+                .verifyDeclaredDigests(verifyDeclaredDigests)
+                .zipDeflateLevel(zipDeflateLevel)
+                .zipStoredTypes(zipStoredTypes)
+                .zipParallel(zipParallel)
+                .gzipParallel(gzipParallel));
+    }
+
+    private PackageStreamOptions(Builder builder) {
+        this.chunkSize = builder.chunkSize;
+        this.pipeCapacity = builder.pipeCapacity;
+        this.prefetchDepth = builder.prefetchDepth;
+        this.prefetchByteBudget = builder.prefetchByteBudget;
+        this.digestAlgorithms = Collections.unmodifiableList(new ArrayList<>(builder.digestAlgorithms));
+        this.pipelineDigests = builder.pipelineDigests;
+        this.verifyDeclaredDigests = builder.verifyDeclaredDigests;
+        this.zipDeflateLevel = builder.zipDeflateLevel;
+        this.zipStoredTypes = Collections.unmodifiableList(new ArrayList<>(builder.zipStoredTypes));
+        this.zipParallel = builder.zipParallel;
+        this.gzipParallel = builder.gzipParallel;
+    }
+
+    /**
+     * @return a builder of options, initialized with the default values
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a builder of options, initialized with the values of these options
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * The size, in bytes, of each chunk handed from the writer to the reader of the package stream.
+     *
+     * @return the chunk size in bytes
+     * @see ChunkPool
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * The number of chunks that may be in flight between the writer and the reader of the package stream.  The
+     * writer blocks when this many chunks are waiting to be read.
+     *
+     * @return the capacity of the pipe, in chunks
+     * @see RingBufferPipe
+     */
+    public int getPipeCapacity() {
+        return pipeCapacity;
+    }
+
+    /**
+     * The number of custodial resources retrieved ahead of the resource being written to the package.  Zero disables
+     * prefetching.
+     *
+     * @return the prefetch depth
+     * @see ResourcePrefetcher
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * The number of bytes of custodial resources prefetched ahead of the resource being archived held in memory, beyond
+     * which further prefetching pauses.
+     *
+     * @return the prefetch byte budget
+     * @see ResourcePrefetcher
+     */
+    public long getPrefetchByteBudget() {
+        return prefetchByteBudget;
+    }
+
+    /**
+     * The algorithms used to compute the checksums of each custodial resource, in the order the checksums are reported.
+     * The first algorithm provides the {@link PackageStream.Resource#checksum() primary checksum} of each resource.
+     *
+     * @return the digest algorithms
+     * @see MultiDigestInputStream
+     */
+    public List<PackageStream.Algo> getDigestAlgorithms() {
+        return digestAlgorithms;
+    }
+
+    /**
+     * Whether the checksums of custodial resources are computed by a separate thread, concurrently with archiving and
+     * compressing the resources.
+     *
+     * @return true if digests are pipelined
+     * @see MultiDigestInputStream#sharedExecutor()
+     */
+    public boolean isPipelineDigests() {
+        return pipelineDigests;
+    }
+
+    /**
+     * Whether the checksums declared for custodial resources (e.g. obtained from Fedora when the submission was built)
+     * are computed and verified as the resources are written, failing the package on a mismatch.  Otherwise, declared
+     * checksums are trusted, and only the checksums of the algorithms they do not cover are computed.
+     *
+     * @return true if declared checksums are verified
+     */
+    public boolean isVerifyDeclaredDigests() {
+        return verifyDeclaredDigests;
+    }
+
+    /**
+     * The level used to deflate the entries of zip packages, from {@code 0} (no compression) to {@code 9} (best
+     * compression), or {@code -1} for the default level.
+     *
+     * @return the deflate level
+     */
+    public int getZipDeflateLevel() {
+        return zipDeflateLevel;
+    }
+
+    /**
+     * @return the MIME types of zip package entries that are stored rather than deflated
+     */
+    public List<String> getZipStoredTypes() {
+        return zipStoredTypes;
+    }
+
+    /**
+     * Whether the entries of zip packages are compressed on multiple threads before they are written to the package.
+     *
+     * @return true if zip entries are compressed in parallel
+     * @see ParallelZipDeflater
+     */
+    public boolean isZipParallel() {
+        return zipParallel;
+    }
+
+    /**
+     * Whether gzip compressed packages (e.g. NIHMS tar.gz packages) are deflated on multiple threads.
+     *
+     * @return true if gzip compression is parallel
+     * @see ParallelGzipOutputStream
+     */
+    public boolean isGzipParallel() {
+        return gzipParallel;
+    }
+
+    /**
+     * Answers a new policy deciding how each entry of a zip package is compressed, according to these options.
+     *
+     * @return the zip compression policy
+     */
+    public ZipCompressionPolicy getZipCompression() {
+        ZipCompressionPolicy policy = new ZipCompressionPolicy();
+        policy.setLevel(zipDeflateLevel);
+        policy.setStoredTypes(zipStoredTypes);
+        policy.setParallel(zipParallel);
+        return policy;
+    }
+
+    @Override
+    public String toString() {
+        return "PackageStreamOptions{" +
+                "chunkSize=" + chunkSize +
+                ", pipeCapacity=" + pipeCapacity +
+                ", prefetchDepth=" + prefetchDepth +
+                ", prefetchByteBudget=" + prefetchByteBudget +
+                ", digestAlgorithms=" + digestAlgorithms +
+                ", pipelineDigests=" + pipelineDigests +
+                ", verifyDeclaredDigests=" + verifyDeclaredDigests +
+                ", zipDeflateLevel=" + zipDeflateLevel +
+                ", zipStoredTypes=" + zipStoredTypes +
+                ", zipParallel=" + zipParallel +
+                ", gzipParallel=" + gzipParallel +
+                '}';
+    }
+
+    /**
+     * Builds {@link PackageStreamOptions}, rejecting invalid values as they are set.
+     */
+    public static class Builder {
+
+        private int chunkSize = ChunkPool.DEFAULT_CHUNK_SIZE;
+
+        private int pipeCapacity = RingBufferPipe.DEFAULT_CAPACITY;
+
+        private int prefetchDepth = ResourcePrefetcher.DEFAULT_DEPTH;
+
+        private long prefetchByteBudget = ResourcePrefetcher.DEFAULT_BYTE_BUDGET;
+
+        private List<PackageStream.Algo> digestAlgorithms = MultiDigestInputStream.DEFAULT_ALGORITHMS;
+
+        private boolean pipelineDigests = false;
+
+        private boolean verifyDeclaredDigests = false;
+
+        private int zipDeflateLevel = Deflater.DEFAULT_COMPRESSION;
+
+        private List<String> zipStoredTypes = ZipCompressionPolicy.DEFAULT_STORED_TYPES;
+
+        private boolean zipParallel = false;
+
+        private boolean gzipParallel = false;
+
+        private Builder() {
+
+        }
+
+        private Builder(PackageStreamOptions options) {
+            this.chunkSize = options.chunkSize;
+            this.pipeCapacity = options.pipeCapacity;
+            this.prefetchDepth = options.prefetchDepth;
+            this.prefetchByteBudget = options.prefetchByteBudget;
+            this.digestAlgorithms = options.digestAlgorithms;
+            this.pipelineDigests = options.pipelineDigests;
+            this.verifyDeclaredDigests = options.verifyDeclaredDigests;
+            this.zipDeflateLevel = options.zipDeflateLevel;
+            this.zipStoredTypes = options.zipStoredTypes;
+            this.zipParallel = options.zipParallel;
+            this.gzipParallel = options.gzipParallel;
+        }
+
+        public Builder chunkSize(int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("Chunk size must be a positive integer.");
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder pipeCapacity(int pipeCapacity) {
+            if (pipeCapacity < 1) {
+                throw new IllegalArgumentException("Pipe capacity must be a positive integer.");
+            }
+            this.pipeCapacity = pipeCapacity;
+            return this;
+        }
+
+        public Builder prefetchDepth(int prefetchDepth) {
+            if (prefetchDepth < 0) {
+                throw new IllegalArgumentException("Prefetch depth must not be negative.");
+            }
+            this.prefetchDepth = prefetchDepth;
+            return this;
+        }
+
+        public Builder prefetchByteBudget(long prefetchByteBudget) {
+            if (prefetchByteBudget < 0) {
+                throw new IllegalArgumentException("Prefetch byte budget must not be negative.");
+            }
+            this.prefetchByteBudget = prefetchByteBudget;
+            return this;
+        }
+
+        public Builder digestAlgorithms(List<PackageStream.Algo> digestAlgorithms) {
+            if (digestAlgorithms == null) {
+                throw new IllegalArgumentException("Digest algorithms must not be null.");
+            }
+            this.digestAlgorithms = digestAlgorithms;
+            return this;
+        }
+
+        public Builder pipelineDigests(boolean pipelineDigests) {
+            this.pipelineDigests = pipelineDigests;
+            return this;
+        }
+
+        public Builder verifyDeclaredDigests(boolean verifyDeclaredDigests) {
+            this.verifyDeclaredDigests = verifyDeclaredDigests;
+            return this;
+        }
+
+        public Builder zipDeflateLevel(int zipDeflateLevel) {
+            if (zipDeflateLevel < Deflater.DEFAULT_COMPRESSION || zipDeflateLevel > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("Deflate level must be between " + Deflater.DEFAULT_COMPRESSION +
+                        " and " + Deflater.BEST_COMPRESSION + ", but was " + zipDeflateLevel + ".");
+            }
+            this.zipDeflateLevel = zipDeflateLevel;
+            return this;
+        }
+
+        public Builder zipStoredTypes(List<String> zipStoredTypes) {
+            if (zipStoredTypes == null) {
+                throw new IllegalArgumentException("Stored types must not be null.");
+            }
+            this.zipStoredTypes = zipStoredTypes;
+            return this;
+        }
+
+        /**
+         * Sets the MIME types of zip package entries that are stored rather than deflated, from a comma-separated list,
+         * e.g. {@code image/jpeg,video/*}.  An empty value uses the {@link ZipCompressionPolicy#DEFAULT_STORED_TYPES
+         * default types}, and {@code none} deflates every entry.
+         *
+         * @param zipStoredTypes the stored MIME types
+         * @return this builder
+         * @see ZipCompressionPolicy#parseTypes(String)
+         */
+        public Builder zipStoredTypes(String zipStoredTypes) {
+            return zipStoredTypes(zipStoredTypes == null || zipStoredTypes.trim().isEmpty() ?
+                    ZipCompressionPolicy.DEFAULT_STORED_TYPES : ZipCompressionPolicy.parseTypes(zipStoredTypes));
+        }
+
+        public Builder zipParallel(boolean zipParallel) {
+            this.zipParallel = zipParallel;
+            return this;
+        }
+
+        public Builder gzipParallel(boolean gzipParallel) {
+            this.gzipParallel = gzipParallel;
+            return this;
+        }
+
+        public PackageStreamOptions build() {
+            return new PackageStreamOptions(this);
+        }
+    }
+
+}
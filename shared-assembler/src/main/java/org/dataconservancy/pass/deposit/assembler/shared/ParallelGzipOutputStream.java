@@ -0,0 +1,459 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a single gzip member whose content is deflated on multiple threads, in the manner of <a
+ * href="https://zlib.net/pigz/">pigz</a>.
+ * <p>
+ * Bytes written to this stream are divided into blocks.  Each block is deflated by a thread of the executor as a
+ * sequence of raw deflate blocks ending on a byte boundary (i.e. with a {@code SYNC_FLUSH}), primed with the last 32
+ * KiB of the preceding block so that the compression ratio is close to that of a single-threaded stream.  The deflated
+ * blocks are written to the underlying stream in order, framed by a gzip header and a trailer carrying the CRC-32 and
+ * length of the content, resulting in a gzip member that any gzip reader can decompress.  The CRC-32 is computed by
+ * the writing thread as bytes are written.
+ * </p>
+ * <p>
+ * At most {@code window} blocks are being deflated, or waiting to be written, at once; beyond that, writing waits for
+ * the earliest block to be written to the underlying stream.  This bounds the memory held by each stream to roughly
+ * twice {@code window} blocks.  Instances are not thread-safe, and are written by a single thread.  The threads
+ * deflating blocks are shared by all instances in the JVM, and sized by the {@value #POOL_SIZE_PROPERTY} system
+ * property.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    /**
+     * System property used to size the {@code ExecutorService} shared by all instances
+     */
+    public static final String POOL_SIZE_PROPERTY = "pass.deposit.assembler.gzip.threads";
+
+    /**
+     * Default size of the blocks deflated by each thread, 128 KiB
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+
+    /**
+     * The size of the deflate window, and of the dictionary primed from the preceding block
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] HEADER = new byte[] {
+            0x1f, (byte) 0x8b,      // magic
+            Deflater.DEFLATED,      // compression method
+            0,                      // flags
+            0, 0, 0, 0,             // modification time, unknown
+            0,                      // extra flags
+            (byte) 0xff             // operating system, unknown
+    };
+
+    /**
+     * Raw (headerless) deflaters retained by each deflating thread, indexed by compression level + 1
+     */
+    private static final ThreadLocal<Deflater[]> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater[Deflater.BEST_COMPRESSION + 2]);
+
+    private final OutputStream out;
+
+    private final int level;
+
+    private final ExecutorService executor;
+
+    private final int window;
+
+    private final ChunkPool pool;
+
+    private final Deque<DeflateTask> pending = new ArrayDeque<>();
+
+    private final CRC32 crc = new CRC32();
+
+    private final byte[] singleByte = new byte[1];
+
+    private long length = 0;
+
+    private byte[] block;
+
+    private int blockLength = 0;
+
+    private byte[] dictionary;
+
+    private boolean headerWritten = false;
+
+    private boolean finished = false;
+
+    private boolean closed = false;
+
+    /**
+     * Deflates blocks of {@link #DEFAULT_BLOCK_SIZE} bytes on the shared executor, with a window of twice the number
+     * of its threads.
+     *
+     * @param out the underlying stream
+     * @param level the deflate level, from {@code 0} to {@code 9}, or {@code -1} for the default level
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level) {
+        this(out, level, Holder.EXECUTOR, 2 * Holder.EXECUTOR.getMaximumPoolSize(), DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Deflates blocks on the supplied executor.
+     *
+     * @param out the underlying stream
+     * @param level the deflate level, from {@code 0} to {@code 9}, or {@code -1} for the default level
+     * @param executor deflates blocks
+     * @param window the maximum number of blocks being deflated, or waiting to be written, at once
+     * @param blockSize the size of each block, in bytes, at least 32 KiB
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, ExecutorService executor, int window,
+                                    int blockSize) {
+        if (out == null) {
+            throw new IllegalArgumentException("Output stream must not be null.");
+        }
+
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Deflate level must be between " + Deflater.DEFAULT_COMPRESSION +
+                    " and " + Deflater.BEST_COMPRESSION + ".");
+        }
+
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must not be null.");
+        }
+
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be a positive integer.");
+        }
+
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Block size must be at least " + DICTIONARY_SIZE + " bytes.");
+        }
+
+        this.out = out;
+        this.level = level;
+        this.executor = executor;
+        this.window = window;
+        this.pool = ChunkPool.shared(blockSize);
+    }
+
+    /**
+     * Answers the {@code ExecutorService} shared by instances.
+     *
+     * @return the shared executor
+     */
+    public static ExecutorService sharedExecutor() {
+        return Holder.EXECUTOR;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        crc.update(b, off, len);
+        length += len;
+
+        while (len > 0) {
+            if (block == null) {
+                block = pool.acquire();
+                blockLength = 0;
+            }
+
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+
+            if (blockLength == block.length) {
+                submit(false);
+            }
+        }
+    }
+
+    /**
+     * Deflates the bytes written so far, and writes them to the underlying stream.  Flushing often degrades the
+     * compression ratio, and the parallelism, of the stream.
+     *
+     * @throws IOException if the bytes cannot be deflated or written
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (blockLength > 0) {
+            submit(false);
+        }
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    /**
+     * Deflates any remaining bytes, and writes the end of the gzip member to the underlying stream, without closing
+     * it.
+     *
+     * @throws IOException if the bytes cannot be deflated or written
+     */
+    public void finish() throws IOException {
+        ensureOpen();
+        submit(true);
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+
+        byte[] trailer = new byte[8];
+        writeIntLE(trailer, 0, crc.getValue());
+        writeIntLE(trailer, 4, length);
+        out.write(trailer);
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            if (!finished) {
+                finish();
+            }
+        } finally {
+            closed = true;
+            pending.forEach(DeflateTask::abandon);
+            pending.clear();
+            if (block != null) {
+                pool.release(block);
+                block = null;
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * @return the number of bytes written to this stream
+     */
+    public long getLength() {
+        return length;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        if (finished) {
+            throw new IOException("Stream finished.");
+        }
+    }
+
+    /**
+     * Submits the current block to be deflated, waiting for the earliest block to be written if the window is full.
+     *
+     * @param last true if this is the final block of the gzip member
+     */
+    private void submit(boolean last) throws IOException {
+        byte[] input = block != null ? block : new byte[0];
+        int inputLength = blockLength;
+        byte[] primer = dictionary;
+
+        // the last 32 KiB of this block primes the next
+        if (inputLength >= DICTIONARY_SIZE) {
+            dictionary = Arrays.copyOfRange(input, inputLength - DICTIONARY_SIZE, inputLength);
+        } else if (inputLength > 0) {
+            byte[] previous = dictionary == null ? new byte[0] : dictionary;
+            int keep = Math.min(previous.length, DICTIONARY_SIZE - inputLength);
+            dictionary = new byte[keep + inputLength];
+            System.arraycopy(previous, previous.length - keep, dictionary, 0, keep);
+            System.arraycopy(input, 0, dictionary, keep, inputLength);
+        }
+
+        block = null;
+        blockLength = 0;
+
+        while (pending.size() >= window) {
+            writeNext();
+        }
+
+        DeflateTask task = new DeflateTask(input, inputLength, primer, last);
+        try {
+            task.future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            task.release();
+            throw new IOException("Unable to deflate block: " + e.getMessage(), e);
+        }
+        pending.add(task);
+    }
+
+    private void writeNext() throws IOException {
+        if (!headerWritten) {
+            out.write(HEADER);
+            headerWritten = true;
+        }
+
+        try {
+            pending.poll().future.get().writeTo(out);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted deflating block", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error deflating block: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private ByteArrayOutputStream deflate(byte[] input, int inputLength, byte[] primer, boolean last) {
+        Deflater[] deflaters = DEFLATERS.get();
+        Deflater deflater = deflaters[level + 1];
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+            deflaters[level + 1] = deflater;
+        } else {
+            deflater.reset();
+        }
+
+        if (primer != null) {
+            deflater.setDictionary(primer);
+        }
+
+        deflater.setInput(input, 0, inputLength);
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(Math.max(64, inputLength / 2));
+        byte[] buf = new byte[16 * 1024];
+
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                deflated.write(buf, 0, n);
+            }
+        } else {
+            int n;
+            do {
+                n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                deflated.write(buf, 0, n);
+            } while (n == buf.length || !deflater.needsInput());
+        }
+
+        return deflated;
+    }
+
+    private static void writeIntLE(byte[] b, int off, long value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+        b[off + 2] = (byte) (value >> 16);
+        b[off + 3] = (byte) (value >> 24);
+    }
+
+    /**
+     * Deflates a block, releasing it to the pool once deflated.  The block is claimed by whichever of the deflating
+     * thread or {@link #abandon()} gets to it first, so a block whose deflation is cancelled before it starts is still
+     * released, and a block being deflated is not released from under the deflating thread.
+     */
+    private class DeflateTask implements Callable<ByteArrayOutputStream> {
+
+        private final AtomicReference<byte[]> input;
+
+        private final int inputLength;
+
+        private final byte[] primer;
+
+        private final boolean last;
+
+        private Future<ByteArrayOutputStream> future;
+
+        private DeflateTask(byte[] input, int inputLength, byte[] primer, boolean last) {
+            this.input = new AtomicReference<>(input);
+            this.inputLength = inputLength;
+            this.primer = primer;
+            this.last = last;
+        }
+
+        @Override
+        public ByteArrayOutputStream call() throws Exception {
+            byte[] block = input.getAndSet(null);
+            if (block == null) {
+                throw new IOException("Deflation of block was abandoned.");
+            }
+            try {
+                return deflate(block, inputLength, primer, last);
+            } finally {
+                if (block.length > 0) {
+                    pool.release(block);
+                }
+            }
+        }
+
+        /**
+         * Cancels the deflation, releasing the block unless it is already being deflated.
+         */
+        private void abandon() {
+            future.cancel(true);
+            release();
+        }
+
+        private void release() {
+            byte[] block = input.getAndSet(null);
+            if (block != null && block.length > 0) {
+                pool.release(block);
+            }
+        }
+    }
+
+    private static class Holder {
+        private static final ThreadPoolExecutor EXECUTOR;
+
+        static {
+            int size = Integer.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "Gzip-Deflate-" + THREAD_COUNTER.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+    }
+
+}
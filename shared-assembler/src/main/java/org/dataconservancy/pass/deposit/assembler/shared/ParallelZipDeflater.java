@@ -0,0 +1,369 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntryRequest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+
+/**
+ * Compresses the entries of a zip package on multiple threads, and writes the compressed entries to the package in the
+ * order they were added.
+ * <p>
+ * Each entry is deflated (or stored) by a thread of the executor into its own {@link ScatterZipOutputStream}, backed by
+ * a temporary file, which computes the CRC and the compressed and uncompressed sizes of the entry.  The compressed
+ * bytes are then gathered into the target {@link ZipArchiveOutputStream} as a raw entry, without being inflated or
+ * deflated again.  Entries are gathered by the thread adding entries as soon as every preceding entry has been
+ * gathered, so the package continues to be streamed while later entries are compressed.  At most {@code window}
+ * entries are compressed, or waiting to be gathered, at once; beyond that, adding an entry waits for the earliest entry
+ * to be gathered.
+ * </p>
+ * <p>
+ * Instances are not thread-safe: entries are added and gathered by a single thread, typically the archive writer.  The
+ * threads compressing entries are shared by all instances in the JVM, and sized by the {@value #POOL_SIZE_PROPERTY}
+ * system property.
+ * </p>
+ * <p>
+ * Stored entries carry their CRC and sizes in their local header, so they are scattered in the same way as deflated
+ * entries.  Writers storing an entry on their own thread use {@link #putStoredEntry(ZipArchiveOutputStream,
+ * ZipArchiveEntry, InputStream)}, so that an entry is stored the same way whether or not it is compressed in parallel.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ParallelZipDeflater implements Closeable {
+
+    /**
+     * System property used to size the {@code ExecutorService} shared by all instances
+     */
+    public static final String POOL_SIZE_PROPERTY = "pass.deposit.assembler.zip.threads";
+
+    private static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelZipDeflater.class);
+
+    private final ZipArchiveOutputStream target;
+
+    private final int level;
+
+    private final ExecutorService executor;
+
+    private final int window;
+
+    private final Deque<ScatteredEntry> pending = new ArrayDeque<>();
+
+    /**
+     * Compresses entries on the shared executor, with a window of twice the number of its threads.
+     *
+     * @param target the package being written
+     * @param level the level used to deflate entries that are not stored
+     */
+    public ParallelZipDeflater(ZipArchiveOutputStream target, int level) {
+        this(target, level, Holder.EXECUTOR, 2 * Holder.EXECUTOR.getMaximumPoolSize());
+    }
+
+    /**
+     * Compresses entries on the supplied executor.
+     *
+     * @param target the package being written
+     * @param level the level used to deflate entries that are not stored
+     * @param executor compresses entries
+     * @param window the maximum number of entries being compressed, or waiting to be written, at once
+     */
+    public ParallelZipDeflater(ZipArchiveOutputStream target, int level, ExecutorService executor, int window) {
+        if (target == null) {
+            throw new IllegalArgumentException("Target output stream must not be null.");
+        }
+
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must not be null.");
+        }
+
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be a positive integer.");
+        }
+
+        this.target = target;
+        this.level = level;
+        this.executor = executor;
+        this.window = window;
+    }
+
+    /**
+     * Answers the {@code ExecutorService} shared by instances.
+     *
+     * @return the shared executor
+     */
+    public static ExecutorService sharedExecutor() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * Stores the supplied content as a new entry of the package, on the calling thread.  The content is scattered to a
+     * temporary file, which computes the CRC and size of the entry, and then written to the package as a raw entry.
+     * The content is closed.
+     *
+     * @param target the package being written
+     * @param entry the entry, whose method is set by this method
+     * @param content the content of the entry
+     * @throws IOException if the content cannot be read, or the entry cannot be written to the package
+     */
+    public static void putStoredEntry(ZipArchiveOutputStream target, ZipArchiveEntry entry, InputStream content)
+            throws IOException {
+        entry.setMethod(ZipEntry.STORED);
+        File file = File.createTempFile("deposit-", ".scatter");
+        try (ScatterZipOutputStream scatter = ScatterZipOutputStream.fileBased(file)) {
+            // closes the content once it has been copied
+            scatter.addArchiveEntry(ZipArchiveEntryRequest.createZipArchiveEntryRequest(entry, () -> content));
+            scatter.writeTo(target);
+        } finally {
+            closeQuietly(content);
+            if (file != null && file.exists() && !file.delete()) {
+                LOG.debug("Unable to delete temporary file {}", file);
+            }
+        }
+    }
+
+    /**
+     * Compresses the supplied content as a new entry of the package.  The content is read, and closed, by a thread of
+     * the executor; callers must not use it after this method returns.  Any entries that have been compressed are
+     * written to the package before this method returns.
+     *
+     * @param entry the entry, whose method is set by this method
+     * @param content the content of the entry
+     * @param stored true if the entry is stored rather than deflated
+     * @throws IOException if a previously added entry cannot be compressed or written to the package
+     */
+    public void addEntry(ZipArchiveEntry entry, InputStream content, boolean stored) throws IOException {
+        entry.setMethod(stored ? ZipEntry.STORED : ZipEntry.DEFLATED);
+        ScatteredEntry scattered = new ScatteredEntry(entry, content);
+
+        try {
+            scattered.future = executor.submit(scattered);
+        } catch (RejectedExecutionException e) {
+            scattered.abandon();
+            throw new IOException("Unable to compress entry " + entry.getName() + ": " + e.getMessage(), e);
+        }
+
+        pending.add(scattered);
+
+        while (!pending.isEmpty() && (pending.size() > window || pending.peek().future.isDone())) {
+            gather(pending.poll());
+        }
+    }
+
+    /**
+     * Waits for every added entry to be compressed, and writes the entries to the package.  Entries may be added
+     * afterwards, for example once an entry compressed by the caller has been written to the package.
+     *
+     * @throws IOException if an entry cannot be compressed or written to the package
+     */
+    public void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            gather(pending.poll());
+        }
+    }
+
+    /**
+     * Abandons any entries that have not been written to the package, releasing their content and temporary files.
+     * Entries being compressed are interrupted, and this method waits for them to stop reading their content, so that
+     * the content may be disposed of once this method returns.
+     */
+    @Override
+    public void close() {
+        Deque<ScatteredEntry> running = new ArrayDeque<>();
+        ScatteredEntry scattered;
+        while ((scattered = pending.poll()) != null) {
+            if (scattered.abandon()) {
+                running.add(scattered);
+            }
+            scattered.future.cancel(true);
+        }
+
+        try {
+            for (ScatteredEntry entry : running) {
+                entry.done.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted waiting for {} compressing entries to stop", running.size());
+        }
+    }
+
+    private void gather(ScatteredEntry scattered) throws IOException {
+        try {
+            ScatterZipOutputStream scatter = scattered.future.get();
+            scatter.writeTo(target);
+            LOG.trace(">>>> Gathered compressed entry {}", scattered.entry.getName());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted compressing entry " + scattered.entry.getName(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Error compressing entry " + scattered.entry.getName() + ": " +
+                    e.getCause().getMessage(), e.getCause());
+        } finally {
+            scattered.abandon();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOG.trace("Error closing {}: {}", closeable, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compresses the content of a single entry into a {@code ScatterZipOutputStream}.  Whichever of the compressing
+     * thread and the gathering thread is last to finish with the entry releases its content and temporary file.
+     */
+    private class ScatteredEntry implements Callable<ScatterZipOutputStream> {
+
+        private final ZipArchiveEntry entry;
+
+        private final InputStream content;
+
+        private Future<ScatterZipOutputStream> future;
+
+        /**
+         * Counted down once a started entry has stopped reading its content
+         */
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private boolean started = false;
+
+        private boolean abandoned = false;
+
+        private File file;
+
+        private ScatterZipOutputStream scatter;
+
+        private ScatteredEntry(ZipArchiveEntry entry, InputStream content) {
+            this.entry = entry;
+            this.content = content;
+        }
+
+        @Override
+        public ScatterZipOutputStream call() throws IOException {
+            synchronized (this) {
+                if (abandoned) {
+                    return null;
+                }
+                started = true;
+            }
+
+            File file = null;
+            ScatterZipOutputStream scatter = null;
+            try {
+                file = File.createTempFile("deposit-", ".scatter");
+                scatter = ScatterZipOutputStream.fileBased(file, level);
+                // closes the content once it has been compressed
+                scatter.addArchiveEntry(ZipArchiveEntryRequest.createZipArchiveEntryRequest(entry, () -> content));
+            } catch (IOException | RuntimeException e) {
+                closeQuietly(content);
+                release(scatter, file);
+                throw e;
+            } finally {
+                done.countDown();
+            }
+
+            synchronized (this) {
+                if (abandoned) {
+                    release(scatter, file);
+                    return null;
+                }
+                this.file = file;
+                this.scatter = scatter;
+            }
+
+            return scatter;
+        }
+
+        /**
+         * @return true if the entry was started, and may still be reading its content
+         */
+        private synchronized boolean abandon() {
+            if (abandoned) {
+                return started && scatter == null;
+            }
+            abandoned = true;
+
+            if (!started) {
+                closeQuietly(content);
+            } else if (scatter != null) {
+                release(scatter, file);
+            }
+
+            return started && scatter == null;
+        }
+
+        private void release(ScatterZipOutputStream scatter, File file) {
+            if (scatter != null) {
+                closeQuietly(scatter);
+            }
+            if (file != null && file.exists() && !file.delete()) {
+                LOG.debug("Unable to delete temporary file {}", file);
+            }
+        }
+    }
+
+    private static class Holder {
+        private static final ThreadPoolExecutor EXECUTOR;
+
+        static {
+            int size = Integer.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "Zip-Deflate-" + THREAD_COUNTER.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+    }
+
+}
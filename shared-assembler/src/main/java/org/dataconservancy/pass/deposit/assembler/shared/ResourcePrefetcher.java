@@ -0,0 +1,675 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens and reads the custodial resources of a package ahead of the {@link AbstractThreadedOutputStreamWriter} that
+ * archives them, so that the latency of retrieving each resource from its origin is overlapped with the archiving of
+ * the resources before it.
+ * <p>
+ * Resources are {@link #next() returned} in the order they were supplied, regardless of the order in which their
+ * retrieval completes, so the order of entries in the package is deterministic.  At most {@code depth} resources
+ * beyond the one being archived are retrieved concurrently.  The bytes of a retrieved resource are held in memory, in
+ * chunks from a {@link ChunkPool}, and are handed to the writer as they arrive: a resource is returned as soon as its
+ * first chunk has been retrieved, and its stream releases each chunk once it has been read.  The writer therefore
+ * starts archiving a large resource while the rest of it is still being retrieved, rather than waiting for all of it.
+ * </p>
+ * <p>
+ * The byte budget bounds the memory held by the resources retrieved ahead of the one being archived: retrieval of a
+ * further resource is not started while the budget is exhausted, and a retrieval that exhausts the budget pauses until
+ * the writer frees memory by reading, or until its resource is the one being archived.  The retrieval of the resource
+ * being archived is never paused by the budget, but holds at most {@value #HEAD_WINDOW} chunks that the writer has not
+ * read, so memory is bounded by the budget plus that window regardless of the size of the resources.
+ * </p>
+ * <p>
+ * A {@code depth} of zero disables prefetching: each resource is opened when it is returned, on the calling thread.
+ * </p>
+ * <p>
+ * Resources residing on the local filesystem are never prefetched, regardless of the depth: there is no retrieval
+ * latency to hide, and copying them into memory would only add to the cost of archiving them.  A local resource is
+ * opened as a {@link PrefetchedResource#getChannel() FileChannel} when it is returned, so that it may be transferred
+ * to the package without being read through an {@code InputStream}.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ResourcePrefetcher implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourcePrefetcher.class);
+
+    /**
+     * System property used to size the {@code Executor} shared by all prefetchers
+     */
+    public static final String POOL_SIZE_PROPERTY = "pass.deposit.assembler.prefetch.threads";
+
+    /**
+     * Default number of resources retrieved ahead of the resource being archived
+     */
+    public static final int DEFAULT_DEPTH = 4;
+
+    /**
+     * Default byte budget, 32 MiB
+     */
+    public static final long DEFAULT_BYTE_BUDGET = 32 * 1024 * 1024;
+
+    /**
+     * The number of unread chunks held by the retrieval of the resource being archived, beyond the byte budget
+     */
+    static final int HEAD_WINDOW = 4;
+
+    private static final int DEFAULT_POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+
+    private final List<DepositFileResource> resources;
+
+    private final int depth;
+
+    private final long byteBudget;
+
+    private final Executor executor;
+
+    private final ChunkPool pool;
+
+    /**
+     * The retrieval of each resource that has been scheduled, by index; {@code null} for local files
+     */
+    private final List<Retrieval> scheduled;
+
+    /**
+     * Guards the state of every retrieval, and the accounting of the memory they hold
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Bytes of chunks held by retrievals, whether or not the chunks have been filled
+     */
+    private long memoryBytes = 0;
+
+    /**
+     * Bytes of retrieved resources held in memory, and not yet read
+     */
+    private long retrievedBytes = 0;
+
+    /**
+     * The index of the resource being archived, whose retrieval is not paused by the budget
+     */
+    private int headIndex = -1;
+
+    private int nextIndex = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Prefetches {@code resources} on the shared prefetch executor.
+     *
+     * @param resources the resources to prefetch, in the order they are archived
+     * @param depth the number of resources retrieved ahead of the resource being archived
+     * @param byteBudget the number of bytes held in memory by the resources retrieved ahead of the resource being
+     *                   archived
+     */
+    public ResourcePrefetcher(List<DepositFileResource> resources, int depth, long byteBudget) {
+        this(resources, depth, byteBudget, Holder.EXECUTOR, ChunkPool.shared(ChunkPool.DEFAULT_CHUNK_SIZE));
+    }
+
+    /**
+     * Prefetches {@code resources} on the supplied {@code executor}.
+     *
+     * @param resources the resources to prefetch, in the order they are archived
+     * @param depth the number of resources retrieved ahead of the resource being archived
+     * @param byteBudget the number of bytes held in memory by the resources retrieved ahead of the resource being
+     *                   archived
+     * @param executor executes the retrieval of resources
+     * @param pool supplies the chunks holding retrieved bytes in memory
+     */
+    public ResourcePrefetcher(List<DepositFileResource> resources, int depth, long byteBudget, Executor executor,
+                              ChunkPool pool) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Prefetch depth must not be negative.");
+        }
+
+        if (byteBudget < 0) {
+            throw new IllegalArgumentException("Prefetch byte budget must not be negative.");
+        }
+
+        this.resources = resources;
+        this.depth = depth;
+        this.byteBudget = byteBudget;
+        this.executor = executor;
+        this.pool = pool;
+        this.scheduled = new ArrayList<>(resources.size());
+
+        synchronized (lock) {
+            schedule();
+        }
+    }
+
+    /**
+     * @return {@code true} if there are resources remaining to be returned by {@link #next()}
+     */
+    public boolean hasNext() {
+        return nextIndex < resources.size();
+    }
+
+    /**
+     * Answers the next resource, waiting for its first bytes to be retrieved if necessary.  The rest of the resource
+     * continues to be retrieved as it is read.  The caller is responsible for closing the stream of the returned
+     * resource, which releases the memory it holds.
+     *
+     * @return the next resource
+     * @throws IOException if the resource could not be opened
+     * @throws NoSuchElementException if there are no resources remaining
+     */
+    public PrefetchedResource next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        int index = nextIndex++;
+        DepositFileResource resource = resources.get(index);
+        Path localFile = LocalFileTransfer.localFile(resource.getResource());
+        Retrieval retrieval;
+
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("Prefetcher has been closed.");
+            }
+
+            if (depth > 0 && scheduled.size() <= index) {
+                submit(index);
+            }
+
+            headIndex = index;
+            lock.notifyAll();
+            schedule();
+            retrieval = depth > 0 ? scheduled.get(index) : null;
+        }
+
+        if (localFile != null) {
+            return openLocal(resource, localFile);
+        }
+
+        if (retrieval == null) {
+            return new PrefetchedResource(resource, resource.getInputStream());
+        }
+
+        retrieval.awaitStarted();
+        return new PrefetchedResource(resource, retrieval);
+    }
+
+    /**
+     * Stops the retrieval of resources, and releases the memory held by retrieved resources, whether or not they have
+     * been returned by {@link #next()}.  Streams of returned resources fail once the prefetcher is closed.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            scheduled.stream().filter(retrieval -> retrieval != null).forEach(Retrieval::dispose);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the number of retrieved bytes currently held in memory, and not yet read
+     */
+    public long getRetrievedBytes() {
+        synchronized (lock) {
+            return retrievedBytes;
+        }
+    }
+
+    /**
+     * Starts the retrieval of resources within the prefetch window, unless the budget is exhausted.  The resource to
+     * be returned next is always retrieved, so the caller is never blocked by the budget.  Invoked holding the lock.
+     */
+    private void schedule() {
+        if (depth == 0) {
+            return;
+        }
+
+        while (scheduled.size() < resources.size() && scheduled.size() <= nextIndex + depth && !closed) {
+            if (scheduled.size() > nextIndex && memoryBytes >= byteBudget) {
+                LOG.trace("Prefetch budget of {} bytes exhausted, deferring retrieval of {}", byteBudget,
+                        resources.get(scheduled.size()).getFilename());
+                break;
+            }
+            submit(scheduled.size());
+        }
+    }
+
+    /**
+     * Starts the retrieval of the resource at {@code index}.  Invoked holding the lock.
+     */
+    private void submit(int index) {
+        DepositFileResource resource = resources.get(index);
+        if (LocalFileTransfer.localFile(resource.getResource()) != null) {
+            // Local files are opened when they are returned by next()
+            scheduled.add(null);
+            return;
+        }
+
+        Retrieval retrieval = new Retrieval(index, resource);
+        scheduled.add(retrieval);
+        try {
+            executor.execute(retrieval);
+        } catch (RejectedExecutionException e) {
+            retrieval.fail(new IOException("Unable to retrieve " + resource.getFilename() + ": " + e.getMessage(),
+                    e));
+        }
+    }
+
+    private PrefetchedResource openLocal(DepositFileResource resource, Path localFile) throws IOException {
+        FileChannel channel = FileChannel.open(localFile, StandardOpenOption.READ);
+        try {
+            return new PrefetchedResource(resource, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buf) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buf.length && (read = in.read(buf, total, buf.length - total)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * A chunk of retrieved bytes.
+     */
+    private static class Chunk {
+
+        private final byte[] bytes;
+
+        private final int length;
+
+        private Chunk(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Retrieves a single resource into chunks, which are read, and released, by the {@link RetrievalInputStream}
+     * while later chunks are still being retrieved.  All state is guarded by the lock of the prefetcher.
+     */
+    private class Retrieval implements Runnable {
+
+        private final int index;
+
+        private final DepositFileResource resource;
+
+        private final Deque<Chunk> chunks = new ArrayDeque<>();
+
+        private long length = 0;
+
+        private boolean complete = false;
+
+        private boolean disposed = false;
+
+        private IOException failure;
+
+        private Retrieval(int index, DepositFileResource resource) {
+            this.index = index;
+            this.resource = resource;
+        }
+
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            try (InputStream in = resource.getInputStream()) {
+                int read;
+                do {
+                    byte[] chunk = acquire();
+                    if (chunk == null) {
+                        return;
+                    }
+                    try {
+                        read = readFully(in, chunk);
+                    } catch (IOException | RuntimeException e) {
+                        release(chunk, 0);
+                        throw e;
+                    }
+                    publish(chunk, read);
+                } while (read == pool.getChunkSize());
+            } catch (IOException e) {
+                fail(e);
+                return;
+            } catch (RuntimeException e) {
+                fail(new IOException("Error retrieving " + resource.getFilename() + ": " + e.getMessage(), e));
+                return;
+            }
+
+            synchronized (lock) {
+                complete = true;
+                lock.notifyAll();
+            }
+            LOG.trace(">>>> Prefetched {} ({} bytes) in {} ms", resource.getFilename(), length,
+                    System.currentTimeMillis() - start);
+        }
+
+        /**
+         * Answers a chunk to retrieve bytes into, waiting while the budget is exhausted unless this is the resource
+         * being archived, in which case waiting only while the writer has not read the chunks already retrieved.
+         *
+         * @return the chunk, or {@code null} if the retrieval has been abandoned
+         */
+        private byte[] acquire() throws IOException {
+            synchronized (lock) {
+                while (true) {
+                    if (closed || disposed) {
+                        return null;
+                    }
+                    boolean head = index == headIndex;
+                    if ((!head && memoryBytes + pool.getChunkSize() <= byteBudget) ||
+                            (head && chunks.size() < HEAD_WINDOW)) {
+                        memoryBytes += pool.getChunkSize();
+                        break;
+                    }
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted retrieving " + resource.getFilename());
+                    }
+                }
+            }
+            return pool.acquire();
+        }
+
+        private void publish(byte[] chunk, int read) {
+            synchronized (lock) {
+                if (closed || disposed || read == 0) {
+                    release(chunk, 0);
+                    return;
+                }
+                chunks.add(new Chunk(chunk, read));
+                length += read;
+                retrievedBytes += read;
+                lock.notifyAll();
+            }
+        }
+
+        /**
+         * Returns a chunk to the pool, along with the memory and retrieved bytes it accounts for.
+         */
+        private void release(byte[] chunk, int read) {
+            synchronized (lock) {
+                memoryBytes -= pool.getChunkSize();
+                retrievedBytes -= read;
+                lock.notifyAll();
+            }
+            pool.release(chunk);
+        }
+
+        private void fail(IOException e) {
+            synchronized (lock) {
+                failure = e;
+                lock.notifyAll();
+            }
+        }
+
+        /**
+         * Waits until the first chunk is retrieved, the retrieval completes, or fails.
+         *
+         * @throws IOException if the retrieval failed
+         */
+        private void awaitStarted() throws IOException {
+            synchronized (lock) {
+                while (chunks.isEmpty() && !complete && failure == null && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for " + resource.getFilename());
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        }
+
+        /**
+         * Releases the chunks held by this retrieval, and abandons the rest of the resource.  Invoked holding the lock.
+         */
+        private void dispose() {
+            disposed = true;
+            Chunk chunk;
+            while ((chunk = chunks.poll()) != null) {
+                release(chunk.bytes, chunk.length);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * A custodial resource returned by the prefetcher, along with its bytes.
+     */
+    public class PrefetchedResource {
+
+        private final DepositFileResource resource;
+
+        private final long length;
+
+        private final InputStream in;
+
+        private final FileChannel channel;
+
+        private final Retrieval retrieval;
+
+        private PrefetchedResource(DepositFileResource resource, InputStream in) {
+            this.resource = resource;
+            this.length = -1;
+            this.in = in;
+            this.channel = null;
+            this.retrieval = null;
+        }
+
+        private PrefetchedResource(DepositFileResource resource, FileChannel channel) throws IOException {
+            this.resource = resource;
+            this.length = channel.size();
+            this.in = Channels.newInputStream(channel);
+            this.channel = channel;
+            this.retrieval = null;
+        }
+
+        private PrefetchedResource(DepositFileResource resource, Retrieval retrieval) {
+            this.resource = resource;
+            this.length = -1;
+            this.in = new RetrievalInputStream(retrieval);
+            this.channel = null;
+            this.retrieval = retrieval;
+        }
+
+        /**
+         * @return the resource
+         */
+        public DepositFileResource getResource() {
+            return resource;
+        }
+
+        /**
+         * The length of the resource, in bytes.  If the resource has not been retrieved in full, the length declared
+         * by its {@code DepositFile} is used, or otherwise obtained from the resource itself, which may involve a
+         * request to its origin.
+         *
+         * @return the length of the resource, or a negative number if it is unknown
+         * @throws IOException if the length of the resource cannot be determined
+         */
+        public long getLength() throws IOException {
+            if (length >= 0) {
+                return length;
+            }
+
+            if (retrieval != null) {
+                synchronized (lock) {
+                    if (retrieval.complete) {
+                        return retrieval.length;
+                    }
+                }
+            }
+
+            if (resource.getDepositFile() != null && resource.getDepositFile().getSize() >= 0) {
+                return resource.getDepositFile().getSize();
+            }
+
+            return resource.contentLength();
+        }
+
+        /**
+         * The bytes of the resource.  Closing the stream releases the memory held by the resource.
+         *
+         * @return the bytes of the resource
+         */
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        /**
+         * The channel of a resource residing on the local filesystem.  The channel is closed along with the {@link
+         * #getInputStream() stream} of the resource, which reads from the current position of the channel.
+         *
+         * @return the channel over the local file, or {@code null} if the resource is not a local file
+         */
+        public FileChannel getChannel() {
+            return channel;
+        }
+    }
+
+    /**
+     * Supplies the chunks of a retrieval as they are retrieved, releasing each once it has been read.
+     */
+    private class RetrievalInputStream extends InputStream {
+
+        private final Retrieval retrieval;
+
+        private int pos = 0;
+
+        private boolean closed = false;
+
+        private RetrievalInputStream(Retrieval retrieval) {
+            this.retrieval = retrieval;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            synchronized (lock) {
+                while (true) {
+                    if (closed) {
+                        throw new IOException("Stream closed.");
+                    }
+                    if (retrieval.disposed) {
+                        throw new IOException("Prefetcher has been closed.");
+                    }
+
+                    Chunk chunk = retrieval.chunks.peek();
+                    if (chunk != null) {
+                        int n = Math.min(len, chunk.length - pos);
+                        System.arraycopy(chunk.bytes, pos, b, off, n);
+                        pos += n;
+                        if (pos == chunk.length) {
+                            retrieval.chunks.poll();
+                            retrieval.release(chunk.bytes, chunk.length);
+                            pos = 0;
+                        }
+                        return n;
+                    }
+
+                    if (retrieval.failure != null) {
+                        throw retrieval.failure;
+                    }
+                    if (retrieval.complete) {
+                        return -1;
+                    }
+
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted reading " + retrieval.resource.getFilename());
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                retrieval.dispose();
+            }
+        }
+    }
+
+    private static class Holder {
+        private static final Executor EXECUTOR;
+
+        static {
+            int size = Integer.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "Custodial-Prefetch-" + THREAD_COUNTER.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+    }
+
+}
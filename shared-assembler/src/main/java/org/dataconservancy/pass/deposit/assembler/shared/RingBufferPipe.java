@@ -0,0 +1,454 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-producer, single-consumer pipe that hands off whole chunks of bytes from a writing thread to a reading
+ * thread.  It replaces the {@link java.io.PipedInputStream}/{@link java.io.PipedOutputStream} pair used for streaming
+ * packages.
+ * <p>
+ * The writer fills a chunk obtained from a {@link ChunkPool}, and publishes it to a fixed-size ring of slots when it is
+ * full (or when the writer is flushed or closed).  The reader drains published chunks, returning each one to the pool
+ * when it has been consumed.  Threads only interact when a chunk is published or consumed, and they coordinate through
+ * two sequence counters rather than a monitor: a thread parks only when the ring is full (writer) or empty (reader).
+ * </p>
+ * <p>
+ * Exceptions thrown on the writing side of the pipe are reported to the reader in the same way as
+ * {@link ExHandingPipedInputStream}: the writer (or a handler acting on its behalf) supplies the exception to
+ * {@link #setWriterEx(Throwable)}, and it is re-thrown as an {@code IOException} by the next method invoked on the
+ * {@link #getInputStream() reading side} of the pipe.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class RingBufferPipe {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RingBufferPipe.class);
+
+    /**
+     * Default number of slots in the ring
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final ChunkPool pool;
+
+    private final byte[][] slots;
+
+    private final int[] lengths;
+
+    private final int mask;
+
+    /**
+     * Count of chunks published by the writer
+     */
+    private final AtomicLong published = new AtomicLong(0);
+
+    /**
+     * Count of chunks consumed by the reader
+     */
+    private final AtomicLong consumed = new AtomicLong(0);
+
+    private volatile Thread reader;
+
+    private volatile Thread writer;
+
+    private volatile boolean writerClosed = false;
+
+    private volatile boolean readerClosed = false;
+
+    /**
+     * If non-null, represents an exception that was thrown on the <em>writing</em> side of the pipe.  It should be
+     * re-thrown to callers of the reading side of the pipe.
+     */
+    private volatile Throwable writerEx;
+
+    private final Source source = new Source();
+
+    private final Sink sink = new Sink();
+
+    /**
+     * Creates a pipe with a ring of {@code capacity} slots, holding chunks from the supplied {@code pool}.  At most
+     * {@code capacity} full chunks will be in flight between the writer and the reader.
+     *
+     * @param pool the pool supplying chunks
+     * @param capacity the number of slots in the ring, rounded up to a power of two
+     */
+    public RingBufferPipe(ChunkPool pool, int capacity) {
+        if (pool == null) {
+            throw new IllegalArgumentException("ChunkPool must not be null.");
+        }
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be a positive integer.");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        this.pool = pool;
+        this.slots = new byte[size][];
+        this.lengths = new int[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * The reading side of the pipe.  Must only be used by a single thread.
+     *
+     * @return the stream supplying the bytes written to {@link #getOutputStream()}
+     */
+    public InputStream getInputStream() {
+        return source;
+    }
+
+    /**
+     * The writing side of the pipe.  Must only be used by a single thread.
+     *
+     * @return the stream accepting bytes to be supplied to {@link #getInputStream()}
+     */
+    public OutputStream getOutputStream() {
+        return sink;
+    }
+
+    /**
+     * Obtain the {@code Throwable} that presumably occurred on the <em>writing</em> side of this pipe.
+     *
+     * @return a {@code Throwable} that occurred while writing to the pipe, or {@code null} if no exception has occurred
+     */
+    public Throwable getWriterEx() {
+        return writerEx;
+    }
+
+    /**
+     * Set the {@code Throwable} that presumably occurred on the <em>writing</em> side of this pipe.  It will be re-
+     * thrown as an {@link IOException} the next time a method of the reading side of the pipe is invoked.  A reader
+     * blocked waiting for data is woken up.
+     *
+     * @param writerEx a {@code Throwable} that occurred while writing to the pipe
+     */
+    public void setWriterEx(Throwable writerEx) {
+        this.writerEx = writerEx;
+        wake(reader);
+    }
+
+    /**
+     * @return the number of slots in the ring
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Returns the chunks published to the ring, and not yet consumed, to the pool once the reader has closed the pipe.
+     * Both sides of the pipe may drain the ring concurrently: the reader when it closes the pipe, and the writer when
+     * it finds the pipe was closed while it was publishing a chunk.  Each chunk is claimed by advancing {@link
+     * #consumed} past it, so it is returned to the pool exactly once.
+     */
+    private void drain() {
+        long c;
+        while ((c = consumed.get()) < published.get()) {
+            if (consumed.compareAndSet(c, c + 1)) {
+                int slot = (int) (c & mask);
+                pool.release(slots[slot]);
+                slots[slot] = null;
+            }
+        }
+    }
+
+    private static void wake(Thread t) {
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    private static void checkInterrupt() throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting on the package pipe.");
+        }
+    }
+
+    /**
+     * Checks for a non-null {@link #writerEx}, and re-throws it as an {@link IOException}.
+     *
+     * @throws IOException the wrapped {@link #writerEx}
+     */
+    private void handleEx() throws IOException {
+        Throwable ex = writerEx;
+        if (ex == null) {
+            return;
+        }
+
+        LOG.error("The writing side of this pipe encountered an exception: {}", ex.getMessage(), ex);
+
+        throw new IOException("The writing side of this pipe encountered an exception: " + ex.getMessage(), ex);
+    }
+
+    /**
+     * Reading side of the pipe.
+     */
+    private class Source extends InputStream {
+
+        private byte[] current;
+
+        private int pos;
+
+        private int limit;
+
+        @Override
+        public int read() throws IOException {
+            handleEx();
+            if (!ensureData()) {
+                return -1;
+            }
+
+            return current[pos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            handleEx();
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+
+            if (len == 0) {
+                return 0;
+            }
+
+            int read = 0;
+            while (read < len) {
+                // only block if nothing has been read yet; otherwise return what we have
+                if (pos == limit && read > 0 && published.get() == consumed.get()) {
+                    break;
+                }
+
+                if (!ensureData()) {
+                    break;
+                }
+
+                int n = Math.min(len - read, limit - pos);
+                System.arraycopy(current, pos, b, off + read, n);
+                pos += n;
+                read += n;
+            }
+
+            return read == 0 ? -1 : read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            handleEx();
+            return limit - pos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Close the stream, regardless of whether or not there is an exception waiting for us
+            try {
+                if (!readerClosed) {
+                    readerClosed = true;
+                    releaseCurrent();
+                    // Drain anything left in the ring so the chunks can be re-used
+                    drain();
+                    wake(writer);
+                }
+            } finally {
+                handleEx();
+            }
+        }
+
+        /**
+         * Insures that {@link #current} has unread bytes, blocking until the writer publishes a chunk.
+         *
+         * @return {@code false} if the writer has closed the pipe and all bytes have been read
+         * @throws IOException if the pipe is closed by the reader, the writer fails, or the reader is interrupted
+         */
+        private boolean ensureData() throws IOException {
+            if (pos < limit) {
+                return true;
+            }
+
+            if (readerClosed) {
+                throw new IOException("Pipe closed.");
+            }
+
+            releaseCurrent();
+
+            if (reader == null) {
+                reader = Thread.currentThread();
+            }
+
+            long c = consumed.get();
+            while (published.get() == c) {
+                handleEx();
+                if (writerClosed && published.get() == c) {
+                    return false;
+                }
+                LockSupport.park(RingBufferPipe.this);
+                checkInterrupt();
+            }
+
+            int slot = (int) (c & mask);
+            current = slots[slot];
+            limit = lengths[slot];
+            pos = 0;
+            slots[slot] = null;
+            consumed.set(c + 1);
+            wake(writer);
+
+            return limit > 0 || ensureData();
+        }
+
+        private void releaseCurrent() {
+            if (current != null) {
+                pool.release(current);
+                current = null;
+                pos = 0;
+                limit = 0;
+            }
+        }
+    }
+
+    /**
+     * Writing side of the pipe.
+     */
+    private class Sink extends OutputStream {
+
+        private byte[] current;
+
+        private int pos;
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureChunk();
+            current[pos++] = (byte) b;
+            if (pos == current.length) {
+                publish();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+
+            while (len > 0) {
+                ensureChunk();
+                int n = Math.min(len, current.length - pos);
+                System.arraycopy(b, off, current, pos, n);
+                pos += n;
+                off += n;
+                len -= n;
+                if (pos == current.length) {
+                    publish();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (current != null && pos > 0) {
+                publish();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writerClosed) {
+                return;
+            }
+
+            try {
+                if (!readerClosed) {
+                    flush();
+                }
+            } finally {
+                if (current != null) {
+                    pool.release(current);
+                    current = null;
+                }
+                writerClosed = true;
+                wake(reader);
+            }
+        }
+
+        private void ensureChunk() throws IOException {
+            if (writerClosed) {
+                throw new IOException("Pipe closed.");
+            }
+
+            if (readerClosed) {
+                throw new IOException("Pipe closed by the reader.");
+            }
+
+            if (current == null) {
+                current = pool.acquire();
+                pos = 0;
+            }
+        }
+
+        /**
+         * Places the current chunk in the ring, blocking while the ring is full.
+         */
+        private void publish() throws IOException {
+            if (writer == null) {
+                writer = Thread.currentThread();
+            }
+
+            long p = published.get();
+            while (p - consumed.get() >= slots.length) {
+                if (readerClosed) {
+                    throw new IOException("Pipe closed by the reader.");
+                }
+                LockSupport.park(RingBufferPipe.this);
+                checkInterrupt();
+            }
+
+            if (readerClosed) {
+                throw new IOException("Pipe closed by the reader.");
+            }
+
+            int slot = (int) (p & mask);
+            slots[slot] = current;
+            lengths[slot] = pos;
+            current = null;
+            pos = 0;
+            published.set(p + 1);
+
+            // The reader may have closed the pipe, and drained the ring, after readerClosed was checked above
+            if (readerClosed) {
+                drain();
+                throw new IOException("Pipe closed by the reader.");
+            }
+
+            wake(reader);
+        }
+    }
+
+}
@@ -0,0 +1,631 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.io.FileUtils;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.InputStreamSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Base64.getEncoder;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+
+/**
+ * Shares the custodial content of a single submission among the packages assembled for each of its target
+ * repositories, so each custodial file is retrieved from its origin once, regardless of the number of packages it is
+ * written to.
+ * <p>
+ * The first package to {@link #open(String, InputStreamSource) open} a file retrieves it from the origin, and the bytes
+ * are teed to a file in the stage directory as they are read.  Packages opening the same file afterwards read the
+ * staged bytes, following the first reader if it has not yet finished: no package waits for the entire file to be
+ * retrieved, and each package is read at the pace of its own transport.  If the first reader abandons the file before
+ * reading it in its entirety, readers following it continue from the origin.
+ * </p>
+ * <p>
+ * The size and checksums of each file are computed once, by the stream reading from the origin, and {@link
+ * StagedCharacterization shared} with the other packages, along with the detected MIME type.  The checksums are
+ * computed with the union of the digest algorithms of the assemblers sharing the stage, supplied when the stage is
+ * {@link #open(String, int, Path, Collection) opened}, so that each package finds the checksums it is configured for.
+ * </p>
+ * <p>
+ * A stage is {@link #open(String, int, Path) opened} for a number of consumers (one per package).  Each consumer
+ * {@link #release() releases} the stage when its package has been transported, and the staged files are removed when
+ * the last consumer releases the stage.  The stage is handed to the assembler of each package explicitly, see {@code
+ * AbstractAssembler#assemble(DepositSubmission, SharedContentStage)}.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class SharedContentStage {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedContentStage.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String submissionId;
+
+    private final Path directory;
+
+    private final AtomicInteger consumers;
+
+    private final ConcurrentMap<String, StagedEntry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicInteger entryCounter = new AtomicInteger(0);
+
+    private final List<PackageStream.Algo> algorithms;
+
+    private SharedContentStage(String submissionId, int consumers, Path directory,
+                               List<PackageStream.Algo> algorithms) {
+        this.submissionId = submissionId;
+        this.consumers = new AtomicInteger(consumers);
+        this.directory = directory;
+        this.algorithms = algorithms;
+    }
+
+    /**
+     * Opens a stage for the custodial content of the identified submission, to be shared by {@code consumers}
+     * packages.
+     *
+     * @param submissionId the identifier of the submission, as provided by {@code DepositSubmission#getId()}
+     * @param consumers the number of packages sharing the stage, each of which must {@link #release()} the stage
+     * @param parentDirectory the directory in which the stage directory is created, or {@code null} for the default
+     *                        temporary-file directory
+     * @return the stage
+     * @throws IOException if the stage directory cannot be created
+     */
+    public static SharedContentStage open(String submissionId, int consumers, Path parentDirectory)
+            throws IOException {
+        return open(submissionId, consumers, parentDirectory, MultiDigestInputStream.DEFAULT_ALGORITHMS);
+    }
+
+    /**
+     * Opens a stage for the custodial content of the identified submission, to be shared by {@code consumers}
+     * packages, computing the checksums of each file with the supplied {@code algorithms}.
+     *
+     * @param submissionId the identifier of the submission, as provided by {@code DepositSubmission#getId()}
+     * @param consumers the number of packages sharing the stage, each of which must {@link #release()} the stage
+     * @param parentDirectory the directory in which the stage directory is created, or {@code null} for the default
+     *                        temporary-file directory
+     * @param algorithms the union of the digest algorithms of the assemblers of the packages sharing the stage
+     * @return the stage
+     * @throws IOException if the stage directory cannot be created
+     */
+    public static SharedContentStage open(String submissionId, int consumers, Path parentDirectory,
+                                          Collection<PackageStream.Algo> algorithms) throws IOException {
+        if (submissionId == null) {
+            throw new IllegalArgumentException("Submission identifier must not be null.");
+        }
+
+        if (consumers < 1) {
+            throw new IllegalArgumentException("Consumers must be a positive integer.");
+        }
+
+        if (algorithms == null) {
+            throw new IllegalArgumentException("Digest algorithms must not be null.");
+        }
+
+        Path dir = parentDirectory == null ?
+                Files.createTempDirectory("pass-stage-") :
+                Files.createTempDirectory(Files.createDirectories(parentDirectory), "pass-stage-");
+        LOG.debug(">>>> Opened shared content stage {} for {} consumers of {}, computing {}", dir, consumers,
+                submissionId, algorithms);
+        return new SharedContentStage(submissionId, consumers, dir,
+                Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(algorithms))));
+    }
+
+    /**
+     * Opens the custodial file at {@code location}, retrieving it from {@code origin} if it has not been retrieved by
+     * another consumer of this stage.
+     *
+     * @param location the location of the custodial file, as provided by {@code DepositFile#getLocation()}
+     * @param origin supplies the bytes of the custodial file from its origin
+     * @return a stream of the custodial file
+     * @throws IOException if the file cannot be opened
+     */
+    public StagedInputStream open(String location, InputStreamSource origin) throws IOException {
+        StagedEntry entry;
+        boolean leader = false;
+
+        synchronized (entries) {
+            entry = entries.get(location);
+            if (entry == null || entry.isAbandoned()) {
+                entry = new StagedEntry(directory.resolve("content-" + entryCounter.getAndIncrement()), algorithms);
+                entries.put(location, entry);
+                leader = true;
+            }
+        }
+
+        if (leader) {
+            try {
+                return new TeeInputStream(entry, origin.getInputStream());
+            } catch (IOException | RuntimeException e) {
+                entry.abandon();
+                throw e;
+            }
+        }
+
+        LOG.trace(">>>> Reading {} from shared content stage {}", location, directory);
+        return new FollowingInputStream(entry, origin);
+    }
+
+    /**
+     * Answers the MIME type detected for the custodial file at {@code location} by another consumer of this stage.
+     *
+     * @param location the location of the custodial file
+     * @return the MIME type, or {@code null} if it has not been detected
+     */
+    public String getMimeType(String location) {
+        StagedEntry entry = entries.get(location);
+        return entry == null ? null : entry.mimeType;
+    }
+
+    /**
+     * Records the MIME type detected for the custodial file at {@code location}, for use by other consumers of this
+     * stage.
+     *
+     * @param location the location of the custodial file
+     * @param mimeType the detected MIME type
+     */
+    public void setMimeType(String location, String mimeType) {
+        StagedEntry entry = entries.get(location);
+        if (entry != null) {
+            entry.mimeType = mimeType;
+        }
+    }
+
+    /**
+     * Releases this stage on behalf of a single consumer.  When every consumer has released the stage, the staged files
+     * are removed.
+     */
+    public void release() {
+        release(1);
+    }
+
+    /**
+     * Releases this stage on behalf of {@code count} consumers, for example when packages are not assembled.
+     *
+     * @param count the number of consumers releasing the stage
+     */
+    public void release(int count) {
+        int remaining = consumers.addAndGet(-count);
+        if (remaining > 0 || remaining + count <= 0) {
+            // Either consumers remain, or the stage was removed by an earlier release
+            return;
+        }
+
+        LOG.debug(">>>> Removing shared content stage {} for {}", directory, submissionId);
+
+        try {
+            FileUtils.deleteDirectory(directory.toFile());
+        } catch (IOException e) {
+            LOG.warn("Unable to remove shared content stage {}: {}", directory, e.getMessage());
+        }
+    }
+
+    public String getSubmissionId() {
+        return submissionId;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of consumers that have yet to release this stage
+     */
+    public int getConsumers() {
+        return consumers.get();
+    }
+
+    /**
+     * @return the algorithms used to compute the checksums of each staged file
+     */
+    public List<PackageStream.Algo> getAlgorithms() {
+        return algorithms;
+    }
+
+    /**
+     * The size and checksums of a custodial file, computed as it was read.
+     */
+    public static class StagedCharacterization {
+
+        private final long length;
+
+        private final List<PackageStream.Checksum> checksums;
+
+        private StagedCharacterization(long length, List<PackageStream.Checksum> checksums) {
+            this.length = length;
+            this.checksums = Collections.unmodifiableList(checksums);
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return the checksums of the file, in the order of the {@link #getAlgorithms() algorithms} of the stage
+         */
+        public List<PackageStream.Checksum> getChecksums() {
+            return checksums;
+        }
+    }
+
+    /**
+     * A stream of a custodial file opened from a stage.  Once the stream has been read to its end, the
+     * {@link #characterization() characterization} of the file is available.
+     */
+    public abstract static class StagedInputStream extends InputStream {
+
+        /**
+         * @return the size and checksums of the file, or {@code null} if the stream has not been read to its end
+         */
+        public abstract StagedCharacterization characterization();
+    }
+
+    /**
+     * Computes the size and checksums of a custodial file as it is read.
+     */
+    private static class Characterizer {
+
+        private final List<PackageStream.Algo> algorithms;
+
+        private final MessageDigest[] digests;
+
+        private long length = 0;
+
+        private Characterizer(List<PackageStream.Algo> algorithms) {
+            this.algorithms = algorithms;
+            this.digests = new MessageDigest[algorithms.size()];
+            for (int i = 0; i < digests.length; i++) {
+                digests[i] = MultiDigestInputStream.newDigest(algorithms.get(i));
+            }
+        }
+
+        private void update(byte[] b, int off, int len) {
+            for (MessageDigest digest : digests) {
+                digest.update(b, off, len);
+            }
+            length += len;
+        }
+
+        private StagedCharacterization finish() {
+            List<PackageStream.Checksum> checksums = new ArrayList<>(digests.length);
+            for (int i = 0; i < digests.length; i++) {
+                checksums.add(checksum(algorithms.get(i), digests[i].digest()));
+            }
+            return new StagedCharacterization(length, checksums);
+        }
+
+        private static PackageStream.Checksum checksum(PackageStream.Algo algo, byte[] value) {
+            return new ChecksumImpl(algo, value, getEncoder().encodeToString(value), encodeHexString(value));
+        }
+    }
+
+    /**
+     * The state of a custodial file being staged.  The number of bytes written to the staged file only ever grows;
+     * readers following the writer wait on the monitor of the entry for more bytes.
+     */
+    private static class StagedEntry {
+
+        private final Path file;
+
+        private final List<PackageStream.Algo> algorithms;
+
+        private long written = 0;
+
+        private boolean complete = false;
+
+        private boolean abandoned = false;
+
+        private StagedCharacterization characterization;
+
+        private volatile String mimeType;
+
+        private StagedEntry(Path file, List<PackageStream.Algo> algorithms) {
+            this.file = file;
+            this.algorithms = algorithms;
+        }
+
+        private synchronized void advance(long n) {
+            written += n;
+            notifyAll();
+        }
+
+        private synchronized void complete(StagedCharacterization characterization) {
+            this.characterization = characterization;
+            this.complete = true;
+            notifyAll();
+        }
+
+        private synchronized void abandon() {
+            if (!complete) {
+                abandoned = true;
+                notifyAll();
+            }
+        }
+
+        private synchronized boolean isAbandoned() {
+            return abandoned;
+        }
+
+        /**
+         * Waits until bytes beyond {@code position} are available, or the entry is completed or abandoned.
+         *
+         * @return the number of bytes written to the staged file
+         */
+        private synchronized long awaitBeyond(long position) throws InterruptedIOException {
+            while (written <= position && !complete && !abandoned) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for staged content " + file);
+                }
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Reads a custodial file from its origin, writing the bytes to the staged file and characterizing them.
+     */
+    private static class TeeInputStream extends StagedInputStream {
+
+        private final StagedEntry entry;
+
+        private final InputStream origin;
+
+        private final Characterizer characterizer;
+
+        private FileChannel out;
+
+        private StagedCharacterization characterization;
+
+        private TeeInputStream(StagedEntry entry, InputStream origin) throws IOException {
+            this.entry = entry;
+            this.origin = origin;
+            this.characterizer = new Characterizer(entry.algorithms);
+            this.out = FileChannel.open(entry.file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = origin.read(b, off, len);
+
+            if (read == -1) {
+                finish();
+                return -1;
+            }
+
+            characterizer.update(b, off, read);
+
+            if (out != null) {
+                try {
+                    ByteBuffer buf = ByteBuffer.wrap(b, off, read);
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
+                    entry.advance(read);
+                } catch (IOException e) {
+                    LOG.warn("Unable to stage content to {}: {}", entry.file, e.getMessage());
+                    closeQuietly();
+                    entry.abandon();
+                }
+            }
+
+            return read;
+        }
+
+        @Override
+        public StagedCharacterization characterization() {
+            return characterization;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                origin.close();
+            } finally {
+                if (characterization == null) {
+                    closeQuietly();
+                    entry.abandon();
+                }
+            }
+        }
+
+        private void finish() {
+            if (characterization != null) {
+                return;
+            }
+
+            characterization = characterizer.finish();
+            if (out != null) {
+                closeQuietly();
+                entry.complete(characterization);
+            }
+        }
+
+        private void closeQuietly() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * Reads a custodial file from the staged file, following the {@link TeeInputStream} writing it.  If the writer
+     * abandons the file, the remainder of the file is read from its origin.
+     */
+    private static class FollowingInputStream extends StagedInputStream {
+
+        private final StagedEntry entry;
+
+        private final InputStreamSource origin;
+
+        private FileChannel in;
+
+        private InputStream fallback;
+
+        private Characterizer characterizer;
+
+        private long position = 0;
+
+        private StagedCharacterization characterization;
+
+        private FollowingInputStream(StagedEntry entry, InputStreamSource origin) {
+            this.entry = entry;
+            this.origin = origin;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (fallback != null) {
+                return readFallback(b, off, len);
+            }
+
+            long available = entry.awaitBeyond(position);
+
+            if (position < available) {
+                if (in == null) {
+                    in = FileChannel.open(entry.file, StandardOpenOption.READ);
+                }
+                int n = (int) Math.min(len, available - position);
+                int read = in.read(ByteBuffer.wrap(b, off, n), position);
+                position += read;
+                return read;
+            }
+
+            synchronized (entry) {
+                if (entry.complete) {
+                    characterization = entry.characterization;
+                    return -1;
+                }
+            }
+
+            // The writer abandoned the entry: characterize the bytes read so far, and continue from the origin
+            LOG.debug("Staged content {} was abandoned after {} bytes, continuing from the origin", entry.file,
+                    position);
+            characterizer = new Characterizer(entry.algorithms);
+            if (position > 0) {
+                characterizePrefix();
+            }
+            fallback = origin.getInputStream();
+            long skipped = 0;
+            while (skipped < position) {
+                long n = fallback.skip(position - skipped);
+                if (n <= 0) {
+                    if (fallback.read() == -1) {
+                        throw new IOException("Origin content is shorter than the staged content " + entry.file);
+                    }
+                    n = 1;
+                }
+                skipped += n;
+            }
+
+            return readFallback(b, off, len);
+        }
+
+        @Override
+        public StagedCharacterization characterization() {
+            return characterization;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } finally {
+                if (fallback != null) {
+                    fallback.close();
+                }
+            }
+        }
+
+        private int readFallback(byte[] b, int off, int len) throws IOException {
+            int read = fallback.read(b, off, len);
+            if (read == -1) {
+                if (characterization == null) {
+                    characterization = characterizer.finish();
+                }
+                return -1;
+            }
+            characterizer.update(b, off, read);
+            position += read;
+            return read;
+        }
+
+        private void characterizePrefix() throws IOException {
+            if (in == null) {
+                in = FileChannel.open(entry.file, StandardOpenOption.READ);
+            }
+            byte[] buf = new byte[BUFFER_SIZE];
+            long pos = 0;
+            while (pos < position) {
+                int n = in.read(ByteBuffer.wrap(buf, 0, (int) Math.min(buf.length, position - pos)), pos);
+                if (n < 0) {
+                    throw new IOException("Staged content " + entry.file + " is shorter than expected");
+                }
+                characterizer.update(buf, 0, n);
+                pos += n;
+            }
+        }
+    }
+
+}
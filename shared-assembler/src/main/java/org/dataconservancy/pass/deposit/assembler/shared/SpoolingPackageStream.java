@@ -0,0 +1,379 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static java.util.Base64.getEncoder;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+
+/**
+ * A {@link PackageStream} that assembles its delegate to a temporary file before the package is transported.
+ * <p>
+ * The delegate package is written to a spool file in its entirety, while its length and its MD5 and SHA-256 checksums
+ * are computed.  After spooling, the {@link #metadata() metadata} of this stream carries the
+ * {@link PackageStream.Metadata#sizeBytes() size} and {@link PackageStream.Metadata#checksums() checksums} of the
+ * package, which are otherwise unknown while the package is being streamed.  Transports are therefore able to supply
+ * headers like {@code Content-Length} and {@code Content-MD5} up-front.
+ * </p>
+ * <p>
+ * The package is spooled lazily, on the first invocation of {@link #metadata()} or {@link #open()}, or explicitly by
+ * invoking {@link #spool()}.  The spooled package may be {@link #open() opened} any number of times, and
+ * {@link #openChannel() opened for random access}, so a failed transfer can be retried without re-assembling the
+ * package.  Callers must {@link #close()} this stream when they are finished with it to remove the spool file.
+ * </p>
+ * <p>
+ * The resources of a spooled package are located by a {@link PackageIndex}, built from the spool file the first time
+ * the {@link #resources() resources} of the package are requested or a single resource is {@link #open(String)
+ * opened}.  Post-deposit verification, audits, and partial re-deposits are thereby able to read a single resource
+ * without reading the package from the beginning.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class SpoolingPackageStream implements PackageStream, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpoolingPackageStream.class);
+
+    private static final String SPOOL_PREFIX = "pass-package-";
+
+    private static final String SPOOL_SUFFIX = ".spool";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PackageStream delegate;
+
+    private final File spoolDirectory;
+
+    private volatile Path spoolFile;
+
+    private volatile SimpleMetadataImpl metadata;
+
+    private volatile List<PackageStream.Resource> assembledResources = Collections.emptyList();
+
+    private volatile PackageIndex index;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Spools the {@code delegate} to the default temporary-file directory.
+     *
+     * @param delegate the package to spool
+     */
+    public SpoolingPackageStream(PackageStream delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * Spools the {@code delegate} to a file in {@code spoolDirectory}.
+     *
+     * @param delegate the package to spool
+     * @param spoolDirectory the directory to hold the spool file, or {@code null} for the default temporary-file
+     *                       directory
+     */
+    public SpoolingPackageStream(PackageStream delegate, File spoolDirectory) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate PackageStream must not be null.");
+        }
+
+        this.delegate = delegate;
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * Assembles the delegate package to the spool file, computing its length and checksums.  Invoking this method on a
+     * package that has already been spooled has no effect.
+     *
+     * @throws IOException if the package cannot be assembled or written to the spool file
+     * @throws IllegalStateException if this stream has been closed
+     */
+    public synchronized void spool() throws IOException {
+        assertOpen();
+
+        if (spoolFile != null) {
+            return;
+        }
+
+        MessageDigest md5 = newDigest("MD5");
+        MessageDigest sha256 = newDigest("SHA-256");
+        long length = 0;
+
+        Path spool = spoolDirectory == null ?
+                Files.createTempFile(SPOOL_PREFIX, SPOOL_SUFFIX) :
+                Files.createTempFile(spoolDirectory.toPath(), SPOOL_PREFIX, SPOOL_SUFFIX);
+
+        long start = System.currentTimeMillis();
+
+        try (InputStream in = delegate.open();
+             OutputStream out = Files.newOutputStream(spool, StandardOpenOption.WRITE)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                md5.update(buf, 0, read);
+                sha256.update(buf, 0, read);
+                out.write(buf, 0, read);
+                length += read;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+
+        SimpleMetadataImpl spooledMd = copyOf(delegate.metadata());
+        spooledMd.setSizeBytes(length);
+        spooledMd.addChecksum(checksum(PackageStream.Algo.MD5, md5.digest()));
+        spooledMd.addChecksum(checksum(PackageStream.Algo.SHA_256, sha256.digest()));
+
+        LOG.debug(">>>> Spooled package '{}' ({} bytes) to {} in {} ms", spooledMd.name(), length, spool,
+                System.currentTimeMillis() - start);
+
+        this.assembledResources = assembledResources();
+        this.metadata = spooledMd;
+        this.spoolFile = spool;
+    }
+
+    /**
+     * Answers the index of the spooled package, spooling and indexing the package if necessary.
+     *
+     * @return the index of the spooled package
+     * @throws IOException if the package cannot be spooled, or the spool file cannot be indexed
+     */
+    public synchronized PackageIndex index() throws IOException {
+        ensureSpooled();
+
+        if (index == null) {
+            long start = System.currentTimeMillis();
+            index = PackageIndex.build(spoolFile, metadata, assembledResources);
+            LOG.debug(">>>> Indexed {} resources of package '{}' in {} ms", index.entries().size(), metadata.name(),
+                    System.currentTimeMillis() - start);
+        }
+
+        return index;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Spools the package if it has not already been spooled, and opens a new stream over the spool file.
+     * </p>
+     *
+     * @return a new stream over the spooled package
+     * @throws UncheckedIOException if the package cannot be spooled or the spool file cannot be opened
+     */
+    @Override
+    public InputStream open() {
+        try {
+            return Channels.newInputStream(openChannel());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Opens the spooled package for random access, spooling the package if it has not already been spooled.  The
+     * caller is responsible for closing the returned channel.
+     *
+     * @return a new read-only channel over the spooled package
+     * @throws IOException if the package cannot be spooled or the spool file cannot be opened
+     */
+    public FileChannel openChannel() throws IOException {
+        ensureSpooled();
+        return FileChannel.open(spoolFile, StandardOpenOption.READ);
+    }
+
+    /**
+     * Opens a stream over the spooled package, starting at {@code offset} bytes into the package.
+     *
+     * @param offset the number of bytes to skip from the beginning of the package
+     * @return a new stream over the remainder of the spooled package
+     * @throws IOException if the package cannot be spooled or the spool file cannot be opened
+     */
+    @Override
+    public InputStream open(long offset) throws IOException {
+        FileChannel channel = openChannel();
+        try {
+            channel.position(offset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return Channels.newInputStream(channel);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Opens the named resource of the spooled package by seeking to its offset in the spool file, spooling and
+     * indexing the package if necessary.
+     * </p>
+     *
+     * @param packageResource the name of the resource in the package
+     * @return a new stream over the uncompressed content of the resource
+     * @throws IllegalArgumentException if the package has no such resource
+     * @throws UncheckedIOException if the package cannot be spooled or indexed, or the spool file cannot be opened
+     */
+    @Override
+    public InputStream open(String packageResource) {
+        try {
+            return index().open(spoolFile, packageResource);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open resource '" + packageResource + "': " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Answers every file in the spooled package, in the order it appears in the package, spooling and indexing the
+     * package if necessary.  Custodial resources carry the MIME types and checksums recorded when the package was
+     * assembled.
+     * </p>
+     *
+     * @return the resources of the package
+     * @throws UncheckedIOException if the package cannot be spooled or indexed
+     */
+    @Override
+    public Iterator<PackageStream.Resource> resources() {
+        try {
+            return index().resources();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to index package: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Spools the package if it has not already been spooled, so that the returned metadata carries the size and
+     * checksums of the package.
+     * </p>
+     *
+     * @return metadata describing the spooled package
+     * @throws UncheckedIOException if the package cannot be spooled
+     */
+    @Override
+    public PackageStream.Metadata metadata() {
+        ensureSpooled();
+        return metadata;
+    }
+
+    /**
+     * @return the spool file, or {@code null} if the package has not been spooled
+     */
+    public Path getSpoolFile() {
+        return spoolFile;
+    }
+
+    /**
+     * @return {@code true} if the package has been spooled
+     */
+    public boolean isSpooled() {
+        return spoolFile != null;
+    }
+
+    /**
+     * Removes the spool file.  The stream may not be opened after it has been closed.
+     *
+     * @throws IOException if the spool file cannot be removed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (spoolFile != null) {
+            LOG.debug(">>>> Removing spool file {}", spoolFile);
+            Files.deleteIfExists(spoolFile);
+        }
+    }
+
+    private void ensureSpooled() {
+        if (spoolFile != null && !closed) {
+            return;
+        }
+
+        try {
+            spool();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to spool package: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The custodial resources recorded by the delegate while it was assembled, if the delegate records them.
+     */
+    private List<PackageStream.Resource> assembledResources() {
+        List<PackageStream.Resource> resources = new ArrayList<>();
+        try {
+            delegate.resources().forEachRemaining(resources::add);
+        } catch (UnsupportedOperationException | IllegalStateException e) {
+            LOG.trace("Package '{}' did not record its resources: {}", delegate.metadata().name(), e.getMessage());
+        }
+        return resources;
+    }
+
+    private void assertOpen() {
+        if (closed) {
+            throw new IllegalStateException("SpoolingPackageStream has been closed.");
+        }
+    }
+
+    private static SimpleMetadataImpl copyOf(PackageStream.Metadata source) {
+        SimpleMetadataImpl copy = new SimpleMetadataImpl(source.name());
+        copy.setSpec(source.spec());
+        copy.setMimeType(source.mimeType());
+        copy.setCompressed(source.compressed());
+        copy.setCompression(source.compression());
+        copy.setArchived(source.archived());
+        copy.setArchive(source.archive());
+        return copy;
+    }
+
+    private static PackageStream.Checksum checksum(PackageStream.Algo algo, byte[] value) {
+        return new ChecksumImpl(algo, value, getEncoder().encodeToString(value), encodeHexString(value));
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Unable to obtain MessageDigest instance for algorithm: " + algorithm, e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+
+/**
+ * A Spring {@code Resource} whose bytes are read through a {@link SharedContentStage}, so that they are retrieved from
+ * the {@link #getDelegate() delegate} resource once for all of the packages sharing the stage.
+ * <p>
+ * After the {@link #getInputStream() stream} of this resource has been read to its end, the size and checksums of the
+ * resource are available from {@link #characterization()}.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class StagedResource extends AbstractResource {
+
+    private final SharedContentStage stage;
+
+    private final String location;
+
+    private final Resource delegate;
+
+    private volatile SharedContentStage.StagedInputStream lastOpened;
+
+    /**
+     * @param stage the stage shared by the packages of a submission
+     * @param location the location of the custodial file, as provided by {@code DepositFile#getLocation()}
+     * @param delegate the resource supplying the bytes of the custodial file from its origin
+     */
+    public StagedResource(SharedContentStage stage, String location, Resource delegate) {
+        this.stage = stage;
+        this.location = location;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        SharedContentStage.StagedInputStream in = stage.open(location, delegate);
+        lastOpened = in;
+        return in;
+    }
+
+    /**
+     * @return the size and checksums of this resource, or {@code null} if its stream has not been read to its end
+     */
+    public SharedContentStage.StagedCharacterization characterization() {
+        SharedContentStage.StagedInputStream in = lastOpened;
+        return in == null ? null : in.characterization();
+    }
+
+    /**
+     * @return the MIME type of this resource detected by another package sharing the stage, or {@code null}
+     */
+    public String getMimeType() {
+        return stage.getMimeType(location);
+    }
+
+    /**
+     * Shares the detected MIME type of this resource with the other packages sharing the stage.
+     *
+     * @param mimeType the detected MIME type
+     */
+    public void setMimeType(String mimeType) {
+        stage.setMimeType(location, mimeType);
+    }
+
+    public Resource getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public boolean exists() {
+        return delegate.exists();
+    }
+
+    @Override
+    public URL getURL() throws IOException {
+        return delegate.getURL();
+    }
+
+    @Override
+    public URI getURI() throws IOException {
+        return delegate.getURI();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public String getFilename() {
+        return delegate.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return "Staged " + delegate.getDescription();
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Decides how each entry of a zip package is compressed.
+ * <p>
+ * Content that is already compressed (JPEG and PNG images, PDFs, nested zip or gzip archives, audio and video) does not
+ * shrink when it is deflated again, so deflating it only costs the archive writer CPU time.  Entries whose MIME type
+ * matches one of the {@link #getStoredTypes() stored types} are stored, and all other entries are deflated at the
+ * configured {@link #getLevel() level}.  A stored type is either a MIME type, e.g. {@code image/jpeg}, or a prefix
+ * ending with {@code *}, e.g. {@code video/*}.
+ * </p>
+ * <p>
+ * When the package is written {@link #isParallel() in parallel}, entries are compressed by the threads of a {@link
+ * ParallelZipDeflater} before they are written to the package.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ZipCompressionPolicy {
+
+    /**
+     * MIME types of content that does not benefit from being deflated
+     */
+    public static final List<String> DEFAULT_STORED_TYPES = Collections.unmodifiableList(Arrays.asList(
+            "application/pdf",
+            "application/zip",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/java-archive",
+            "application/epub+zip",
+            "application/vnd.openxmlformats-officedocument.*",
+            "application/vnd.oasis.opendocument.*",
+            "image/jpeg",
+            "image/png",
+            "image/gif",
+            "image/webp",
+            "image/jp2",
+            "audio/mpeg",
+            "audio/mp4",
+            "audio/ogg",
+            "audio/aac",
+            "audio/flac",
+            "video/*"));
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    private List<String> storedTypes = DEFAULT_STORED_TYPES;
+
+    private boolean parallel = false;
+
+    /**
+     * Parses a comma-separated list of MIME types, e.g. {@code image/jpeg,video/*}.  The value {@code none} results in
+     * an empty list.
+     *
+     * @param types the MIME types
+     * @return the MIME types, in the order supplied
+     */
+    public static List<String> parseTypes(String types) {
+        List<String> result = new ArrayList<>();
+        if (types == null || types.trim().equalsIgnoreCase("none")) {
+            return result;
+        }
+
+        Arrays.stream(types.split(","))
+                .map(String::trim)
+                .filter(type -> !type.isEmpty())
+                .map(type -> type.toLowerCase(Locale.ENGLISH))
+                .forEach(result::add);
+
+        return result;
+    }
+
+    /**
+     * Answers whether an entry with the supplied MIME type is stored rather than deflated.
+     *
+     * @param mimeType the MIME type of the entry, which may include parameters, or {@code null} if it is unknown
+     * @return true if the entry is stored
+     */
+    public boolean isStored(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+
+        int params = mimeType.indexOf(';');
+        String baseType = (params < 0 ? mimeType : mimeType.substring(0, params)).trim().toLowerCase(Locale.ENGLISH);
+
+        for (String type : storedTypes) {
+            if (type.endsWith("*") ? baseType.startsWith(type.substring(0, type.length() - 1)) :
+                    baseType.equals(type)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The level used to deflate entries that are not stored, from {@code 0} (no compression) to {@code 9} (best
+     * compression), or {@code -1} for the default level of the {@code Deflater}.
+     *
+     * @return the deflate level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Deflate level must be between " + Deflater.DEFAULT_COMPRESSION +
+                    " and " + Deflater.BEST_COMPRESSION + ".");
+        }
+        this.level = level;
+    }
+
+    /**
+     * The MIME types of entries that are stored rather than deflated.
+     *
+     * @return the stored MIME types
+     */
+    public List<String> getStoredTypes() {
+        return storedTypes;
+    }
+
+    public void setStoredTypes(Collection<String> storedTypes) {
+        if (storedTypes == null) {
+            throw new IllegalArgumentException("Stored types must not be null.");
+        }
+        List<String> types = new ArrayList<>();
+        storedTypes.forEach(type -> types.add(type.trim().toLowerCase(Locale.ENGLISH)));
+        this.storedTypes = Collections.unmodifiableList(types);
+    }
+
+    /**
+     * Whether entries are compressed on multiple threads before they are written to the package.
+     *
+     * @return true if entries are compressed in parallel
+     * @see ParallelZipDeflater
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class AbstractThreadedOutputStreamWriterTest {
+
+    private static final String OCTET_STREAM = "application/octet-stream";
+
+    static {
+        // A single compressing thread is exhausted by a single entry waiting on the bytes of another package
+        System.setProperty(ParallelZipDeflater.POOL_SIZE_PROPERTY, "1");
+    }
+
+    private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private SharedContentStage stage;
+
+    private Map<String, byte[]> contents = new HashMap<>();
+
+    private Map<String, String> declaredMd5s = new HashMap<>();
+
+    private PackageStreamOptions.Builder options = PackageStreamOptions.builder().zipParallel(true).prefetchDepth(0);
+
+    @Before
+    public void setUp() throws Exception {
+        stage = SharedContentStage.open("http://example.org/submission/" + UUID.randomUUID(), 2, null);
+        Random random = new Random(0x5eed);
+        for (String name : new String[] { "leading.bin", "shared.bin", "other.bin" }) {
+            byte[] content = new byte[256 * 1024];
+            random.nextBytes(content);
+            contents.put(name, content);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        stage.release(2);
+    }
+
+    /**
+     * Two packages sharing custodial content through a stage, and compressing their zip entries in parallel, are both
+     * written completely, even when the package following the other hands its entry to the compressing threads before
+     * the package it follows has read the shared file.
+     */
+    @Test
+    public void testStagedContentWithParallelDeflate() throws Exception {
+        CountDownLatch leaderOpened = new CountDownLatch(1);
+        CountDownLatch followerOpened = new CountDownLatch(1);
+        List<Throwable> failures = new ArrayList<>();
+
+        // The leader opens the shared file, and delays reading it until the follower has opened it
+        ByteArrayOutputStream leader = new ByteArrayOutputStream();
+        AbstractThreadedOutputStreamWriter leaderWriter = writer(leader, failures, name -> {
+            if (name.equals("shared.bin")) {
+                leaderOpened.countDown();
+                await(followerOpened);
+                Thread.sleep(250);
+            }
+        }, "shared.bin", "other.bin");
+
+        // The follower only opens the shared file once the leader has
+        ByteArrayOutputStream follower = new ByteArrayOutputStream();
+        AbstractThreadedOutputStreamWriter followerWriter = writer(follower, failures, name -> {
+            if (name.equals("leading.bin")) {
+                await(leaderOpened);
+            } else if (name.equals("shared.bin")) {
+                followerOpened.countDown();
+            }
+        }, "leading.bin", "shared.bin", "other.bin");
+
+        Future<?> leaderWritten = executor.submit(leaderWriter);
+        Future<?> followerWritten = executor.submit(followerWriter);
+        leaderWritten.get(60, TimeUnit.SECONDS);
+        followerWritten.get(60, TimeUnit.SECONDS);
+
+        assertEquals(0, failures.size());
+        assertPackage(leader.toByteArray(), "shared.bin", "other.bin");
+        assertPackage(follower.toByteArray(), "leading.bin", "shared.bin", "other.bin");
+    }
+
+    /**
+     * When declared digests are verified, a file whose declared digest does not match its content fails the package,
+     * rather than being packaged with the declared digest.
+     */
+    @Test
+    public void testDeclaredDigestMismatch() throws Exception {
+        options.verifyDeclaredDigests(true);
+        List<Throwable> failures = new ArrayList<>();
+        declaredMd5s.put("leading.bin", "00000000000000000000000000000000");
+        AbstractThreadedOutputStreamWriter writer = writer(new ByteArrayOutputStream(), failures, name -> { },
+                "leading.bin");
+
+        try {
+            writer.run();
+            fail("Expected the declared digest to be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("MD5 digest"));
+        }
+        assertEquals(1, failures.size());
+    }
+
+    /**
+     * A declared digest is trusted, and only the digests it does not cover are computed as the file is written.
+     */
+    @Test
+    public void testDeclaredDigestIsTrusted() throws Exception {
+        List<Throwable> failures = new ArrayList<>();
+        String declared = "0123456789abcdef0123456789abcdef";
+        declaredMd5s.put("leading.bin", declared);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        AbstractThreadedOutputStreamWriter writer = writer(sink, failures, name -> { }, "leading.bin");
+        List<PackageStream.Resource> assembled = new ArrayList<>();
+        writer.setAssembledResourcesHandler(assembled::addAll);
+
+        writer.run();
+
+        assertEquals(0, failures.size());
+        assertPackage(sink.toByteArray(), "leading.bin");
+        PackageStream.Resource resource = assembled.get(0);
+        List<PackageStream.Checksum> checksums = new ArrayList<>(resource.checksums());
+        assertEquals(contents.get("leading.bin").length, resource.sizeBytes());
+        assertEquals(2, checksums.size());
+        assertEquals(PackageStream.Algo.MD5, checksums.get(0).algorithm());
+        assertEquals(declared, checksums.get(0).asHex());
+        assertEquals(PackageStream.Algo.SHA_256, checksums.get(1).algorithm());
+        assertEquals(DigestUtils.sha256Hex(contents.get("leading.bin")), checksums.get(1).asHex());
+    }
+
+    /**
+     * Answers a writer of a zip package of the named files, whose entries are compressed in parallel.  The files are
+     * opened as they are written, rather than prefetched, and every file but {@code leading.bin} is staged.  The
+     * {@code onDetect} hook is invoked as the MIME type of each file is detected, after the file has been opened.
+     * Files named in {@code declaredMd5s} declare the mapped MD5 digest.
+     */
+    private AbstractThreadedOutputStreamWriter writer(ByteArrayOutputStream sink, List<Throwable> failures,
+                                                      DetectHook onDetect, String... names) {
+        List<DepositFileResource> resources = new ArrayList<>();
+        for (String name : names) {
+            DepositFile file = new DepositFile();
+            file.setName(name);
+            file.setLocation("http://example.org/file/" + name);
+            if (declaredMd5s.containsKey(name)) {
+                file.addDigest("MD5", declaredMd5s.get(name));
+            }
+            ByteArrayResource origin = new ByteArrayResource(contents.get(name));
+            resources.add(new DepositFileResource(file, name.equals("leading.bin") ?
+                    origin : new StagedResource(stage, file.getLocation(), origin)));
+        }
+
+        AbstractThreadedOutputStreamWriter writer = new AbstractThreadedOutputStreamWriter("writer",
+                new ZipArchiveOutputStream(sink), new DepositSubmission(), resources, ResourceBuilderImpl::new,
+                new MetadataBuilderImpl().archive(PackageStream.ARCHIVE.ZIP)) {
+            @Override
+            public void assembleResources(DepositSubmission submission, List<PackageStream.Resource> resources) {
+                // no package metadata
+            }
+        };
+        writer.setOptions(options.build());
+        writer.setMimeTypeDetector(new MimeTypeDetector(16) {
+            @Override
+            public String detect(DepositFileResource resource) {
+                try {
+                    onDetect.detecting(resource.getDepositFile().getName());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return OCTET_STREAM;
+            }
+        });
+        writer.setUncaughtExceptionHandler((thread, e) -> {
+            synchronized (failures) {
+                failures.add(e);
+            }
+        });
+        return writer;
+    }
+
+    private void assertPackage(byte[] zip, String... names) throws Exception {
+        try (ZipArchiveInputStream in = new ZipArchiveInputStream(new ByteArrayInputStream(zip))) {
+            for (String name : names) {
+                ZipArchiveEntry entry = in.getNextZipEntry();
+                assertEquals(name, entry.getName());
+                assertArrayEquals(contents.get(name), IOUtils.toByteArray(in));
+            }
+            assertNull(in.getNextZipEntry());
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Timed out waiting for the other package");
+        }
+    }
+
+    @FunctionalInterface
+    private interface DetectHook {
+        void detecting(String name) throws InterruptedException;
+    }
+
+}
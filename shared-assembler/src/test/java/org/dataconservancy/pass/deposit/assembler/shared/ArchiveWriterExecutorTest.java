@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ArchiveWriterExecutorTest {
+
+    /**
+     * Once every pooled and overflow thread is busy, further writers are rejected after the overflow wait, so no more
+     * than the pooled and overflow threads run at once.
+     */
+    @Test
+    public void testOverflowIsBounded() throws Exception {
+        ArchiveWriterExecutor underTest = new ArchiveWriterExecutor(2, 1, 60, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        Runnable writer = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+
+        for (int i = 0; i < 3; i++) {
+            underTest.execute(writer);
+        }
+        assertTrue("Writers were not started", started.await(10, TimeUnit.SECONDS));
+        assertEquals(1, underTest.getOverflowCount());
+        assertEquals(1, underTest.getOverflowActiveCount());
+
+        try {
+            underTest.execute(writer);
+            fail("Expected the writer to be rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        release.countDown();
+        assertEquals(3, maxRunning.get());
+    }
+
+    /**
+     * A writer waiting on an exhausted overflow is run once an overflow thread finishes.
+     */
+    @Test
+    public void testWaitForOverflowThread() throws Exception {
+        ArchiveWriterExecutor underTest = new ArchiveWriterExecutor(1, 1, 60, 10000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+
+        Runnable blocked = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        };
+
+        underTest.execute(blocked);
+        underTest.execute(blocked);
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+        releaser.start();
+
+        underTest.execute(done::countDown);
+
+        assertTrue("Writers did not complete", done.await(10, TimeUnit.SECONDS));
+    }
+
+}
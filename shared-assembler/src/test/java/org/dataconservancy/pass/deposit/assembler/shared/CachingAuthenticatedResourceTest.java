@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class CachingAuthenticatedResourceTest {
+
+    private static final String CONTENT_PATH = "/fcrepo/rest/files/a";
+
+    private HttpServer server;
+
+    private Path cacheDir;
+
+    private CustodialContentCache cache;
+
+    /**
+     * Each request received by the server, as "METHOD If-None-Match Want-Digest"
+     */
+    private List<String> requests = new CopyOnWriteArrayList<>();
+
+    private volatile byte[] content = "version 1".getBytes(StandardCharsets.UTF_8);
+
+    private volatile String etag;
+
+    private volatile String digest;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("CachingAuthenticatedResourceTest-");
+        cache = new CustodialContentCache(cacheDir, 1024 * 1024, false);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(CONTENT_PATH, exchange -> {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            requests.add(exchange.getRequestMethod() + " " + ifNoneMatch + " " +
+                    exchange.getRequestHeaders().getFirst("Want-Digest"));
+
+            if (etag != null) {
+                exchange.getResponseHeaders().add("ETag", etag);
+            }
+            if (digest != null) {
+                exchange.getResponseHeaders().add("Digest", digest);
+            }
+
+            if (etag != null && etag.equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+            } else if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
+    /**
+     * Content cached by its entity tag is requested conditionally, and answered from the cache when it has not been
+     * modified.
+     */
+    @Test
+    public void testEntityTagRevalidatedConditionally() throws Exception {
+        etag = "W/\"etag-1\"";
+
+        assertArrayEquals(content, read());
+        assertArrayEquals(content, read());
+
+        assertEquals("GET null sha-256", requests.get(0));
+        assertEquals("GET W/\"etag-1\" null", requests.get(1));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * Content cached by its digest is never sent as an entity tag; it is revalidated with a HEAD request, and answered
+     * from the cache when the digest is unchanged.
+     */
+    @Test
+    public void testDigestRevalidatedWithHead() throws Exception {
+        digest = "sha-256=digest-1";
+
+        assertArrayEquals(content, read());
+        assertEquals(digest, cache.validator(url().toString()));
+        assertArrayEquals(content, read());
+
+        assertEquals(2, requests.size());
+        assertEquals("HEAD null sha-256", requests.get(1));
+        assertTrue(requests.stream().noneMatch(request -> request.contains("digest-1")));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * Content cached by its digest is retrieved again when the digest has changed.
+     */
+    @Test
+    public void testChangedDigestIsRetrieved() throws Exception {
+        digest = "sha-256=digest-1";
+        read();
+
+        content = "version 2".getBytes(StandardCharsets.UTF_8);
+        digest = "sha-256=digest-2";
+        assertArrayEquals(content, read());
+
+        assertEquals(3, requests.size());
+        assertEquals("HEAD null sha-256", requests.get(1));
+        assertEquals("GET null sha-256", requests.get(2));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(digest, cache.validator(url().toString()));
+    }
+
+    /**
+     * Entity tags are distinguished from digests.
+     */
+    @Test
+    public void testIsEntityTag() throws Exception {
+        assertTrue(CachingAuthenticatedResource.isEntityTag("\"abc\""));
+        assertTrue(CachingAuthenticatedResource.isEntityTag("W/\"abc\""));
+        assertFalse(CachingAuthenticatedResource.isEntityTag("sha-256=abc"));
+    }
+
+    private byte[] read() throws Exception {
+        try (InputStream in = new CachingAuthenticatedResource(url(), "user", "pass", cache).getInputStream()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private URL url() throws Exception {
+        return new URL("http", "localhost", server.getAddress().getPort(), CONTENT_PATH);
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class CustodialContentCacheTest {
+
+    private static final String URI_A = "http://localhost:8080/fcrepo/rest/files/a";
+
+    private static final String URI_B = "http://localhost:8080/fcrepo/rest/files/b";
+
+    private static final String URI_C = "http://localhost:8080/fcrepo/rest/files/c";
+
+    private Path cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("CustodialContentCacheTest-");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
+    /**
+     * Content read in its entirety through the cache is returned by subsequent lookups with the same validator, and
+     * not returned for a different validator.
+     */
+    @Test
+    public void testPutAndGet() throws Exception {
+        CustodialContentCache underTest = new CustodialContentCache(cacheDir, 1024 * 1024, false);
+        byte[] content = content(1000);
+
+        populate(underTest, URI_A, "\"etag-1\"", content);
+
+        assertEquals("\"etag-1\"", underTest.validator(URI_A));
+        assertEquals(1, underTest.getEntryCount());
+        assertEquals(content.length, underTest.getTotalBytes());
+
+        try (InputStream in = underTest.get(URI_A, "\"etag-1\"")) {
+            assertNotNull(in);
+            assertArrayEquals(content, IOUtils.toByteArray(in));
+        }
+
+        assertNull(underTest.get(URI_A, "\"etag-2\""));
+        assertNull(underTest.get(URI_B, "\"etag-1\""));
+        assertEquals(1, underTest.getHitCount());
+    }
+
+    /**
+     * The cache shared for a directory is answered for the same configuration, and cannot be shared with a different
+     * configuration.
+     */
+    @Test
+    public void testSharedConfigurationConflict() throws Exception {
+        CustodialContentCache shared = CustodialContentCache.shared(cacheDir, 1024 * 1024, false);
+        assertSame(shared, CustodialContentCache.shared(cacheDir.resolve(".").resolve("."), 1024 * 1024, false));
+
+        try {
+            CustodialContentCache.shared(cacheDir, 2048 * 1024, false);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            CustodialContentCache.shared(cacheDir, 1024 * 1024, true);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Content that is not read in its entirety is not cached.
+     */
+    @Test
+    public void testPartialReadIsNotCached() throws Exception {
+        CustodialContentCache underTest = new CustodialContentCache(cacheDir, 1024 * 1024, false);
+
+        try (InputStream in = underTest.put(URI_A, "\"etag-1\"", new ByteArrayInputStream(content(1000)))) {
+            assertEquals(10, in.read(new byte[10]));
+        }
+
+        assertNull(underTest.validator(URI_A));
+        assertEquals(0, underTest.getEntryCount());
+        assertEquals(0, countFiles());
+    }
+
+    /**
+     * When the cache exceeds its maximum size, the least recently used entries are evicted.
+     */
+    @Test
+    public void testLruEviction() throws Exception {
+        CustodialContentCache underTest = new CustodialContentCache(cacheDir, 2500, false);
+
+        populate(underTest, URI_A, "a", content(1000));
+        populate(underTest, URI_B, "b", content(1000));
+
+        // touch A, so that B is the least recently used
+        underTest.get(URI_A, "a").close();
+
+        populate(underTest, URI_C, "c", content(1000));
+
+        assertNotNull(underTest.validator(URI_A));
+        assertNull(underTest.validator(URI_B));
+        assertNotNull(underTest.validator(URI_C));
+        assertEquals(2000, underTest.getTotalBytes());
+        assertEquals(1, underTest.getEvictionCount());
+        assertEquals(4, countFiles());
+    }
+
+    /**
+     * Cached content that has been corrupted on disk fails verification, and is evicted.
+     */
+    @Test
+    public void testVerifyOnRead() throws Exception {
+        CustodialContentCache underTest = new CustodialContentCache(cacheDir, 1024 * 1024, true);
+        populate(underTest, URI_A, "a", content(1000));
+
+        underTest.get(URI_A, "a").close();
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(cacheDir, "[0-9a-f]*[0-9a-f]")) {
+            for (Path entry : entries) {
+                Files.write(entry, content(1000, 1));
+            }
+        }
+
+        assertNull(underTest.get(URI_A, "a"));
+        assertNull(underTest.validator(URI_A));
+        assertEquals(0, countFiles());
+    }
+
+    /**
+     * Entries are re-loaded from the cache directory by a new cache instance.
+     */
+    @Test
+    public void testReload() throws Exception {
+        byte[] content = content(1000);
+        populate(new CustodialContentCache(cacheDir, 1024 * 1024, false), URI_A, "a", content);
+
+        CustodialContentCache underTest = new CustodialContentCache(cacheDir, 1024 * 1024, true);
+
+        assertEquals("a", underTest.validator(URI_A));
+        try (InputStream in = underTest.get(URI_A, "a")) {
+            assertArrayEquals(content, IOUtils.toByteArray(in));
+        }
+    }
+
+    private static void populate(CustodialContentCache cache, String uri, String validator, byte[] content)
+            throws Exception {
+        try (InputStream in = cache.put(uri, validator, new ByteArrayInputStream(content))) {
+            assertArrayEquals(content, IOUtils.toByteArray(in));
+        }
+    }
+
+    private static byte[] content(int length) {
+        return content(length, 0);
+    }
+
+    private static byte[] content(int length, long seed) {
+        byte[] content = new byte[length];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private int countFiles() throws Exception {
+        int count = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(cacheDir)) {
+            for (Path ignored : entries) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class LocalFileTransferTest {
+
+    private static final List<PackageStream.Algo> ALGORITHMS =
+            Arrays.asList(PackageStream.Algo.MD5, PackageStream.Algo.SHA_256);
+
+    private byte[] content;
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[100 * 1024 + 7];
+        new Random(0x5eed).nextBytes(content);
+        file = Files.createTempFile("transfer-", ".bin");
+        Files.write(file, content);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * A file spanning several buffers is digested as it is transferred.
+     */
+    @Test
+    public void testDigestWhileTransferring() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LocalFileTransfer underTest = new LocalFileTransfer(channel, ALGORITHMS, 16 * 1024);
+            assertNull(underTest.getChecksums());
+
+            underTest.transferTo(out);
+
+            assertEquals(content.length, underTest.size());
+            assertChecksums(underTest.getChecksums());
+            assertEquals(-1, underTest.getCrc());
+        }
+
+        assertArrayEquals(content, out.toByteArray());
+    }
+
+    /**
+     * A scanned file carries its digests and CRC before it is transferred.
+     */
+    @Test
+    public void testScanThenTransfer() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LocalFileTransfer underTest = new LocalFileTransfer(channel, ALGORITHMS, 16 * 1024);
+            underTest.scan(true);
+
+            assertChecksums(underTest.getChecksums());
+            assertEquals(crc.getValue(), underTest.getCrc());
+
+            underTest.transferTo(out);
+        }
+
+        assertArrayEquals(content, out.toByteArray());
+    }
+
+    /**
+     * An empty file is transferred without reading any bytes.
+     */
+    @Test
+    public void testEmptyFile() throws Exception {
+        Files.write(file, new byte[0]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LocalFileTransfer underTest = new LocalFileTransfer(channel, ALGORITHMS);
+            underTest.transferTo(out);
+
+            assertEquals(0, underTest.size());
+            assertEquals(DigestUtils.md5Hex(new byte[0]), underTest.getChecksums().get(0).asHex());
+        }
+
+        assertEquals(0, out.size());
+    }
+
+    private void assertChecksums(List<PackageStream.Checksum> checksums) {
+        assertEquals(2, checksums.size());
+        assertEquals(PackageStream.Algo.MD5, checksums.get(0).algorithm());
+        assertEquals(DigestUtils.md5Hex(content), checksums.get(0).asHex());
+        assertEquals(PackageStream.Algo.SHA_256, checksums.get(1).algorithm());
+        assertEquals(DigestUtils.sha256Hex(content), checksums.get(1).asHex());
+    }
+
+}
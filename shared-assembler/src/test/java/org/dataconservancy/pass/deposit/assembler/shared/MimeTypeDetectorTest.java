@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.tika.detect.Detector;
+import org.apache.tika.mime.MediaType;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class MimeTypeDetectorTest {
+
+    private static final String DETECTED = "text/plain";
+
+    private AtomicInteger detections;
+
+    private String detectedType = DETECTED;
+
+    private MimeTypeDetector underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        detections = new AtomicInteger(0);
+        Detector detector = (in, metadata) -> {
+            detections.incrementAndGet();
+            in.read(new byte[16]);
+            return MediaType.parse(detectedType);
+        };
+        underTest = new MimeTypeDetector(detector, 2);
+    }
+
+    /**
+     * The MIME type declared by the DepositFile is used without reading content, unless it is the generic
+     * application/octet-stream.
+     */
+    @Test
+    public void testDeclared() throws Exception {
+        assertEquals("image/png", underTest.detect(resource("file.bin", "/declared", "image/png")));
+
+        DepositFileResource generic = resource("file.bin", "/generic", "application/octet-stream");
+        assertNull(underTest.detect(generic));
+        assertEquals(DETECTED, underTest.detect(generic, content()));
+
+        assertEquals(1, underTest.getDeclaredCount());
+        assertEquals(1, detections.get());
+    }
+
+    /**
+     * A well-known file name extension is only used when the content is not recognized.
+     */
+    @Test
+    public void testExtension() throws Exception {
+        DepositFileResource pdf = resource("manuscript.PDF", "/pdf", null);
+        assertNull(underTest.detect(pdf));
+        assertEquals(DETECTED, underTest.detect(pdf, content()));
+        assertEquals(0, underTest.getExtensionCount());
+
+        detectedType = "application/octet-stream";
+        assertEquals("application/pdf", underTest.detect(resource("manuscript.PDF", "/unrecognized", null),
+                content()));
+        assertEquals("application/octet-stream", underTest.detect(resource("manuscript", "/none", null), content()));
+        assertEquals(1, underTest.getExtensionCount());
+        assertEquals(3, detections.get());
+    }
+
+    /**
+     * Content is detected once per location, and the content is reset after it is detected.
+     */
+    @Test
+    public void testCached() throws Exception {
+        DepositFileResource resource = resource("file.bin", "/cached", null);
+        InputStream content = content();
+
+        assertEquals(DETECTED, underTest.detect(resource, content));
+        assertEquals('a', content.read());
+        assertEquals(DETECTED, underTest.detect(resource, content()));
+        assertEquals(DETECTED, underTest.detect(resource));
+
+        assertEquals(1, detections.get());
+        assertEquals(2, underTest.getCacheHitCount());
+
+        // the least recently used detection is evicted
+        underTest.detect(resource("file.bin", "/other-1", null), content());
+        underTest.detect(resource("file.bin", "/other-2", null), content());
+        assertNull(underTest.detect(resource));
+    }
+
+    private static DepositFileResource resource(String name, String location, String mimeType) {
+        DepositFile df = new DepositFile();
+        df.setName(name);
+        df.setLocation(location);
+        df.setMimeType(mimeType);
+        return new DepositFileResource(df, new ByteArrayResource(new byte[0]));
+    }
+
+    private static InputStream content() {
+        return new BufferedInputStream(new ByteArrayInputStream("abcdefghijklmnopqrstuvwxyz".getBytes()));
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.dataconservancy.pass.deposit.assembler.PackageStream.Algo.MD5;
+import static org.dataconservancy.pass.deposit.assembler.PackageStream.Algo.SHA_256;
+import static org.dataconservancy.pass.deposit.assembler.PackageStream.Algo.SHA_512;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class MultiDigestInputStreamTest {
+
+    private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private ChunkPool pool = new ChunkPool(1024, 16);
+
+    private byte[] content = randomBytes(100 * 1024 + 17);
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Digests computed on the reading thread match the digests of the content, regardless of how the content is read.
+     */
+    @Test
+    public void testInline() throws Exception {
+        MultiDigestInputStream underTest = new MultiDigestInputStream(new ByteArrayInputStream(content),
+                Arrays.asList(MD5, SHA_256, SHA_512), null, pool);
+
+        readMixed(underTest);
+
+        assertDigests(underTest);
+    }
+
+    /**
+     * Digests computed by a pipelined thread match the digests of the content, regardless of how the content is read.
+     */
+    @Test
+    public void testPipelined() throws Exception {
+        MultiDigestInputStream underTest = new MultiDigestInputStream(new ByteArrayInputStream(content),
+                Arrays.asList(MD5, SHA_256, SHA_512), executor, pool);
+
+        readMixed(underTest);
+
+        assertDigests(underTest);
+    }
+
+    /**
+     * Only the configured algorithms are computed, in the configured order.
+     */
+    @Test
+    public void testConfiguredAlgorithms() throws Exception {
+        MultiDigestInputStream underTest = new MultiDigestInputStream(new ByteArrayInputStream(content),
+                Collections.singletonList(MD5));
+
+        assertNull(underTest.getChecksums());
+        IOUtils.copy(underTest, new NullOutputStream());
+
+        assertEquals(1, underTest.getChecksums().size());
+        assertEquals(MD5, underTest.getChecksums().get(0).algorithm());
+        assertEquals(content.length, underTest.getLength());
+
+        assertEquals(Arrays.asList(SHA_256, MD5), MultiDigestInputStream.parseAlgorithms(" sha-256, MD5,sha_256"));
+
+        try {
+            MultiDigestInputStream.parseAlgorithms("MD5,CRC32");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Closing a pipelined stream before it is read to its end releases the pipelined thread.
+     */
+    @Test
+    public void testCloseBeforeEnd() throws Exception {
+        MultiDigestInputStream underTest = new MultiDigestInputStream(new ByteArrayInputStream(content),
+                Arrays.asList(MD5, SHA_256), executor, pool);
+
+        IOUtils.readFully(underTest, new byte[10 * 1024]);
+        underTest.close();
+
+        assertNull(underTest.getChecksums());
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Closing a pipelined stream whose digest thread has not taken any of the queued blocks does not wait for the digest
+     * thread, and returns the queued blocks to the pool.
+     */
+    @Test
+    public void testCloseWithStalledDigestThread() throws Exception {
+        List<Runnable> stalled = new ArrayList<>();
+        MultiDigestInputStream underTest = new MultiDigestInputStream(new ByteArrayInputStream(content),
+                Arrays.asList(MD5, SHA_256), stalled::add, pool);
+
+        // fills the queue of the digest thread, which has yet to run
+        IOUtils.readFully(underTest, new byte[8 * 1024 + 1]);
+        Future<?> closed = executor.submit(() -> {
+            underTest.close();
+            return null;
+        });
+        closed.get(10, TimeUnit.SECONDS);
+
+        assertNull(underTest.getChecksums());
+        assertEquals(9, pool.getRetained());
+
+        // the digest thread finishes as soon as it runs
+        assertEquals(1, stalled.size());
+        Future<?> digested = executor.submit(stalled.get(0));
+        digested.get(10, TimeUnit.SECONDS);
+    }
+
+    private void readMixed(InputStream in) throws Exception {
+        Random random = new Random(0x5eed);
+        byte[] buf = new byte[8 * 1024];
+        int read;
+        do {
+            if (random.nextBoolean()) {
+                read = in.read();
+            } else {
+                read = in.read(buf, 0, 1 + random.nextInt(buf.length));
+            }
+        } while (read != -1);
+        in.close();
+    }
+
+    private void assertDigests(MultiDigestInputStream underTest) {
+        List<PackageStream.Checksum> checksums = underTest.getChecksums();
+        assertEquals(content.length, underTest.getLength());
+        assertEquals(3, checksums.size());
+        assertEquals(MD5, checksums.get(0).algorithm());
+        assertEquals(DigestUtils.md5Hex(content), checksums.get(0).asHex());
+        assertEquals(SHA_256, checksums.get(1).algorithm());
+        assertEquals(DigestUtils.sha256Hex(content), checksums.get(1).asHex());
+        assertEquals(SHA_512, checksums.get(2).algorithm());
+        assertEquals(DigestUtils.sha512Hex(content), checksums.get(2).asHex());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+}
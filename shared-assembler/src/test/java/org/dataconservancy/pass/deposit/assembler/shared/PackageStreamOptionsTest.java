@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class PackageStreamOptionsTest {
+
+    /**
+     * Options bound from properties carry the bound values, and the stored types are parsed.
+     */
+    @Test
+    public void testBound() throws Exception {
+        PackageStreamOptions underTest = new PackageStreamOptions(1024, 4, 2, 4096, true, true, Deflater.BEST_SPEED,
+                "image/jpeg, video/*", true, true);
+
+        assertEquals(1024, underTest.getChunkSize());
+        assertEquals(4, underTest.getPipeCapacity());
+        assertEquals(2, underTest.getPrefetchDepth());
+        assertEquals(4096, underTest.getPrefetchByteBudget());
+        assertTrue(underTest.isPipelineDigests());
+        assertTrue(underTest.isVerifyDeclaredDigests());
+        assertEquals(Arrays.asList("image/jpeg", "video/*"), underTest.getZipStoredTypes());
+        assertTrue(underTest.isZipParallel());
+        assertTrue(underTest.isGzipParallel());
+        assertEquals(MultiDigestInputStream.DEFAULT_ALGORITHMS, underTest.getDigestAlgorithms());
+
+        ZipCompressionPolicy policy = underTest.getZipCompression();
+        assertEquals(Deflater.BEST_SPEED, policy.getLevel());
+        assertTrue(policy.isStored("video/mp4"));
+        assertFalse(policy.isStored("text/plain"));
+        assertTrue(policy.isParallel());
+    }
+
+    /**
+     * Options derived with a builder leave the options they were derived from unchanged.
+     */
+    @Test
+    public void testToBuilder() throws Exception {
+        PackageStreamOptions derived = PackageStreamOptions.DEFAULTS.toBuilder()
+                .digestAlgorithms(Collections.singletonList(PackageStream.Algo.MD5))
+                .zipParallel(true)
+                .build();
+
+        assertEquals(Collections.singletonList(PackageStream.Algo.MD5), derived.getDigestAlgorithms());
+        assertTrue(derived.isZipParallel());
+        assertEquals(MultiDigestInputStream.DEFAULT_ALGORITHMS,
+                PackageStreamOptions.DEFAULTS.getDigestAlgorithms());
+        assertFalse(PackageStreamOptions.DEFAULTS.isZipParallel());
+    }
+
+    /**
+     * Deflate levels outside of those supported by {@link Deflater} are rejected when they are set.
+     */
+    @Test
+    public void testZipDeflateLevel() throws Exception {
+        assertEquals(Deflater.BEST_COMPRESSION,
+                PackageStreamOptions.builder().zipDeflateLevel(Deflater.BEST_COMPRESSION).build().getZipDeflateLevel());
+        assertEquals(Deflater.DEFAULT_COMPRESSION, PackageStreamOptions.DEFAULTS.getZipDeflateLevel());
+
+        for (int invalid : new int[] { -2, 10 }) {
+            try {
+                PackageStreamOptions.builder().zipDeflateLevel(invalid);
+                fail("Expected deflate level " + invalid + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidChunkSize() throws Exception {
+        PackageStreamOptions.builder().chunkSize(0);
+    }
+
+}
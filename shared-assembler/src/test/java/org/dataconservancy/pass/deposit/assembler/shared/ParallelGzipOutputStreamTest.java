@@ -0,0 +1,190 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ParallelGzipOutputStreamTest {
+
+    private static final int BLOCK_SIZE = 32 * 1024;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Content spanning many blocks, written in writes of varying lengths, results in a single gzip member that
+     * decompresses to the content, and compresses compressible content.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] content = content(BLOCK_SIZE * 10 + 123);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        try (ParallelGzipOutputStream underTest = newStream(sink)) {
+            Random random = new Random(7);
+            int off = 0;
+            while (off < content.length) {
+                int len = Math.min(content.length - off, random.nextInt(BLOCK_SIZE * 2));
+                underTest.write(content, off, len);
+                off += len;
+            }
+            underTest.write('x');
+            assertEquals(content.length + 1, underTest.getLength());
+        }
+
+        byte[] expected = new byte[content.length + 1];
+        System.arraycopy(content, 0, expected, 0, content.length);
+        expected[content.length] = 'x';
+
+        assertArrayEquals(expected, gunzip(sink.toByteArray()));
+        assertTrue(sink.size() < content.length / 2);
+    }
+
+    /**
+     * Flushing in the middle of a block, and finishing on a block boundary, result in valid gzip.
+     */
+    @Test
+    public void testFlushAndBlockBoundary() throws Exception {
+        byte[] content = content(BLOCK_SIZE * 2);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        try (ParallelGzipOutputStream underTest = newStream(sink)) {
+            underTest.write(content, 0, 100);
+            underTest.flush();
+            underTest.write(content, 100, content.length - 100);
+        }
+
+        assertArrayEquals(content, gunzip(sink.toByteArray()));
+    }
+
+    /**
+     * An empty stream is a valid, empty gzip member.
+     */
+    @Test
+    public void testEmpty() throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        newStream(sink).close();
+
+        assertEquals(0, gunzip(sink.toByteArray()).length);
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterClose() throws Exception {
+        ParallelGzipOutputStream underTest = newStream(new ByteArrayOutputStream());
+        underTest.close();
+        underTest.write(1);
+    }
+
+    /**
+     * Closing a stream that fails before its blocks are deflated returns the blocks whose deflation was cancelled to
+     * the pool.
+     */
+    @Test
+    public void testCloseReleasesCancelledBlocks() throws Exception {
+        // a block size of its own, so the shared pool of the size is not used by other tests
+        int blockSize = BLOCK_SIZE + 17;
+        ChunkPool pool = ChunkPool.shared(blockSize);
+        int retained = pool.getRetained();
+
+        // the deflating thread is busy until the stream is closed, so no block is deflated
+        CountDownLatch closed = new CountDownLatch(1);
+        ExecutorService busy = Executors.newSingleThreadExecutor();
+        busy.submit(() -> {
+            closed.await();
+            return null;
+        });
+
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Expected");
+            }
+        };
+
+        ParallelGzipOutputStream underTest = new ParallelGzipOutputStream(failing, Deflater.DEFAULT_COMPRESSION, busy,
+                8, blockSize);
+        try {
+            underTest.write(new byte[3 * blockSize]);
+            underTest.close();
+            fail("Expected the underlying stream to fail");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            closed.countDown();
+            busy.shutdownNow();
+        }
+
+        assertEquals(retained + 3, pool.getRetained());
+    }
+
+    private ParallelGzipOutputStream newStream(ByteArrayOutputStream sink) {
+        return new ParallelGzipOutputStream(sink, Deflater.DEFAULT_COMPRESSION, executor, 2, BLOCK_SIZE);
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    /**
+     * Compressible content: random words from a small vocabulary.
+     */
+    private static byte[] content(int length) {
+        String[] words = { "deposit ", "submission ", "manuscript ", "repository ", "package ", "nihms " };
+        Random random = new Random(42);
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; ) {
+            byte[] word = words[random.nextInt(words.length)].getBytes();
+            int n = Math.min(word.length, length - i);
+            System.arraycopy(word, 0, content, i, n);
+            i += n;
+        }
+        return content;
+    }
+
+}
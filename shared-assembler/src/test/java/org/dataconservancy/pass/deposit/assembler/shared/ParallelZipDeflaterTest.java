@@ -0,0 +1,196 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ParallelZipDeflaterTest {
+
+    private static final int ENTRIES = 8;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Entries compressed in parallel are written to the package in the order they were added, stored or deflated as
+     * requested, and read back intact.
+     */
+    @Test
+    public void testEntriesGatheredInOrder() throws Exception {
+        byte[][] contents = new byte[ENTRIES][];
+        Random random = new Random(42);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(sink);
+             ParallelZipDeflater underTest = new ParallelZipDeflater(zipOut, Deflater.BEST_SPEED, executor, 2)) {
+            for (int i = 0; i < ENTRIES; i++) {
+                contents[i] = new byte[1024 * (i + 1)];
+                if (i % 2 == 0) {
+                    random.nextBytes(contents[i]);
+                }
+                underTest.addEntry(new ZipArchiveEntry("entry-" + i), new ByteArrayInputStream(contents[i]),
+                        i % 2 == 0);
+            }
+            underTest.finish();
+        }
+
+        try (ZipArchiveInputStream zipIn = new ZipArchiveInputStream(new ByteArrayInputStream(sink.toByteArray()))) {
+            for (int i = 0; i < ENTRIES; i++) {
+                ZipArchiveEntry entry = zipIn.getNextZipEntry();
+                assertEquals("entry-" + i, entry.getName());
+                assertEquals(i % 2 == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED, entry.getMethod());
+                assertArrayEquals(contents[i], IOUtils.toByteArray(zipIn));
+            }
+            assertNull(zipIn.getNextZipEntry());
+        }
+    }
+
+    /**
+     * Closing the deflater before entries are compressed closes their content.
+     */
+    @Test
+    public void testCloseAbandonsEntries() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            executor.execute(() -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        AtomicBoolean closed = new AtomicBoolean(false);
+        InputStream content = new FilterInputStream(new ByteArrayInputStream(new byte[16])) {
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+                super.close();
+            }
+        };
+
+        try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(new ByteArrayOutputStream());
+             ParallelZipDeflater underTest = new ParallelZipDeflater(zipOut, Deflater.BEST_SPEED, executor, 2)) {
+            underTest.addEntry(new ZipArchiveEntry("entry"), content, false);
+        } finally {
+            blocked.countDown();
+        }
+
+        assertTrue(closed.get());
+    }
+
+    /**
+     * Closing the deflater interrupts entries being compressed, and waits for them to stop reading their content.
+     */
+    @Test
+    public void testCloseWaitsForRunningEntries() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        InputStream content = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    Thread.sleep(60000);
+                    return -1;
+                } catch (InterruptedException e) {
+                    // take a moment to stop, as a slow read would
+                    long stop = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+                    while (System.nanoTime() < stop) {
+                        Thread.yield();
+                    }
+                    stopped.set(true);
+                    throw new InterruptedIOException("Interrupted");
+                }
+            }
+        };
+
+        try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(new ByteArrayOutputStream());
+             ParallelZipDeflater underTest = new ParallelZipDeflater(zipOut, Deflater.BEST_SPEED, executor, 2)) {
+            underTest.addEntry(new ZipArchiveEntry("entry"), content, false);
+            assertTrue("Entry was not compressed", reading.await(10, TimeUnit.SECONDS));
+        }
+
+        assertTrue("Entry was reading its content after the deflater was closed", stopped.get());
+    }
+
+    /**
+     * An entry stored on the calling thread is a true stored entry, carrying its CRC, even when the package is
+     * streamed.
+     */
+    @Test
+    public void testPutStoredEntry() throws Exception {
+        byte[] content = new byte[100 * 1024];
+        new Random(42).nextBytes(content);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(sink)) {
+            ParallelZipDeflater.putStoredEntry(zipOut, new ZipArchiveEntry("stored"),
+                    new ByteArrayInputStream(content));
+        }
+
+        try (ZipArchiveInputStream zipIn = new ZipArchiveInputStream(new ByteArrayInputStream(sink.toByteArray()))) {
+            ZipArchiveEntry entry = zipIn.getNextZipEntry();
+            assertEquals("stored", entry.getName());
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertEquals(crc.getValue(), entry.getCrc());
+            assertArrayEquals(content, IOUtils.toByteArray(zipIn));
+        }
+    }
+
+}
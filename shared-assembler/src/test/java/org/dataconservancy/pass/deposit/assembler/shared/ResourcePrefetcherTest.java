@@ -0,0 +1,294 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ResourcePrefetcherTest {
+
+    private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    private ChunkPool pool = new ChunkPool(1024, 16);
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Resources are returned in the order supplied, with their complete content, even when resources retrieved later
+     * complete first.  Resources exceeding the byte budget are retrieved as they are read, and all memory is released
+     * once the resources are read.
+     */
+    @Test
+    public void testOrderAndContent() throws Exception {
+        List<byte[]> contents = new ArrayList<>();
+        List<DepositFileResource> resources = new ArrayList<>();
+        Random random = new Random(0x5eed);
+        for (int i = 0; i < 10; i++) {
+            byte[] content = new byte[random.nextInt(8 * 1024)];
+            random.nextBytes(content);
+            contents.add(content);
+            // earlier resources are slower to retrieve
+            resources.add(resource("file-" + i, content, (10 - i) * 5));
+        }
+
+        ResourcePrefetcher underTest = new ResourcePrefetcher(resources, 4, 4 * 1024, executor, pool);
+
+        try {
+            for (int i = 0; i < resources.size(); i++) {
+                assertTrue(underTest.hasNext());
+                ResourcePrefetcher.PrefetchedResource prefetched = underTest.next();
+                assertSame(resources.get(i), prefetched.getResource());
+                assertEquals(contents.get(i).length, prefetched.getLength());
+                try (InputStream in = prefetched.getInputStream()) {
+                    assertArrayEquals(contents.get(i), IOUtils.toByteArray(in));
+                }
+            }
+        } finally {
+            underTest.close();
+        }
+
+        assertEquals(0, underTest.getRetrievedBytes());
+    }
+
+    /**
+     * A resource is returned as soon as its first bytes are retrieved, so the writer starts archiving a large resource
+     * before it has been retrieved in full, and memory held by the resource stays bounded while it is read.
+     */
+    @Test
+    public void testHeadStreamedBeforeRetrieved() throws Exception {
+        byte[] content = new byte[64 * 1024];
+        new Random(0x5eed).nextBytes(content);
+        CountDownLatch firstRead = new CountDownLatch(1);
+        List<DepositFileResource> resources = new ArrayList<>();
+        resources.add(new DepositFileResource(depositFile("large"), new ByteArrayResource(content) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return new FilterInputStream(super.getInputStream()) {
+                    private int served = 0;
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        if (served >= 1024 && !await(firstRead)) {
+                            throw new IOException("Resource was retrieved in full before it was read");
+                        }
+                        int read = super.read(b, off, Math.min(len, 1024));
+                        served += Math.max(read, 0);
+                        return read;
+                    }
+                };
+            }
+        }));
+
+        try (ResourcePrefetcher underTest = new ResourcePrefetcher(resources, 2, 4 * 1024, executor, pool)) {
+            ResourcePrefetcher.PrefetchedResource prefetched = underTest.next();
+            assertEquals(content.length, prefetched.getLength());
+            try (InputStream in = prefetched.getInputStream()) {
+                byte[] read = new byte[content.length];
+                read[0] = (byte) in.read();
+                firstRead.countDown();
+                IOUtils.readFully(in, read, 1, read.length - 1);
+                assertArrayEquals(content, read);
+                assertEquals(-1, in.read());
+                assertTrue(underTest.getRetrievedBytes() <= ResourcePrefetcher.HEAD_WINDOW * 1024);
+            }
+        }
+    }
+
+    /**
+     * No more than {@code depth} resources beyond the one being consumed are retrieved.
+     */
+    @Test
+    public void testDepth() throws Exception {
+        AtomicInteger opened = new AtomicInteger(0);
+        List<DepositFileResource> resources = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            resources.add(new DepositFileResource(depositFile("file-" + i), new ByteArrayResource(new byte[10]) {
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    opened.incrementAndGet();
+                    return super.getInputStream();
+                }
+            }));
+        }
+
+        try (ResourcePrefetcher underTest = new ResourcePrefetcher(resources, 2, 1024 * 1024, executor, pool)) {
+            underTest.next().getInputStream().close();
+            Thread.sleep(100);
+            assertEquals(4, opened.get());
+        }
+    }
+
+    /**
+     * An exception retrieving a resource is thrown when that resource is reached.
+     */
+    @Test
+    public void testRetrievalFailure() throws Exception {
+        List<DepositFileResource> resources = new ArrayList<>();
+        resources.add(resource("ok", new byte[10], 0));
+        resources.add(new DepositFileResource(depositFile("fails"), new ByteArrayResource(new byte[10]) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                throw new RuntimeException("Expected exception");
+            }
+        }));
+
+        try (ResourcePrefetcher underTest = new ResourcePrefetcher(resources, 2, 1024, executor, pool)) {
+            underTest.next().getInputStream().close();
+            try {
+                underTest.next();
+                fail("Expected an IOException");
+            } catch (IOException e) {
+                assertEquals("Expected exception", e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * A depth of zero opens each resource as it is returned.
+     */
+    @Test
+    public void testNoPrefetch() throws Exception {
+        byte[] content = new byte[100];
+        List<DepositFileResource> resources = new ArrayList<>();
+        resources.add(resource("file", content, 0));
+
+        try (ResourcePrefetcher underTest = new ResourcePrefetcher(resources, 0, 0, executor, pool)) {
+            ResourcePrefetcher.PrefetchedResource prefetched = underTest.next();
+            assertEquals(100, prefetched.getLength());
+            try (InputStream in = prefetched.getInputStream()) {
+                assertArrayEquals(content, IOUtils.toByteArray(in));
+            }
+        }
+    }
+
+    /**
+     * Resources on the local filesystem are opened as channels when they are returned, rather than prefetched, while
+     * the resources that follow them are prefetched as usual.
+     */
+    @Test
+    public void testLocalFileNotPrefetched() throws Exception {
+        byte[] content = new byte[8 * 1024];
+        new Random(0x5eed).nextBytes(content);
+        Path file = Files.createTempFile("prefetch-", ".bin");
+        Files.write(file, content);
+
+        List<DepositFileResource> resources = new ArrayList<>();
+        resources.add(new DepositFileResource(depositFile("local"), new FileSystemResource(file.toFile())));
+        resources.add(resource("remote", new byte[10], 0));
+
+        try (ResourcePrefetcher underTest = new ResourcePrefetcher(resources, 2, 1024 * 1024, executor, pool)) {
+            ResourcePrefetcher.PrefetchedResource local = underTest.next();
+            assertNotNull(local.getChannel());
+            assertEquals(content.length, local.getLength());
+            try (InputStream in = local.getInputStream()) {
+                assertArrayEquals(content, IOUtils.toByteArray(in));
+            }
+            assertTrue(!local.getChannel().isOpen());
+
+            ResourcePrefetcher.PrefetchedResource remote = underTest.next();
+            assertNull(remote.getChannel());
+            remote.getInputStream().close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * The length of a resource that is not prefetched is taken from its DepositFile, when declared, rather than
+     * obtained from the resource.
+     */
+    @Test
+    public void testDeclaredLength() throws Exception {
+        DepositFile df = depositFile("declared");
+        df.setSize(10);
+        List<DepositFileResource> resources = new ArrayList<>();
+        resources.add(new DepositFileResource(df, new ByteArrayResource(new byte[10]) {
+            @Override
+            public long contentLength() {
+                throw new RuntimeException("Unexpected request for the length of the resource");
+            }
+        }));
+
+        try (ResourcePrefetcher underTest = new ResourcePrefetcher(resources, 0, 0, executor, pool)) {
+            ResourcePrefetcher.PrefetchedResource prefetched = underTest.next();
+            assertEquals(10, prefetched.getLength());
+            prefetched.getInputStream().close();
+        }
+    }
+
+    private static DepositFileResource resource(String name, byte[] content, long latencyMs) {
+        return new DepositFileResource(depositFile(name), new ByteArrayResource(content) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getInputStream();
+            }
+        });
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static DepositFile depositFile(String name) {
+        DepositFile df = new DepositFile();
+        df.setName(name);
+        df.setLocation("/" + name);
+        return df;
+    }
+
+}
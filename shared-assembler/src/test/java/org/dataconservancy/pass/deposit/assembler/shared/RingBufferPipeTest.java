@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class RingBufferPipeTest {
+
+    private ChunkPool pool = new ChunkPool(1024, 8);
+
+    /**
+     * Bytes written to the pipe by one thread are read, in order and in their entirety, by another.  The content is
+     * much larger than the capacity of the pipe, so the writer must block while the reader catches up.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] expected = new byte[1024 * 1024 + 17];
+        new Random(0x5eed).nextBytes(expected);
+
+        RingBufferPipe underTest = new RingBufferPipe(pool, 4);
+
+        Thread writer = new Thread(() -> {
+            try (OutputStream out = underTest.getOutputStream()) {
+                int off = 0;
+                // mix single byte writes with odd-sized block writes
+                out.write(expected[off++]);
+                while (off < expected.length) {
+                    int len = Math.min(777, expected.length - off);
+                    out.write(expected, off, len);
+                    off += len;
+                }
+            } catch (IOException e) {
+                underTest.setWriterEx(e);
+            }
+        });
+        writer.start();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (InputStream in = underTest.getInputStream()) {
+            IOUtils.copy(in, actual);
+        }
+
+        writer.join();
+        assertArrayEquals(expected, actual.toByteArray());
+        assertTrue(pool.getRetained() > 0);
+    }
+
+    /**
+     * An exception set by the writer is re-thrown to the reader, with the original exception as its cause.
+     */
+    @Test
+    public void testWriterExceptionPropagatesToReader() throws Exception {
+        RingBufferPipe underTest = new RingBufferPipe(pool, 4);
+        RuntimeException expected = new RuntimeException("Expected exception");
+
+        Thread writer = new Thread(() -> {
+            try {
+                underTest.getOutputStream().write(new byte[10]);
+                underTest.getOutputStream().flush();
+            } catch (IOException e) {
+                // ignore
+            }
+            underTest.setWriterEx(expected);
+        });
+        writer.start();
+
+        try (InputStream in = underTest.getInputStream()) {
+            IOUtils.copy(in, new ByteArrayOutputStream());
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertSame(expected, e.getCause());
+        }
+
+        writer.join();
+        assertSame(expected, underTest.getWriterEx());
+    }
+
+    /**
+     * A writer blocked on a full pipe is released with an exception when the reader closes the pipe.
+     */
+    @Test
+    public void testReaderCloseReleasesWriter() throws Exception {
+        RingBufferPipe underTest = new RingBufferPipe(pool, 2);
+        AtomicReference<IOException> writerEx = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread writer = new Thread(() -> {
+            try {
+                byte[] chunk = new byte[pool.getChunkSize()];
+                while (true) {
+                    underTest.getOutputStream().write(chunk);
+                }
+            } catch (IOException e) {
+                writerEx.set(e);
+            } finally {
+                done.countDown();
+            }
+        });
+        writer.start();
+
+        InputStream in = underTest.getInputStream();
+        assertEquals(0, in.read());
+        in.close();
+
+        assertTrue("Writer was not released by the reader closing the pipe", done.await(10, TimeUnit.SECONDS));
+        assertNotNull(writerEx.get());
+    }
+
+    /**
+     * Every chunk acquired by the writer is returned to the pool exactly once when the reader closes the pipe while
+     * the writer is publishing chunks, including a chunk published after the reader has drained the ring.
+     */
+    @Test
+    public void testReaderCloseReleasesEveryChunk() throws Exception {
+        AtomicInteger acquired = new AtomicInteger();
+        AtomicInteger released = new AtomicInteger();
+        ChunkPool countingPool = new ChunkPool(1024, 64) {
+            @Override
+            public byte[] acquire() {
+                acquired.incrementAndGet();
+                return super.acquire();
+            }
+
+            @Override
+            public void release(byte[] chunk) {
+                released.incrementAndGet();
+                super.release(chunk);
+            }
+        };
+
+        for (int i = 0; i < 200; i++) {
+            RingBufferPipe underTest = new RingBufferPipe(countingPool, 2);
+            Thread writer = new Thread(() -> {
+                byte[] chunk = new byte[countingPool.getChunkSize()];
+                try (OutputStream out = underTest.getOutputStream()) {
+                    while (true) {
+                        out.write(chunk);
+                    }
+                } catch (IOException e) {
+                    // expected, the reader closed the pipe
+                }
+            });
+            writer.start();
+
+            InputStream in = underTest.getInputStream();
+            in.read(new byte[i % 3 * 1024 + 1]);
+            in.close();
+
+            writer.join(10000);
+            assertEquals("Chunks were not returned to the pool", acquired.get(), released.get());
+        }
+    }
+
+    /**
+     * The capacity of the ring is rounded up to the next power of two.
+     */
+    @Test
+    public void testCapacityIsPowerOfTwo() throws Exception {
+        assertEquals(1, new RingBufferPipe(pool, 1).capacity());
+        assertEquals(8, new RingBufferPipe(pool, 5).capacity());
+        assertEquals(16, new RingBufferPipe(pool, 16).capacity());
+    }
+
+}
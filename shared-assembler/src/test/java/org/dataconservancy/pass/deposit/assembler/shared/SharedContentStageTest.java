@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class SharedContentStageTest {
+
+    private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private String submissionId;
+
+    private byte[] content;
+
+    private AtomicInteger opened;
+
+    private ByteArrayResource origin;
+
+    @Before
+    public void setUp() throws Exception {
+        submissionId = "http://example.org/submission/" + UUID.randomUUID();
+        content = new byte[256 * 1024];
+        new Random(0x5eed).nextBytes(content);
+        opened = new AtomicInteger(0);
+        origin = new ByteArrayResource(content) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                opened.incrementAndGet();
+                return super.getInputStream();
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The origin is read once, by the first consumer, while a second consumer concurrently reads the staged bytes.
+     * Both consumers receive the complete content, size and checksums.
+     */
+    @Test
+    public void testOriginReadOnce() throws Exception {
+        SharedContentStage underTest = SharedContentStage.open(submissionId, 2, null);
+
+        StagedResource first = new StagedResource(underTest, "/file", origin);
+        StagedResource second = new StagedResource(underTest, "/file", origin);
+
+        InputStream leader = first.getInputStream();
+        Future<byte[]> follower = executor.submit(() -> {
+            try (InputStream in = second.getInputStream()) {
+                return IOUtils.toByteArray(in);
+            }
+        });
+
+        byte[] buf = new byte[1024];
+        try (InputStream in = leader) {
+            while (in.read(buf) != -1) {
+                Thread.yield();
+            }
+        }
+
+        assertArrayEquals(content, follower.get());
+        assertEquals(1, opened.get());
+
+        assertCharacterization(first.characterization());
+        assertCharacterization(second.characterization());
+
+        underTest.release();
+        underTest.release();
+    }
+
+    /**
+     * If the first consumer abandons the file, the other consumer continues reading from the origin, and its size and
+     * checksums account for the bytes read before the file was abandoned.
+     */
+    @Test
+    public void testAbandonedFallsBackToOrigin() throws Exception {
+        SharedContentStage underTest = SharedContentStage.open(submissionId, 2, null);
+
+        StagedResource first = new StagedResource(underTest, "/file", origin);
+        StagedResource second = new StagedResource(underTest, "/file", origin);
+
+        InputStream leader = first.getInputStream();
+        IOUtils.readFully(leader, new byte[1000]);
+
+        InputStream follower = second.getInputStream();
+        byte[] prefix = new byte[500];
+        IOUtils.readFully(follower, prefix);
+
+        leader.close();
+        assertNull(first.characterization());
+
+        byte[] remainder = IOUtils.toByteArray(follower);
+        follower.close();
+
+        byte[] actual = new byte[prefix.length + remainder.length];
+        System.arraycopy(prefix, 0, actual, 0, prefix.length);
+        System.arraycopy(remainder, 0, actual, prefix.length, remainder.length);
+        assertArrayEquals(content, actual);
+        assertEquals(2, opened.get());
+        assertCharacterization(second.characterization());
+
+        underTest.release(2);
+    }
+
+    /**
+     * The checksums of a staged file are computed with the algorithms the stage is opened with, once each, in the
+     * order they are first supplied.
+     */
+    @Test
+    public void testConfiguredAlgorithms() throws Exception {
+        SharedContentStage underTest = SharedContentStage.open(submissionId, 1, null,
+                Arrays.asList(PackageStream.Algo.SHA_512, PackageStream.Algo.MD5, PackageStream.Algo.SHA_512));
+        StagedResource resource = new StagedResource(underTest, "/file", origin);
+
+        try (InputStream in = resource.getInputStream()) {
+            IOUtils.toByteArray(in);
+        }
+
+        List<PackageStream.Checksum> checksums = resource.characterization().getChecksums();
+        assertEquals(2, checksums.size());
+        assertEquals(PackageStream.Algo.SHA_512, checksums.get(0).algorithm());
+        assertEquals(DigestUtils.sha512Hex(content), checksums.get(0).asHex());
+        assertEquals(PackageStream.Algo.MD5, checksums.get(1).algorithm());
+        assertEquals(DigestUtils.md5Hex(content), checksums.get(1).asHex());
+
+        underTest.release();
+    }
+
+    /**
+     * The staged files are removed when every consumer has released the stage.
+     */
+    @Test
+    public void testRelease() throws Exception {
+        SharedContentStage underTest = SharedContentStage.open(submissionId, 3, null);
+        assertEquals(3, underTest.getConsumers());
+
+        try (InputStream in = new StagedResource(underTest, "/file", origin).getInputStream()) {
+            IOUtils.toByteArray(in);
+        }
+
+        underTest.release(2);
+        assertEquals(1, underTest.getConsumers());
+        assertEquals(1, Files.list(underTest.getDirectory()).count());
+
+        underTest.release();
+        assertFalse(Files.exists(underTest.getDirectory()));
+
+        // Releasing a removed stage again is harmless
+        underTest.release();
+    }
+
+    private void assertCharacterization(SharedContentStage.StagedCharacterization characterization) {
+        assertEquals(content.length, characterization.getLength());
+        Iterator<PackageStream.Checksum> checksums = characterization.getChecksums().iterator();
+        assertEquals(DigestUtils.md5Hex(content), checksums.next().asHex());
+        assertEquals(DigestUtils.sha256Hex(content), checksums.next().asHex());
+    }
+
+}
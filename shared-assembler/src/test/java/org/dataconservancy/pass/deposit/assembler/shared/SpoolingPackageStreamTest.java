@@ -0,0 +1,348 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class SpoolingPackageStreamTest {
+
+    private byte[] content;
+
+    private AtomicInteger opened;
+
+    private PackageStream delegate;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[256 * 1024 + 3];
+        new Random(0x5eed).nextBytes(content);
+        opened = new AtomicInteger(0);
+
+        SimpleMetadataImpl md = new SimpleMetadataImpl("package.tar.gz");
+        md.setMimeType("application/gzip");
+        md.setArchive(PackageStream.ARCHIVE.TAR);
+        md.setArchived(true);
+
+        delegate = new PackageStream() {
+            @Override
+            public InputStream open() {
+                opened.incrementAndGet();
+                return new ByteArrayInputStream(content);
+            }
+
+            @Override
+            public InputStream open(String packageResource) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Iterator<Resource> resources() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Metadata metadata() {
+                return md;
+            }
+        };
+    }
+
+    /**
+     * The metadata of a spooled package carries the size and checksums of the package, along with the metadata of the
+     * delegate.
+     */
+    @Test
+    public void testMetadataCarriesSizeAndChecksums() throws Exception {
+        try (SpoolingPackageStream underTest = new SpoolingPackageStream(delegate)) {
+            PackageStream.Metadata md = underTest.metadata();
+
+            assertEquals("package.tar.gz", md.name());
+            assertEquals("application/gzip", md.mimeType());
+            assertEquals(PackageStream.ARCHIVE.TAR, md.archive());
+            assertEquals(content.length, md.sizeBytes());
+            assertEquals(2, md.checksums().size());
+
+            Iterator<PackageStream.Checksum> checksums = md.checksums().iterator();
+
+            PackageStream.Checksum md5 = checksums.next();
+            assertEquals(PackageStream.Algo.MD5, md5.algorithm());
+            assertEquals(DigestUtils.md5Hex(content), md5.asHex());
+
+            PackageStream.Checksum sha256 = checksums.next();
+            assertEquals(PackageStream.Algo.SHA_256, sha256.algorithm());
+            assertEquals(DigestUtils.sha256Hex(content), sha256.asHex());
+        }
+    }
+
+    /**
+     * A spooled package may be opened many times, and at an offset, without re-assembling the delegate.
+     */
+    @Test
+    public void testReopen() throws Exception {
+        try (SpoolingPackageStream underTest = new SpoolingPackageStream(delegate)) {
+            try (InputStream in = underTest.open()) {
+                assertArrayEquals(content, IOUtils.toByteArray(in));
+            }
+
+            try (InputStream in = underTest.open()) {
+                assertArrayEquals(content, IOUtils.toByteArray(in));
+            }
+
+            int offset = 1024;
+            try (InputStream in = underTest.open(offset)) {
+                byte[] remainder = IOUtils.toByteArray(in);
+                assertEquals(content.length - offset, remainder.length);
+                assertEquals(content[offset], remainder[0]);
+            }
+
+            assertEquals(1, opened.get());
+        }
+    }
+
+    /**
+     * Closing the stream removes the spool file.
+     */
+    @Test
+    public void testCloseRemovesSpoolFile() throws Exception {
+        SpoolingPackageStream underTest = new SpoolingPackageStream(delegate);
+        assertFalse(underTest.isSpooled());
+
+        underTest.spool();
+        Path spoolFile = underTest.getSpoolFile();
+        assertTrue(Files.exists(spoolFile));
+        assertEquals(content.length, Files.size(spoolFile));
+
+        underTest.close();
+        assertFalse(Files.exists(spoolFile));
+    }
+
+    /**
+     * Each resource of a spooled zip package, whether deflated or stored, may be opened individually, and the resources
+     * of the package carry the checksums recorded when the package was assembled.
+     */
+    @Test
+    public void testZipResources() throws Exception {
+        byte[] text = "Lorem ipsum dolor sit amet. ".concat(new String(new char[4096]).replace('\0', 'x'))
+                .getBytes("UTF-8");
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zip)) {
+            ZipArchiveEntry deflated = new ZipArchiveEntry("data/manuscript.txt");
+            deflated.setMethod(ZipEntry.DEFLATED);
+            put(out, deflated, text);
+
+            out.putArchiveEntry(new ZipArchiveEntry("data/"));
+            out.closeArchiveEntry();
+
+            ZipArchiveEntry stored = new ZipArchiveEntry("data/figure.bin");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(content.length);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            stored.setCrc(crc.getValue());
+            put(out, stored, content);
+
+            put(out, new ZipArchiveEntry("mets.xml"), "<mets/>".getBytes("UTF-8"));
+        }
+
+        SimpleMetadataImpl md = new SimpleMetadataImpl("package.zip");
+        md.setArchive(PackageStream.ARCHIVE.ZIP);
+        md.setArchived(true);
+
+        try (SpoolingPackageStream underTest = new SpoolingPackageStream(
+                archive(zip.toByteArray(), md, resource("data/manuscript.txt", "text/plain", text)))) {
+            assertResources(underTest, text);
+        }
+    }
+
+    /**
+     * Each resource of a spooled tar.gz package may be opened individually.
+     */
+    @Test
+    public void testTarGzResources() throws Exception {
+        byte[] text = "Lorem ipsum dolor sit amet.".getBytes("UTF-8");
+
+        ByteArrayOutputStream tarGz = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(new GzipCompressorOutputStream(tarGz))) {
+            out.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
+            TarArchiveEntry manuscript = new TarArchiveEntry("data/manuscript.txt");
+            manuscript.setSize(text.length);
+            put(out, manuscript, text);
+
+            // a name longer than 100 characters is preceded by an additional header
+            String longName = "data/" + new String(new char[120]).replace('\0', 'f') + ".bin";
+            TarArchiveEntry figure = new TarArchiveEntry(longName);
+            figure.setSize(content.length);
+            put(out, figure, content);
+
+            TarArchiveEntry mets = new TarArchiveEntry("mets.xml");
+            mets.setSize(7);
+            put(out, mets, "<mets/>".getBytes("UTF-8"));
+        }
+
+        SimpleMetadataImpl md = new SimpleMetadataImpl("package.tar.gz");
+        md.setArchive(PackageStream.ARCHIVE.TAR);
+        md.setArchived(true);
+        md.setCompression(PackageStream.COMPRESSION.GZIP);
+        md.setCompressed(true);
+
+        try (SpoolingPackageStream underTest = new SpoolingPackageStream(
+                archive(tarGz.toByteArray(), md, resource("data/manuscript.txt", "text/plain", text)))) {
+            PackageStream.Resource manuscript = underTest.resources().next();
+            assertEquals("data/manuscript.txt", manuscript.name());
+            assertEquals(DigestUtils.md5Hex(text), manuscript.checksum().asHex());
+
+            String longName = "data/" + new String(new char[120]).replace('\0', 'f') + ".bin";
+            try (InputStream in = underTest.open(longName)) {
+                assertArrayEquals(content, IOUtils.toByteArray(in));
+            }
+            try (InputStream in = underTest.open("mets.xml")) {
+                assertEquals("<mets/>", IOUtils.toString(in, "UTF-8"));
+            }
+            try (InputStream in = underTest.open("data/manuscript.txt")) {
+                assertArrayEquals(text, IOUtils.toByteArray(in));
+            }
+            assertEquals(1, opened.get());
+        }
+    }
+
+    /**
+     * Opening a resource that is not in the package fails.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testOpenMissingResource() throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zip)) {
+            put(out, new ZipArchiveEntry("mets.xml"), "<mets/>".getBytes("UTF-8"));
+        }
+
+        SimpleMetadataImpl md = new SimpleMetadataImpl("package.zip");
+        md.setArchive(PackageStream.ARCHIVE.ZIP);
+
+        try (SpoolingPackageStream underTest = new SpoolingPackageStream(archive(zip.toByteArray(), md))) {
+            underTest.open("data/missing.txt");
+        }
+    }
+
+    private void assertResources(SpoolingPackageStream underTest, byte[] text) throws IOException {
+        List<PackageStream.Resource> resources = new ArrayList<>();
+        underTest.resources().forEachRemaining(resources::add);
+
+        assertEquals(3, resources.size());
+        assertEquals("data/manuscript.txt", resources.get(0).name());
+        assertEquals(text.length, resources.get(0).sizeBytes());
+        assertEquals("text/plain", resources.get(0).mimeType());
+        assertEquals(DigestUtils.md5Hex(text), resources.get(0).checksum().asHex());
+        assertEquals("data/figure.bin", resources.get(1).name());
+        assertEquals(content.length, resources.get(1).sizeBytes());
+        assertNull(resources.get(1).mimeType());
+        assertEquals("mets.xml", resources.get(2).name());
+
+        PackageIndex.Entry manuscript = underTest.index().entry("data/manuscript.txt");
+        assertEquals(ZipEntry.DEFLATED, manuscript.method());
+        assertTrue(manuscript.compressedSize() < manuscript.size());
+
+        try (InputStream in = underTest.open("mets.xml")) {
+            assertEquals("<mets/>", IOUtils.toString(in, "UTF-8"));
+        }
+        try (InputStream in = underTest.open("data/figure.bin")) {
+            assertArrayEquals(content, IOUtils.toByteArray(in));
+        }
+        try (InputStream in = underTest.open("data/manuscript.txt")) {
+            assertArrayEquals(text, IOUtils.toByteArray(in));
+        }
+    }
+
+    private static void put(ArchiveOutputStream out, ArchiveEntry entry, byte[] bytes) throws IOException {
+        out.putArchiveEntry(entry);
+        out.write(bytes);
+        out.closeArchiveEntry();
+    }
+
+    private static PackageStream.Resource resource(String name, String mimeType, byte[] bytes) {
+        byte[] md5 = DigestUtils.md5(bytes);
+        return new ResourceBuilderImpl()
+                .name(name)
+                .mimeType(mimeType)
+                .sizeBytes(bytes.length)
+                .checksum(new ChecksumImpl(PackageStream.Algo.MD5, md5, null, DigestUtils.md5Hex(bytes)))
+                .build();
+    }
+
+    /**
+     * A delegate over the supplied package bytes, which recorded the supplied resources when it was assembled.
+     */
+    private PackageStream archive(byte[] bytes, PackageStream.Metadata md, PackageStream.Resource... assembled) {
+        return new PackageStream() {
+            @Override
+            public InputStream open() {
+                opened.incrementAndGet();
+                return new ByteArrayInputStream(bytes);
+            }
+
+            @Override
+            public InputStream open(String packageResource) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Iterator<Resource> resources() {
+                return Arrays.asList(assembled).iterator();
+            }
+
+            @Override
+            public Metadata metadata() {
+                return md;
+            }
+        };
+    }
+
+}
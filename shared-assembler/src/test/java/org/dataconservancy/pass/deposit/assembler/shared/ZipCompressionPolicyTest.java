@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.assembler.shared;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ZipCompressionPolicyTest {
+
+    private ZipCompressionPolicy underTest = new ZipCompressionPolicy();
+
+    /**
+     * Already-compressed content is stored by default; other content, and content of an unknown type, is deflated.
+     */
+    @Test
+    public void testDefaultStoredTypes() throws Exception {
+        assertTrue(underTest.isStored("application/pdf"));
+        assertTrue(underTest.isStored("IMAGE/JPEG"));
+        assertTrue(underTest.isStored("application/zip; charset=binary"));
+        assertTrue(underTest.isStored("video/mp4"));
+        assertTrue(underTest.isStored(
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document"));
+
+        assertFalse(underTest.isStored("text/plain"));
+        assertFalse(underTest.isStored("image/tiff"));
+        assertFalse(underTest.isStored("application/xml"));
+        assertFalse(underTest.isStored(null));
+    }
+
+    /**
+     * Stored types may be configured, including wildcards, and {@code none} deflates every entry.
+     */
+    @Test
+    public void testConfiguredStoredTypes() throws Exception {
+        underTest.setStoredTypes(ZipCompressionPolicy.parseTypes(" Image/* , application/x-foo,,"));
+        assertEquals(Arrays.asList("image/*", "application/x-foo"), underTest.getStoredTypes());
+        assertTrue(underTest.isStored("image/tiff"));
+        assertTrue(underTest.isStored("application/x-foo"));
+        assertFalse(underTest.isStored("application/pdf"));
+
+        underTest.setStoredTypes(ZipCompressionPolicy.parseTypes("none"));
+        assertFalse(underTest.isStored("image/jpeg"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLevel() throws Exception {
+        underTest.setLevel(10);
+    }
+
+}
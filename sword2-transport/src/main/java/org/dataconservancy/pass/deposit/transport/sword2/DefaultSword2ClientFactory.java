@@ -21,19 +21,35 @@ import org.swordapp.client.ClientConfiguration;
 import org.swordapp.client.SWORDClient;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Answers a long-lived {@link SWORDClient} for each repository, identified by its
+ * {@link Sword2TransportHints#SWORD_SERVICE_DOC_URL service document URL} and
+ * {@link Sword2TransportHints#SWORD_CLIENT_USER_AGENT user agent}.  Deposits to the same repository share a client,
+ * rather than each creating (and initializing) a client of their own.  A {@code SWORDClient} carries no
+ * authentication state, so a client may be shared by sessions authenticating with different credentials.
  *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
 @Component
 public class DefaultSword2ClientFactory implements Sword2ClientFactory {
 
+    private static final String DEFAULT_USER_AGENT = "oapass/SWORDv2";
+
+    private final Map<String, SWORDClient> clients = new ConcurrentHashMap<>();
+
     @Override
     public SWORDClient newInstance(Map<String, String> hints) {
+        String userAgent = hints.getOrDefault(Sword2TransportHints.SWORD_CLIENT_USER_AGENT, DEFAULT_USER_AGENT);
+        String key = userAgent + "@" + hints.get(Sword2TransportHints.SWORD_SERVICE_DOC_URL);
+
+        return clients.computeIfAbsent(key, ignored -> newClient(userAgent));
+    }
+
+    private static SWORDClient newClient(String userAgent) {
         ClientConfiguration clientConfiguration = new ClientConfiguration();
-        clientConfiguration.setUserAgent(hints.getOrDefault(Sword2TransportHints.SWORD_CLIENT_USER_AGENT,
-                "oapass/SWORDv2"));
+        clientConfiguration.setUserAgent(userAgent);
         clientConfiguration.setReturnDepositReceipt(true);
 
         return new SWORDClient(clientConfiguration);
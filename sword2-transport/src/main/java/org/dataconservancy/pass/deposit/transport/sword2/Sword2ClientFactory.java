@@ -28,10 +28,11 @@ public interface Sword2ClientFactory {
 
     /**
      * Create a new instance of a SWORD v2 client.  The supplied {@code hints} are used by the factory implementation
-     * to optionally configure the client.
+     * to optionally configure the client.  Implementations may answer the same instance for hints identifying the same
+     * repository, so callers must not modify the configuration of the returned client.
      *
      * @param hints used to configure the SWORD client, may be {@code null}
-     * @return a new {@code SWORDClient} instance
+     * @return a {@code SWORDClient} instance
      */
     SWORDClient newInstance(Map<String, String> hints);
 
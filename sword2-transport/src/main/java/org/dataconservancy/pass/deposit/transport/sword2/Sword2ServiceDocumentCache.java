@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.transport.sword2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.swordapp.client.AuthCredentials;
+import org.swordapp.client.ProtocolViolationException;
+import org.swordapp.client.SWORDClient;
+import org.swordapp.client.SWORDClientException;
+import org.swordapp.client.SWORDCollection;
+import org.swordapp.client.ServiceDocument;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the SWORD service documents retrieved by {@link Sword2Transport#open(Map) opened} transport sessions, so
+ * that each deposit does not retrieve and parse the service document before its package is sent.
+ * <p>
+ * Service documents are remembered by their URL and the authentication credentials used to retrieve them (the
+ * collections in a service document may differ for each user), for {@link #setTtlMs(long) ttl-ms} after they were
+ * retrieved.  Only a SHA-256 digest of the credentials is kept, so the cache does not hold passwords in the clear.
+ * Each cached service document carries an index of its collections by URL.  A cached service document is retrieved
+ * again before its TTL elapses if a deposit names a collection that it does not contain (e.g. a collection was added
+ * to the repository).  A {@code ttl-ms} of {@code 0} disables the cache.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@Component
+public class Sword2ServiceDocumentCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Sword2ServiceDocumentCache.class);
+
+    private final Map<String, CachedServiceDocument> serviceDocuments = new ConcurrentHashMap<>();
+
+    private long ttlMs = 300000;
+
+    /**
+     * Answers the service document located at {@code serviceDocUrl}, retrieving it if it is not cached or its TTL
+     * has elapsed.
+     *
+     * @param client the client used to retrieve the service document
+     * @param serviceDocUrl the URL of the service document
+     * @param authCreds the credentials used to retrieve the service document
+     * @return the service document
+     * @throws SWORDClientException if the service document cannot be retrieved
+     * @throws ProtocolViolationException if the service document cannot be parsed
+     */
+    public CachedServiceDocument get(SWORDClient client, String serviceDocUrl, AuthCredentials authCreds)
+            throws SWORDClientException, ProtocolViolationException {
+        String key = key(serviceDocUrl, authCreds);
+        CachedServiceDocument cached = serviceDocuments.get(key);
+        if (cached != null && cached.expiry > System.currentTimeMillis()) {
+            return cached;
+        }
+
+        return retrieve(client, serviceDocUrl, authCreds);
+    }
+
+    /**
+     * Retrieves the service document located at {@code serviceDocUrl}, replacing any cached copy.
+     *
+     * @param client the client used to retrieve the service document
+     * @param serviceDocUrl the URL of the service document
+     * @param authCreds the credentials used to retrieve the service document
+     * @return the service document
+     * @throws SWORDClientException if the service document cannot be retrieved
+     * @throws ProtocolViolationException if the service document cannot be parsed
+     */
+    public CachedServiceDocument retrieve(SWORDClient client, String serviceDocUrl, AuthCredentials authCreds)
+            throws SWORDClientException, ProtocolViolationException {
+        String key = key(serviceDocUrl, authCreds);
+        ServiceDocument serviceDocument = client.getServiceDocument(serviceDocUrl, authCreds);
+        if (serviceDocument == null) {
+            // The SWORD client may answer null, e.g. when the service document is not found
+            serviceDocuments.remove(key);
+            throw new SWORDClientException("SWORD service document '" + serviceDocUrl + "' was not found.");
+        }
+
+        CachedServiceDocument cached = new CachedServiceDocument(serviceDocument,
+                System.currentTimeMillis() + ttlMs);
+        if (ttlMs > 0) {
+            LOG.debug("Caching SWORD service document '{}' for {} ms", serviceDocUrl, ttlMs);
+            serviceDocuments.put(key, cached);
+        }
+
+        return cached;
+    }
+
+    /**
+     * Forgets the service document located at {@code serviceDocUrl}, as retrieved with {@code authCreds}.
+     *
+     * @param serviceDocUrl the URL of the service document
+     * @param authCreds the credentials used to retrieve the service document
+     */
+    public void invalidate(String serviceDocUrl, AuthCredentials authCreds) {
+        serviceDocuments.remove(key(serviceDocUrl, authCreds));
+    }
+
+    public long getTtlMs() {
+        return ttlMs;
+    }
+
+    @Value("${pass.deposit.transport.swordv2.svc-doc-ttl-ms:300000}")
+    public void setTtlMs(long ttlMs) {
+        if (ttlMs < 0) {
+            throw new IllegalArgumentException("Service document cache TTL must not be negative.");
+        }
+        this.ttlMs = ttlMs;
+        if (ttlMs == 0) {
+            serviceDocuments.clear();
+        }
+    }
+
+    /**
+     * Keys a service document by a digest of the credentials used to retrieve it, and its URL.  The credentials are
+     * digested, rather than keyed on the username alone, so a cached service document is not answered to a session
+     * presenting a different password.
+     */
+    private static String key(String serviceDocUrl, AuthCredentials authCreds) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            for (String credential : new String[] { authCreds.getUsername(), authCreds.getPassword(),
+                    authCreds.getOnBehalfOf() }) {
+                sha256.update(String.valueOf(credential).getBytes(StandardCharsets.UTF_8));
+                sha256.update((byte) 0);
+            }
+            return String.format("%064x", new BigInteger(1, sha256.digest())) + "@" + serviceDocUrl;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not supported: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A service document, and its collections indexed by URL.
+     */
+    public static class CachedServiceDocument {
+
+        private final ServiceDocument serviceDocument;
+
+        private final Map<String, SWORDCollection> collections;
+
+        private final long expiry;
+
+        CachedServiceDocument(ServiceDocument serviceDocument, long expiry) {
+            this.serviceDocument = serviceDocument;
+            this.expiry = expiry;
+            this.collections = index(serviceDocument);
+        }
+
+        public ServiceDocument getServiceDocument() {
+            return serviceDocument;
+        }
+
+        /**
+         * @param collectionUrl the URL of a collection
+         * @return the collection, or {@code null} if the service document does not contain the collection
+         */
+        public SWORDCollection getCollection(String collectionUrl) {
+            return collections.get(collectionUrl);
+        }
+
+        /**
+         * Indexes the collections of each workspace in the service document by their URL.  If more than one workspace
+         * contains a collection, the first is indexed.
+         *
+         * @param serviceDocument the service document
+         * @return the collections of the service document, keyed by URL
+         */
+        static Map<String, SWORDCollection> index(ServiceDocument serviceDocument) {
+            Map<String, SWORDCollection> collections = new HashMap<>();
+            if (serviceDocument.getWorkspaces() == null) {
+                return Collections.emptyMap();
+            }
+
+            serviceDocument.getWorkspaces()
+                    .stream()
+                    .flatMap(workspace -> workspace.getCollections().stream())
+                    .forEach(collection -> collections.putIfAbsent(collection.getHref().toString(), collection));
+
+            return Collections.unmodifiableMap(collections);
+        }
+    }
+
+}
@@ -16,16 +16,18 @@
 package org.dataconservancy.pass.deposit.transport.sword2;
 
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.transport.TransferFuture;
 import org.dataconservancy.pass.deposit.transport.Transport;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.swordapp.client.AuthCredentials;
 import org.swordapp.client.ProtocolViolationException;
 import org.swordapp.client.SWORDClient;
 import org.swordapp.client.SWORDClientException;
-import org.swordapp.client.ServiceDocument;
 
 import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static org.dataconservancy.pass.deposit.transport.sword2.Sword2TransportHints.SWORD_SERVICE_DOC_URL;
 
@@ -43,6 +45,14 @@ import static org.dataconservancy.pass.deposit.transport.sword2.Sword2TransportH
  * that is configured with a {@code SWORDClient}, working authentication credentials (potentially acting on behalf of
  * a user), and the {@code ServiceDocument} located at the {@link Sword2TransportHints#SWORD_SERVICE_DOC_URL service
  * document URL}.
+ * <p>
+ * Service documents are retrieved through a {@link Sword2ServiceDocumentCache}, so sessions opened for the same service
+ * document and credentials share a service document until its TTL elapses, rather than each retrieving and parsing it.
+ * </p>
+ * <p>
+ * Sessions opened by the transport perform their deposits on an executor shared by the transport, which performs at
+ * most {@link #setMaxTransfers(int) max-transfers} deposits at once.
+ * </p>
  *
  * Hints accepted by this transport are:
  * <dl>
@@ -74,12 +84,40 @@ public class Sword2Transport implements Transport {
 
     private Sword2ClientFactory clientFactory;
 
-    @Autowired
+    private Sword2ServiceDocumentCache serviceDocumentCache;
+
+    /**
+     * The maximum number of concurrent deposits, unless {@link #setMaxTransfers(int) configured}
+     */
+    static final int DEFAULT_MAX_TRANSFERS = 8;
+
+    /**
+     * Performs the deposits of sessions opened by this transport
+     */
+    private final ThreadPoolExecutor transferExecutor =
+            TransferFuture.newExecutor("Sword-Transfer", DEFAULT_MAX_TRANSFERS);
+
+    /**
+     * Creates a transport that retrieves the service document each time a session is opened.
+     *
+     * @param clientFactory the factory of SWORD clients
+     */
     public Sword2Transport(Sword2ClientFactory clientFactory) {
+        this(clientFactory, uncached());
+    }
+
+    @Autowired
+    public Sword2Transport(Sword2ClientFactory clientFactory, Sword2ServiceDocumentCache serviceDocumentCache) {
         if (clientFactory == null) {
             throw new IllegalArgumentException("SWORD client factory must not be null.");
         }
+
+        if (serviceDocumentCache == null) {
+            throw new IllegalArgumentException("SWORD service document cache must not be null.");
+        }
+
         this.clientFactory = clientFactory;
+        this.serviceDocumentCache = serviceDocumentCache;
     }
 
     /**
@@ -113,7 +151,7 @@ public class Sword2Transport implements Transport {
             throw new IllegalArgumentException(String.format(MISSING_REQUIRED_HINT, TRANSPORT_PASSWORD));
         }
 
-        ServiceDocument serviceDocument = null;
+        Sword2ServiceDocumentCache.CachedServiceDocument serviceDocument = null;
         AuthCredentials authCreds = null;
         try {
             if (hints.containsKey(Sword2TransportHints.SWORD_ON_BEHALF_OF_USER) &&
@@ -125,12 +163,27 @@ public class Sword2Transport implements Transport {
                 authCreds = new AuthCredentials(hints.get(TRANSPORT_USERNAME), hints.get(TRANSPORT_PASSWORD));
             }
 
-            serviceDocument = client.getServiceDocument(serviceDocUrl, authCreds);
+            serviceDocument = serviceDocumentCache.get(client, serviceDocUrl, authCreds);
         } catch (Exception e) {
             throw new RuntimeException("Error reading or parsing SWORD service document '" + serviceDocUrl + "'", e);
         }
 
-        return new Sword2TransportSession(client, serviceDocument, authCreds);
+        return new Sword2TransportSession(client, serviceDocument, authCreds, serviceDocumentCache, serviceDocUrl,
+                transferExecutor);
+    }
+
+    /**
+     * Answers the maximum number of deposits performed at once by sessions opened by this transport.
+     *
+     * @return the maximum number of concurrent deposits
+     */
+    public int getMaxTransfers() {
+        return transferExecutor.getMaximumPoolSize();
+    }
+
+    @Value("${pass.deposit.transport.swordv2.max-transfers:8}")
+    public void setMaxTransfers(int maxTransfers) {
+        TransferFuture.resize(transferExecutor, maxTransfers);
     }
 
     /**
@@ -147,4 +200,10 @@ public class Sword2Transport implements Transport {
 
         return hints.get(SWORD_SERVICE_DOC_URL);
     }
+
+    private static Sword2ServiceDocumentCache uncached() {
+        Sword2ServiceDocumentCache cache = new Sword2ServiceDocumentCache();
+        cache.setTtlMs(0);
+        return cache;
+    }
 }
@@ -16,6 +16,8 @@
 package org.dataconservancy.pass.deposit.transport.sword2;
 
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.transport.TransferFuture;
+import org.dataconservancy.pass.deposit.transport.Transport;
 import org.dataconservancy.pass.deposit.transport.TransportResponse;
 import org.dataconservancy.pass.deposit.transport.TransportSession;
 import org.slf4j.Logger;
@@ -29,9 +31,14 @@ import org.swordapp.client.SWORDCollection;
 import org.swordapp.client.SWORDError;
 import org.swordapp.client.ServiceDocument;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Encapsulates a session with a SWORDv2 endpoint authenticated using the transport hints supplied on {@link
@@ -46,6 +53,11 @@ public class Sword2TransportSession implements TransportSession {
     private static final String SPEC_URL_CREATING_SWORD_BINARY =
             "http://swordapp.github.io/SWORDv2-Profile/SWORDProfile.html#protocoloperations_creatingresource_binary";
 
+    /**
+     * Marks an upload that was aborted before its package stream was opened
+     */
+    private static final InputStream ABORTED = new ByteArrayInputStream(new byte[0]);
+
     private static final String WARN_MISSING_SHOULD = "SWORD v2 deposit request is missing HTTP request header '%s' " +
             "recommended as SHOULD by %s";
 
@@ -53,11 +65,35 @@ public class Sword2TransportSession implements TransportSession {
 
     private SWORDClient client;
 
-    private ServiceDocument serviceDocument;
+    private Sword2ServiceDocumentCache.CachedServiceDocument serviceDocument;
 
     private AuthCredentials authCreds;
 
-    public Sword2TransportSession(SWORDClient client, ServiceDocument serviceDocument, AuthCredentials authCreds) {
+    private Sword2ServiceDocumentCache serviceDocumentCache;
+
+    private String serviceDocUrl;
+
+    /**
+     * Used to submit jobs for depositing packages
+     */
+    private final Executor executor;
+
+    /**
+     * A deposit that may still be in-progress
+     */
+    private volatile TransferFuture transfer;
+
+    /**
+     * Creates a session depositing to the collections of a service document, performing its deposits on the supplied
+     * executor, typically the executor of the {@link Sword2Transport} opening the session.
+     *
+     * @param client the SWORD client
+     * @param serviceDocument the service document
+     * @param authCreds the credentials used to deposit packages
+     * @param executor performs deposits, shared with other sessions
+     */
+    public Sword2TransportSession(SWORDClient client, ServiceDocument serviceDocument, AuthCredentials authCreds,
+                                  Executor executor) {
         if (client == null) {
             throw new IllegalArgumentException("SWORDClient must not be null.");
         }
@@ -70,9 +106,36 @@ public class Sword2TransportSession implements TransportSession {
             throw new IllegalArgumentException("AuthCredentials must not be null.");
         }
 
+        if (executor == null) {
+            throw new IllegalArgumentException("Transfer executor must not be null.");
+        }
+
         this.client = client;
-        this.serviceDocument = serviceDocument;
+        this.serviceDocument = new Sword2ServiceDocumentCache.CachedServiceDocument(serviceDocument, Long.MAX_VALUE);
         this.authCreds = authCreds;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a session depositing to the collections of a cached service document, performing its deposits on the
+     * supplied executor.  If a deposit names a collection that the cached service document does not contain, the
+     * service document is retrieved again from {@code serviceDocUrl}, in case the collection was added after the
+     * service document was cached.
+     *
+     * @param client the SWORD client
+     * @param serviceDocument the cached service document
+     * @param authCreds the credentials used to deposit packages, and retrieve the service document
+     * @param serviceDocumentCache the cache the service document was retrieved from
+     * @param serviceDocUrl the URL of the service document
+     * @param executor performs deposits, shared with other sessions
+     */
+    Sword2TransportSession(SWORDClient client, Sword2ServiceDocumentCache.CachedServiceDocument serviceDocument,
+                           AuthCredentials authCreds, Sword2ServiceDocumentCache serviceDocumentCache,
+                           String serviceDocUrl, Executor executor) {
+        this(client, serviceDocument.getServiceDocument(), authCreds, executor);
+        this.serviceDocument = serviceDocument;
+        this.serviceDocumentCache = serviceDocumentCache;
+        this.serviceDocUrl = serviceDocUrl;
     }
 
     /**
@@ -98,6 +161,21 @@ public class Sword2TransportSession implements TransportSession {
      */
     @Override
     public TransportResponse send(PackageStream packageStream, Map<String, String> metadata) {
+        return TransferFuture.await(sendAsync(packageStream, metadata));
+    }
+
+    /**
+     * Deposits the package on a bounded executor shared by sessions.  A deposit that is cancelled, or has not completed
+     * by the deadline given by the {@link Transport#TRANSPORT_TIMEOUT_MS} hint, is aborted by closing the package
+     * stream being uploaded.
+     *
+     * @param packageStream
+     * @param metadata
+     * @return
+     * @throws IllegalStateException if this session has been {@link #close() closed}, or the package has no name
+     */
+    @Override
+    public CompletableFuture<TransportResponse> sendAsync(PackageStream packageStream, Map<String, String> metadata) {
         if (closed) {
             throw new IllegalStateException("SWORDv2 transport session has been closed.");
         }
@@ -147,12 +225,24 @@ public class Sword2TransportSession implements TransportSession {
 
         swordDeposit.setInProgress(false);
 
+        AtomicReference<InputStream> upload = new AtomicReference<>();
+
+        this.transfer = TransferFuture.submit(executor, () -> deposit(packageStream, metadata, swordDeposit, upload),
+                () -> abort(upload), timeoutMs(metadata));
+
+        return transfer;
+    }
+
+    private TransportResponse deposit(PackageStream packageStream, Map<String, String> metadata, Deposit swordDeposit,
+                                      AtomicReference<InputStream> upload) {
         DepositReceipt receipt = null;
 
         try (InputStream stream = packageStream.open()) {
+            if (!upload.compareAndSet(null, stream)) {
+                return new Sword2ThrowableResponse(new CancellationException("SWORD deposit was aborted"));
+            }
             swordDeposit.setFile(stream);
-            receipt = client.deposit(selectCollection(serviceDocument, packageStream.metadata(), metadata),
-                    swordDeposit, authCreds);
+            receipt = client.deposit(selectCollection(packageStream.metadata(), metadata), swordDeposit, authCreds);
         } catch (SWORDError e) {
             return new Sword2ErrorResponse(e);
         } catch (ProtocolViolationException | InvalidCollectionUrl e) {
@@ -161,13 +251,34 @@ public class Sword2TransportSession implements TransportSession {
             return new Sword2ThrowableResponse(new RuntimeException("Error closing PackageStream: " + e.getMessage(), e));
         } catch (Exception e) {
             return new Sword2ThrowableResponse(new RuntimeException("Error depositing SWORD package to '" +
-                    selectCollection(serviceDocument, packageStream.metadata(), metadata).getHref().toASCIIString() +
-                    "': " + e.getMessage(), e));
+                    metadata.get(Sword2TransportHints.SWORD_COLLECTION_URL) + "': " + e.getMessage(), e));
         }
 
         return new Sword2DepositReceiptResponse(receipt);
     }
 
+    /**
+     * Aborts a deposit by closing the package stream being uploaded, so that the HTTP client fails reading it.  A
+     * deposit aborted before its upload starts does not start it.
+     */
+    private static void abort(AtomicReference<InputStream> upload) {
+        InputStream stream = upload.getAndSet(ABORTED);
+        if (stream == null || stream == ABORTED) {
+            return;
+        }
+
+        try {
+            stream.close();
+        } catch (IOException e) {
+            LOG.trace("Error closing aborted package stream: {}", e.getMessage(), e);
+        }
+    }
+
+    private static long timeoutMs(Map<String, String> metadata) {
+        String value = metadata != null ? metadata.get(Transport.TRANSPORT_TIMEOUT_MS) : null;
+        return value != null && value.trim().length() > 0 ? Long.parseLong(value.trim()) : 0;
+    }
+
     @Override
     public boolean closed() {
         return this.closed;
@@ -175,6 +286,12 @@ public class Sword2TransportSession implements TransportSession {
 
     @Override
     public void close() throws Exception {
+        TransferFuture transfer = this.transfer;
+        if (transfer != null && !transfer.isDone()) {
+            LOG.debug("Closing SWORDv2 transport session, cancelling pending deposit...");
+            transfer.cancel(true);
+        }
+
         if (this.closed()) {
             return;
         }
@@ -183,14 +300,15 @@ public class Sword2TransportSession implements TransportSession {
     }
 
     /**
-     * Selects the APP Collection that the SWORD deposit is being submitted to.
+     * Selects the APP Collection that the SWORD deposit is being submitted to.  The collection is looked up by URL in
+     * the index of the service document's collections.  If the service document was cached, and does not contain the
+     * collection, it is retrieved again before the collection is considered invalid.
      *
-     * @param serviceDoc
+     * @param packageMetadata
      * @param metadata
      * @return
      */
-    SWORDCollection selectCollection(ServiceDocument serviceDoc, PackageStream.Metadata packageMetadata,
-                                     Map<String, String> metadata) {
+    SWORDCollection selectCollection(PackageStream.Metadata packageMetadata, Map<String, String> metadata) {
         String collectionUrl = metadata.get(Sword2TransportHints.SWORD_COLLECTION_URL);
 
         if (collectionUrl == null || collectionUrl.trim().length() == 0) {
@@ -198,13 +316,23 @@ public class Sword2TransportSession implements TransportSession {
                     .SWORD_COLLECTION_URL + "'");
         }
 
-        SWORDCollection collection = serviceDoc.getWorkspaces()
-                .stream()
-                .flatMap(workspace -> workspace.getCollections().stream())
-                .filter(collectionCandidate -> collectionCandidate.getHref().toString().equals(collectionUrl))
-                .findAny()
-                .orElseThrow(() ->
-                        new InvalidCollectionUrl("SWORD Collection with URL '" + collectionUrl + "' not found."));
+        SWORDCollection collection = serviceDocument.getCollection(collectionUrl);
+
+        if (collection == null && serviceDocumentCache != null) {
+            LOG.debug("SWORD Collection '{}' not found in cached service document '{}', retrieving it again",
+                    collectionUrl, serviceDocUrl);
+            try {
+                serviceDocument = serviceDocumentCache.retrieve(client, serviceDocUrl, authCreds);
+            } catch (Exception e) {
+                throw new RuntimeException("Error reading or parsing SWORD service document '" + serviceDocUrl + "'",
+                        e);
+            }
+            collection = serviceDocument.getCollection(collectionUrl);
+        }
+
+        if (collection == null) {
+            throw new InvalidCollectionUrl("SWORD Collection with URL '" + collectionUrl + "' not found.");
+        }
 
         return collection;
     }
@@ -217,4 +345,5 @@ public class Sword2TransportSession implements TransportSession {
     AuthCredentials getAuthCreds() {
         return authCreds;
     }
+
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.transport.sword2;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.dataconservancy.pass.deposit.transport.sword2.Sword2TransportHints.SWORD_CLIENT_USER_AGENT;
+import static org.dataconservancy.pass.deposit.transport.sword2.Sword2TransportHints.SWORD_SERVICE_DOC_URL;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class DefaultSword2ClientFactoryTest {
+
+    private DefaultSword2ClientFactory underTest = new DefaultSword2ClientFactory();
+
+    /**
+     * Hints identifying the same repository share a client, while other repositories and user agents do not.
+     */
+    @Test
+    public void testClientIsSharedPerRepository() throws Exception {
+        Map<String, String> hints = hints("http://localhost:8080/swordv2/servicedocument", null);
+
+        assertSame(underTest.newInstance(hints),
+                underTest.newInstance(hints("http://localhost:8080/swordv2/servicedocument", null)));
+        assertNotSame(underTest.newInstance(hints),
+                underTest.newInstance(hints("http://localhost:8181/swordv2/servicedocument", null)));
+        assertNotSame(underTest.newInstance(hints),
+                underTest.newInstance(hints("http://localhost:8080/swordv2/servicedocument", "another/agent")));
+    }
+
+    private static Map<String, String> hints(String serviceDocUrl, String userAgent) {
+        Map<String, String> hints = new HashMap<>();
+        hints.put(SWORD_SERVICE_DOC_URL, serviceDocUrl);
+        if (userAgent != null) {
+            hints.put(SWORD_CLIENT_USER_AGENT, userAgent);
+        }
+        return hints;
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.transport.sword2;
+
+import org.apache.abdera.i18n.iri.IRI;
+import org.junit.Before;
+import org.junit.Test;
+import org.swordapp.client.AuthCredentials;
+import org.swordapp.client.SWORDClient;
+import org.swordapp.client.SWORDCollection;
+import org.swordapp.client.SWORDWorkspace;
+import org.swordapp.client.ServiceDocument;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.dataconservancy.pass.deposit.transport.sword2.Sword2TransportHints.SWORD_COLLECTION_URL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class Sword2ServiceDocumentCacheTest {
+
+    private static final String SERVICE_DOC_URL = "http://localhost:8080/swordv2/servicedocument";
+
+    private static final String COLLECTION_URL = "http://localhost:8080/swordv2/collection/1";
+
+    private static final String OTHER_COLLECTION_URL = "http://localhost:8080/swordv2/collection/2";
+
+    private static final AuthCredentials AUTH_CREDS = new AuthCredentials("sworduser", "swordpassword");
+
+    private SWORDClient client;
+
+    private Sword2ServiceDocumentCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        client = mock(SWORDClient.class);
+        cache = new Sword2ServiceDocumentCache();
+    }
+
+    /**
+     * The collections of a service document are indexed by URL, across its workspaces.
+     */
+    @Test
+    public void testCollectionIndex() throws Exception {
+        SWORDCollection collection = collection(COLLECTION_URL);
+        SWORDCollection other = collection(OTHER_COLLECTION_URL);
+        ServiceDocument serviceDocument = serviceDocument(collection, other);
+        when(client.getServiceDocument(any(), any())).thenReturn(serviceDocument);
+
+        Sword2ServiceDocumentCache.CachedServiceDocument cached = cache.get(client, SERVICE_DOC_URL, AUTH_CREDS);
+
+        assertSame(collection, cached.getCollection(COLLECTION_URL));
+        assertSame(other, cached.getCollection(OTHER_COLLECTION_URL));
+        assertNull(cached.getCollection("http://localhost:8080/swordv2/collection/3"));
+    }
+
+    /**
+     * A service document is retrieved once, and then answered from the cache until its TTL elapses.
+     */
+    @Test
+    public void testServiceDocumentIsCached() throws Exception {
+        ServiceDocument serviceDocument = serviceDocument(collection(COLLECTION_URL));
+        when(client.getServiceDocument(any(), any())).thenReturn(serviceDocument);
+
+        Sword2ServiceDocumentCache.CachedServiceDocument cached = cache.get(client, SERVICE_DOC_URL, AUTH_CREDS);
+
+        assertSame(cached, cache.get(client, SERVICE_DOC_URL, AUTH_CREDS));
+        verify(client).getServiceDocument(SERVICE_DOC_URL, AUTH_CREDS);
+
+        cache.setTtlMs(1);
+        cache.retrieve(client, SERVICE_DOC_URL, AUTH_CREDS);
+        Thread.sleep(10);
+        cache.get(client, SERVICE_DOC_URL, AUTH_CREDS);
+
+        verify(client, times(3)).getServiceDocument(SERVICE_DOC_URL, AUTH_CREDS);
+    }
+
+    /**
+     * Service documents are cached separately for each set of credentials, including the password.
+     */
+    @Test
+    public void testServiceDocumentIsCachedPerCredentials() throws Exception {
+        AuthCredentials onBehalfOf = new AuthCredentials("sworduser", "swordpassword", "another_user");
+        AuthCredentials otherPassword = new AuthCredentials("sworduser", "otherpassword");
+        ServiceDocument serviceDocument = serviceDocument(collection(COLLECTION_URL));
+        when(client.getServiceDocument(any(), any())).thenReturn(serviceDocument);
+
+        cache.get(client, SERVICE_DOC_URL, AUTH_CREDS);
+        cache.get(client, SERVICE_DOC_URL, onBehalfOf);
+        cache.get(client, SERVICE_DOC_URL, otherPassword);
+        cache.get(client, SERVICE_DOC_URL, new AuthCredentials("sworduser", "swordpassword"));
+
+        verify(client).getServiceDocument(SERVICE_DOC_URL, AUTH_CREDS);
+        verify(client).getServiceDocument(SERVICE_DOC_URL, onBehalfOf);
+        verify(client).getServiceDocument(SERVICE_DOC_URL, otherPassword);
+    }
+
+    /**
+     * A TTL of 0 disables the cache.
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        cache.setTtlMs(0);
+        ServiceDocument serviceDocument = serviceDocument(collection(COLLECTION_URL));
+        when(client.getServiceDocument(any(), any())).thenReturn(serviceDocument);
+
+        cache.get(client, SERVICE_DOC_URL, AUTH_CREDS);
+        cache.get(client, SERVICE_DOC_URL, AUTH_CREDS);
+
+        verify(client, times(2)).getServiceDocument(SERVICE_DOC_URL, AUTH_CREDS);
+    }
+
+    /**
+     * A session depositing to a collection missing from the cached service document retrieves the service document
+     * again, and finds the collection that was added to it.
+     */
+    @Test
+    public void testSessionRetrievesServiceDocumentForMissingCollection() throws Exception {
+        SWORDCollection added = collection(OTHER_COLLECTION_URL);
+        ServiceDocument original = serviceDocument(collection(COLLECTION_URL));
+        ServiceDocument updated = serviceDocument(collection(COLLECTION_URL), added);
+        when(client.getServiceDocument(any(), any())).thenReturn(original).thenReturn(updated);
+
+        Sword2TransportSession session = new Sword2TransportSession(client,
+                cache.get(client, SERVICE_DOC_URL, AUTH_CREDS), AUTH_CREDS, cache, SERVICE_DOC_URL, Runnable::run);
+
+        assertSame(added, session.selectCollection(null, hints(OTHER_COLLECTION_URL)));
+        assertSame(added, cache.get(client, SERVICE_DOC_URL, AUTH_CREDS).getCollection(OTHER_COLLECTION_URL));
+        verify(client, times(2)).getServiceDocument(SERVICE_DOC_URL, AUTH_CREDS);
+    }
+
+    /**
+     * A collection missing from a freshly retrieved service document is invalid.
+     */
+    @Test
+    public void testSessionMissingCollection() throws Exception {
+        ServiceDocument serviceDocument = serviceDocument(collection(COLLECTION_URL));
+        when(client.getServiceDocument(any(), any())).thenReturn(serviceDocument);
+
+        Sword2TransportSession session = new Sword2TransportSession(client,
+                cache.get(client, SERVICE_DOC_URL, AUTH_CREDS), AUTH_CREDS, cache, SERVICE_DOC_URL, Runnable::run);
+
+        try {
+            session.selectCollection(null, hints(OTHER_COLLECTION_URL));
+            fail("Expected InvalidCollectionUrl");
+        } catch (InvalidCollectionUrl e) {
+            // expected
+        }
+
+        assertEquals(COLLECTION_URL, session.selectCollection(null, hints(COLLECTION_URL)).getHref().toString());
+        verify(client, times(2)).getServiceDocument(SERVICE_DOC_URL, AUTH_CREDS);
+    }
+
+    private static Map<String, String> hints(String collectionUrl) {
+        Map<String, String> hints = new HashMap<>();
+        hints.put(SWORD_COLLECTION_URL, collectionUrl);
+        return hints;
+    }
+
+    private static SWORDCollection collection(String href) {
+        SWORDCollection collection = mock(SWORDCollection.class);
+        when(collection.getHref()).thenReturn(new IRI(href));
+        return collection;
+    }
+
+    /**
+     * Answers a mock {@link ServiceDocument} with a workspace for each of the supplied collections.
+     */
+    private static ServiceDocument serviceDocument(SWORDCollection... collections) {
+        ServiceDocument serviceDocument = mock(ServiceDocument.class);
+        SWORDWorkspace[] workspaces = Arrays.stream(collections).map(collection -> {
+            SWORDWorkspace workspace = mock(SWORDWorkspace.class);
+            when(workspace.getCollections()).thenReturn(Collections.singletonList(collection));
+            return workspace;
+        }).toArray(SWORDWorkspace[]::new);
+        when(serviceDocument.getWorkspaces()).thenReturn(Arrays.asList(workspaces));
+        return serviceDocument;
+    }
+
+}
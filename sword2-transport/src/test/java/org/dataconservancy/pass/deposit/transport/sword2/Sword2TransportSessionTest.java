@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.transport.sword2;
+
+import org.apache.abdera.i18n.iri.IRI;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.transport.TransferFuture;
+import org.dataconservancy.pass.deposit.transport.Transport;
+import org.dataconservancy.pass.deposit.transport.TransportResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.swordapp.client.AuthCredentials;
+import org.swordapp.client.SWORDClient;
+import org.swordapp.client.SWORDCollection;
+import org.swordapp.client.SWORDWorkspace;
+import org.swordapp.client.ServiceDocument;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.dataconservancy.pass.deposit.transport.sword2.Sword2TransportHints.SWORD_COLLECTION_URL;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class Sword2TransportSessionTest {
+
+    private static final String COLLECTION_URL = "http://localhost:8080/swordv2/collection/1";
+
+    private SWORDClient client;
+
+    private Sword2TransportSession underTest;
+
+    private CountDownLatch uploadClosed;
+
+    private PackageStream packageStream;
+
+    private ThreadPoolExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        client = mock(SWORDClient.class);
+
+        SWORDCollection collection = mock(SWORDCollection.class);
+        when(collection.getHref()).thenReturn(new IRI(COLLECTION_URL));
+        SWORDWorkspace workspace = mock(SWORDWorkspace.class);
+        when(workspace.getCollections()).thenReturn(Collections.singletonList(collection));
+        ServiceDocument serviceDocument = mock(ServiceDocument.class);
+        when(serviceDocument.getWorkspaces()).thenReturn(Collections.singletonList(workspace));
+
+        executor = TransferFuture.newExecutor("Sword-Transfer", Sword2Transport.DEFAULT_MAX_TRANSFERS);
+        underTest = new Sword2TransportSession(client, serviceDocument, new AuthCredentials("user", "pass"),
+                executor);
+
+        // The upload blocks until its stream is closed, as an upload to an unresponsive server would
+        uploadClosed = new CountDownLatch(1);
+        packageStream = mock(PackageStream.class);
+        PackageStream.Metadata metadata = mock(PackageStream.Metadata.class);
+        when(packageStream.metadata()).thenReturn(metadata);
+        when(metadata.name()).thenReturn("package.zip");
+        when(metadata.sizeBytes()).thenReturn(-1L);
+        when(packageStream.open()).thenReturn(new ByteArrayInputStream(new byte[1024]) {
+            @Override
+            public void close() throws IOException {
+                uploadClosed.countDown();
+            }
+        });
+        when(client.deposit(any(), any(), any())).thenAnswer(inv -> {
+            uploadClosed.await();
+            throw new IllegalStateException("Stream closed");
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A deposit that does not complete by its deadline fails with a TimeoutException, and is aborted by closing the
+     * package stream being uploaded.
+     */
+    @Test
+    public void testSendAsyncTimesOut() throws Exception {
+        Map<String, String> hints = new HashMap<>();
+        hints.put(SWORD_COLLECTION_URL, COLLECTION_URL);
+        hints.put(Transport.TRANSPORT_TIMEOUT_MS, "50");
+
+        CompletableFuture<TransportResponse> response = underTest.sendAsync(packageStream, hints);
+
+        try {
+            response.get(10, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        assertTrue(uploadClosed.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Closing a session cancels its pending deposit, which is then awaited as a failed response.
+     */
+    @Test
+    public void testCloseCancelsDeposit() throws Exception {
+        Map<String, String> hints = new HashMap<>();
+        hints.put(SWORD_COLLECTION_URL, COLLECTION_URL);
+
+        CompletableFuture<TransportResponse> response = underTest.sendAsync(packageStream, hints);
+        underTest.close();
+
+        assertTrue(response.isCancelled());
+        assertTrue(uploadClosed.await(10, TimeUnit.SECONDS));
+        assertFalse(TransferFuture.await(response).success());
+    }
+
+}
@@ -44,7 +44,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class Sword2TransportTest {
@@ -166,6 +169,27 @@ public class Sword2TransportTest {
         underTest.open(TRANSPORT_HINTS);
     }
 
+    @Test
+    public void testOpenCachesServiceDocument() throws Exception {
+        Sword2ServiceDocumentCache cache = new Sword2ServiceDocumentCache();
+        Sword2ClientFactory clientFactory = mock(Sword2ClientFactory.class);
+        when(clientFactory.newInstance(anyMap())).thenReturn(swordClient);
+        underTest = new Sword2Transport(clientFactory, cache);
+
+        underTest.open(TRANSPORT_HINTS);
+        underTest.open(TRANSPORT_HINTS);
+
+        verify(swordClient, times(1)).getServiceDocument(eq(SERVICE_DOC_URL), any());
+    }
+
+    @Test
+    public void testOpenUncachedServiceDocument() throws Exception {
+        underTest.open(TRANSPORT_HINTS);
+        underTest.open(TRANSPORT_HINTS);
+
+        verify(swordClient, times(2)).getServiceDocument(eq(SERVICE_DOC_URL), any());
+    }
+
     /**
      * Returns a new map that omits the supplied {@code key} from {@code map}.
      *
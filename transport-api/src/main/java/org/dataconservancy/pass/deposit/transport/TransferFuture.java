@@ -0,0 +1,224 @@
+/*
+ * Copyright 2018 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.transport;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The result of an asynchronous {@link TransportSession#sendAsync(PackageStream, Map) transfer}, which may be
+ * cancelled, and which fails with a {@link TimeoutException} if it does not complete by its deadline.
+ * <p>
+ * Interrupting the thread performing a transfer rarely stops it: a thread blocked writing to, or reading from, a
+ * socket is not interruptible.  So when a transfer is cancelled or its deadline passes, the {@code abort} supplied by
+ * the transport is run as well, which is expected to unblock the transfer (e.g. by closing its connection).
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class TransferFuture extends CompletableFuture<TransportResponse> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransferFuture.class);
+
+    private final Runnable abort;
+
+    private FutureTask<Void> task;
+
+    private TransferFuture(Runnable abort) {
+        this.abort = abort;
+    }
+
+    /**
+     * Submits a transfer to the executor.
+     *
+     * @param executor executes the transfer
+     * @param transfer performs the transfer
+     * @param abort stops the transfer when it is cancelled or its deadline passes, may be {@code null}
+     * @param timeoutMs the number of milliseconds, from submission, the transfer has to complete; {@code 0} for no
+     *                  deadline
+     * @return the future result of the transfer
+     */
+    public static TransferFuture submit(Executor executor, Callable<TransportResponse> transfer, Runnable abort,
+                                        long timeoutMs) {
+        TransferFuture future = new TransferFuture(abort);
+        future.task = new FutureTask<>(() -> {
+            try {
+                future.complete(transfer.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+            return null;
+        });
+
+        try {
+            executor.execute(future.task);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        if (timeoutMs > 0) {
+            ScheduledFuture<?> deadline = Holder.DEADLINES.schedule(() -> future.expire(timeoutMs), timeoutMs,
+                    TimeUnit.MILLISECONDS);
+            future.whenComplete((response, t) -> deadline.cancel(false));
+        }
+
+        return future;
+    }
+
+    /**
+     * Waits for the transfer to complete, answering a response for a transfer that failed, was cancelled or timed out.
+     * If the waiting thread is interrupted, the transfer is cancelled.
+     *
+     * @param future the future result of a transfer
+     * @return the response
+     */
+    public static TransportResponse await(CompletableFuture<TransportResponse> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return failed(e);
+        } catch (ExecutionException e) {
+            return failed(e.getCause() != null ? e.getCause() : e);
+        } catch (CancellationException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * Answers a response for a failed transfer.
+     *
+     * @param error the cause of the failure
+     * @return the response
+     */
+    public static TransportResponse failed(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return new TransportResponse() {
+            @Override
+            public boolean success() {
+                return false;
+            }
+
+            @Override
+            public Throwable error() {
+                return cause;
+            }
+        };
+    }
+
+    /**
+     * Creates a bounded executor for transfers, whose daemon threads exit after a minute without work.  Transfers
+     * submitted while all threads are busy wait in the queue, and their deadlines include the time spent waiting.
+     *
+     * @param name the prefix of the names of the executor's threads
+     * @param maxThreads the maximum number of concurrent transfers
+     * @return the executor
+     */
+    public static ThreadPoolExecutor newExecutor(String name, int maxThreads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Changes the maximum number of concurrent transfers performed by an executor created by {@link
+     * #newExecutor(String, int)}.
+     *
+     * @param executor the executor
+     * @param maxThreads the maximum number of concurrent transfers
+     */
+    public static void resize(ThreadPoolExecutor executor, int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("Maximum number of transfers must be a positive integer.");
+        }
+
+        if (maxThreads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maxThreads);
+            executor.setCorePoolSize(maxThreads);
+        } else {
+            executor.setCorePoolSize(maxThreads);
+            executor.setMaximumPoolSize(maxThreads);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            abort(mayInterruptIfRunning);
+        }
+        return cancelled;
+    }
+
+    private void expire(long timeoutMs) {
+        if (completeExceptionally(new TimeoutException("Transfer did not complete within " + timeoutMs + " ms"))) {
+            LOG.info("Transfer did not complete within {} ms, aborting it", timeoutMs);
+            abort(true);
+        }
+    }
+
+    private void abort(boolean interrupt) {
+        task.cancel(interrupt);
+        if (abort != null) {
+            try {
+                abort.run();
+            } catch (RuntimeException e) {
+                LOG.debug("Error aborting transfer: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private static class Holder {
+        private static final ScheduledThreadPoolExecutor DEADLINES;
+
+        static {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "Transfer-Deadlines");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            DEADLINES = executor;
+        }
+    }
+
+}
@@ -99,6 +99,13 @@ public interface Transport {
      */
     String TRANSPORT_PACKAGE_SPEC = "deposit.transport.package-spec";
 
+    /**
+     * Property key identifying the number of milliseconds a transfer started by {@link
+     * TransportSession#sendAsync(PackageStream, Map)} has to complete before it is aborted.  Absent, or {@code 0}, the
+     * transfer has no deadline.
+     */
+    String TRANSPORT_TIMEOUT_MS = "deposit.transport.timeout-ms";
+
     enum AUTHMODE {
 
         /**
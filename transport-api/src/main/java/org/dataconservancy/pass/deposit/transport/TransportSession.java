@@ -19,6 +19,7 @@ package org.dataconservancy.pass.deposit.transport;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents an open connection, or the promise of a successful connection, with a service or system that will accept
@@ -48,6 +49,30 @@ public interface TransportSession extends AutoCloseable {
      */
     TransportResponse send(PackageStream packageStream, Map<String, String> metadata);
 
+    /**
+     * Transfer the bytes of the supplied package to the remote system, answering the future response without waiting
+     * for the transfer to complete.  If the {@code metadata} carries the {@link Transport#TRANSPORT_TIMEOUT_MS} hint,
+     * the returned future fails with a {@link java.util.concurrent.TimeoutException} if the transfer has not completed
+     * by the deadline.  Cancelling the returned future aborts the transfer.
+     * <p>
+     * The default implementation performs the transfer synchronously, using {@link #send(PackageStream, Map)}, and
+     * answers a completed future.  Implementations that transfer packages on a separate thread should override it.
+     * </p>
+     *
+     * @param packageStream the package and package metadata
+     * @param metadata transport-related metadata, or any "extra" package metadata
+     * @return the future response indicating success or failure of the transfer
+     */
+    default CompletableFuture<TransportResponse> sendAsync(PackageStream packageStream, Map<String, String> metadata) {
+        CompletableFuture<TransportResponse> response = new CompletableFuture<>();
+        try {
+            response.complete(send(packageStream, metadata));
+        } catch (RuntimeException e) {
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
     boolean closed();
 
 }